@@ -0,0 +1,372 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import itdelatrisu.opsu.db.DirectoryManifest;
+import itdelatrisu.opsu.db.OsuDB;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.newdawn.slick.util.Log;
+
+/**
+ * Watches the beatmap directory for added, changed, and deleted beatmap sets.
+ * <p>
+ * Events are collected and the changed directories are parsed on a
+ * background thread.  The resulting song groups are swapped into the
+ * OsuGroupList on the caller's thread via {@link #processChanges()}.
+ */
+public class BeatmapWatcher {
+	/** Time, in milliseconds, to wait after the last event before applying changes. */
+	private static final int QUIET_TIME = 1000;
+
+	/** The single instance of this class, or null if not watching. */
+	private static BeatmapWatcher watcher;
+
+	/** The root beatmap directory. */
+	private final File root;
+
+	/** The watch service. */
+	private final WatchService service;
+
+	/** Map of watch keys to watched directories. */
+	private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+
+	/** Names of beatmap directories with pending changes. */
+	private final Set<String> changedDirs = new LinkedHashSet<String>();
+
+	/**
+	 * Parsed changes waiting to be applied: beatmap directory names mapped
+	 * to their new song groups (null if the directory no longer has one).
+	 */
+	private final Map<String, ArrayList<OsuFile>> parsedDirs = new LinkedHashMap<String, ArrayList<OsuFile>>();
+
+	/** Time of the last received event (in ms). */
+	private long lastEventTime = 0;
+
+	/** The watcher thread. */
+	private Thread thread;
+
+	/**
+	 * Starts watching the given root directory, if not already watching.
+	 * @param root the root beatmap directory
+	 */
+	public static synchronized void start(File root) {
+		if (watcher != null)
+			return;
+
+		try {
+			watcher = new BeatmapWatcher(root);
+			watcher.thread.start();
+		} catch (IOException e) {
+			ErrorHandler.error("Failed to start watching the beatmap directory.", e, false);
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Stops watching the beatmap directory, discarding any pending changes.
+	 */
+	public static synchronized void stop() {
+		if (watcher == null)
+			return;
+
+		try {
+			watcher.service.close();
+		} catch (IOException e) {
+			Log.warn("Failed to close beatmap directory watch service.", e);
+		}
+		watcher.thread.interrupt();
+		watcher = null;
+	}
+
+	/**
+	 * Returns whether the beatmap directory is currently being watched.
+	 */
+	public static synchronized boolean isWatching() { return watcher != null; }
+
+	/**
+	 * Applies all parsed changes to the OsuGroupList: the song groups of
+	 * changed directories are replaced, and those of deleted directories are
+	 * removed.  If any changes were applied, the list must be re-initialized
+	 * by the caller.
+	 * <p>
+	 * The directories are parsed (and the database updated) in the background
+	 * once no events have been received for a short period, so that large copy
+	 * operations are applied at once.  This only swaps in the results.
+	 * @return true if the OsuGroupList was modified
+	 */
+	public static boolean processChanges() {
+		BeatmapWatcher w;
+		synchronized (BeatmapWatcher.class) {
+			w = watcher;
+		}
+		if (w == null || OsuGroupList.get() == null)
+			return false;
+
+		// get parsed directories
+		Map<String, ArrayList<OsuFile>> changes;
+		synchronized (w) {
+			if (w.parsedDirs.isEmpty())
+				return false;
+			changes = new LinkedHashMap<String, ArrayList<OsuFile>>(w.parsedDirs);
+			w.parsedDirs.clear();
+		}
+
+		// replace song groups
+		boolean modified = false;
+		for (Map.Entry<String, ArrayList<OsuFile>> change : changes.entrySet()) {
+			if (OsuGroupList.get().removeSongGroup(new File(w.root, change.getKey())))
+				modified = true;
+			if (change.getValue() != null) {
+				OsuGroupList.get().addSongGroup(change.getValue());
+				modified = true;
+			}
+		}
+		return modified;
+	}
+
+	/**
+	 * Parses all changed directories, if no events have been received for a
+	 * short period, and queues the results for {@link #processChanges()}.
+	 * Deleted directories are removed from the database.
+	 */
+	private void parseChanges() {
+		// get changed directories
+		List<String> dirNames;
+		synchronized (this) {
+			if (changedDirs.isEmpty() || System.currentTimeMillis() - lastEventTime < QUIET_TIME ||
+			    OsuGroupList.get() == null)
+				return;
+			dirNames = new ArrayList<String>(changedDirs);
+			changedDirs.clear();
+		}
+
+		List<File> dirs = new ArrayList<File>();
+		for (String name : dirNames) {
+			File dir = new File(root, name);
+			if (dir.isDirectory()) {
+				// force a rescan of the directory
+				OsuDB.deleteManifest(name);
+				dirs.add(dir);
+			} else
+				OsuDB.delete(name);
+		}
+
+		// parse new song groups
+		List<ArrayList<OsuFile>> songGroups = null;
+		if (!dirs.isEmpty())
+			songGroups = OsuParser.parseSongGroups(dirs.toArray(new File[dirs.size()]));
+
+		// queue the results (a later change to the same directory replaces an earlier one)
+		synchronized (this) {
+			for (String name : dirNames)
+				parsedDirs.put(name, null);
+			if (songGroups != null) {
+				for (ArrayList<OsuFile> osuFiles : songGroups)
+					parsedDirs.put(osuFiles.get(0).getFile().getParentFile().getName(), osuFiles);
+			}
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param root the root beatmap directory
+	 * @throws IOException if the watch service could not be created
+	 */
+	private BeatmapWatcher(File root) throws IOException {
+		this.root = root;
+		this.service = root.toPath().getFileSystem().newWatchService();
+		this.thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					registerAll();
+					watch();
+				} catch (ClosedWatchServiceException e) {
+					// stopped
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.setName("BeatmapWatcher");
+	}
+
+	/**
+	 * Registers the root directory and all beatmap directories.
+	 */
+	private void registerAll() {
+		Path rootPath = root.toPath();
+		if (!register(rootPath))
+			return;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootPath)) {
+			for (Path path : stream) {
+				if (Thread.currentThread().isInterrupted())
+					return;
+				if (Files.isDirectory(path) && !register(path))
+					break;
+			}
+		} catch (IOException e) {
+			Log.warn(String.format("Failed to list directory '%s'.", rootPath), e);
+		}
+	}
+
+	/**
+	 * Registers a directory with the watch service.
+	 * @param dir the directory
+	 * @return true if successful, false if no more directories can be watched
+	 */
+	private boolean register(Path dir) {
+		try {
+			WatchKey key = dir.register(service,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+			synchronized (keys) {
+				keys.put(key, dir);
+			}
+			return true;
+		} catch (IOException e) {
+			// most likely reached the system limit on watched directories
+			Log.warn(String.format("Failed to watch directory '%s'.", dir), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Processes watch events until the watch service is closed, and parses
+	 * the changed directories whenever no events are received for a while.
+	 */
+	private void watch() {
+		Path rootPath = root.toPath();
+		while (!Thread.currentThread().isInterrupted()) {
+			WatchKey key;
+			try {
+				key = service.poll(QUIET_TIME, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			// no recent events: parse pending changes
+			if (key == null) {
+				parseChanges();
+				continue;
+			}
+
+			Path dir;
+			synchronized (keys) {
+				dir = keys.get(key);
+			}
+			if (dir != null) {
+				boolean isRoot = dir.equals(rootPath);
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						Log.warn(String.format("Beatmap directory events lost for '%s', rescanning all directories.", dir));
+						rescanAll();
+						continue;
+					}
+
+					Path name = (Path) event.context();
+					if (isRoot) {
+						// beatmap directory added, removed, or renamed
+						Path child = rootPath.resolve(name);
+						if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child))
+							register(child);
+						addChange(name.toString());
+					} else if (name.toString().toLowerCase().endsWith(".osu"))
+						addChange(dir.getFileName().toString());
+				}
+			}
+
+			// directory no longer accessible
+			if (!key.reset()) {
+				synchronized (keys) {
+					keys.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks all beatmap directories as changed, after watch events were lost.
+	 * This includes directories known to the database (which may have been
+	 * deleted) and those in the root directory (which may have been added, and
+	 * are registered if not yet watched).  All directory manifests are
+	 * deleted, so that every directory is listed again.
+	 */
+	private void rescanAll() {
+		Map<String, DirectoryManifest> manifestMap = OsuDB.getManifestMap();
+		if (manifestMap != null) {
+			for (String dirName : manifestMap.keySet())
+				addChange(dirName);
+		}
+		Map<String, Map<String, Long>> map = OsuDB.getLastModifiedMap();
+		if (map != null) {
+			for (String dirName : map.keySet())
+				addChange(dirName);
+		}
+		OsuDB.clearManifest();
+
+		Path rootPath = root.toPath();
+		Set<Path> watched;
+		synchronized (keys) {
+			watched = new HashSet<Path>(keys.values());
+		}
+		boolean canRegister = true;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootPath)) {
+			for (Path path : stream) {
+				if (!Files.isDirectory(path))
+					continue;
+				if (canRegister && !watched.contains(path))
+					canRegister = register(path);
+				addChange(path.getFileName().toString());
+			}
+		} catch (IOException e) {
+			Log.warn(String.format("Failed to list directory '%s'.", rootPath), e);
+		}
+	}
+
+	/**
+	 * Marks a beatmap directory as changed.
+	 * @param dirName the directory name
+	 */
+	private synchronized void addChange(String dirName) {
+		changedDirs.add(dirName);
+		lastEventTime = System.currentTimeMillis();
+	}
+}
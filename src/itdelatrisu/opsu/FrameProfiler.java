@@ -0,0 +1,389 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
+import org.newdawn.slick.util.Log;
+
+/**
+ * Per-frame profiler.
+ * <p>
+ * Records the update and render times, the bytes allocated by the game
+ * thread, and garbage collections for every frame.  Statistics over the
+ * most recent frames (with a frame time histogram) are drawn above the FPS
+ * counter, and a summary for each game state is appended to
+ * {@link Options#PERF_LOG_FILE} periodically.
+ * <p>
+ * All methods must be called from the game thread.
+ */
+public class FrameProfiler {
+	/** Number of frames in the rolling statistics. */
+	private static final int HISTORY_SIZE = 256;
+
+	/** Upper bounds (exclusive, in ms) of the frame time histogram buckets (the last bucket is unbounded). */
+	private static final int[] HISTOGRAM_BOUNDS = { 4, 8, 17, 34, 50, 100 };
+
+	/** Interval between refreshes of the overlay text, in ms. */
+	private static final int DRAW_INTERVAL = 500;
+
+	/** Interval between log summaries, in ms. */
+	private static final int LOG_INTERVAL = 10000;
+
+	/** Maximum number of game states. */
+	private static final int MAX_STATES = 16;
+
+	/** Histogram bar colors. */
+	private static final Color
+		BAR_BACKGROUND = new Color(0, 0, 0, 0.5f),
+		BAR_NORMAL     = new Color(0.6f, 0.9f, 0.6f),
+		BAR_SLOW       = new Color(1f, 0.6f, 0.2f),
+		BAR_STUTTER    = new Color(1f, 0.3f, 0.3f);
+
+	/** The thread bean, if it supports allocation counting (otherwise null). */
+	private static com.sun.management.ThreadMXBean threadBean;
+
+	/** The garbage collector beans. */
+	private static List<GarbageCollectorMXBean> gcBeans;
+
+	/** Whether the beans have been looked up. */
+	private static boolean initialized = false;
+
+	/** Rolling per-frame data (frame time, update time, render time, in ns; allocated bytes). */
+	private static final long[]
+		frameTimes = new long[HISTORY_SIZE],
+		updateTimes = new long[HISTORY_SIZE],
+		renderTimes = new long[HISTORY_SIZE],
+		allocated = new long[HISTORY_SIZE];
+
+	/** Rolling per-frame garbage collection counts and times (ms). */
+	private static final long[] gcCounts = new long[HISTORY_SIZE], gcTimes = new long[HISTORY_SIZE];
+
+	/** Index of the next frame in the rolling data, and the number of frames stored. */
+	private static int frameIndex = 0, frameCount = 0;
+
+	/** Start time of the current update or render, and the end time of the last frame (ns). */
+	private static long updateStart, renderStart, lastFrameEnd = -1;
+
+	/** Update time accumulated in the current frame (updates can run more than once per frame), in ns. */
+	private static long frameUpdateTime;
+
+	/** Allocated bytes and garbage collection count/time at the end of the last frame. */
+	private static long lastAllocated, lastGCCount, lastGCTime;
+
+	/** Rolling frame time histogram. */
+	private static final int[] histogram = new int[HISTOGRAM_BOUNDS.length + 1];
+
+	/** Per-state totals since the last log summary (update/render time in ns, allocated bytes, max frame time). */
+	private static final long[]
+		stateFrames = new long[MAX_STATES],
+		stateUpdateTimes = new long[MAX_STATES],
+		stateRenderTimes = new long[MAX_STATES],
+		stateAllocated = new long[MAX_STATES],
+		stateMaxFrameTimes = new long[MAX_STATES];
+
+	/** Per-state frame time histograms since the last log summary. */
+	private static final int[][] stateHistograms = new int[MAX_STATES][HISTOGRAM_BOUNDS.length + 1];
+
+	/** Garbage collection count and time since the last log summary. */
+	private static long logGCCount, logGCTime;
+
+	/** Time of the last log summary and overlay refresh (ns). */
+	private static long lastLogTime, lastDrawTime;
+
+	/** The overlay text lines. */
+	private static String[] lines = new String[0];
+
+	/** The log writer (opened when first needed). */
+	private static BufferedWriter logWriter;
+
+	// This class should not be instantiated.
+	private FrameProfiler() {}
+
+	/**
+	 * Returns whether profiling is enabled.
+	 */
+	private static boolean isEnabled() { return Options.isPerformanceStatsEnabled(); }
+
+	/**
+	 * Looks up the management beans.
+	 */
+	private static void init() {
+		initialized = true;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+			try {
+				if (b.isThreadAllocatedMemorySupported()) {
+					b.setThreadAllocatedMemoryEnabled(true);
+					threadBean = b;
+				}
+			} catch (UnsupportedOperationException e) {
+				threadBean = null;
+			}
+		}
+		gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+	}
+
+	/**
+	 * Marks the start of a state update.
+	 */
+	public static void beginUpdate() {
+		if (isEnabled())
+			updateStart = System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of a state update.
+	 */
+	public static void endUpdate() {
+		if (isEnabled() && updateStart != 0) {
+			frameUpdateTime += System.nanoTime() - updateStart;
+			updateStart = 0;
+		}
+	}
+
+	/**
+	 * Marks the start of a state render.
+	 */
+	public static void beginRender() {
+		if (isEnabled())
+			renderStart = System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of a state render, which ends the frame.
+	 * @param state the current state ID
+	 */
+	public static void endFrame(int state) {
+		if (!isEnabled()) {
+			if (lastFrameEnd != -1)
+				reset();
+			return;
+		}
+		if (!initialized)
+			init();
+
+		long now = System.nanoTime();
+		long bytes = (threadBean != null) ? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+		long gcCount = 0, gcTime = 0;
+		for (GarbageCollectorMXBean gc : gcBeans) {
+			gcCount += Math.max(gc.getCollectionCount(), 0);
+			gcTime += Math.max(gc.getCollectionTime(), 0);
+		}
+
+		// first frame: only take the readings
+		if (lastFrameEnd == -1 || renderStart == 0) {
+			lastFrameEnd = lastLogTime = lastDrawTime = now;
+			lastAllocated = bytes;
+			lastGCCount = gcCount;
+			lastGCTime = gcTime;
+			frameUpdateTime = 0;
+			renderStart = 0;
+			return;
+		}
+
+		// record the frame
+		int i = frameIndex;
+		if (frameCount == HISTORY_SIZE)
+			histogram[getBucket(frameTimes[i])]--;
+		else
+			frameCount++;
+		frameTimes[i] = now - lastFrameEnd;
+		updateTimes[i] = frameUpdateTime;
+		renderTimes[i] = now - renderStart;
+		allocated[i] = bytes - lastAllocated;
+		gcCounts[i] = gcCount - lastGCCount;
+		gcTimes[i] = gcTime - lastGCTime;
+		histogram[getBucket(frameTimes[i])]++;
+		frameIndex = (i + 1) % HISTORY_SIZE;
+
+		// per-state totals
+		if (state >= 0 && state < MAX_STATES) {
+			stateFrames[state]++;
+			stateUpdateTimes[state] += updateTimes[i];
+			stateRenderTimes[state] += renderTimes[i];
+			stateAllocated[state] += allocated[i];
+			stateMaxFrameTimes[state] = Math.max(stateMaxFrameTimes[state], frameTimes[i]);
+			stateHistograms[state][getBucket(frameTimes[i])]++;
+		}
+		logGCCount += gcCounts[i];
+		logGCTime += gcTimes[i];
+
+		lastFrameEnd = now;
+		lastAllocated = bytes;
+		lastGCCount = gcCount;
+		lastGCTime = gcTime;
+		frameUpdateTime = 0;
+		renderStart = 0;
+
+		if ((now - lastLogTime) / 1000000 >= LOG_INTERVAL) {
+			writeLog();
+			lastLogTime = now;
+		}
+	}
+
+	/**
+	 * Returns the histogram bucket of a frame time.
+	 * @param frameTime the frame time, in ns
+	 */
+	private static int getBucket(long frameTime) {
+		long ms = frameTime / 1000000;
+		for (int i = 0; i < HISTOGRAM_BOUNDS.length; i++) {
+			if (ms < HISTOGRAM_BOUNDS[i])
+				return i;
+		}
+		return HISTOGRAM_BOUNDS.length;
+	}
+
+	/**
+	 * Clears all recorded data.
+	 */
+	private static void reset() {
+		frameIndex = frameCount = 0;
+		lastFrameEnd = -1;
+		updateStart = renderStart = frameUpdateTime = 0;
+		for (int i = 0; i < histogram.length; i++)
+			histogram[i] = 0;
+		clearStateTotals();
+		lines = new String[0];
+	}
+
+	/**
+	 * Clears the per-state totals.
+	 */
+	private static void clearStateTotals() {
+		for (int s = 0; s < MAX_STATES; s++) {
+			stateFrames[s] = stateUpdateTimes[s] = stateRenderTimes[s] = stateAllocated[s] = stateMaxFrameTimes[s] = 0;
+			for (int b = 0; b < stateHistograms[s].length; b++)
+				stateHistograms[s][b] = 0;
+		}
+		logGCCount = logGCTime = 0;
+	}
+
+	/**
+	 * Appends a summary of the per-state totals to the log file, and clears them.
+	 */
+	private static void writeLog() {
+		try {
+			if (logWriter == null)
+				logWriter = new BufferedWriter(new FileWriter(Options.PERF_LOG_FILE, true));
+			logWriter.write(String.format("%s  gc: %d (%d ms)",
+					new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()), logGCCount, logGCTime));
+			logWriter.newLine();
+			for (int s = 0; s < MAX_STATES; s++) {
+				long frames = stateFrames[s];
+				if (frames == 0)
+					continue;
+				StringBuilder sb = new StringBuilder();
+				sb.append(String.format("  state %d: %d frames, update %.2f ms, render %.2f ms, max %.1f ms, alloc %.1f KB/frame, histogram",
+						s, frames, stateUpdateTimes[s] / 1e6 / frames, stateRenderTimes[s] / 1e6 / frames,
+						stateMaxFrameTimes[s] / 1e6, stateAllocated[s] / 1024.0 / frames));
+				for (int b = 0; b < HISTOGRAM_BOUNDS.length; b++)
+					sb.append(String.format(" <%d:%d", HISTOGRAM_BOUNDS[b], stateHistograms[s][b]));
+				sb.append(String.format(" >=%d:%d", HISTOGRAM_BOUNDS[HISTOGRAM_BOUNDS.length - 1],
+						stateHistograms[s][HISTOGRAM_BOUNDS.length]));
+				logWriter.write(sb.toString());
+				logWriter.newLine();
+			}
+			logWriter.flush();
+		} catch (IOException e) {
+			Log.warn("Failed to write performance log.", e);
+		}
+		clearStateTotals();
+	}
+
+	/**
+	 * Draws the rolling statistics and frame time histogram above the FPS counter.
+	 * @param container the game container
+	 * @param g the graphics context
+	 */
+	public static void draw(GameContainer container, Graphics g) {
+		if (!isEnabled() || frameCount == 0)
+			return;
+
+		// refresh the text
+		long now = System.nanoTime();
+		if (lines.length == 0 || (now - lastDrawTime) / 1000000 >= DRAW_INTERVAL) {
+			long update = 0, render = 0, alloc = 0, maxFrame = 0, gcCount = 0, gcTime = 0;
+			for (int i = 0; i < frameCount; i++) {
+				update += updateTimes[i];
+				render += renderTimes[i];
+				alloc += allocated[i];
+				maxFrame = Math.max(maxFrame, frameTimes[i]);
+				gcCount += gcCounts[i];
+				gcTime += gcTimes[i];
+			}
+			lines = new String[] {
+				String.format("update %.2f ms  render %.2f ms", update / 1e6 / frameCount, render / 1e6 / frameCount),
+				(threadBean != null) ? String.format("alloc %.1f KB/frame", alloc / 1024.0 / frameCount) : "alloc n/a",
+				String.format("gc %d (%d ms)  max frame %.1f ms", gcCount, gcTime, maxFrame / 1e6)
+			};
+			lastDrawTime = now;
+		}
+
+		// text (right-aligned, above the FPS counter)
+		float right = container.getWidth() * 0.997f;
+		float lineHeight = Utils.FONT_DEFAULT.getLineHeight();
+		float y = container.getHeight() * 0.997f - Utils.FONT_BOLD.getLineHeight() - lineHeight * lines.length;
+		for (int i = 0; i < lines.length; i++)
+			Utils.FONT_DEFAULT.drawString(right - Utils.FONT_DEFAULT.getWidth(lines[i]), y + lineHeight * i, lines[i], Color.white);
+
+		// frame time histogram
+		int buckets = histogram.length;
+		float barWidth = lineHeight * 0.8f, barHeight = lineHeight * 2.5f;
+		float histX = right - barWidth * buckets, histY = y - barHeight - lineHeight * 0.25f;
+		g.setColor(BAR_BACKGROUND);
+		g.fillRect(histX, histY, barWidth * buckets, barHeight);
+		for (int b = 0; b < buckets; b++) {
+			if (histogram[b] == 0)
+				continue;
+			float h = Math.max(barHeight * histogram[b] / frameCount, 1f);
+			g.setColor((b < 3) ? BAR_NORMAL : (b < 4) ? BAR_SLOW : BAR_STUTTER);
+			g.fillRect(histX + barWidth * b + 1, histY + barHeight - h, barWidth - 2, h);
+		}
+	}
+
+	/**
+	 * Writes any pending log summary and closes the log file.
+	 */
+	public static void close() {
+		if (lastFrameEnd != -1)
+			writeLog();
+		if (logWriter != null) {
+			try {
+				logWriter.close();
+			} catch (IOException e) {
+				Log.warn("Failed to close performance log.", e);
+			}
+			logWriter = null;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.util.Log;
+
+/**
+ * An OsuFile with all of the data needed to play the beatmap: the fields
+ * only used in game, the array fields, and the hit objects.
+ * <p>
+ * Song groups only hold the summary fields of {@link OsuFile}.  Full
+ * OsuFiles are created by the parser, and are otherwise loaded on demand
+ * (and shared) through {@link OsuFileCache}.
+ */
+public class FullOsuFile extends OsuFile {
+	/**
+	 * [General]
+	 */
+
+	/** Delay time before music starts (in ms). */
+	public int audioLeadIn = 0;
+
+	/** Countdown type (0:disabled, 1:normal, 2:half, 3:double). */
+	public byte countdown = 0;
+
+	/** Sound samples ("None", "Normal", "Soft"). */
+	public String sampleSet = "";
+
+	/** How often closely placed hit objects will be stacked together. */
+	public float stackLeniency = 0.7f;
+
+	/** Whether the letterbox (top/bottom black bars) appears during breaks. */
+	public boolean letterboxInBreaks = false;
+
+	/** Whether the storyboard should be widescreen. */
+	public boolean widescreenStoryboard = false;
+
+	/** Whether to show an epilepsy warning. */
+	public boolean epilepsyWarning = false;
+
+	/**
+	 * [Difficulty]
+	 */
+
+	/** Slider movement speed multiplier. */
+	public float sliderMultiplier = 1f;
+
+	/** Rate at which slider ticks are placed (x per beat). */
+	public float sliderTickRate = 1f;
+
+	/**
+	 * [Events]
+	 */
+
+	/** All break periods (start time, end time, ...). */
+	public ArrayList<Integer> breaks;
+
+	/**
+	 * [TimingPoints]
+	 */
+
+	/** All timing points. */
+	public ArrayList<OsuTimingPoint> timingPoints;
+
+	/**
+	 * [Colours]
+	 */
+
+	/** Combo colors (max 8). */
+	public Color[] combo;
+
+	/**
+	 * [HitObjects]
+	 */
+
+	/** All hit objects (views into {@link #objectStore}). */
+	public OsuHitObject[] objects;
+
+	/** Packed hit object data. */
+	public HitObjectStore objectStore;
+
+	/**
+	 * Section offsets
+	 */
+
+	/** Byte offset of the [TimingPoints] section contents in the file (-1 if unknown). */
+	public int timingPointsOffset = -1;
+
+	/** Byte offset of the [HitObjects] section contents in the file (-1 if unknown). */
+	public int hitObjectsOffset = -1;
+
+	/**
+	 * Constructor.
+	 * @param file the file associated with this OsuFile
+	 */
+	public FullOsuFile(File file) {
+		super(file);
+	}
+
+	/**
+	 * Creates a full OsuFile with the summary fields of another OsuFile.
+	 * All other fields keep their default values.
+	 * @param osu the OsuFile to copy
+	 */
+	public FullOsuFile(OsuFile osu) {
+		super(osu);
+	}
+
+	/**
+	 * Returns the {@link #breaks} field formatted as a string,
+	 * or null if the field is null.
+	 */
+	public String breaksToString() {
+		if (breaks == null)
+			return null;
+
+		StringBuilder sb = new StringBuilder();
+		for (int i : breaks) {
+			sb.append(i);
+			sb.append(',');
+		}
+		if (sb.length() > 0)
+			sb.setLength(sb.length() - 1);
+		return sb.toString();
+	}
+
+	/**
+	 * Sets the {@link #breaks} field from a string.
+	 * @param s the string
+	 */
+	public void breaksFromString(String s) {
+		if (s == null)
+			return;
+
+		this.breaks = new ArrayList<Integer>();
+		String[] tokens = s.split(",");
+		for (int i = 0; i < tokens.length; i++)
+			breaks.add(Integer.parseInt(tokens[i]));
+	}
+
+	/**
+	 * Returns the {@link #timingPoints} field formatted as a string,
+	 * or null if the field is null.
+	 */
+	public String timingPointsToString() {
+		if (timingPoints == null)
+			return null;
+
+		StringBuilder sb = new StringBuilder();
+		for (OsuTimingPoint p : timingPoints) {
+			sb.append(p.toString());
+			sb.append('|');
+		}
+		if (sb.length() > 0)
+			sb.setLength(sb.length() - 1);
+		return sb.toString();
+	}
+
+	/**
+	 * Sets the {@link #timingPoints} field from a string.
+	 * @param s the string
+	 */
+	public void timingPointsFromString(String s) {
+		this.timingPoints = new ArrayList<OsuTimingPoint>();
+		if (s == null)
+			return;
+
+		String[] tokens = s.split("\\|");
+		for (int i = 0; i < tokens.length; i++) {
+			try {
+				timingPoints.add(new OsuTimingPoint(tokens[i]));
+			} catch (Exception e) {
+				Log.warn(String.format("Failed to read timing point '%s'.", tokens[i]), e);
+			}
+		}
+		timingPoints.trimToSize();
+	}
+
+	/**
+	 * Returns the {@link #combo} field formatted as a string,
+	 * or null if the field is null or the default combo.
+	 */
+	public String comboToString() {
+		if (combo == null || combo == Utils.DEFAULT_COMBO)
+			return null;
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < combo.length; i++) {
+			Color c = combo[i];
+			sb.append(c.getRed());
+			sb.append(',');
+			sb.append(c.getGreen());
+			sb.append(',');
+			sb.append(c.getBlue());
+			sb.append('|');
+		}
+		if (sb.length() > 0)
+			sb.setLength(sb.length() - 1);
+		return sb.toString();
+	}
+
+	/**
+	 * Sets the {@link #combo} field from a string.
+	 * @param s the string
+	 */
+	public void comboFromString(String s) {
+		this.combo = Utils.DEFAULT_COMBO;
+		if (s == null)
+			return;
+
+		LinkedList<Color> colors = new LinkedList<Color>();
+		String[] tokens = s.split("\\|");
+		for (int i = 0; i < tokens.length; i++) {
+			String[] rgb = tokens[i].split(",");
+			colors.add(new Color(Integer.parseInt(rgb[0]), Integer.parseInt(rgb[1]), Integer.parseInt(rgb[2])));
+		}
+		if (!colors.isEmpty())
+			this.combo = colors.toArray(new Color[colors.size()]);
+	}
+}
@@ -25,13 +25,11 @@ import itdelatrisu.opsu.audio.SoundEffect;
 import itdelatrisu.opsu.downloads.Updater;
 import itdelatrisu.opsu.objects.curves.Curve;
 import itdelatrisu.opsu.replay.Replay;
-import itdelatrisu.opsu.replay.ReplayFrame;
+import itdelatrisu.opsu.replay.ReplayFrameBuffer;
 
 import java.io.File;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.concurrent.LinkedBlockingDeque;
 
 import org.newdawn.slick.Animation;
 import org.newdawn.slick.Color;
@@ -45,6 +43,12 @@ public class GameData {
 	/** Delta multiplier for steady HP drain. */
 	public static final float HP_DRAIN_MULTIPLIER = 1 / 200f;
 
+	/**
+	 * Length of a gameplay update tick, in milliseconds.
+	 * Replay frames further apart than this are run in ticks of this length.
+	 */
+	public static final int TICK_TIME = 1;
+
 	/** Time, in milliseconds, for a hit result to remain existent. */
 	public static final int HITRESULT_TIME = 833;
 
@@ -188,8 +192,14 @@ public class GameData {
 	/** Time offsets for obtaining each hit result (indexed by HIT_* constants). */
 	private int[] hitResultOffset;
 
+	/** Initial capacity of the hit result and hit error queues. */
+	private static final int RESULT_QUEUE_CAPACITY = 64;
+
 	/** List of hit result objects associated with hit objects. */
-	private LinkedBlockingDeque<OsuHitObjectResult> hitResultList;
+	private final RecordQueue<OsuHitObjectResult> hitResultList = new RecordQueue<OsuHitObjectResult>(RESULT_QUEUE_CAPACITY) {
+		@Override
+		protected OsuHitObjectResult create() { return new OsuHitObjectResult(); }
+	};
 
 	/**
 	 * Class to store hit error information.
@@ -207,13 +217,13 @@ public class GameData {
 		private int timeDiff;
 
 		/**
-		 * Constructor.
+		 * Sets the hit error information.
 		 * @param time the correct hit time
 		 * @param x the x coordinate of the hit
 		 * @param y the y coordinate of the hit
 		 * @param timeDiff the difference between the correct and actual hit times
 		 */
-		public HitErrorInfo(int time, int x, int y, int timeDiff) {
+		public void set(int time, int x, int y, int timeDiff) {
 			this.time = time;
 			this.x = x;
 			this.y = y;
@@ -221,8 +231,11 @@ public class GameData {
 		}
 	}
 
-	/** List containing recent hit error information. */
-	private LinkedBlockingDeque<HitErrorInfo> hitErrorList;
+	/** List containing recent hit error information (most recent last). */
+	private final RecordQueue<HitErrorInfo> hitErrorList = new RecordQueue<HitErrorInfo>(RESULT_QUEUE_CAPACITY) {
+		@Override
+		protected HitErrorInfo create() { return new HitErrorInfo(); }
+	};
 
 	/** Hit object types, used for drawing results. */
 	public enum HitObjectType { CIRCLE, SLIDERTICK, SLIDER_FIRST, SLIDER_LAST, SPINNER }
@@ -254,7 +267,7 @@ public class GameData {
 		public boolean expand;
 
 		/**
-		 * Constructor.
+		 * Sets the hit result.
 		 * @param time the result's starting track position
 		 * @param result the hit result (HIT_* constants)
 		 * @param x the center x coordinate
@@ -263,7 +276,7 @@ public class GameData {
 		 * @param curve the slider curve (or null if not applicable)
 		 * @param expand whether or not the hit result animation should expand (if applicable)
 		 */
-		public OsuHitObjectResult(int time, int result, float x, float y, Color color,
+		public void set(int time, int result, float x, float y, Color color,
 				HitObjectType hitResultType, Curve curve, boolean expand) {
 			this.time = time;
 			this.result = result;
@@ -273,6 +286,41 @@ public class GameData {
 			this.hitResultType = hitResultType;
 			this.curve = curve;
 			this.expand = expand;
+			this.alpha = 1f;
+		}
+	}
+
+	/**
+	 * Saved scoring state (see {@link GameData#saveState()}).
+	 */
+	public static class State {
+		/** Game score. */
+		private final long score;
+
+		/** Health. */
+		private final float health;
+
+		/** Hit result counts. */
+		private final int[] hitResultCount;
+
+		/** Object counts, combo and maximum combo. */
+		private final int fullObjectCount, combo, comboMax;
+
+		/** Combo end bitmask. */
+		private final byte comboEnd;
+
+		/**
+		 * Constructor.
+		 * @param data the game data to save
+		 */
+		private State(GameData data) {
+			this.score = data.score;
+			this.health = data.health;
+			this.hitResultCount = data.hitResultCount.clone();
+			this.fullObjectCount = data.fullObjectCount;
+			this.combo = data.combo;
+			this.comboMax = data.comboMax;
+			this.comboEnd = data.comboEnd;
 		}
 	}
 
@@ -315,6 +363,9 @@ public class GameData {
 	/** Whether this object is used for gameplay (true) or score viewing (false). */
 	private boolean gameplay;
 
+	/** Whether this object is used for headless simulation (no display data is kept). */
+	private boolean headless;
+
 	/** Container dimensions. */
 	private int width, height;
 
@@ -331,6 +382,17 @@ public class GameData {
 		clear();
 	}
 
+	/**
+	 * Constructor for headless gameplay simulation.
+	 * No images are loaded, and hit result animations and hit errors are not stored.
+	 */
+	public GameData() {
+		this.gameplay = true;
+		this.headless = true;
+
+		clear();
+	}
+
 	/**
 	 * Constructor for score viewing.
 	 * This will initialize all parameters and images needed for the
@@ -372,8 +434,8 @@ public class GameData {
 		health = 100f;
 		healthDisplay = 100f;
 		hitResultCount = new int[HIT_MAX];
-		hitResultList = new LinkedBlockingDeque<OsuHitObjectResult>();
-		hitErrorList = new LinkedBlockingDeque<HitErrorInfo>();
+		hitResultList.clear();
+		hitErrorList.clear();
 		fullObjectCount = 0;
 		combo = 0;
 		comboMax = 0;
@@ -383,6 +445,30 @@ public class GameData {
 		scoreData = null;
 	}
 
+	/**
+	 * Returns the current scoring state.
+	 */
+	public State saveState() { return new State(this); }
+
+	/**
+	 * Restores a scoring state, and resets all displayed values to it.
+	 * @param state the state returned by {@link #saveState()}
+	 */
+	public void restoreState(State state) {
+		score = scoreDisplay = state.score;
+		health = healthDisplay = state.health;
+		hitResultCount = state.hitResultCount.clone();
+		fullObjectCount = state.fullObjectCount;
+		combo = state.combo;
+		comboMax = state.comboMax;
+		comboEnd = state.comboEnd;
+		scorePercentDisplay = getScorePercent();
+		hitResultList.clear();
+		hitErrorList.clear();
+		comboPopTime = COMBO_POP_TIME;
+		comboBurstIndex = -1;
+	}
+
 	/**
 	 * Loads all game score images.
 	 */
@@ -562,9 +648,10 @@ public class GameData {
 	 * @param g the graphics context
 	 * @param breakPeriod if true, will not draw scorebar and combo elements, and will draw grade
 	 * @param firstObject true if the first hit object's start time has not yet passed
+	 * @param firstObjectTime the first hit object's start time
 	 */
 	@SuppressWarnings("deprecation")
-	public void drawGameElements(Graphics g, boolean breakPeriod, boolean firstObject) {
+	public void drawGameElements(Graphics g, boolean breakPeriod, boolean firstObject, int firstObjectTime) {
 		boolean relaxAutoPilot = (GameMod.RELAX.isActive() || GameMod.AUTOPILOT.isActive());
 		int margin = (int) (width * 0.008f);
 		float uiScale = GameImage.getUIscale();
@@ -583,7 +670,6 @@ public class GameData {
 
 		// map progress circle
 		OsuFile osu = MusicController.getOsuFile();
-		int firstObjectTime = osu.objects[0].getTime();
 		int trackPosition = MusicController.getPosition();
 		float circleDiameter = symbolHeight * 0.60f;
 		int circleX = (int) (width - margin - (  // max width: "100.00%"
@@ -633,8 +719,9 @@ public class GameData {
 			// fade out with last tick
 			float hitErrorAlpha = 1f;
 			Color white = new Color(Color.white);
-			if (trackPosition - hitErrorList.getFirst().time > HIT_ERROR_FADE_TIME * 0.9f)
-				hitErrorAlpha = (HIT_ERROR_FADE_TIME - (trackPosition - hitErrorList.getFirst().time)) / (HIT_ERROR_FADE_TIME * 0.1f);
+			int lastTime = hitErrorList.getLast().time;
+			if (trackPosition - lastTime > HIT_ERROR_FADE_TIME * 0.9f)
+				hitErrorAlpha = (HIT_ERROR_FADE_TIME - (trackPosition - lastTime)) / (HIT_ERROR_FADE_TIME * 0.1f);
 
 			// draw bar
 			float hitErrorX = width / uiScale / 2;
@@ -668,7 +755,8 @@ public class GameData {
 
 			// draw ticks
 			float tickWidth = 2 * uiScale;
-			for (HitErrorInfo info : hitErrorList) {
+			for (int i = hitErrorList.size() - 1; i >= 0; i--) {
+				HitErrorInfo info = hitErrorList.get(i);
 				int time = info.time;
 				float alpha = 1 - ((float) (trackPosition - time) / HIT_ERROR_FADE_TIME);
 				white.a = alpha * hitErrorAlpha;
@@ -849,9 +937,9 @@ public class GameData {
 	 * @param trackPosition the current track position
 	 */
 	public void drawHitResults(int trackPosition) {
-		Iterator<OsuHitObjectResult> iter = hitResultList.iterator();
-		while (iter.hasNext()) {
-			OsuHitObjectResult hitResult = iter.next();
+		int kept = 0;
+		for (int i = 0; i < hitResultList.size(); i++) {
+			OsuHitObjectResult hitResult = hitResultList.get(i);
 			if (hitResult.time + HITRESULT_TIME > trackPosition) {
 				// spinner
 				if (hitResult.hitResultType == HitObjectType.SPINNER && hitResult.result != HIT_MISS) {
@@ -922,9 +1010,10 @@ public class GameData {
 				}
 
 				hitResult.alpha = 1 - ((float) (trackPosition - hitResult.time) / HITRESULT_FADE_TIME);
-			} else
-				iter.remove();
+				hitResultList.move(i, kept++);
+			}
 		}
+		hitResultList.truncate(kept);
 	}
 
 	/**
@@ -1096,13 +1185,14 @@ public class GameData {
 		// hit error bar
 		if (Options.isHitErrorBarEnabled()) {
 			int trackPosition = MusicController.getPosition();
-			Iterator<HitErrorInfo> iter = hitErrorList.iterator();
-			while (iter.hasNext()) {
-				HitErrorInfo info = iter.next();
-				if (Math.abs(info.timeDiff) >= hitResultOffset[GameData.HIT_50] ||
-				    info.time + HIT_ERROR_FADE_TIME <= trackPosition)
-					iter.remove();
+			int kept = 0;
+			for (int i = 0; i < hitErrorList.size(); i++) {
+				HitErrorInfo info = hitErrorList.get(i);
+				if (Math.abs(info.timeDiff) < hitResultOffset[GameData.HIT_50] &&
+				    info.time + HIT_ERROR_FADE_TIME > trackPosition)
+					hitErrorList.move(i, kept++);
 			}
+			hitErrorList.truncate(kept);
 		}
 	}
 
@@ -1121,7 +1211,7 @@ public class GameData {
 			comboMax = combo;
 
 		// combo bursts (at 30, 60, 100+50x)
-		if (Options.isComboBurstEnabled() &&
+		if (!headless && Options.isComboBurstEnabled() &&
 			(combo == 30 || combo == 60 || (combo >= 100 && combo % 50 == 0))) {
 			if (combo == 30)
 				comboBurstIndex = 0;
@@ -1182,10 +1272,10 @@ public class GameData {
 
 		if (hitValue > 0) {
 			score += hitValue;
-			if (!Options.isPerfectHitBurstEnabled())
+			if (headless || !Options.isPerfectHitBurstEnabled())
 				;  // hide perfect hit results
 			else
-				hitResultList.add(new OsuHitObjectResult(time, result, x, y, null, HitObjectType.SLIDERTICK, null, false));
+				hitResultList.add().set(time, result, x, y, null, HitObjectType.SLIDERTICK, null, false);
 		}
 	}
 
@@ -1289,19 +1379,21 @@ public class GameData {
 						  HitObjectType hitResultType, Curve curve, boolean expand) {
 		result = handleHitResult(time, result, x, y, color, end, hitObject, repeat, hitResultType);
 
-		if ((result == HIT_300 || result == HIT_300G || result == HIT_300K) && !Options.isPerfectHitBurstEnabled())
+		if (headless)
+			;  // nothing to display
+		else if ((result == HIT_300 || result == HIT_300G || result == HIT_300K) && !Options.isPerfectHitBurstEnabled())
 			;  // hide perfect hit results
 		else if (result == HIT_MISS && (GameMod.RELAX.isActive() || GameMod.AUTOPILOT.isActive()))
 			;  // "relax" and "autopilot" mods: hide misses
 		else {
-			hitResultList.add(new OsuHitObjectResult(time, result, x, y, color, hitResultType, curve, expand));
+			hitResultList.add().set(time, result, x, y, color, hitResultType, curve, expand);
 
 			// sliders: add the other curve endpoint for the hit animation
 			if (curve != null) {
 				boolean isFirst = (hitResultType == HitObjectType.SLIDER_FIRST);
 				float[] p = curve.pointAt((isFirst) ? 1f : 0f);
 				HitObjectType type = (isFirst) ? HitObjectType.SLIDER_LAST : HitObjectType.SLIDER_FIRST;
-				hitResultList.add(new OsuHitObjectResult(time, result, p[0], p[1], color, type, null, expand));
+				hitResultList.add().set(time, result, p[0], p[1], color, type, null, expand);
 			}
 		}
 	}
@@ -1346,7 +1438,7 @@ public class GameData {
 	 * @param osu the associated OsuFile
 	 * @return the Replay object, or null if none exists and frames is null
 	 */
-	public Replay getReplay(ReplayFrame[] frames, OsuFile osu) {
+	public Replay getReplay(ReplayFrameBuffer frames, OsuFile osu) {
 		if (replay != null && frames == null)
 			return replay;
 
@@ -1356,6 +1448,7 @@ public class GameData {
 		replay = new Replay();
 		replay.mode = OsuFile.MODE_OSU;
 		replay.version = Updater.get().getBuildDate();
+		replay.flags = Replay.FLAG_TICK_JUDGEMENT;
 		replay.beatmapHash = (osu == null) ? "" : Utils.getMD5(osu.getFile());
 		replay.playerName = "";  // TODO
 		replay.replayHash = Long.toString(System.currentTimeMillis());  // TODO
@@ -1397,6 +1490,7 @@ public class GameData {
 	 * @param timeDiff the difference between the correct and actual hit times
 	 */
 	public void addHitError(int time, int x, int y, int timeDiff) {
-		hitErrorList.addFirst(new HitErrorInfo(time, x, y, timeDiff));
+		if (!headless && Options.isHitErrorBarEnabled())  // only pruned while the bar is enabled
+			hitErrorList.add().set(time, x, y, timeDiff);
 	}
 }
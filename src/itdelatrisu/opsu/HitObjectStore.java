@@ -0,0 +1,562 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import itdelatrisu.opsu.io.LineTokenizer;
+
+import java.util.Arrays;
+
+/**
+ * Packed storage for all hit objects in a beatmap.
+ * <p>
+ * Each hit object field is stored in its own primitive array, indexed by
+ * object index.  Variable-length data (slider control points, edge hit
+ * sounds, and additions) is stored in flat buffers, with per-object offsets
+ * into each buffer; object {@code i} owns the range
+ * {@code [offset[i], offset[i + 1])}.  Empty ranges mean the data is absent.
+ * <p>
+ * {@link OsuHitObject} instances are views into this store.
+ */
+public class HitObjectStore {
+	/** Initial buffer capacity, per hit object. */
+	private static final int
+		SLIDER_POINTS_PER_OBJECT = 4,
+		ADDITIONS_PER_OBJECT = 4;
+
+	/** Number of hit objects. */
+	private int size = 0;
+
+	/** Starting coordinates. */
+	private float[] x, y;
+
+	/** Start times (in ms). */
+	private int[] time;
+
+	/** Hit object types (TYPE_* bitmask). */
+	private int[] type;
+
+	/** Hit sound types (SOUND_* bitmask). */
+	private byte[] hitSound;
+
+	/** Slider curve types (SLIDER_* constant). */
+	private char[] sliderType;
+
+	/** Slider repeat counts. */
+	private int[] repeat;
+
+	/** Slider pixel lengths. */
+	private float[] pixelLength;
+
+	/** Spinner end times (in ms). */
+	private int[] endTime;
+
+	/** Current indices in combo color array. */
+	private int[] comboIndex;
+
+	/** Numbers to display in hit objects. */
+	private int[] comboNumber;
+
+	/** Hit object indices in the current stack. */
+	private int[] stack;
+
+	/** Slider control points (x0, y0, x1, y1, ...), and offsets (in points). */
+	private float[] sliderPoints;
+	private int[] sliderOffset;
+
+	/** Slider edge hit sound types, and offsets. */
+	private byte[] edgeHitSound;
+	private int[] edgeHitSoundOffset;
+
+	/** Slider edge hit sound additions (sampleSet, AdditionSampleSet, ...), and offsets (in pairs). */
+	private byte[] edgeAddition;
+	private int[] edgeAdditionOffset;
+
+	/** Hit sound additions, and offsets. */
+	private byte[] addition;
+	private int[] additionOffset;
+
+	/** Whether this store was created by the copy constructor. */
+	private final boolean copy;
+
+	/** Shared tokenizer for {@link #add(CharSequence)}. */
+	private final LineTokenizer tokens = new LineTokenizer("");
+
+	/**
+	 * Constructor.
+	 * @param capacity the expected number of hit objects
+	 */
+	public HitObjectStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		this.copy = false;
+		this.x = new float[capacity];
+		this.y = new float[capacity];
+		this.time = new int[capacity];
+		this.type = new int[capacity];
+		this.hitSound = new byte[capacity];
+		this.sliderType = new char[capacity];
+		this.repeat = new int[capacity];
+		this.pixelLength = new float[capacity];
+		this.endTime = new int[capacity];
+		this.comboIndex = new int[capacity];
+		this.comboNumber = new int[capacity];
+		this.stack = new int[capacity];
+		this.sliderPoints = new float[capacity * SLIDER_POINTS_PER_OBJECT * 2];
+		this.sliderOffset = new int[capacity + 1];
+		this.edgeHitSound = new byte[capacity];
+		this.edgeHitSoundOffset = new int[capacity + 1];
+		this.edgeAddition = new byte[capacity * 2];
+		this.edgeAdditionOffset = new int[capacity + 1];
+		this.addition = new byte[capacity * ADDITIONS_PER_OBJECT];
+		this.additionOffset = new int[capacity + 1];
+	}
+
+	/**
+	 * Copy constructor.  All stacks are reset, so that stacks can be
+	 * calculated for the copy independently of the original.
+	 * @param store the store to copy
+	 */
+	public HitObjectStore(HitObjectStore store) {
+		this.copy = true;
+		this.size = store.size;
+		this.x = store.x.clone();
+		this.y = store.y.clone();
+		this.time = store.time.clone();
+		this.type = store.type.clone();
+		this.hitSound = store.hitSound.clone();
+		this.sliderType = store.sliderType.clone();
+		this.repeat = store.repeat.clone();
+		this.pixelLength = store.pixelLength.clone();
+		this.endTime = store.endTime.clone();
+		this.comboIndex = store.comboIndex.clone();
+		this.comboNumber = store.comboNumber.clone();
+		this.stack = new int[store.stack.length];
+		this.sliderPoints = store.sliderPoints.clone();
+		this.sliderOffset = store.sliderOffset.clone();
+		this.edgeHitSound = store.edgeHitSound.clone();
+		this.edgeHitSoundOffset = store.edgeHitSoundOffset.clone();
+		this.edgeAddition = store.edgeAddition.clone();
+		this.edgeAdditionOffset = store.edgeAdditionOffset.clone();
+		this.addition = store.addition.clone();
+		this.additionOffset = store.additionOffset.clone();
+	}
+
+	/**
+	 * Parses a hit object and appends it to the store.
+	 * If parsing fails, the store is not modified.
+	 * @param line the line to be parsed
+	 * @return the index of the new hit object
+	 * @throws RuntimeException if the line could not be parsed
+	 */
+	public int add(CharSequence line) {
+		/**
+		 * [OBJECT FORMATS]
+		 * Circles:
+		 *   x,y,time,type,hitSound,addition
+		 *   256,148,9466,1,2,0:0:0:0:
+		 *
+		 * Sliders:
+		 *   x,y,time,type,hitSound,sliderType|curveX:curveY|...,repeat,pixelLength,edgeHitsound,edgeAddition,addition
+		 *   300,68,4591,2,0,B|372:100|332:172|420:192,2,180,2|2|2,0:0|0:0|0:0,0:0:0:0:
+		 *
+		 * Spinners:
+		 *   x,y,time,type,hitSound,endTime,addition
+		 *   256,192,654,12,0,4029,0:0:0:0:
+		 *
+		 * NOTE: 'addition' -> sampl:add:cust:vol:hitsound (optional, defaults to "0:0:0:0:")
+		 */
+		if (size == time.length)
+			grow(size * 2);
+		int i = size;
+		int sliderEnd = sliderOffset[i], edgeHitSoundEnd = edgeHitSoundOffset[i];
+		int edgeAdditionEnd = edgeAdditionOffset[i], additionEnd = additionOffset[i];
+		tokens.reset(line);
+
+		// common fields
+		x[i] = tokens.nextFloat();
+		y[i] = tokens.nextFloat();
+		time[i] = tokens.nextInt();
+		type[i] = tokens.nextInt();
+		hitSound[i] = tokens.nextByte();
+		sliderType[i] = 0;
+		repeat[i] = 0;
+		pixelLength[i] = 0f;
+		endTime[i] = 0;
+		comboIndex[i] = 0;
+		comboNumber[i] = 0;
+		stack[i] = 0;
+
+		// type-specific fields
+		if ((type[i] & OsuHitObject.TYPE_CIRCLE) > 0)
+			;
+		else if ((type[i] & OsuHitObject.TYPE_SLIDER) > 0) {
+			// slider curve type and coordinates
+			int points = tokens.countTokens('|') - 1;
+			sliderType[i] = tokens.peek();
+			tokens.skipToken();
+			sliderPoints = ensureCapacity(sliderPoints, (sliderEnd + points) * 2);
+			for (int j = 0; j < points; j++, sliderEnd++) {
+				sliderPoints[sliderEnd * 2] = tokens.nextInt();
+				sliderPoints[sliderEnd * 2 + 1] = tokens.nextInt();
+			}
+			repeat[i] = tokens.nextInt();
+			pixelLength[i] = tokens.nextFloat();
+			if (tokens.hasNext()) {
+				int n = tokens.countTokens('|');
+				edgeHitSound = ensureCapacity(edgeHitSound, edgeHitSoundEnd + n);
+				for (int j = 0; j < n; j++)
+					edgeHitSound[edgeHitSoundEnd++] = tokens.nextByte();
+			}
+			if (tokens.hasNext()) {
+				int n = tokens.countTokens('|');
+				edgeAddition = ensureCapacity(edgeAddition, (edgeAdditionEnd + n) * 2);
+				for (int j = 0; j < n; j++, edgeAdditionEnd++) {
+					edgeAddition[edgeAdditionEnd * 2] = tokens.nextByte();
+					edgeAddition[edgeAdditionEnd * 2 + 1] = tokens.nextByte();
+				}
+			}
+		} else { //if ((type[i] & OsuHitObject.TYPE_SPINNER) > 0) {
+			endTime[i] = tokens.nextInt();
+
+			// some 'endTime' fields contain a ':' character (?)
+			if (tokens.getDelimiter() == ':')
+				tokens.skipField();
+		}
+
+		// addition
+		if (tokens.hasNext()) {
+			int n = tokens.countTokens(':');
+			addition = ensureCapacity(addition, additionEnd + n);
+			for (int j = 0; j < n; j++)
+				addition[additionEnd++] = tokens.nextByte();
+		}
+
+		// commit
+		sliderOffset[i + 1] = sliderEnd;
+		edgeHitSoundOffset[i + 1] = edgeHitSoundEnd;
+		edgeAdditionOffset[i + 1] = edgeAdditionEnd;
+		additionOffset[i + 1] = additionEnd;
+		return size++;
+	}
+
+	/**
+	 * Trims the capacity of all arrays to the current size.
+	 */
+	public void trimToSize() {
+		if (size < time.length)
+			grow(size);
+		sliderPoints = Arrays.copyOf(sliderPoints, sliderOffset[size] * 2);
+		edgeHitSound = Arrays.copyOf(edgeHitSound, edgeHitSoundOffset[size]);
+		edgeAddition = Arrays.copyOf(edgeAddition, edgeAdditionOffset[size] * 2);
+		addition = Arrays.copyOf(addition, additionOffset[size]);
+	}
+
+	/**
+	 * Resizes all per-object arrays.
+	 * @param capacity the new capacity
+	 */
+	private void grow(int capacity) {
+		capacity = Math.max(capacity, 1);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		time = Arrays.copyOf(time, capacity);
+		type = Arrays.copyOf(type, capacity);
+		hitSound = Arrays.copyOf(hitSound, capacity);
+		sliderType = Arrays.copyOf(sliderType, capacity);
+		repeat = Arrays.copyOf(repeat, capacity);
+		pixelLength = Arrays.copyOf(pixelLength, capacity);
+		endTime = Arrays.copyOf(endTime, capacity);
+		comboIndex = Arrays.copyOf(comboIndex, capacity);
+		comboNumber = Arrays.copyOf(comboNumber, capacity);
+		stack = Arrays.copyOf(stack, capacity);
+		sliderOffset = Arrays.copyOf(sliderOffset, capacity + 1);
+		edgeHitSoundOffset = Arrays.copyOf(edgeHitSoundOffset, capacity + 1);
+		edgeAdditionOffset = Arrays.copyOf(edgeAdditionOffset, capacity + 1);
+		additionOffset = Arrays.copyOf(additionOffset, capacity + 1);
+	}
+
+	/**
+	 * Returns an array with at least the given length, containing the
+	 * contents of the given array.
+	 */
+	private static float[] ensureCapacity(float[] a, int length) {
+		return (length <= a.length) ? a : Arrays.copyOf(a, Math.max(length, a.length * 2));
+	}
+
+	/**
+	 * Returns an array with at least the given length, containing the
+	 * contents of the given array.
+	 */
+	private static byte[] ensureCapacity(byte[] a, int length) {
+		return (length <= a.length) ? a : Arrays.copyOf(a, Math.max(length, a.length * 2));
+	}
+
+	/**
+	 * Returns the number of hit objects.
+	 */
+	public int size() { return size; }
+
+	/**
+	 * Returns whether this store is a copy of another store
+	 * (see {@link #HitObjectStore(HitObjectStore)}).
+	 */
+	public boolean isCopy() { return copy; }
+
+	/**
+	 * Returns the raw starting x coordinate.
+	 * @param i the object index
+	 */
+	public float getX(int i) { return x[i]; }
+
+	/**
+	 * Returns the raw starting y coordinate.
+	 * @param i the object index
+	 */
+	public float getY(int i) { return y[i]; }
+
+	/**
+	 * Returns the scaled starting x coordinate.
+	 * @param i the object index
+	 */
+	public float getScaledX(int i) { return OsuHitObject.scaleX(x[i], stack[i]); }
+
+	/**
+	 * Returns the scaled starting y coordinate.
+	 * @param i the object index
+	 */
+	public float getScaledY(int i) { return OsuHitObject.scaleY(y[i], stack[i]); }
+
+	/**
+	 * Returns the start time.
+	 * @param i the object index
+	 * @return the start time (in ms)
+	 */
+	public int getTime(int i) { return time[i]; }
+
+	/**
+	 * Returns the hit object type.
+	 * @param i the object index
+	 * @return the object type (TYPE_* bitmask)
+	 */
+	public int getType(int i) { return type[i]; }
+
+	/**
+	 * Returns whether or not the hit object is a circle.
+	 * @param i the object index
+	 */
+	public boolean isCircle(int i) { return (type[i] & OsuHitObject.TYPE_CIRCLE) > 0; }
+
+	/**
+	 * Returns whether or not the hit object is a slider.
+	 * @param i the object index
+	 */
+	public boolean isSlider(int i) { return (type[i] & OsuHitObject.TYPE_SLIDER) > 0; }
+
+	/**
+	 * Returns whether or not the hit object is a spinner.
+	 * @param i the object index
+	 */
+	public boolean isSpinner(int i) { return (type[i] & OsuHitObject.TYPE_SPINNER) > 0; }
+
+	/**
+	 * Returns whether or not the hit object starts a new combo.
+	 * @param i the object index
+	 */
+	public boolean isNewCombo(int i) { return (type[i] & OsuHitObject.TYPE_NEWCOMBO) > 0; }
+
+	/**
+	 * Returns the hit sound type.
+	 * @param i the object index
+	 * @return the sound type (SOUND_* bitmask)
+	 */
+	public byte getHitSoundType(int i) { return hitSound[i]; }
+
+	/**
+	 * Returns the edge hit sound type.
+	 * @param i the object index
+	 * @param index the slider edge index (ignored for non-sliders)
+	 * @return the sound type (SOUND_* bitmask)
+	 */
+	public byte getEdgeHitSoundType(int i, int index) {
+		int offset = edgeHitSoundOffset[i] + index;
+		return (offset < edgeHitSoundOffset[i + 1]) ? edgeHitSound[offset] : hitSound[i];
+	}
+
+	/**
+	 * Returns the slider type.
+	 * @param i the object index
+	 * @return the slider type (SLIDER_* constant)
+	 */
+	public char getSliderType(int i) { return sliderType[i]; }
+
+	/**
+	 * Returns the number of slider control points (excluding the starting point).
+	 * @param i the object index
+	 */
+	public int getSliderPointCount(int i) { return sliderOffset[i + 1] - sliderOffset[i]; }
+
+	/**
+	 * Returns a raw slider x coordinate.
+	 * @param i the object index
+	 * @param index the control point index
+	 */
+	public float getSliderX(int i, int index) { return sliderPoints[(sliderOffset[i] + index) * 2]; }
+
+	/**
+	 * Returns a raw slider y coordinate.
+	 * @param i the object index
+	 * @param index the control point index
+	 */
+	public float getSliderY(int i, int index) { return sliderPoints[(sliderOffset[i] + index) * 2 + 1]; }
+
+	/**
+	 * Returns a scaled slider x coordinate.
+	 * @param i the object index
+	 * @param index the control point index
+	 */
+	public float getScaledSliderX(int i, int index) { return OsuHitObject.scaleX(getSliderX(i, index), stack[i]); }
+
+	/**
+	 * Returns a scaled slider y coordinate.
+	 * @param i the object index
+	 * @param index the control point index
+	 */
+	public float getScaledSliderY(int i, int index) { return OsuHitObject.scaleY(getSliderY(i, index), stack[i]); }
+
+	/**
+	 * Returns the slider repeat count.
+	 * @param i the object index
+	 */
+	public int getRepeatCount(int i) { return repeat[i]; }
+
+	/**
+	 * Returns the slider pixel length.
+	 * @param i the object index
+	 */
+	public float getPixelLength(int i) { return pixelLength[i]; }
+
+	/**
+	 * Returns the spinner end time.
+	 * @param i the object index
+	 * @return the end time (in ms)
+	 */
+	public int getEndTime(int i) { return endTime[i]; }
+
+	/**
+	 * Returns the number of slider edge hit sounds.
+	 * @param i the object index
+	 * @return the number of edge hit sounds, or 0 if none
+	 */
+	public int getEdgeHitSoundCount(int i) { return edgeHitSoundOffset[i + 1] - edgeHitSoundOffset[i]; }
+
+	/**
+	 * Returns the number of slider edge additions.
+	 * @param i the object index
+	 * @return the number of edge additions, or 0 if none
+	 */
+	public int getEdgeAdditionCount(int i) { return edgeAdditionOffset[i + 1] - edgeAdditionOffset[i]; }
+
+	/**
+	 * Returns a slider edge addition value.
+	 * @param i the object index
+	 * @param index the slider edge index
+	 * @param field 0 for the sample set, 1 for the addition sample set
+	 */
+	public byte getEdgeAddition(int i, int index, int field) { return edgeAddition[(edgeAdditionOffset[i] + index) * 2 + field]; }
+
+	/**
+	 * Returns the number of hit sound addition values.
+	 * @param i the object index
+	 * @return the number of values, or 0 if none
+	 */
+	public int getAdditionCount(int i) { return additionOffset[i + 1] - additionOffset[i]; }
+
+	/**
+	 * Returns a hit sound addition value.
+	 * @param i the object index
+	 * @param index the value index
+	 */
+	public byte getAddition(int i, int index) { return addition[additionOffset[i] + index]; }
+
+	/**
+	 * Returns the sample set at the given index.
+	 * @param i the object index
+	 * @param index the index (for sliders, ignored otherwise)
+	 * @return the sample set, or 0 if none available
+	 */
+	public byte getSampleSet(int i, int index) {
+		if (index < getEdgeAdditionCount(i))
+			return getEdgeAddition(i, index, 0);
+		if (getAdditionCount(i) > 0)
+			return getAddition(i, 0);
+		return 0;
+	}
+
+	/**
+	 * Returns the 'addition' sample set at the given index.
+	 * @param i the object index
+	 * @param index the index (for sliders, ignored otherwise)
+	 * @return the sample set, or 0 if none available
+	 */
+	public byte getAdditionSampleSet(int i, int index) {
+		if (index < getEdgeAdditionCount(i))
+			return getEdgeAddition(i, index, 1);
+		if (getAdditionCount(i) > 1)
+			return getAddition(i, 1);
+		return 0;
+	}
+
+	/**
+	 * Sets the current index in the combo color array.
+	 * @param i the object index
+	 * @param comboIndex the combo index
+	 */
+	public void setComboIndex(int i, int comboIndex) { this.comboIndex[i] = comboIndex; }
+
+	/**
+	 * Returns the current index in the combo color array.
+	 * @param i the object index
+	 */
+	public int getComboIndex(int i) { return comboIndex[i]; }
+
+	/**
+	 * Sets the number to display in the hit object.
+	 * @param i the object index
+	 * @param comboNumber the combo number
+	 */
+	public void setComboNumber(int i, int comboNumber) { this.comboNumber[i] = comboNumber; }
+
+	/**
+	 * Returns the number to display in the hit object.
+	 * @param i the object index
+	 */
+	public int getComboNumber(int i) { return comboNumber[i]; }
+
+	/**
+	 * Sets the hit object index in the current stack.
+	 * @param i the object index
+	 * @param stack index in the stack
+	 */
+	public void setStack(int i, int stack) { this.stack[i] = stack; }
+
+	/**
+	 * Returns the hit object index in the current stack.
+	 * @param i the object index
+	 */
+	public int getStack(int i) { return stack[i]; }
+}
@@ -0,0 +1,103 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import org.lwjgl.input.Keyboard;
+import org.lwjgl.input.Mouse;
+
+/**
+ * Maps input events onto the track position at which they occurred.
+ * <p>
+ * LWJGL only delivers input on the display thread, once per frame, but it
+ * timestamps each event when it is received (in nanoseconds, from an
+ * unspecified origin).  The offset to {@link System#nanoTime()} is taken as
+ * the smallest delay seen between an event's timestamp and its dispatch,
+ * and the track position at that instant is extrapolated from the last
+ * audio clock reading at the playback rate.
+ */
+public class InputClock {
+	/** Delay (in nanoseconds) beyond which an event clock offset is re-estimated. */
+	private static final long MAX_EVENT_DELAY = 1000000000L;
+
+	/** The offsets from the mouse and keyboard event clocks to {@link System#nanoTime()}. */
+	private long mouseOffset, keyboardOffset;
+
+	/** Whether the mouse and keyboard offsets have been estimated. */
+	private boolean mouseOffsetSet = false, keyboardOffsetSet = false;
+
+	/** The last audio clock reading. */
+	private int syncPosition;
+
+	/** The time of the last audio clock reading ({@link System#nanoTime()}). */
+	private long syncTime;
+
+	/** The playback rate (track milliseconds per millisecond), or 0 if paused. */
+	private float rate;
+
+	/**
+	 * Sets the audio clock reading.  Should be called once per frame.
+	 * @param trackPosition the track position
+	 * @param rate the playback rate (0 if the track is not running)
+	 */
+	public void sync(int trackPosition, float rate) {
+		this.syncPosition = trackPosition;
+		this.syncTime = System.nanoTime();
+		this.rate = rate;
+	}
+
+	/**
+	 * Returns the track position of the current mouse event.
+	 * Must be called while the event is being dispatched.
+	 */
+	public int getMouseEventPosition() {
+		long eventTime = Mouse.getEventNanoseconds(), now = System.nanoTime();
+		if (eventTime == 0)
+			return getPosition(now);
+		long delay = now - eventTime;
+		if (!mouseOffsetSet || delay < mouseOffset || delay - mouseOffset > MAX_EVENT_DELAY) {
+			mouseOffset = delay;
+			mouseOffsetSet = true;
+		}
+		return getPosition(eventTime + mouseOffset);
+	}
+
+	/**
+	 * Returns the track position of the current keyboard event.
+	 * Must be called while the event is being dispatched.
+	 */
+	public int getKeyboardEventPosition() {
+		long eventTime = Keyboard.getEventNanoseconds(), now = System.nanoTime();
+		if (eventTime == 0)
+			return getPosition(now);
+		long delay = now - eventTime;
+		if (!keyboardOffsetSet || delay < keyboardOffset || delay - keyboardOffset > MAX_EVENT_DELAY) {
+			keyboardOffset = delay;
+			keyboardOffsetSet = true;
+		}
+		return getPosition(eventTime + keyboardOffset);
+	}
+
+	/**
+	 * Returns the track position at a given time.
+	 * @param time the time ({@link System#nanoTime()})
+	 */
+	private int getPosition(long time) {
+		return syncPosition + (int) ((time - syncTime) * rate / 1000000);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+/**
+ * A game key press or release, timestamped with the track position at
+ * which it occurred.
+ */
+public class InputEvent {
+	/** The game keys (ReplayFrame.KEY_* bitmask). */
+	private final int keys;
+
+	/** Whether the keys were pressed (true) or released (false). */
+	private final boolean pressed;
+
+	/** The cursor coordinates. */
+	private final int x, y;
+
+	/** The track position, in milliseconds. */
+	private final int time;
+
+	/**
+	 * Constructor.
+	 * @param keys the game keys (ReplayFrame.KEY_* bitmask)
+	 * @param pressed true if the keys were pressed, false if released
+	 * @param x the cursor x coordinate
+	 * @param y the cursor y coordinate
+	 * @param time the track position
+	 */
+	public InputEvent(int keys, boolean pressed, int x, int y, int time) {
+		this.keys = keys;
+		this.pressed = pressed;
+		this.x = x;
+		this.y = y;
+		this.time = time;
+	}
+
+	/**
+	 * Returns the game keys (ReplayFrame.KEY_* bitmask).
+	 */
+	public int getKeys() { return keys; }
+
+	/**
+	 * Returns whether the keys were pressed (true) or released (false).
+	 */
+	public boolean isPressed() { return pressed; }
+
+	/**
+	 * Returns the cursor x coordinate.
+	 */
+	public int getX() { return x; }
+
+	/**
+	 * Returns the cursor y coordinate.
+	 */
+	public int getY() { return y; }
+
+	/**
+	 * Returns the track position, in milliseconds.
+	 */
+	public int getTime() { return time; }
+
+	@Override
+	public String toString() {
+		return String.format("(%d, %s, [%d, %d], %d)", time, (pressed) ? "pressed" : "released", x, y, keys);
+	}
+}
@@ -22,6 +22,7 @@ import itdelatrisu.opsu.audio.MusicController;
 import itdelatrisu.opsu.db.DBController;
 import itdelatrisu.opsu.downloads.DownloadList;
 import itdelatrisu.opsu.downloads.Updater;
+import itdelatrisu.opsu.replay.Replay;
 import itdelatrisu.opsu.states.ButtonMenu;
 import itdelatrisu.opsu.states.DownloadsMenu;
 import itdelatrisu.opsu.states.Game;
@@ -41,6 +42,7 @@ import java.net.ServerSocket;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
 import org.newdawn.slick.SlickException;
 import org.newdawn.slick.state.StateBasedGame;
 import org.newdawn.slick.state.transition.FadeInTransition;
@@ -93,6 +95,26 @@ public class Opsu extends StateBasedGame {
 		addState(new DownloadsMenu(STATE_DOWNLOADSMENU));
 	}
 
+	@Override
+	protected void preUpdateState(GameContainer container, int delta) throws SlickException {
+		FrameProfiler.beginUpdate();
+	}
+
+	@Override
+	protected void postUpdateState(GameContainer container, int delta) throws SlickException {
+		FrameProfiler.endUpdate();
+	}
+
+	@Override
+	protected void preRenderState(GameContainer container, Graphics g) throws SlickException {
+		FrameProfiler.beginRender();
+	}
+
+	@Override
+	protected void postRenderState(GameContainer container, Graphics g) throws SlickException {
+		FrameProfiler.endFrame(getCurrentStateID());
+	}
+
 	/**
 	 * Launches opsu!.
 	 */
@@ -227,9 +249,15 @@ public class Opsu extends StateBasedGame {
 	 * Closes all resources.
 	 */
 	public static void close() {
+		// finish writing replays
+		Replay.finishSaves();
+
 		// close databases
 		DBController.closeConnections();
 
+		// write the remaining performance statistics
+		FrameProfiler.close();
+
 		// cancel all downloads
 		DownloadList.get().cancelAllDownloads();
 
@@ -52,6 +52,9 @@ public class Options {
 	/** File for logging errors. */
 	public static final File LOG_FILE = new File(CONFIG_DIR, ".opsu.log");
 
+	/** File for logging performance statistics. */
+	public static final File PERF_LOG_FILE = new File(CONFIG_DIR, ".opsu_perf.log");
+
 	/** File for storing user options. */
 	private static final File OPTIONS_FILE = new File(CONFIG_DIR, ".opsu.cfg");
 
@@ -65,6 +68,9 @@ public class Options {
 	/** Cached beatmap database name. */
 	public static final File OSU_DB = new File(DATA_DIR, ".opsu.db");
 
+	/** Cached beatmap snapshot name. */
+	public static final File OSU_DB_SNAPSHOT = new File(DATA_DIR, ".opsu.snapshot");
+
 	/** Score database name. */
 	public static final File SCORE_DB = new File(DATA_DIR, ".opsu_scores.db");
 
@@ -193,6 +199,7 @@ public class Options {
 			public void click(GameContainer container) { screenshotFormatIndex = (screenshotFormatIndex + 1) % screenshotFormat.length; }
 		},
 		SHOW_FPS ("Show FPS Counter", "Show an FPS counter in the bottom-right hand corner.", true),
+		SHOW_PERF_STATS ("Show Performance Stats", "Show frame time, allocation and GC statistics above the FPS counter, and log them to a file.", false),
 		SHOW_HIT_LIGHTING ("Show Hit Lighting", "Adds an effect behind hit explosions.", true),
 		SHOW_COMBO_BURSTS ("Show Combo Bursts", "A character image is displayed at combo milestones.", true),
 		SHOW_PERFECT_HIT ("Show Perfect Hits", "Whether to show perfect hit result bursts (300s, slider ticks).", true),
@@ -262,7 +269,25 @@ public class Options {
 		SHOW_HIT_ERROR_BAR ("Show Hit Error Bar", "Shows precisely how accurate you were with each hit.", false),
 		LOAD_HD_IMAGES ("Load HD Images", "Loads HD (@2x) images when available. Increases memory usage and loading times.", true),
 		DISABLE_MOUSE_WHEEL ("Disable mouse wheel in play mode", "During play, you can use the mouse wheel to adjust the volume and pause the game.\nThis will disable that functionality.", false),
-		DISABLE_MOUSE_BUTTONS ("Disable mouse buttons in play mode", "This option will disable all mouse buttons.\nSpecifically for people who use their keyboard to click.", false);
+		DISABLE_MOUSE_BUTTONS ("Disable mouse buttons in play mode", "This option will disable all mouse buttons.\nSpecifically for people who use their keyboard to click.", false),
+		SLIDER_QUALITY ("Slider Quality", "Lower settings draw sliders with fewer points. Slider movement is unaffected.") {
+			@Override
+			public String getValueString() { return sliderQuality[sliderQualityIndex]; }
+
+			@Override
+			public void click(GameContainer container) { sliderQualityIndex = (sliderQualityIndex + 1) % sliderQuality.length; }
+		},
+		PRECOMPUTE_SLIDERS ("Precompute Sliders", "Prepares slider curves in the background while a song preview is playing.", true),
+		WATCH_SERVICE ("Watch Beatmap Directory", "Automatically load added, changed, and deleted beatmaps while running.", false) {
+			@Override
+			public void click(GameContainer container) {
+				super.click(container);
+				if (bool)
+					BeatmapWatcher.start(getBeatmapDir());
+				else
+					BeatmapWatcher.stop();
+			}
+		};
 
 		/** Option name. */
 		private String name;
@@ -460,6 +485,15 @@ public class Options {
 	/** Index in screenshotFormat[] array. */
 	private static int screenshotFormatIndex = 0;
 
+	/** Slider quality levels. */
+	private static final String[] sliderQuality = { "Low", "Medium", "High", "Maximum" };
+
+	/** Maximum slider outline deviation (in pixels) for each slider quality level. */
+	private static final float[] sliderTolerance = { 4f, 2f, 1f, 0f };
+
+	/** Index in sliderQuality[] array. */
+	private static int sliderQualityIndex = 1;
+
 	/** Left and right game keys. */
 	private static int
 		keyLeft  = Keyboard.KEY_NONE,
@@ -532,6 +566,25 @@ public class Options {
 	 */
 	public static String getScreenshotFormat() { return screenshotFormat[screenshotFormatIndex]; }
 
+	/**
+	 * Returns the maximum distance (in pixels) that a drawn slider outline
+	 * may deviate from the fully sampled curve.
+	 * @return the tolerance, or 0 if every curve point should be drawn
+	 */
+	public static float getSliderTolerance() { return sliderTolerance[sliderQualityIndex]; }
+
+	/**
+	 * Returns the configured screen resolution width.
+	 * @return the width, in pixels
+	 */
+	public static int getResolutionWidth() { return resolution.getWidth(); }
+
+	/**
+	 * Returns the configured screen resolution height.
+	 * @return the height, in pixels
+	 */
+	public static int getResolutionHeight() { return resolution.getHeight(); }
+
 	/**
 	 * Sets the container size and makes the window borderless if the container
 	 * size is identical to the screen resolution.
@@ -571,6 +624,12 @@ public class Options {
 	 */
 	public static boolean isFPSCounterEnabled() { return GameOption.SHOW_FPS.getBooleanValue(); }
 
+	/**
+	 * Returns whether or not performance statistics are enabled.
+	 * @return true if enabled
+	 */
+	public static boolean isPerformanceStatsEnabled() { return GameOption.SHOW_PERF_STATS.getBooleanValue(); }
+
 	/**
 	 * Returns whether or not hit lighting effects are enabled.
 	 * @return true if enabled
@@ -722,6 +781,18 @@ public class Options {
 	 */
 	public static boolean isMouseDisabled() { return GameOption.DISABLE_MOUSE_BUTTONS.getBooleanValue(); }
 
+	/**
+	 * Returns whether or not slider curves should be precomputed in the song menu.
+	 * @return true if enabled
+	 */
+	public static boolean isSliderPrecomputeEnabled() { return GameOption.PRECOMPUTE_SLIDERS.getBooleanValue(); }
+
+	/**
+	 * Returns whether or not the beatmap directory should be watched for changes.
+	 * @return true if enabled
+	 */
+	public static boolean isWatchServiceEnabled() { return GameOption.WATCH_SERVICE.getBooleanValue(); }
+
 	/**
 	 * Toggles the mouse button enabled/disabled state during gameplay and
 	 * sends a bar notification about the action.
@@ -876,7 +947,7 @@ public class Options {
 			return null;
 		}
 
-		OsuFile osu = new OsuFile(null);
+		OsuFile osu = new OsuFile((File) null);
 		osu.audioFilename = new File(tokens[0]);
 		osu.title = tokens[1];
 		osu.artist = tokens[2];
@@ -962,6 +1033,9 @@ public class Options {
 					case "FpsCounter":
 						GameOption.SHOW_FPS.setValue(Boolean.parseBoolean(value));
 						break;
+					case "PerfStats":
+						GameOption.SHOW_PERF_STATS.setValue(Boolean.parseBoolean(value));
+						break;
 					case "ShowUnicode":
 						GameOption.SHOW_UNICODE.setValue(Boolean.parseBoolean(value));
 						break;
@@ -1061,6 +1135,17 @@ public class Options {
 					case "MenuMusic":
 						GameOption.ENABLE_THEME_SONG.setValue(Boolean.parseBoolean(value));
 						break;
+					case "SliderQuality":
+						i = Integer.parseInt(value);
+						if (i >= 0 && i < sliderQuality.length)
+							sliderQualityIndex = i;
+						break;
+					case "PrecomputeSliders":
+						GameOption.PRECOMPUTE_SLIDERS.setValue(Boolean.parseBoolean(value));
+						break;
+					case "WatchService":
+						GameOption.WATCH_SERVICE.setValue(Boolean.parseBoolean(value));
+						break;
 					}
 				} catch (NumberFormatException e) {
 					Log.warn(String.format("Format error in options file for line: '%s'.", line), e);
@@ -1111,6 +1196,8 @@ public class Options {
 			writer.newLine();
 			writer.write(String.format("FpsCounter = %b", isFPSCounterEnabled()));
 			writer.newLine();
+			writer.write(String.format("PerfStats = %b", isPerformanceStatsEnabled()));
+			writer.newLine();
 			writer.write(String.format("ShowUnicode = %b", useUnicodeMetadata()));
 			writer.newLine();
 			writer.write(String.format("ScreenshotFormat = %d", screenshotFormatIndex));
@@ -1171,6 +1258,12 @@ public class Options {
 			writer.newLine();
 			writer.write(String.format("MenuMusic = %b", isThemeSongEnabled()));
 			writer.newLine();
+			writer.write(String.format("SliderQuality = %d", sliderQualityIndex));
+			writer.newLine();
+			writer.write(String.format("PrecomputeSliders = %b", isSliderPrecomputeEnabled()));
+			writer.newLine();
+			writer.write(String.format("WatchService = %b", isWatchServiceEnabled()));
+			writer.newLine();
 			writer.close();
 		} catch (IOException e) {
 			ErrorHandler.error(String.format("Failed to write to file '%s'.", OPTIONS_FILE.getAbsolutePath()), e, false);
@@ -19,24 +19,26 @@
 package itdelatrisu.opsu;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 
-import org.newdawn.slick.Color;
 import org.newdawn.slick.Image;
 import org.newdawn.slick.SlickException;
 import org.newdawn.slick.util.Log;
 
 /**
  * Data type storing parsed data from OSU files.
+ * <p>
+ * This is the summary record kept in the song groups for every beatmap: it
+ * only holds the fields needed to list, sort, search and preview beatmaps.
+ * The data needed to play a beatmap is held by {@link FullOsuFile}, which is
+ * loaded on demand through {@link OsuFileCache}.
  */
 public class OsuFile implements Comparable<OsuFile> {
 	/** Game modes. */
 	public static final byte MODE_OSU = 0, MODE_TAIKO = 1, MODE_CTB = 2, MODE_MANIA = 3;
 
-	/** Map of all loaded background images. */
-	private static HashMap<OsuFile, Image> bgImageMap = new HashMap<OsuFile, Image>();
+	/** Map of all loaded background images (by OSU file). */
+	private static HashMap<File, Image> bgImageMap = new HashMap<File, Image>();
 
 	/** Maximum number of cached images before all get erased. */
 	private static final int MAX_CACHE_SIZE = 10;
@@ -51,36 +53,15 @@ public class OsuFile implements Comparable<OsuFile> {
 	/** Audio file object. */
 	public File audioFilename;
 
-	/** Delay time before music starts (in ms). */
-	public int audioLeadIn = 0;
-
 	/** Audio hash (deprecated). */
 //	public String audioHash = "";
 
 	/** Start position of music preview (in ms). */
 	public int previewTime = -1;
 
-	/** Countdown type (0:disabled, 1:normal, 2:half, 3:double). */
-	public byte countdown = 0;
-
-	/** Sound samples ("None", "Normal", "Soft"). */
-	public String sampleSet = "";
-
-	/** How often closely placed hit objects will be stacked together. */
-	public float stackLeniency = 0.7f;
-
 	/** Game mode (MODE_* constants). */
 	public byte mode = MODE_OSU;
 
-	/** Whether the letterbox (top/bottom black bars) appears during breaks. */
-	public boolean letterboxInBreaks = false;
-
-	/** Whether the storyboard should be widescreen. */
-	public boolean widescreenStoryboard = false;
-
-	/** Whether to show an epilepsy warning. */
-	public boolean epilepsyWarning = false;
-
 	/**
 	 * [Editor]
 	 */
@@ -144,12 +125,6 @@ public class OsuFile implements Comparable<OsuFile> {
 	/** AR: How long circles stay on the screen (0:long ~ 10:short). */
 	public float approachRate = -1f;
 
-	/** Slider movement speed multiplier. */
-	public float sliderMultiplier = 1f;
-
-	/** Rate at which slider ticks are placed (x per beat). */
-	public float sliderTickRate = 1f;
-
 	/**
 	 * [Events]
 	 */
@@ -160,33 +135,17 @@ public class OsuFile implements Comparable<OsuFile> {
 	/** Background video file name. */
 //	public String video;
 
-	/** All break periods (start time, end time, ...). */
-	public ArrayList<Integer> breaks;
-
 	/**
 	 * [TimingPoints]
 	 */
 
-	/** All timing points. */
-	public ArrayList<OsuTimingPoint> timingPoints;
-
 	/** Song BPM range. */
 	public int bpmMin = 0, bpmMax = 0;
 
-	/**
-	 * [Colours]
-	 */
-
-	/** Combo colors (max 8). */
-	public Color[] combo;
-
 	/**
 	 * [HitObjects]
 	 */
 
-	/** All hit objects. */
-	public OsuHitObject[] objects;
-
 	/** Number of individual objects. */
 	public int
 		hitObjectCircle = 0,
@@ -217,7 +176,7 @@ public class OsuFile implements Comparable<OsuFile> {
 	 * This does NOT destroy images, so be careful of memory leaks!
 	 */
 	public static void resetImageCache() {
-		bgImageMap = new HashMap<OsuFile, Image>();
+		bgImageMap = new HashMap<File, Image>();
 	}
 
 	/**
@@ -228,6 +187,38 @@ public class OsuFile implements Comparable<OsuFile> {
 		this.file = file;
 	}
 
+	/**
+	 * Creates a copy of the summary fields of another OsuFile.
+	 * @param osu the OsuFile to copy
+	 */
+	public OsuFile(OsuFile osu) {
+		this.file = osu.file;
+		this.audioFilename = osu.audioFilename;
+		this.previewTime = osu.previewTime;
+		this.mode = osu.mode;
+		this.title = osu.title;
+		this.titleUnicode = osu.titleUnicode;
+		this.artist = osu.artist;
+		this.artistUnicode = osu.artistUnicode;
+		this.creator = osu.creator;
+		this.version = osu.version;
+		this.source = osu.source;
+		this.tags = osu.tags;
+		this.beatmapID = osu.beatmapID;
+		this.beatmapSetID = osu.beatmapSetID;
+		this.HPDrainRate = osu.HPDrainRate;
+		this.circleSize = osu.circleSize;
+		this.overallDifficulty = osu.overallDifficulty;
+		this.approachRate = osu.approachRate;
+		this.bg = osu.bg;
+		this.bpmMin = osu.bpmMin;
+		this.bpmMax = osu.bpmMax;
+		this.hitObjectCircle = osu.hitObjectCircle;
+		this.hitObjectSlider = osu.hitObjectSlider;
+		this.hitObjectSpinner = osu.hitObjectSpinner;
+		this.endTime = osu.endTime;
+	}
+
 	/**
 	 * Returns the associated file object.
 	 * @return the File object
@@ -264,12 +255,12 @@ public class OsuFile implements Comparable<OsuFile> {
 		if (bg == null)
 			return false;
 		try {
-			Image bgImage = bgImageMap.get(this);
+			Image bgImage = bgImageMap.get(file);
 			if (bgImage == null) {
 				if (bgImageMap.size() > MAX_CACHE_SIZE)
 					clearImageCache();
 				bgImage = new Image(new File(file.getParentFile(), bg).getAbsolutePath());
-				bgImageMap.put(this, bgImage);
+				bgImageMap.put(file, bgImage);
 			}
 
 			int swidth = width;
@@ -321,116 +312,4 @@ public class OsuFile implements Comparable<OsuFile> {
 	public String toString() {
 		return String.format("%s - %s [%s]", getArtist(), getTitle(), version);
 	}
-
-	/**
-	 * Returns the {@link #breaks} field formatted as a string,
-	 * or null if the field is null.
-	 */
-	public String breaksToString() {
-		if (breaks == null)
-			return null;
-
-		StringBuilder sb = new StringBuilder();
-		for (int i : breaks) {
-			sb.append(i);
-			sb.append(',');
-		}
-		if (sb.length() > 0)
-			sb.setLength(sb.length() - 1);
-		return sb.toString();
-	}
-
-	/**
-	 * Sets the {@link #breaks} field from a string.
-	 * @param s the string
-	 */
-	public void breaksFromString(String s) {
-		if (s == null)
-			return;
-
-		this.breaks = new ArrayList<Integer>();
-		String[] tokens = s.split(",");
-		for (int i = 0; i < tokens.length; i++)
-			breaks.add(Integer.parseInt(tokens[i]));
-	}
-
-	/**
-	 * Returns the {@link #timingPoints} field formatted as a string,
-	 * or null if the field is null.
-	 */
-	public String timingPointsToString() {
-		if (timingPoints == null)
-			return null;
-
-		StringBuilder sb = new StringBuilder();
-		for (OsuTimingPoint p : timingPoints) {
-			sb.append(p.toString());
-			sb.append('|');
-		}
-		if (sb.length() > 0)
-			sb.setLength(sb.length() - 1);
-		return sb.toString();
-	}
-
-	/**
-	 * Sets the {@link #timingPoints} field from a string.
-	 * @param s the string
-	 */
-	public void timingPointsFromString(String s) {
-		this.timingPoints = new ArrayList<OsuTimingPoint>();
-		if (s == null)
-			return;
-
-		String[] tokens = s.split("\\|");
-		for (int i = 0; i < tokens.length; i++) {
-			try {
-				timingPoints.add(new OsuTimingPoint(tokens[i]));
-			} catch (Exception e) {
-				Log.warn(String.format("Failed to read timing point '%s'.", tokens[i]), e);
-			}
-		}
-		timingPoints.trimToSize();
-	}
-
-	/**
-	 * Returns the {@link #combo} field formatted as a string,
-	 * or null if the field is null or the default combo.
-	 */
-	public String comboToString() {
-		if (combo == null || combo == Utils.DEFAULT_COMBO)
-			return null;
-
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < combo.length; i++) {
-			Color c = combo[i];
-			sb.append(c.getRed());
-			sb.append(',');
-			sb.append(c.getGreen());
-			sb.append(',');
-			sb.append(c.getBlue());
-			sb.append('|');
-		}
-		if (sb.length() > 0)
-			sb.setLength(sb.length() - 1);
-		return sb.toString();
-	}
-
-	/**
-	 * Sets the {@link #combo} field from a string.
-	 * @param s the string
-	 */
-	public void comboFromString(String s) {
-		this.combo = Utils.DEFAULT_COMBO;
-		if (s == null)
-			return;
-
-		LinkedList<Color> colors = new LinkedList<Color>();
-		String[] tokens = s.split("\\|");
-		for (int i = 0; i < tokens.length; i++) {
-			String[] rgb = tokens[i].split(",");
-			colors.add(new Color(Integer.parseInt(rgb[0]), Integer.parseInt(rgb[1]), Integer.parseInt(rgb[2])));
-		}
-		if (!colors.isEmpty())
-			this.combo = colors.toArray(new Color[colors.size()]);
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,166 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import itdelatrisu.opsu.db.OsuDB;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded cache of full OsuFiles (see {@link FullOsuFile}), loaded on demand
+ * from the database for the summary OsuFiles in the song groups.
+ * <p>
+ * Callers acquire the full OsuFile of a beatmap and release it once they no
+ * longer use it.  Entries in use are never evicted; of the others, only the
+ * most recently used ones are kept.  Full OsuFiles are returned with their
+ * hit objects parsed, and are shared: only the game stacks the hit objects
+ * of the shared store, other users work on a copy (see ReplaySimulator).
+ */
+public class OsuFileCache {
+	/** Maximum number of cached entries not in use. */
+	private static final int MAX_CACHE_SIZE = 8;
+
+	/** A cache entry. */
+	private static class Entry {
+		/** The full OsuFile (null until loaded, guarded by this entry). */
+		private volatile FullOsuFile osu;
+
+		/** The number of callers using the OsuFile (guarded by OsuFileCache.class). */
+		private int users;
+	}
+
+	/** Cached entries by summary OsuFile, in access order (guarded by OsuFileCache.class). */
+	private static final LinkedHashMap<OsuFile, Entry> cache = new LinkedHashMap<OsuFile, Entry>(16, 0.75f, true);
+
+	// This class should not be instantiated.
+	private OsuFileCache() {}
+
+	/**
+	 * Returns the full OsuFile for a beatmap, loading it if needed, and keeps
+	 * it cached until it is released with {@link #release(FullOsuFile)}.
+	 * Full OsuFiles (e.g. ones that were not written to the database) are
+	 * returned as they are, with their hit objects parsed.
+	 * @param osu the OsuFile
+	 * @return the full OsuFile
+	 */
+	public static FullOsuFile acquire(OsuFile osu) {
+		if (osu instanceof FullOsuFile) {
+			FullOsuFile full = (FullOsuFile) osu;
+			prepare(full);
+			return full;
+		}
+
+		Entry entry;
+		synchronized (OsuFileCache.class) {
+			entry = cache.get(osu);
+			if (entry == null) {
+				entry = new Entry();
+				cache.put(osu, entry);
+			}
+			entry.users++;
+			evict();
+		}
+
+		// load outside of the cache lock (other beatmaps stay accessible)
+		synchronized (entry) {
+			if (entry.osu == null) {
+				try {
+					entry.osu = load(osu);
+				} catch (RuntimeException e) {
+					synchronized (OsuFileCache.class) {
+						entry.users--;
+						cache.values().remove(entry);
+					}
+					throw e;
+				}
+			}
+			return entry.osu;
+		}
+	}
+
+	/**
+	 * Releases a full OsuFile returned by {@link #acquire(OsuFile)}.
+	 * It may be evicted once it is no longer in use.
+	 * @param osu the full OsuFile
+	 */
+	public static synchronized void release(FullOsuFile osu) {
+		for (Entry entry : cache.values()) {
+			if (entry.osu == osu) {
+				entry.users--;
+				break;
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * Evicts the least recently used entries not in use, if there are too
+	 * many of them.
+	 */
+	private static void evict() {
+		int unused = 0;
+		for (Entry entry : cache.values()) {
+			if (entry.users == 0)
+				unused++;
+		}
+		Iterator<Entry> iter = cache.values().iterator();
+		while (unused > MAX_CACHE_SIZE && iter.hasNext()) {
+			if (iter.next().users == 0) {
+				iter.remove();
+				unused--;
+			}
+		}
+	}
+
+	/**
+	 * Loads a full OsuFile from the database, or parses its file if it is not
+	 * in the database.
+	 * @param osu the summary OsuFile
+	 * @return the full OsuFile
+	 */
+	private static FullOsuFile load(OsuFile osu) {
+		FullOsuFile full = new FullOsuFile(osu);
+		if (!OsuDB.load(full, OsuDB.LOAD_ALL)) {
+			FullOsuFile parsed = OsuParser.parseFile(osu.getFile());
+			if (parsed != null)
+				full = parsed;
+		}
+		prepare(full);
+		return full;
+	}
+
+	/**
+	 * Parses the timing points (if not loaded) and hit objects of a full OsuFile.
+	 * @param osu the full OsuFile
+	 */
+	private static void prepare(FullOsuFile osu) {
+		synchronized (osu) {
+			if (osu.combo == null)
+				osu.combo = Utils.DEFAULT_COMBO;
+			OsuParser.parseTimingPoints(osu);
+			OsuParser.parseHitObjects(osu);
+		}
+	}
+
+	/**
+	 * Returns the number of cached entries.
+	 */
+	public static synchronized int size() { return cache.size(); }
+}
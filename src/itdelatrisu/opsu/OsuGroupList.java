@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -56,6 +57,9 @@ public class OsuGroupList {
 	/** Set of all beatmap set IDs for the parsed beatmaps. */
 	private HashSet<Integer> MSIDdb;
 
+	/** Search index for all parsed nodes. */
+	private SearchIndex searchIndex;
+
 	/** Index of current expanded node (-1 if no node is expanded). */
 	private int expandedIndex;
 
@@ -81,6 +85,7 @@ public class OsuGroupList {
 	private OsuGroupList() {
 		parsedNodes = new ArrayList<OsuGroupNode>();
 		MSIDdb = new HashSet<Integer>();
+		searchIndex = new SearchIndex();
 		reset();
 	}
 
@@ -109,6 +114,18 @@ public class OsuGroupList {
 		OsuGroupNode node = new OsuGroupNode(osuFiles);
 		parsedNodes.add(node);
 		mapCount += osuFiles.size();
+		searchIndex.add(node);
+
+		// share audio file objects between difficulties
+		for (int i = 1; i < osuFiles.size(); i++) {
+			File audio = osuFiles.get(i).audioFilename;
+			for (int j = 0; j < i; j++) {
+				if (osuFiles.get(j).audioFilename.equals(audio)) {
+					osuFiles.get(i).audioFilename = osuFiles.get(j).audioFilename;
+					break;
+				}
+			}
+		}
 
 		// add beatmap set ID to set
 		int msid = osuFiles.get(0).beatmapSetID;
@@ -152,6 +169,7 @@ public class OsuGroupList {
 		OsuFile osu = node.osuFiles.get(0);
 		nodes.remove(index);
 		parsedNodes.remove(eCur);
+		searchIndex.remove(eCur);
 		mapCount -= node.osuFiles.size();
 		if (osu.beatmapSetID > 0)
 			MSIDdb.remove(osu.beatmapSetID);
@@ -194,6 +212,32 @@ public class OsuGroupList {
 		return true;
 	}
 
+	/**
+	 * Removes the song group for a beatmap directory from the list, without
+	 * deleting any files or database entries.
+	 * <p>
+	 * The list must be re-initialized with {@link #reset()} and {@link #init()}
+	 * afterwards, as no links or indices are updated.
+	 * @param dir the beatmap directory
+	 * @return true if a song group was removed, false otherwise
+	 */
+	public boolean removeSongGroup(File dir) {
+		for (Iterator<OsuGroupNode> iter = parsedNodes.iterator(); iter.hasNext(); ) {
+			OsuGroupNode node = iter.next();
+			OsuFile osu = node.osuFiles.get(0);
+			if (!osu.getFile().getParentFile().getName().equals(dir.getName()))
+				continue;
+
+			iter.remove();
+			searchIndex.remove(node);
+			mapCount -= node.osuFiles.size();
+			if (osu.beatmapSetID > 0)
+				MSIDdb.remove(osu.beatmapSetID);
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Deletes a song from a song group, and also deletes the beatmap file.
 	 * If this causes the song group to be empty, then the song group and
@@ -221,6 +265,7 @@ public class OsuGroupList {
 		// remove song reference
 		OsuFile osu = node.osuFiles.remove(node.osuFileIndex);
 		mapCount--;
+		searchIndex.update(getBaseNode(node.index));
 
 		// re-link nodes
 		if (node.prev != null)
@@ -432,40 +477,16 @@ public class OsuGroupList {
 			}
 		}
 
-		// build an initial list from first search term
+		// build an initial list from the normal search terms (intersecting index results)
 		nodes = new ArrayList<OsuGroupNode>();
-		if (terms.isEmpty()) {
-			// conditional term
-			String type = condType.remove();
-			String operator = condOperator.remove();
-			float value = condValue.remove();
-			for (OsuGroupNode node : parsedNodes) {
-				if (node.matches(type, operator, value))
-					nodes.add(node);
-			}
-		} else {
-			// normal term
-			String term = terms.remove();
-			for (OsuGroupNode node : parsedNodes) {
-				if (node.matches(term))
-					nodes.add(node);
-			}
-		}
-
-		// iterate through remaining normal search terms
-		while (!terms.isEmpty()) {
-			if (nodes.isEmpty())
-				return true;
-
-			String term = terms.remove();
-
-			// remove nodes from list if they don't match all terms
-			Iterator<OsuGroupNode> nodeIter = nodes.iterator();
-			while (nodeIter.hasNext()) {
-				OsuGroupNode node = nodeIter.next();
-				if (!node.matches(term))
-					nodeIter.remove();
-			}
+		if (terms.isEmpty())
+			nodes.addAll(parsedNodes);
+		else {
+			BitSet matches = searchIndex.search(terms.remove());
+			while (!terms.isEmpty() && !matches.isEmpty())
+				matches.and(searchIndex.search(terms.remove()));
+			for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1))
+				nodes.add(searchIndex.get(i));
 		}
 
 		// iterate through remaining conditional terms
@@ -23,6 +23,8 @@ import java.text.NumberFormat;
 
 /**
  * Data type representing a hit object.
+ * Hit object data is held in a {@link HitObjectStore}; this class is a view
+ * of a single entry.
  */
 public class OsuHitObject {
 	/** Hit object types (bits). */
@@ -87,50 +89,11 @@ public class OsuHitObject {
 	 */
 	public static void setStackOffset(float offset) { stackOffset = offset; }
 
-	/** Starting coordinates. */
-	private float x, y;
+	/** The hit object store. */
+	private final HitObjectStore store;
 
-	/** Start time (in ms). */
-	private int time;
-
-	/** Hit object type (TYPE_* bitmask). */
-	private int type;
-
-	/** Hit sound type (SOUND_* bitmask). */
-	private byte hitSound;
-
-	/** Hit sound addition (sampleSet, AdditionSampleSet, ?, ...). */
-	private byte[] addition;
-
-	/** Slider curve type (SLIDER_* constant). */
-	private char sliderType;
-
-	/** Slider coordinate lists. */
-	private float[] sliderX, sliderY;
-
-	/** Slider repeat count. */
-	private int repeat;
-
-	/** Slider pixel length. */
-	private float pixelLength;
-
-	/** Spinner end time (in ms). */
-	private int endTime;
-
-	/** Slider edge hit sound type (SOUND_* bitmask). */
-	private byte[] edgeHitSound;
-
-	/** Slider edge hit sound addition (sampleSet, AdditionSampleSet). */
-	private byte[][] edgeAddition;
-
-	/** Current index in combo color array. */
-	private int comboIndex;
-
-	/** Number to display in hit object. */
-	private int comboNumber;
-
-	/** Hit object index in the current stack. */
-	private int stack;
+	/** The index of this hit object in the store. */
+	private final int index;
 
 	/**
 	 * Initializes the OsuHitObject data type with container dimensions.
@@ -171,125 +134,85 @@ public class OsuHitObject {
 	 */
 	public static int getYOffset() { return yOffset; }
 
+	/**
+	 * Returns a scaled x coordinate.
+	 * @param x the raw x coordinate
+	 * @param stack the hit object index in the current stack
+	 */
+	static float scaleX(float x, int stack) { return (x - stack * stackOffset) * xMultiplier + xOffset; }
+
+	/**
+	 * Returns a scaled y coordinate.
+	 * @param y the raw y coordinate
+	 * @param stack the hit object index in the current stack
+	 */
+	static float scaleY(float y, int stack) {
+		if (GameMod.HARD_ROCK.isActive())
+			return containerHeight - ((y + stack * stackOffset) * yMultiplier + yOffset);
+		else
+			return (y - stack * stackOffset) * yMultiplier + yOffset;
+	}
+
+	/**
+	 * Constructor.
+	 * @param store the hit object store
+	 * @param index the index of the hit object in the store
+	 */
+	public OsuHitObject(HitObjectStore store, int index) {
+		this.store = store;
+		this.index = index;
+	}
+
 	/**
 	 * Constructor.
 	 * @param line the line to be parsed
 	 */
 	public OsuHitObject(String line) {
-		/**
-		 * [OBJECT FORMATS]
-		 * Circles:
-		 *   x,y,time,type,hitSound,addition
-		 *   256,148,9466,1,2,0:0:0:0:
-		 *
-		 * Sliders:
-		 *   x,y,time,type,hitSound,sliderType|curveX:curveY|...,repeat,pixelLength,edgeHitsound,edgeAddition,addition
-		 *   300,68,4591,2,0,B|372:100|332:172|420:192,2,180,2|2|2,0:0|0:0|0:0,0:0:0:0:
-		 *
-		 * Spinners:
-		 *   x,y,time,type,hitSound,endTime,addition
-		 *   256,192,654,12,0,4029,0:0:0:0:
-		 *
-		 * NOTE: 'addition' -> sampl:add:cust:vol:hitsound (optional, defaults to "0:0:0:0:")
-		 */
-		String tokens[] = line.split(",");
-
-		// common fields
-		this.x = Float.parseFloat(tokens[0]);
-		this.y = Float.parseFloat(tokens[1]);
-		this.time = Integer.parseInt(tokens[2]);
-		this.type = Integer.parseInt(tokens[3]);
-		this.hitSound = Byte.parseByte(tokens[4]);
+		this.store = new HitObjectStore(1);
+		this.index = store.add(line);
+	}
 
-		// type-specific fields
-		int additionIndex;
-		if ((type & OsuHitObject.TYPE_CIRCLE) > 0)
-			additionIndex = 5;
-		else if ((type & OsuHitObject.TYPE_SLIDER) > 0) {
-			additionIndex = 10;
-
-			// slider curve type and coordinates
-			String[] sliderTokens = tokens[5].split("\\|");
-			this.sliderType = sliderTokens[0].charAt(0);
-			this.sliderX = new float[sliderTokens.length - 1];
-			this.sliderY = new float[sliderTokens.length - 1];
-			for (int j = 1; j < sliderTokens.length; j++) {
-				String[] sliderXY = sliderTokens[j].split(":");
-				this.sliderX[j - 1] = Integer.parseInt(sliderXY[0]);
-				this.sliderY[j - 1] = Integer.parseInt(sliderXY[1]);
-			}
-			this.repeat = Integer.parseInt(tokens[6]);
-			this.pixelLength = Float.parseFloat(tokens[7]);
-			if (tokens.length > 8) {
-				String[] edgeHitSoundTokens = tokens[8].split("\\|");
-				this.edgeHitSound = new byte[edgeHitSoundTokens.length];
-				for (int j = 0; j < edgeHitSoundTokens.length; j++)
-					edgeHitSound[j] = Byte.parseByte(edgeHitSoundTokens[j]);
-			}
-			if (tokens.length > 9) {
-				String[] edgeAdditionTokens = tokens[9].split("\\|");
-				this.edgeAddition = new byte[edgeAdditionTokens.length][2];
-				for (int j = 0; j < edgeAdditionTokens.length; j++) {
-					String[] tedgeAddition = edgeAdditionTokens[j].split(":");
-					edgeAddition[j][0] = Byte.parseByte(tedgeAddition[0]);
-					edgeAddition[j][1] = Byte.parseByte(tedgeAddition[1]);
-				}
-			}
-		} else { //if ((type & OsuHitObject.TYPE_SPINNER) > 0) {
-			additionIndex = 6;
-
-			// some 'endTime' fields contain a ':' character (?)
-			int index = tokens[5].indexOf(':');
-			if (index != -1)
-				tokens[5] = tokens[5].substring(0, index);
-			this.endTime = Integer.parseInt(tokens[5]);
-		}
+	/**
+	 * Returns the hit object store containing this hit object.
+	 */
+	public HitObjectStore getStore() { return store; }
 
-		// addition
-		if (tokens.length > additionIndex) {
-			String[] additionTokens = tokens[additionIndex].split(":");
-			this.addition = new byte[additionTokens.length];
-			for (int j = 0; j < additionTokens.length; j++)
-				this.addition[j] = Byte.parseByte(additionTokens[j]);
-		}
-	}
+	/**
+	 * Returns the index of this hit object in its store.
+	 */
+	public int getIndex() { return index; }
 
 	/**
 	 * Returns the raw starting x coordinate.
 	 */
-	public float getX() { return x; }
+	public float getX() { return store.getX(index); }
 
 	/**
 	 * Returns the raw starting y coordinate.
 	 */
-	public float getY() { return y; }
+	public float getY() { return store.getY(index); }
 
 	/**
 	 * Returns the scaled starting x coordinate.
 	 */
-	public float getScaledX() { return (x - stack * stackOffset) * xMultiplier + xOffset; }
+	public float getScaledX() { return store.getScaledX(index); }
 
 	/**
 	 * Returns the scaled starting y coordinate.
 	 */
-	public float getScaledY() {
-		if (GameMod.HARD_ROCK.isActive())
-			return containerHeight - ((y + stack * stackOffset) * yMultiplier + yOffset);
-		else
-			return (y - stack * stackOffset) * yMultiplier + yOffset;
-	}
+	public float getScaledY() { return store.getScaledY(index); }
 
 	/**
 	 * Returns the start time.
 	 * @return the start time (in ms)
 	 */
-	public int getTime() { return time; }
+	public int getTime() { return store.getTime(index); }
 
 	/**
 	 * Returns the hit object type.
 	 * @return the object type (TYPE_* bitmask)
 	 */
-	public int getType() { return type; }
+	public int getType() { return store.getType(index); }
 
 	/**
 	 * Returns the name of the hit object type.
@@ -309,47 +232,56 @@ public class OsuHitObject {
 	 * Returns the hit sound type.
 	 * @return the sound type (SOUND_* bitmask)
 	 */
-	public byte getHitSoundType() { return hitSound; }
+	public byte getHitSoundType() { return store.getHitSoundType(index); }
 
 	/**
 	 * Returns the edge hit sound type.
 	 * @param index the slider edge index (ignored for non-sliders)
 	 * @return the sound type (SOUND_* bitmask)
 	 */
-	public byte getEdgeHitSoundType(int index) {
-		if (edgeHitSound != null)
-			return edgeHitSound[index];
-		else
-			return hitSound;
-	}
+	public byte getEdgeHitSoundType(int index) { return store.getEdgeHitSoundType(this.index, index); }
 
 	/**
 	 * Returns the slider type.
 	 * @return the slider type (SLIDER_* constant)
 	 */
-	public char getSliderType() { return sliderType; }
+	public char getSliderType() { return store.getSliderType(index); }
+
+	/**
+	 * Returns the number of slider control points (excluding the starting point).
+	 */
+	public int getSliderPointCount() { return store.getSliderPointCount(index); }
 
 	/**
 	 * Returns a list of raw slider x coordinates.
+	 * Note that this method will create a new array.
 	 */
-	public float[] getSliderX() { return sliderX; }
+	public float[] getSliderX() {
+		float[] x = new float[store.getSliderPointCount(index)];
+		for (int i = 0; i < x.length; i++)
+			x[i] = store.getSliderX(index, i);
+		return x;
+	}
 
 	/**
 	 * Returns a list of raw slider y coordinates.
+	 * Note that this method will create a new array.
 	 */
-	public float[] getSliderY() { return sliderY; }
+	public float[] getSliderY() {
+		float[] y = new float[store.getSliderPointCount(index)];
+		for (int i = 0; i < y.length; i++)
+			y[i] = store.getSliderY(index, i);
+		return y;
+	}
 
 	/**
 	 * Returns a list of scaled slider x coordinates.
 	 * Note that this method will create a new array.
 	 */
 	public float[] getScaledSliderX() {
-		if (sliderX == null)
-			return null;
-
-		float[] x = new float[sliderX.length];
+		float[] x = new float[store.getSliderPointCount(index)];
 		for (int i = 0; i < x.length; i++)
-			x[i] = (sliderX[i] - stack * stackOffset) * xMultiplier + xOffset;
+			x[i] = store.getScaledSliderX(index, i);
 		return x;
 	}
 
@@ -358,17 +290,9 @@ public class OsuHitObject {
 	 * Note that this method will create a new array.
 	 */
 	public float[] getScaledSliderY() {
-		if (sliderY == null)
-			return null;
-
-		float[] y = new float[sliderY.length];
-		if (GameMod.HARD_ROCK.isActive()) {
-			for (int i = 0; i < y.length; i++)
-				y[i] = containerHeight - ((sliderY[i] + stack * stackOffset) * yMultiplier + yOffset);
-		} else {
-			for (int i = 0; i < y.length; i++)
-				y[i] = (sliderY[i] - stack * stackOffset) * yMultiplier + yOffset;
-		}
+		float[] y = new float[store.getSliderPointCount(index)];
+		for (int i = 0; i < y.length; i++)
+			y[i] = store.getScaledSliderY(index, i);
 		return y;
 	}
 
@@ -376,110 +300,98 @@ public class OsuHitObject {
 	 * Returns the slider repeat count.
 	 * @return the repeat count
 	 */
-	public int getRepeatCount() { return repeat; }
+	public int getRepeatCount() { return store.getRepeatCount(index); }
 
 	/**
 	 * Returns the slider pixel length.
 	 * @return the pixel length
 	 */
-	public float getPixelLength() { return pixelLength; }
+	public float getPixelLength() { return store.getPixelLength(index); }
 
 	/**
 	 * Returns the spinner end time.
 	 * @return the end time (in ms)
 	 */
-	public int getEndTime() { return endTime; }
+	public int getEndTime() { return store.getEndTime(index); }
 
 	/**
 	 * Sets the current index in the combo color array.
 	 * @param comboIndex the combo index
 	 */
-	public void setComboIndex(int comboIndex) { this.comboIndex = comboIndex; }
+	public void setComboIndex(int comboIndex) { store.setComboIndex(index, comboIndex); }
 
 	/**
 	 * Returns the current index in the combo color array.
 	 * @return the combo index
 	 */
-	public int getComboIndex() { return comboIndex; }
+	public int getComboIndex() { return store.getComboIndex(index); }
 
 	/**
 	 * Sets the number to display in the hit object.
 	 * @param comboNumber the combo number
 	 */
-	public void setComboNumber(int comboNumber) { this.comboNumber = comboNumber; }
+	public void setComboNumber(int comboNumber) { store.setComboNumber(index, comboNumber); }
 
 	/**
 	 * Returns the number to display in the hit object.
 	 * @return the combo number
 	 */
-	public int getComboNumber() { return comboNumber; }
+	public int getComboNumber() { return store.getComboNumber(index); }
 
 	/**
 	 * Returns whether or not the hit object is a circle.
 	 * @return true if circle
 	 */
-	public boolean isCircle() { return (type & TYPE_CIRCLE) > 0; }
+	public boolean isCircle() { return store.isCircle(index); }
 
 	/**
 	 * Returns whether or not the hit object is a slider.
 	 * @return true if slider
 	 */
-	public boolean isSlider() { return (type & TYPE_SLIDER) > 0; }
+	public boolean isSlider() { return store.isSlider(index); }
 
 	/**
 	 * Returns whether or not the hit object is a spinner.
 	 * @return true if spinner
 	 */
-	public boolean isSpinner() { return (type & TYPE_SPINNER) > 0; }
+	public boolean isSpinner() { return store.isSpinner(index); }
 
 	/**
 	 * Returns whether or not the hit object starts a new combo.
 	 * @return true if new combo
 	 */
-	public boolean isNewCombo() { return (type & TYPE_NEWCOMBO) > 0; }
+	public boolean isNewCombo() { return store.isNewCombo(index); }
 
 	/**
 	 * Returns the number of extra skips on the combo colors.
 	 */
-	public int getComboSkip() { return (type >> TYPE_NEWCOMBO); }
+	public int getComboSkip() { return (getType() >> TYPE_NEWCOMBO); }
 
 	/**
 	 * Returns the sample set at the given index.
 	 * @param index the index (for sliders, ignored otherwise)
 	 * @return the sample set, or 0 if none available
 	 */
-	public byte getSampleSet(int index) {
-		if (edgeAddition != null)
-			return edgeAddition[index][0];
-		if (addition != null)
-			return addition[0];
-		return 0;
-	}
+	public byte getSampleSet(int index) { return store.getSampleSet(this.index, index); }
 
 	/**
 	 * Returns the 'addition' sample set at the given index.
 	 * @param index the index (for sliders, ignored otherwise)
 	 * @return the sample set, or 0 if none available
 	 */
-	public byte getAdditionSampleSet(int index) {
-		if (edgeAddition != null)
-			return edgeAddition[index][1];
-		if (addition != null)
-			return addition[1];
-		return 0;
-	}
+	public byte getAdditionSampleSet(int index) { return store.getAdditionSampleSet(this.index, index); }
 
 	/**
 	 * Sets the hit object index in the current stack.
 	 * @param stack index in the stack
 	 */
-	public void setStack(int stack) { this.stack = stack; }
+	public void setStack(int stack) { store.setStack(index, stack); }
 
 	/**
 	 * Returns the hit object index in the current stack.
 	 * @return index in the stack
 	 */
-	public int getStack() { return stack; }
+	public int getStack() { return store.getStack(index); }
 
 	@Override
 	public String toString() {
@@ -487,11 +399,11 @@ public class OsuHitObject {
 		NumberFormat nf = new DecimalFormat("###.#####");
 
 		// common fields
-		sb.append(nf.format(x)); sb.append(',');
-		sb.append(nf.format(y)); sb.append(',');
-		sb.append(time); sb.append(',');
-		sb.append(type); sb.append(',');
-		sb.append(hitSound); sb.append(',');
+		sb.append(nf.format(getX())); sb.append(',');
+		sb.append(nf.format(getY())); sb.append(',');
+		sb.append(getTime()); sb.append(',');
+		sb.append(getType()); sb.append(',');
+		sb.append(getHitSoundType()); sb.append(',');
 
 		// type-specific fields
 		if (isCircle())
@@ -499,35 +411,38 @@ public class OsuHitObject {
 		else if (isSlider()) {
 			sb.append(getSliderType());
 			sb.append('|');
-			for (int i = 0; i < sliderX.length; i++) {
-				sb.append(nf.format(sliderX[i])); sb.append(':');
-				sb.append(nf.format(sliderY[i])); sb.append('|');
+			for (int i = 0, n = store.getSliderPointCount(index); i < n; i++) {
+				sb.append(nf.format(store.getSliderX(index, i))); sb.append(':');
+				sb.append(nf.format(store.getSliderY(index, i))); sb.append('|');
 			}
 			sb.setCharAt(sb.length() - 1, ',');
-			sb.append(repeat); sb.append(',');
-			sb.append(pixelLength); sb.append(',');
-			if (edgeHitSound != null) {
-				for (int i = 0; i < edgeHitSound.length; i++) {
-					sb.append(edgeHitSound[i]); sb.append('|');
+			sb.append(getRepeatCount()); sb.append(',');
+			sb.append(getPixelLength()); sb.append(',');
+			int edgeHitSounds = store.getEdgeHitSoundCount(index);
+			if (edgeHitSounds > 0) {
+				for (int i = 0; i < edgeHitSounds; i++) {
+					sb.append(store.getEdgeHitSoundType(index, i)); sb.append('|');
 				}
 				sb.setCharAt(sb.length() - 1, ',');
 			}
-			if (edgeAddition != null) {
-				for (int i = 0; i < edgeAddition.length; i++) {
-					sb.append(edgeAddition[i][0]); sb.append(':');
-					sb.append(edgeAddition[i][1]); sb.append('|');
+			int edgeAdditions = store.getEdgeAdditionCount(index);
+			if (edgeAdditions > 0) {
+				for (int i = 0; i < edgeAdditions; i++) {
+					sb.append(store.getEdgeAddition(index, i, 0)); sb.append(':');
+					sb.append(store.getEdgeAddition(index, i, 1)); sb.append('|');
 				}
 				sb.setCharAt(sb.length() - 1, ',');
 			}
 		} else if (isSpinner()) {
-			sb.append(endTime);
+			sb.append(getEndTime());
 			sb.append(',');
 		}
 
 		// addition
-		if (addition != null) {
-			for (int i = 0; i < addition.length; i++) {
-				sb.append(addition[i]);
+		int additions = store.getAdditionCount(index);
+		if (additions > 0) {
+			for (int i = 0; i < additions; i++) {
+				sb.append(store.getAddition(index, i));
 				sb.append(':');
 			}
 		} else
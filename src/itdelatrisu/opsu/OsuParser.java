@@ -18,21 +18,29 @@
 
 package itdelatrisu.opsu;
 
+import itdelatrisu.opsu.db.DirectoryManifest;
 import itdelatrisu.opsu.db.OsuDB;
+import itdelatrisu.opsu.io.LineTokenizer;
+import itdelatrisu.opsu.io.OsuSectionReader;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.util.Log;
@@ -41,26 +49,56 @@ import org.newdawn.slick.util.Log;
  * Parser for OSU files.
  */
 public class OsuParser {
-	/** The string lookup database. */
-	private static HashMap<String, String> stringdb = new HashMap<String, String>();
-
 	/** The expected pattern for beatmap directories, used to find beatmap set IDs. */
 	private static final String DIR_MSID_PATTERN = "^\\d+ .*";
 
-	/** The current file being parsed. */
-	private static File currentFile;
+	/** The current file being parsed (by any worker thread). */
+	private static volatile File currentFile;
 
 	/** The current directory number while parsing. */
-	private static int currentDirectoryIndex = -1;
+	private static final AtomicInteger currentDirectoryIndex = new AtomicInteger(-1);
 
 	/** The total number of directories to parse. */
-	private static int totalDirectories = -1;
+	private static volatile int totalDirectories = -1;
+
+	/** Maximum number of worker threads used for parsing directories. */
+	private static final int MAX_PARSER_THREADS = 8;
+
+	/** Minimum number of directories to invoke parallel parsing. */
+	private static final int PARALLEL_MIN_DIRECTORIES = 16;
 
 	/** Parser statuses. */
 	public enum Status { NONE, PARSING, CACHE, INSERTING };
 
 	/** The current status. */
-	private static Status status = Status.NONE;
+	private static volatile Status status = Status.NONE;
+
+	/** Results of parsing a single beatmap directory. */
+	private static class ParsedDirectory {
+		/** The directory. */
+		public final File dir;
+
+		/** All OsuFiles in the directory (the song group). */
+		public final ArrayList<OsuFile> osuFiles = new ArrayList<OsuFile>();
+
+		/** OsuFiles to be loaded from the database. */
+		public final List<OsuFile> cachedOsuFiles = new ArrayList<OsuFile>();
+
+		/** OsuFiles loaded from the parser. */
+		public final List<FullOsuFile> parsedOsuFiles = new ArrayList<FullOsuFile>();
+
+		/** Files with outdated database entries. */
+		public final List<File> staleFiles = new ArrayList<File>();
+
+		/** The new directory manifest, or null if the directory was unchanged. */
+		public DirectoryManifest manifest;
+
+		/**
+		 * Constructor.
+		 * @param dir the directory
+		 */
+		public ParsedDirectory(File dir) { this.dir = dir; }
+	}
 
 	// This class should not be instantiated.
 	private OsuParser() {}
@@ -68,127 +106,375 @@ public class OsuParser {
 	/**
 	 * Invokes parser for each OSU file in a root directory and
 	 * adds the OsuFiles to a new OsuGroupList.
+	 * <p>
+	 * Directories that have not been modified since the last scan are
+	 * loaded from the database without listing their files, and database
+	 * entries for directories no longer in the root directory are removed.
+	 * The beatmap snapshot is then rewritten if the database has changed.
 	 * @param root the root directory (search has depth 1)
 	 */
-	public static void parseAllFiles(File root) {
+	public static synchronized void parseAllFiles(File root) {
 		// create a new OsuGroupList
 		OsuGroupList.create();
 
 		// parse all directories
-		parseDirectories(root.listFiles());
+		File[] dirs = root.listFiles();
+		parseDirectories(dirs);
+
+		// remove entries for deleted directories
+		if (dirs != null)
+			pruneDirectories(dirs);
+
+		// rewrite the beatmap snapshot for the next launch
+		OsuDB.updateSnapshot();
 	}
 
 	/**
 	 * Invokes parser for each directory in the given array and
 	 * adds the OsuFiles to the existing OsuGroupList.
+	 * <p>
+	 * If enough directories are given, they will be parsed concurrently
+	 * by a pool of worker threads.  Results are always merged into the
+	 * OsuGroupList in the order of the given array.
 	 * @param dirs the array of directories to parse
 	 * @return the last OsuGroupNode parsed, or null if none
 	 */
-	public static OsuGroupNode parseDirectories(File[] dirs) {
+	public static synchronized OsuGroupNode parseDirectories(File[] dirs) {
+		List<ArrayList<OsuFile>> songGroups = parseSongGroups(dirs);
+		if (songGroups == null)
+			return null;
+
+		// add group entries to OsuGroupList
+		OsuGroupNode lastNode = null;
+		for (ArrayList<OsuFile> osuFiles : songGroups)
+			lastNode = OsuGroupList.get().addSongGroup(osuFiles);
+		return lastNode;
+	}
+
+	/**
+	 * Invokes parser for each directory in the given array, without adding
+	 * the OsuFiles to the OsuGroupList (so that this can run on a background
+	 * thread while the list is in use).  The database is updated as in
+	 * {@link #parseDirectories(File[])}.
+	 * @param dirs the array of directories to parse
+	 * @return the song groups (sorted), in the order of the given array,
+	 *         or null if no directories were given
+	 */
+	public static List<ArrayList<OsuFile>> parseSongGroups(File[] dirs) {
+		return parseSongGroups(dirs, true);
+	}
+
+	/**
+	 * Invokes parser for each directory in the given array, without adding
+	 * the OsuFiles to the OsuGroupList.
+	 * @param dirs the array of directories to parse
+	 * @param updateDatabase whether to update the database with the results
+	 *        (if false, the database is only read, and parsed OsuFiles are
+	 *        returned as full OsuFiles)
+	 * @return the song groups (sorted), in the order of the given array,
+	 *         or null if no directories were given
+	 */
+	public static synchronized List<ArrayList<OsuFile>> parseSongGroups(File[] dirs, boolean updateDatabase) {
 		if (dirs == null)
 			return null;
 
 		// progress tracking
 		status = Status.PARSING;
-		currentDirectoryIndex = 0;
+		currentDirectoryIndex.set(0);
 		totalDirectories = dirs.length;
 
-		// get last modified map from database
-		Map<String, Long> map = OsuDB.getLastModifiedMap();
+		// get last modified map and directory manifests from database
+		Map<String, Map<String, Long>> map = OsuDB.getLastModifiedMap();
+		Map<String, DirectoryManifest> manifestMap = OsuDB.getManifestMap();
+		if (map == null)
+			map = new HashMap<String, Map<String, Long>>();
+		if (manifestMap == null)
+			manifestMap = new HashMap<String, DirectoryManifest>();
+
+		// parse directories
+		List<ParsedDirectory> results;
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARSER_THREADS);
+		if (threads > 1 && dirs.length >= PARALLEL_MIN_DIRECTORIES)
+			results = parseDirectoriesParallel(dirs, map, manifestMap, threads);
+		else
+			results = parseDirectoriesSequential(dirs, map, manifestMap);
 
 		// OsuFile lists
 		List<ArrayList<OsuFile>> allOsuFiles = new LinkedList<ArrayList<OsuFile>>();
 		List<OsuFile> cachedOsuFiles = new LinkedList<OsuFile>();  // loaded from database
-		List<OsuFile> parsedOsuFiles = new LinkedList<OsuFile>();  // loaded from parser
+		List<FullOsuFile> parsedOsuFiles = new LinkedList<FullOsuFile>();  // loaded from parser
+		List<DirectoryManifest> manifests = new ArrayList<DirectoryManifest>();  // changed directories
 
-		// parse directories
-		OsuGroupNode lastNode = null;
-		for (File dir : dirs) {
-			currentDirectoryIndex++;
-			if (!dir.isDirectory())
-				continue;
+		// merge results (in directory order)
+		for (ParsedDirectory result : results) {
+			if (updateDatabase) {
+				for (File file : result.staleFiles)
+					OsuDB.delete(result.dir.getName(), file.getName());
+			}
+			if (result.manifest != null)
+				manifests.add(result.manifest);
+			cachedOsuFiles.addAll(result.cachedOsuFiles);
+			parsedOsuFiles.addAll(result.parsedOsuFiles);
+			if (!result.osuFiles.isEmpty())
+				allOsuFiles.add(result.osuFiles);
+		}
 
-			// find all OSU files
-			File[] files = dir.listFiles(new FilenameFilter() {
-				@Override
-				public boolean accept(File dir, String name) {
-					return name.toLowerCase().endsWith(".osu");
-				}
-			});
-			if (files.length < 1)
-				continue;
-
-			// create a new group entry
-			ArrayList<OsuFile> osuFiles = new ArrayList<OsuFile>();
-			for (File file : files) {
-				currentFile = file;
-
-				// check if beatmap is cached
-				String path = String.format("%s/%s", dir.getName(), file.getName());
-				if (map.containsKey(path)) {
-					// check last modified times
-					long lastModified = map.get(path);
-					if (lastModified == file.lastModified()) {
-						// add to cached beatmap list
-						OsuFile osu = new OsuFile(file);
-						osuFiles.add(osu);
-						cachedOsuFiles.add(osu);
-						continue;
-					} else
-						OsuDB.delete(dir.getName(), file.getName());
-				}
+		// load cached entries from database
+		if (!cachedOsuFiles.isEmpty()) {
+			status = Status.CACHE;
 
-				// Parse hit objects only when needed to save time/memory.
-				// Change boolean to 'true' to parse them immediately.
-				OsuFile osu = parseFile(file, dir, osuFiles, false);
+			// only the summary fields (see OsuFileCache for the others)
+			OsuDB.load(cachedOsuFiles, OsuDB.LOAD_NONARRAY);
+		}
 
-				// add to parsed beatmap list
-				if (osu != null) {
-					osuFiles.add(osu);
-					parsedOsuFiles.add(osu);
-				}
+		// sort song groups
+		for (ArrayList<OsuFile> osuFiles : allOsuFiles)
+			Collections.sort(osuFiles);
+
+		// add beatmap entries to database
+		if (updateDatabase && !parsedOsuFiles.isEmpty()) {
+			status = Status.INSERTING;
+			try {
+				OsuDB.insert(parsedOsuFiles).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// already reported by the database writer
 			}
 
-			// add group entry if non-empty
-			if (!osuFiles.isEmpty()) {
-				osuFiles.trimToSize();
-				allOsuFiles.add(osuFiles);
+			// only keep the summaries: full OsuFiles are loaded when needed
+			// (see OsuFileCache)
+			for (ArrayList<OsuFile> osuFiles : allOsuFiles) {
+				for (int i = 0; i < osuFiles.size(); i++) {
+					if (osuFiles.get(i) instanceof FullOsuFile)
+						osuFiles.set(i, new OsuFile(osuFiles.get(i)));
+				}
 			}
+		}
+
+		// update manifests (only after all entries are in the database)
+		if (updateDatabase && !manifests.isEmpty())
+			OsuDB.updateManifest(manifests);
+
+		Log.debug(StringPool.getStatistics());
+
+		status = Status.NONE;
+		currentFile = null;
+		currentDirectoryIndex.set(-1);
+		totalDirectories = -1;
+		return allOsuFiles;
+	}
+
+	/**
+	 * Parses each directory in the given array on the current thread.
+	 * @param dirs the array of directories to parse
+	 * @param map the last modified map from the database
+	 * @param manifestMap the directory manifests from the database
+	 * @return the parsed directories, in order
+	 */
+	private static List<ParsedDirectory> parseDirectoriesSequential(File[] dirs,
+			Map<String, Map<String, Long>> map, Map<String, DirectoryManifest> manifestMap) {
+		List<ParsedDirectory> results = new ArrayList<ParsedDirectory>(dirs.length);
+		for (File dir : dirs) {
+			ParsedDirectory result = parseDirectory(dir, map, manifestMap);
+			currentDirectoryIndex.incrementAndGet();
+			if (result != null)
+				results.add(result);
 
 			// stop parsing files (interrupted)
 			if (Thread.interrupted())
 				break;
 		}
+		return results;
+	}
 
-		// load cached entries from database
-		if (!cachedOsuFiles.isEmpty()) {
-			status = Status.CACHE;
+	/**
+	 * Parses each directory in the given array using a pool of worker threads.
+	 * If the current thread is interrupted, all remaining tasks are cancelled.
+	 * @param dirs the array of directories to parse
+	 * @param map the last modified map from the database
+	 * @param manifestMap the directory manifests from the database
+	 * @param threads the number of worker threads
+	 * @return the parsed directories, in order
+	 */
+	private static List<ParsedDirectory> parseDirectoriesParallel(File[] dirs,
+			final Map<String, Map<String, Long>> map, final Map<String, DirectoryManifest> manifestMap, int threads) {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
 
-			// Load array fields only when needed to save time/memory.
-			// Change flag to 'LOAD_ALL' to load them immediately.
-			OsuDB.load(cachedOsuFiles, OsuDB.LOAD_NONARRAY);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, String.format("OsuParser-%d", count.incrementAndGet()));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		// submit a task for each directory
+		List<Future<ParsedDirectory>> futures = new ArrayList<Future<ParsedDirectory>>(dirs.length);
+		for (final File dir : dirs) {
+			futures.add(executor.submit(new Callable<ParsedDirectory>() {
+				@Override
+				public ParsedDirectory call() {
+					try {
+						return parseDirectory(dir, map, manifestMap);
+					} finally {
+						currentDirectoryIndex.incrementAndGet();
+					}
+				}
+			}));
 		}
+		executor.shutdown();
 
-		// add group entries to OsuGroupList
-		for (ArrayList<OsuFile> osuFiles : allOsuFiles) {
-			Collections.sort(osuFiles);
-			lastNode = OsuGroupList.get().addSongGroup(osuFiles);
+		// collect results in submission order
+		List<ParsedDirectory> results = new ArrayList<ParsedDirectory>(dirs.length);
+		for (Future<ParsedDirectory> future : futures) {
+			try {
+				ParsedDirectory result = future.get();
+				if (result != null)
+					results.add(result);
+			} catch (InterruptedException e) {
+				// stop parsing files (interrupted)
+				executor.shutdownNow();
+				break;
+			} catch (ExecutionException e) {
+				Log.error("Failed to parse beatmap directory.", e.getCause());
+			}
 		}
+		return results;
+	}
 
-		// clear string DB
-		stringdb = new HashMap<String, String>();
+	/**
+	 * Parses all OSU files in a directory.
+	 * Database entries are not modified: stale entries are returned in
+	 * {@link ParsedDirectory#staleFiles} for the caller to delete.
+	 * <p>
+	 * If the directory's modification time matches its manifest, no files
+	 * were added or removed, so the files are not listed: only the cached
+	 * files' modification times are checked (files edited in place do not
+	 * change the directory's modification time).  This is only done if every
+	 * file in the manifest is cached, since files that failed to parse may
+	 * also have been edited in place.  Otherwise, the files are listed, and if
+	 * their names and modification times still match the manifest, files
+	 * without a cached entry (i.e. unparseable ones) are skipped.
+	 * @param dir the directory to parse
+	 * @param map the last modified map from the database
+	 * @param manifestMap the directory manifests from the database
+	 * @return the parsed directory, or null if not a directory
+	 */
+	private static ParsedDirectory parseDirectory(File dir,
+			Map<String, Map<String, Long>> map, Map<String, DirectoryManifest> manifestMap) {
+		long dirLastModified = dir.lastModified();
+		if (!dir.isDirectory())
+			return null;
 
-		// add beatmap entries to database
-		if (!parsedOsuFiles.isEmpty()) {
-			status = Status.INSERTING;
-			OsuDB.insert(parsedOsuFiles);
+		ParsedDirectory result = new ParsedDirectory(dir);
+		Map<String, Long> cachedFiles = map.get(dir.getName());
+		DirectoryManifest manifest = manifestMap.get(dir.getName());
+
+		// directory unchanged and all files cached: check the cached entries only
+		if (manifest != null && manifest.lastModified == dirLastModified &&
+		    manifest.fileCount == ((cachedFiles != null) ? cachedFiles.size() : 0)) {
+			if (cachedFiles != null) {
+				for (Map.Entry<String, Long> entry : cachedFiles.entrySet()) {
+					File file = new File(dir, entry.getKey());
+					currentFile = file;
+					long lastModified = file.lastModified();
+					if (lastModified == entry.getValue()) {
+						// add to cached beatmap list
+						OsuFile osu = new OsuFile(file);
+						result.osuFiles.add(osu);
+						result.cachedOsuFiles.add(osu);
+						continue;
+					}
+
+					// edited (or removed) since the last scan
+					result.staleFiles.add(file);
+					if (lastModified == 0L)
+						continue;
+					FullOsuFile osu = parseFile(file, dir, result.osuFiles, false);
+					if (osu != null) {
+						result.osuFiles.add(osu);
+						result.parsedOsuFiles.add(osu);
+					}
+				}
+			}
+			result.osuFiles.trimToSize();
+			return result;
 		}
 
-		status = Status.NONE;
-		currentFile = null;
-		currentDirectoryIndex = -1;
-		totalDirectories = -1;
-		return lastNode;
+		// find all OSU files
+		File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.toLowerCase().endsWith(".osu");
+			}
+		});
+		if (files == null)
+			return result;
+		result.manifest = DirectoryManifest.create(dir, dirLastModified, files);
+		boolean contentUnchanged = result.manifest.contentEquals(manifest);
+
+		// create a new group entry
+		for (File file : files) {
+			currentFile = file;
+
+			// check if beatmap is cached
+			Long lastModified = (cachedFiles != null) ? cachedFiles.get(file.getName()) : null;
+			if (lastModified != null) {
+				// check last modified times
+				if (lastModified == file.lastModified()) {
+					// add to cached beatmap list
+					OsuFile osu = new OsuFile(file);
+					result.osuFiles.add(osu);
+					result.cachedOsuFiles.add(osu);
+					continue;
+				} else
+					result.staleFiles.add(file);
+			} else if (contentUnchanged)
+				continue;  // previously failed to parse
+
+			// Parse hit objects only when needed to save time/memory.
+			// Change boolean to 'true' to parse them immediately.
+			FullOsuFile osu = parseFile(file, dir, result.osuFiles, false);
+
+			// add to parsed beatmap list
+			if (osu != null) {
+				result.osuFiles.add(osu);
+				result.parsedOsuFiles.add(osu);
+			}
+		}
+		result.osuFiles.trimToSize();
+		return result;
+	}
+
+	/**
+	 * Removes all database entries for directories not in the given array.
+	 * @param dirs the array of all existing directories
+	 */
+	private static void pruneDirectories(File[] dirs) {
+		Map<String, Map<String, Long>> map = OsuDB.getLastModifiedMap();
+		Map<String, DirectoryManifest> manifestMap = OsuDB.getManifestMap();
+		if (map == null || manifestMap == null)
+			return;
+
+		Set<String> dirNames = new HashSet<String>();
+		for (File dir : dirs)
+			dirNames.add(dir.getName());
+		Set<String> removed = new HashSet<String>(map.keySet());
+		removed.addAll(manifestMap.keySet());
+		removed.removeAll(dirNames);
+		for (String dir : removed)
+			OsuDB.delete(dir);
+	}
+
+	/**
+	 * Parses an OSU file outside of any song group.
+	 * @param file the file to parse
+	 * @return the new OsuFile object, or null if the file is not a valid beatmap
+	 */
+	public static FullOsuFile parseFile(File file) {
+		return parseFile(file, file.getParentFile(), new ArrayList<OsuFile>(), false);
 	}
 
 	/**
@@ -199,13 +485,15 @@ public class OsuParser {
 	 * @param parseObjects if true, hit objects will be fully parsed now
 	 * @return the new OsuFile object
 	 */
-	private static OsuFile parseFile(File file, File dir, ArrayList<OsuFile> osuFiles, boolean parseObjects) {
-		OsuFile osu = new OsuFile(file);
+	private static FullOsuFile parseFile(File file, File dir, ArrayList<OsuFile> osuFiles, boolean parseObjects) {
+		FullOsuFile osu = new FullOsuFile(file);
 		osu.timingPoints = new ArrayList<OsuTimingPoint>();
 
-		try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+		try {
+			OsuSectionReader in = new OsuSectionReader(file);
 			String line = in.readLine();
 			String tokens[] = null;
+			LineTokenizer lineTokens = new LineTokenizer("");
 			while (line != null) {
 				line = line.trim();
 				if (!isValidLine(line)) {
@@ -263,7 +551,7 @@ public class OsuParser {
 								osu.countdown = Byte.parseByte(tokens[1]);
 								break;
 							case "SampleSet":
-								osu.sampleSet = getDBString(tokens[1]);
+								osu.sampleSet = StringPool.get(tokens[1]);
 								break;
 							case "StackLeniency":
 								osu.stackLeniency = Float.parseFloat(tokens[1]);
@@ -344,28 +632,28 @@ public class OsuParser {
 						try {
 							switch (tokens[0]) {
 							case "Title":
-								osu.title = getDBString(tokens[1]);
+								osu.title = StringPool.get(tokens[1]);
 								break;
 							case "TitleUnicode":
-								osu.titleUnicode = getDBString(tokens[1]);
+								osu.titleUnicode = StringPool.get(tokens[1]);
 								break;
 							case "Artist":
-								osu.artist = getDBString(tokens[1]);
+								osu.artist = StringPool.get(tokens[1]);
 								break;
 							case "ArtistUnicode":
-								osu.artistUnicode = getDBString(tokens[1]);
+								osu.artistUnicode = StringPool.get(tokens[1]);
 								break;
 							case "Creator":
-								osu.creator = getDBString(tokens[1]);
+								osu.creator = StringPool.get(tokens[1]);
 								break;
 							case "Version":
-								osu.version = getDBString(tokens[1]);
+								osu.version = StringPool.get(tokens[1]);
 								break;
 							case "Source":
-								osu.source = getDBString(tokens[1]);
+								osu.source = StringPool.get(tokens[1]);
 								break;
 							case "Tags":
-								osu.tags = getDBString(tokens[1].toLowerCase());
+								osu.tags = StringPool.get(tokens[1].toLowerCase());
 								break;
 							case "BeatmapID":
 								osu.beatmapID = Integer.parseInt(tokens[1]);
@@ -432,34 +720,32 @@ public class OsuParser {
 							continue;
 						if (line.charAt(0) == '[')
 							break;
-						tokens = line.split(",");
-						switch (tokens[0]) {
-						case "0":  // background
-							tokens[2] = tokens[2].replaceAll("^\"|\"$", "");
-							String ext = OsuParser.getExtension(tokens[2]);
+						lineTokens.reset(line);
+						if (lineTokens.nextEquals("0")) {  // background
+							lineTokens.skipField();
+							String bg = lineTokens.nextQuotedString();
+							String ext = OsuParser.getExtension(bg);
 							if (ext.equals("jpg") || ext.equals("png"))
-								osu.bg = getDBString(tokens[2]);
-							break;
-						case "2":  // break periods
+								osu.bg = StringPool.get(bg);
+						} else if (lineTokens.nextEquals("2")) {  // break periods
 							try {
 								if (osu.breaks == null)  // optional, create if needed
 									osu.breaks = new ArrayList<Integer>();
-								osu.breaks.add(Integer.parseInt(tokens[1]));
-								osu.breaks.add(Integer.parseInt(tokens[2]));
+								osu.breaks.add(lineTokens.nextInt());
+								osu.breaks.add(lineTokens.nextInt());
 							} catch (Exception e) {
 								Log.warn(String.format("Failed to read break period '%s' for file '%s'.",
 										line, file.getAbsolutePath()), e);
 							}
-							break;
-						default:
+						} else {
 							/* Not implemented. */
-							break;
 						}
 					}
 					if (osu.breaks != null)
 						osu.breaks.trimToSize();
 					break;
 				case "[TimingPoints]":
+					osu.timingPointsOffset = in.getPosition();
 					while ((line = in.readLine()) != null) {
 						line = line.trim();
 						if (!isValidLine(line))
@@ -528,7 +814,8 @@ public class OsuParser {
 						osu.combo = colors.toArray(new Color[colors.size()]);
 					break;
 				case "[HitObjects]":
-					int type = 0;
+					osu.hitObjectsOffset = in.getPosition();
+					int type = 0, time = 0;
 					while ((line = in.readLine()) != null) {
 						line = line.trim();
 						if (!isValidLine(line))
@@ -536,9 +823,12 @@ public class OsuParser {
 						if (line.charAt(0) == '[')
 							break;
 						/* Only type counts parsed at this time. */
-						tokens = line.split(",");
+						lineTokens.reset(line);
 						try {
-							type = Integer.parseInt(tokens[3]);
+							lineTokens.skipField();
+							lineTokens.skipField();
+							time = lineTokens.nextInt();
+							type = lineTokens.nextInt();
 							if ((type & OsuHitObject.TYPE_CIRCLE) > 0)
 								osu.hitObjectCircle++;
 							else if ((type & OsuHitObject.TYPE_SLIDER) > 0)
@@ -555,12 +845,10 @@ public class OsuParser {
 						// map length = last object end time (TODO: end on slider?)
 						if ((type & OsuHitObject.TYPE_SPINNER) > 0) {
 							// some 'endTime' fields contain a ':' character (?)
-							int index = tokens[5].indexOf(':');
-							if (index != -1)
-								tokens[5] = tokens[5].substring(0, index);
-							osu.endTime = Integer.parseInt(tokens[5]);
+							lineTokens.skipField();
+							osu.endTime = lineTokens.nextInt();
 						} else if (type != 0)
-							osu.endTime = Integer.parseInt(tokens[2]);
+							osu.endTime = time;
 					} catch (Exception e) {
 						Log.warn(String.format("Failed to read hit object end time '%s' for file '%s'.",
 								line, file.getAbsolutePath()), e);
@@ -594,70 +882,95 @@ public class OsuParser {
 	 * Parses all hit objects in an OSU file.
 	 * @param osu the OsuFile to parse
 	 */
-	public static void parseHitObjects(OsuFile osu) {
-		if (osu.objects != null)  // already parsed
-			return;
+	public static void parseHitObjects(FullOsuFile osu) {
+		// may be called from a background thread (see CurveCache)
+		synchronized (osu) {
+			if (osu.objects != null)  // already parsed
+				return;
 
-		osu.objects = new OsuHitObject[(osu.hitObjectCircle
-				+ osu.hitObjectSlider + osu.hitObjectSpinner)];
+			int objectCount = osu.hitObjectCircle + osu.hitObjectSlider + osu.hitObjectSpinner;
+			HitObjectStore store = new HitObjectStore(objectCount);
 
-		try (BufferedReader in = new BufferedReader(new FileReader(osu.getFile()))) {
-			String line = in.readLine();
-			while (line != null) {
-				line = line.trim();
-				if (!line.equals("[HitObjects]"))
-					line = in.readLine();
-				else
-					break;
-			}
-			if (line == null) {
-				Log.warn(String.format("No hit objects found in OsuFile '%s'.", osu.toString()));
-				return;
-			}
+			try {
+				// seek to the section (using the stored offset, if valid)
+				OsuSectionReader in = new OsuSectionReader(osu.getFile());
+				if (!in.seekSection("[HitObjects]", osu.hitObjectsOffset))
+					Log.warn(String.format("No hit objects found in OsuFile '%s'.", osu.toString()));
+				else {
+					// combo info
+					int comboIndex = 0;   // color index
+					int comboNumber = 1;  // combo number
 
-			// combo info
-			int comboIndex = 0;   // color index
-			int comboNumber = 1;  // combo number
+					boolean first = true;
+					while (store.size() < objectCount && in.nextLine()) {
+						// lines must have at minimum 5 parameters
+						if (in.count(',') < 4)
+							continue;
 
-			int objectIndex = 0;
-			boolean first = true;
-			while ((line = in.readLine()) != null && objectIndex < osu.objects.length) {
-				line = line.trim();
-				if (!isValidLine(line))
-					continue;
-				if (line.charAt(0) == '[')
-					break;
+						CharSequence line = in.getLineChars();
+						try {
+							// add a new hit object for each line
+							int i = store.add(line);
 
-				// lines must have at minimum 5 parameters
-				int tokenCount = line.length() - line.replace(",", "").length();
-				if (tokenCount < 4)
-					continue;
+							// set combo info
+							// - new combo: get next combo index, reset combo number
+							// - else:      maintain combo index, increase combo number
+							if (store.isNewCombo(i) || first) {
+								int skip = (store.isSpinner(i) ? 0 : 1) + (store.getType(i) >> OsuHitObject.TYPE_NEWCOMBO);
+								for (int j = 0; j < skip; j++) {
+									comboIndex = (comboIndex + 1) % osu.combo.length;
+									comboNumber = 1;
+								}
+								first = false;
+							}
 
-				try {
-					// create a new OsuHitObject for each line
-					OsuHitObject hitObject = new OsuHitObject(line);
-
-					// set combo info
-					// - new combo: get next combo index, reset combo number
-					// - else:      maintain combo index, increase combo number
-					if (hitObject.isNewCombo() || first) {
-						int skip = (hitObject.isSpinner() ? 0 : 1) + hitObject.getComboSkip();
-						for (int i = 0; i < skip; i++) {
-							comboIndex = (comboIndex + 1) % osu.combo.length;
-							comboNumber = 1;
+							store.setComboIndex(i, comboIndex);
+							store.setComboNumber(i, comboNumber++);
+						} catch (Exception e) {
+							Log.warn(String.format("Failed to read hit object '%s' for OsuFile '%s'.",
+									line, osu.toString()), e);
 						}
-						first = false;
 					}
+				}
+			} catch (IOException e) {
+				ErrorHandler.error(String.format("Failed to read file '%s'.", osu.getFile().getAbsolutePath()), e, false);
+			}
 
-					hitObject.setComboIndex(comboIndex);
-					hitObject.setComboNumber(comboNumber++);
+			// create views
+			store.trimToSize();
+			osu.objectStore = store;
+			osu.objects = new OsuHitObject[store.size()];
+			for (int i = 0; i < osu.objects.length; i++)
+				osu.objects[i] = new OsuHitObject(store, i);
+		}
+	}
 
-					osu.objects[objectIndex++] = hitObject;
+	/**
+	 * Parses all timing points in an OSU file.
+	 * This is only needed if the timing points could not be loaded from the database.
+	 * @param osu the OsuFile to parse
+	 */
+	public static void parseTimingPoints(FullOsuFile osu) {
+		if (osu.timingPoints != null)  // already parsed
+			return;
+
+		osu.timingPoints = new ArrayList<OsuTimingPoint>();
+		try {
+			// seek to the section (using the stored offset, if valid)
+			OsuSectionReader in = new OsuSectionReader(osu.getFile());
+			if (!in.seekSection("[TimingPoints]", osu.timingPointsOffset))
+				return;
+
+			while (in.nextLine()) {
+				CharSequence line = in.getLineChars();
+				try {
+					osu.timingPoints.add(new OsuTimingPoint(line));
 				} catch (Exception e) {
-					Log.warn(String.format("Failed to read hit object '%s' for OsuFile '%s'.",
+					Log.warn(String.format("Failed to read timing point '%s' for OsuFile '%s'.",
 							line, osu.toString()), e);
 				}
 			}
+			osu.timingPoints.trimToSize();
 		} catch (IOException e) {
 			ErrorHandler.error(String.format("Failed to read file '%s'.", osu.getFile().getAbsolutePath()), e, false);
 		}
@@ -699,9 +1012,10 @@ public class OsuParser {
 	 * Returns the name of the current file being parsed, or null if none.
 	 */
 	public static String getCurrentFileName() {
-		if (status == Status.PARSING)
-			return (currentFile != null) ? currentFile.getName() : null;
-		else
+		if (status == Status.PARSING) {
+			File file = currentFile;
+			return (file != null) ? file.getName() : null;
+		} else
 			return (status == Status.NONE) ? null : "";
 	}
 
@@ -710,29 +1024,16 @@ public class OsuParser {
 	 * @return the completion percent [0, 100] or -1
 	 */
 	public static int getParserProgress() {
-		if (currentDirectoryIndex == -1 || totalDirectories == -1)
+		int index = currentDirectoryIndex.get();
+		int total = totalDirectories;
+		if (index == -1 || total <= 0)
 			return -1;
 
-		return currentDirectoryIndex * 100 / totalDirectories;
+		return Math.min(index, total) * 100 / total;
 	}
 
 	/**
 	 * Returns the current parser status.
 	 */
 	public static Status getStatus() { return status; }
-
-	/**
-	 * Returns the String object in the database for the given String.
-	 * If none, insert the String into the database and return the original String.
-	 * @param s the string to retrieve
-	 * @return the string object
-	 */
-	public static String getDBString(String s) {
-		String DBString = stringdb.get(s);
-		if (DBString == null) {
-			stringdb.put(s, s);
-			return s;
-		} else
-			return DBString;
-	}
-}
\ No newline at end of file
+}
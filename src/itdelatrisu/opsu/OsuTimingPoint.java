@@ -18,6 +18,10 @@
 
 package itdelatrisu.opsu;
 
+import itdelatrisu.opsu.io.LineTokenizer;
+
+import java.util.NoSuchElementException;
+
 import org.newdawn.slick.util.Log;
 
 /**
@@ -55,30 +59,32 @@ public class OsuTimingPoint {
 	 * Constructor.
 	 * @param line the line to be parsed
 	 */
-	public OsuTimingPoint(String line) {
+	public OsuTimingPoint(CharSequence line) {
 		// TODO: better support for old formats
-		String[] tokens = line.split(",");
-		try {
-			this.time = (int) Float.parseFloat(tokens[0]);  // rare float
-			this.meter = Integer.parseInt(tokens[2]);
-			this.sampleType = Byte.parseByte(tokens[3]);
-			this.sampleTypeCustom = Byte.parseByte(tokens[4]);
-			this.sampleVolume = Integer.parseInt(tokens[5]);
-//			this.inherited = (Integer.parseInt(tokens[6]) == 1);
-			if (tokens.length > 7)
-				this.kiai = (Integer.parseInt(tokens[7]) == 1);
-		} catch (ArrayIndexOutOfBoundsException e) {
-			Log.debug(String.format("Error parsing timing point: '%s'", line));
-		}
+		LineTokenizer tokens = new LineTokenizer(line);
+		this.time = (int) tokens.nextFloat();  // rare float
 
 		// tokens[1] is either beatLength (positive) or velocity (negative)
-		float beatLength = Float.parseFloat(tokens[1]);
+		float beatLength = tokens.nextFloat();
 		if (beatLength > 0)
 			this.beatLength = beatLength;
 		else {
 			this.velocity = (int) beatLength;
 			this.inherited = true;
 		}
+
+		try {
+			this.meter = tokens.nextInt();
+			this.sampleType = tokens.nextByte();
+			this.sampleTypeCustom = tokens.nextByte();
+			this.sampleVolume = tokens.nextInt();
+//			this.inherited = (tokens.nextInt() == 1);
+			tokens.skipField();
+			if (tokens.hasNext())
+				this.kiai = (tokens.nextInt() == 1);
+		} catch (NoSuchElementException e) {
+			Log.debug(String.format("Error parsing timing point: '%s'", line));
+		}
 	}
 
 	/**
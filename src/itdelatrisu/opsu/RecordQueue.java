@@ -0,0 +1,127 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import java.util.Arrays;
+
+/**
+ * FIFO queue of reusable records, stored in a growable array.
+ * <p>
+ * Records are created only when a slot is first used, and are reused after
+ * being removed.  Records are removed (from anywhere in the queue) by a
+ * compacting pass over it, which keeps them in insertion order:
+ * <pre>
+ * int kept = 0;
+ * for (int i = 0; i &lt; queue.size(); i++) {
+ *     if (keep(queue.get(i)))
+ *         queue.move(i, kept++);
+ * }
+ * queue.truncate(kept);
+ * </pre>
+ * Not thread-safe: records must be added and removed by a single thread.
+ * @param <T> the record type
+ */
+abstract class RecordQueue<T> {
+	/** The records (each slot is null until first used). */
+	private Object[] records;
+
+	/** The number of records in the queue. */
+	private int size = 0;
+
+	/**
+	 * Constructor.
+	 * @param capacity the initial capacity
+	 */
+	public RecordQueue(int capacity) {
+		this.records = new Object[capacity];
+	}
+
+	/**
+	 * Creates a new record.
+	 */
+	protected abstract T create();
+
+	/**
+	 * Adds a record to the end of the queue and returns it.
+	 * The record may have been used before and must be reinitialized.
+	 */
+	@SuppressWarnings("unchecked")
+	public T add() {
+		if (size == records.length)
+			grow();
+		if (records[size] == null)
+			records[size] = create();
+		return (T) records[size++];
+	}
+
+	/**
+	 * Returns the record at an index (0 being the oldest).
+	 * @param index the record index
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index) { return (T) records[index]; }
+
+	/**
+	 * Returns the most recently added record, or null if the queue is empty.
+	 */
+	public T getLast() { return (size == 0) ? null : get(size - 1); }
+
+	/**
+	 * Returns the number of records in the queue.
+	 */
+	public int size() { return size; }
+
+	/**
+	 * Returns whether the queue is empty.
+	 */
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * Moves the record at an index to a lower or equal index, swapping it
+	 * with the record there.
+	 * @param from the current record index
+	 * @param to the new record index
+	 */
+	public void move(int from, int to) {
+		if (from == to)
+			return;
+		Object record = records[from];
+		records[from] = records[to];
+		records[to] = record;
+	}
+
+	/**
+	 * Removes all records at or after an index.
+	 * @param size the new number of records
+	 */
+	public void truncate(int size) {
+		if (size < this.size)
+			this.size = size;
+	}
+
+	/**
+	 * Removes all records.
+	 */
+	public void clear() { size = 0; }
+
+	/**
+	 * Doubles the capacity of the array.
+	 */
+	private void grow() { records = Arrays.copyOf(records, Math.max(records.length * 2, 1)); }
+}
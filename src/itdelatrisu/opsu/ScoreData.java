@@ -148,10 +148,10 @@ public class ScoreData implements Comparable<ScoreData> {
 		this.timestamp = rs.getLong(1);
 		this.MID = rs.getInt(2);
 		this.MSID = rs.getInt(3);
-		this.title = rs.getString(4);
-		this.artist = rs.getString(5);
-		this.creator = rs.getString(6);
-		this.version = rs.getString(7);
+		this.title = StringPool.get(rs.getString(4));
+		this.artist = StringPool.get(rs.getString(5));
+		this.creator = StringPool.get(rs.getString(6));
+		this.version = StringPool.get(rs.getString(7));
 		this.hit300 = rs.getInt(8);
 		this.hit100 = rs.getInt(9);
 		this.hit50 = rs.getInt(10);
@@ -0,0 +1,313 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Inverted index for song group searches.
+ * <p>
+ * A group matches a search term if the term is a substring of any of its
+ * lowercased metadata fields: the title, artist (both also in Unicode),
+ * creator, source, version and tags of its first beatmap, and the version
+ * and tags of its other beatmaps.  Since terms never contain whitespace, every match lies within a single
+ * whitespace-delimited token.  The index therefore maps each distinct token
+ * to the groups containing it, and each 1-, 2- and 3-character sequence
+ * (n-gram) to the tokens containing it.  A term of at most 3 characters is
+ * looked up directly; a longer term intersects the token lists of its
+ * 3-grams, then checks the remaining tokens.
+ * <p>
+ * Groups are identified by the order in which they were added.
+ * Removed groups are only marked as such, and are skipped in results.  Once
+ * they make up most of the index, it is rebuilt from the remaining groups
+ * (in the same order), which also drops the tokens only they contained.
+ */
+class SearchIndex {
+	/** Maximum n-gram length. */
+	private static final int GRAM_LENGTH = 3;
+
+	/** Minimum number of removed groups before the index is rebuilt. */
+	private static final int REBUILD_MIN_REMOVED = 64;
+
+	/** Growable list of ints. */
+	private static class IntList {
+		/** The values. */
+		private int[] values = new int[2];
+
+		/** The number of values. */
+		private int size = 0;
+
+		/** Adds a value, unless it is the same as the last one. */
+		public void addUnique(int v) {
+			if (size > 0 && values[size - 1] == v)
+				return;
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = v;
+		}
+	}
+
+	/** Indexed groups, by ID (null if removed). */
+	private ArrayList<OsuGroupNode> groups = new ArrayList<OsuGroupNode>();
+
+	/** IDs of indexed groups. */
+	private IdentityHashMap<OsuGroupNode, Integer> groupIds = new IdentityHashMap<OsuGroupNode, Integer>();
+
+	/** IDs of removed groups. */
+	private BitSet removed = new BitSet();
+
+	/** Number of removed groups. */
+	private int removedCount = 0;
+
+	/** Token IDs. */
+	private HashMap<String, Integer> tokenIds = new HashMap<String, Integer>();
+
+	/** Tokens, by ID. */
+	private ArrayList<String> tokens = new ArrayList<String>();
+
+	/** IDs of the groups containing each token, by token ID (ascending). */
+	private ArrayList<IntList> tokenGroups = new ArrayList<IntList>();
+
+	/** IDs of the tokens containing each n-gram (ascending). */
+	private HashMap<Long, IntList> gramTokens = new HashMap<Long, IntList>();
+
+	/**
+	 * Adds a song group.
+	 * @param node the song group node
+	 */
+	public void add(OsuGroupNode node) {
+		if (groupIds.containsKey(node))
+			return;
+
+		int id = groups.size();
+		groups.add(node);
+		groupIds.put(node, id);
+
+		// title, artist, creator, source, version, tags (first OsuFile)
+		OsuFile osu = node.osuFiles.get(0);
+		addField(osu.title, id);
+		addField(osu.titleUnicode, id);
+		addField(osu.artist, id);
+		addField(osu.artistUnicode, id);
+		addField(osu.creator, id);
+		addField(osu.source, id);
+		addField(osu.version, id);
+		addField(osu.tags, id);
+
+		// version, tags (remaining OsuFiles)
+		for (int i = 1; i < node.osuFiles.size(); i++) {
+			osu = node.osuFiles.get(i);
+			addField(osu.version, id);
+			addField(osu.tags, id);
+		}
+	}
+
+	/**
+	 * Removes a song group.
+	 * @param node the song group node
+	 */
+	public void remove(OsuGroupNode node) {
+		Integer id = groupIds.remove(node);
+		if (id != null) {
+			groups.set(id, null);
+			removed.set(id);
+			removedCount++;
+			if (removedCount >= REBUILD_MIN_REMOVED && removedCount * 2 > groups.size())
+				rebuild();
+		}
+	}
+
+	/**
+	 * Rebuilds the index from the remaining groups.
+	 */
+	private void rebuild() {
+		ArrayList<OsuGroupNode> nodes = new ArrayList<OsuGroupNode>(groups.size() - removedCount);
+		for (OsuGroupNode node : groups) {
+			if (node != null)
+				nodes.add(node);
+		}
+
+		groups = new ArrayList<OsuGroupNode>();
+		groupIds = new IdentityHashMap<OsuGroupNode, Integer>();
+		removed = new BitSet();
+		removedCount = 0;
+		tokenIds = new HashMap<String, Integer>();
+		tokens = new ArrayList<String>();
+		tokenGroups = new ArrayList<IntList>();
+		gramTokens = new HashMap<Long, IntList>();
+		for (OsuGroupNode node : nodes)
+			add(node);
+	}
+
+	/**
+	 * Re-indexes a song group (e.g. after one of its beatmaps was removed).
+	 * @param node the song group node
+	 */
+	public void update(OsuGroupNode node) {
+		remove(node);
+		add(node);
+	}
+
+	/**
+	 * Returns the IDs of all song groups that match a search term.
+	 * @param term the search term (lowercase, without whitespace)
+	 */
+	public BitSet search(String term) {
+		BitSet result = new BitSet(groups.size());
+		int length = term.length();
+		if (length == 0)
+			return result;
+
+		// find the tokens containing the term
+		IntList candidates;
+		boolean verify = (length > GRAM_LENGTH);
+		if (!verify)
+			candidates = gramTokens.get(gramKey(term, 0, length));
+		else {
+			candidates = null;
+			for (int i = 0; i + GRAM_LENGTH <= length; i++) {
+				IntList list = gramTokens.get(gramKey(term, i, GRAM_LENGTH));
+				candidates = (candidates == null) ? list : intersect(candidates, list);
+				if (candidates == null || candidates.size == 0)
+					return result;
+			}
+		}
+		if (candidates == null)
+			return result;
+
+		// collect their groups
+		for (int i = 0; i < candidates.size; i++) {
+			int token = candidates.values[i];
+			if (verify && !tokens.get(token).contains(term))
+				continue;
+			IntList list = tokenGroups.get(token);
+			for (int j = 0; j < list.size; j++)
+				result.set(list.values[j]);
+		}
+		result.andNot(removed);
+		return result;
+	}
+
+	/**
+	 * Returns the song group with the given ID.
+	 * @param id the ID (see {@link #search(String)})
+	 */
+	public OsuGroupNode get(int id) { return groups.get(id); }
+
+	/**
+	 * Adds the tokens of a metadata field.
+	 * @param field the field
+	 * @param id the song group ID
+	 */
+	private void addField(String field, int id) {
+		if (field == null || field.isEmpty())
+			return;
+
+		String s = field.toLowerCase();
+		int start = -1;
+		for (int i = 0, length = s.length(); i <= length; i++) {
+			if (i == length || isWhitespace(s.charAt(i))) {
+				if (start != -1) {
+					addToken(s.substring(start, i), id);
+					start = -1;
+				}
+			} else if (start == -1)
+				start = i;
+		}
+	}
+
+	/**
+	 * Adds a token to a song group.
+	 * @param token the token
+	 * @param id the song group ID
+	 */
+	private void addToken(String token, int id) {
+		Integer tokenId = tokenIds.get(token);
+		if (tokenId == null) {
+			tokenId = tokens.size();
+			tokens.add(token);
+			tokenIds.put(token, tokenId);
+			tokenGroups.add(new IntList());
+
+			// index the token's n-grams
+			for (int n = 1; n <= GRAM_LENGTH; n++) {
+				for (int i = 0; i + n <= token.length(); i++) {
+					long key = gramKey(token, i, n);
+					IntList list = gramTokens.get(key);
+					if (list == null) {
+						list = new IntList();
+						gramTokens.put(key, list);
+					}
+					list.addUnique(tokenId);
+				}
+			}
+		}
+		tokenGroups.get(tokenId).addUnique(id);
+	}
+
+	/**
+	 * Returns the key of an n-gram.
+	 * @param s the string
+	 * @param start the start index
+	 * @param n the n-gram length (at most {@link #GRAM_LENGTH})
+	 */
+	private static long gramKey(String s, int start, int n) {
+		long key = n;
+		for (int i = 0; i < n; i++)
+			key = (key << 16) | s.charAt(start + i);
+		return key;
+	}
+
+	/**
+	 * Returns the intersection of two ascending lists.
+	 * @param a the first list
+	 * @param b the second list (or null if empty)
+	 * @return the intersection, or null if empty
+	 */
+	private static IntList intersect(IntList a, IntList b) {
+		if (b == null)
+			return null;
+		IntList result = new IntList();
+		for (int i = 0, j = 0; i < a.size && j < b.size; ) {
+			int x = a.values[i], y = b.values[j];
+			if (x < y)
+				i++;
+			else if (x > y)
+				j++;
+			else {
+				result.addUnique(x);
+				i++;
+				j++;
+			}
+		}
+		return (result.size > 0) ? result : null;
+	}
+
+	/**
+	 * Returns whether a character is whitespace (as matched by the regular
+	 * expression "\s", which separates search terms).
+	 */
+	private static boolean isWhitespace(char c) {
+		return (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r');
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Thread-safe string lookup database, used to share equal String objects
+ * (metadata, file names, etc.) between beatmaps and scores.
+ * <p>
+ * Strings are split across a fixed number of shards by hash code, each with
+ * its own lock, so that concurrent parser threads rarely contend.
+ * The pool lives for the duration of the process, but only holds its strings
+ * weakly: strings no longer referenced elsewhere (e.g. those of deleted
+ * beatmaps) are dropped by the garbage collector.
+ */
+public class StringPool {
+	/** Number of shards (must be a power of 2). */
+	private static final int SHARD_COUNT = 32;
+
+	/** Estimated heap size of an empty String object (header, fields, array header). */
+	private static final int STRING_OVERHEAD_BYTES = 40;
+
+	/** A single shard of the pool. */
+	private static class Shard {
+		/** The string lookup table (pooled strings, mapped to themselves). */
+		private final WeakHashMap<String, WeakReference<String>> map = new WeakHashMap<String, WeakReference<String>>();
+
+		/** Number of lookups that replaced a string with an existing, different instance. */
+		private long hits = 0;
+
+		/** Number of lookups that inserted a new string. */
+		private long misses = 0;
+
+		/** Estimated number of bytes saved by replacing strings with existing instances. */
+		private long bytesSaved = 0;
+	}
+
+	/** The shards. */
+	private static final Shard[] shards = new Shard[SHARD_COUNT];
+	static {
+		for (int i = 0; i < SHARD_COUNT; i++)
+			shards[i] = new Shard();
+	}
+
+	// This class should not be instantiated.
+	private StringPool() {}
+
+	/**
+	 * Returns the String object in the pool equal to the given String.
+	 * If none, inserts the String into the pool and returns it.
+	 * <p>
+	 * Only lookups that replace the given String with a different instance
+	 * count as hits (and towards the bytes saved); looking up an instance
+	 * that is already pooled does not affect the statistics.
+	 * @param s the string to retrieve (may be null)
+	 * @return the pooled string object, or null if {@code s} is null
+	 */
+	public static String get(String s) {
+		if (s == null)
+			return null;
+
+		Shard shard = getShard(s);
+		synchronized (shard) {
+			WeakReference<String> ref = shard.map.get(s);
+			String pooled = (ref == null) ? null : ref.get();
+			if (pooled == null) {
+				shard.map.put(s, new WeakReference<String>(s));
+				shard.misses++;
+				return s;
+			}
+			if (pooled == s)  // already pooled
+				return s;
+
+			shard.hits++;
+			shard.bytesSaved += STRING_OVERHEAD_BYTES + s.length() * 2;
+			return pooled;
+		}
+	}
+
+	/**
+	 * Returns the shard for the given string.
+	 */
+	private static Shard getShard(String s) {
+		int h = s.hashCode();
+		h ^= (h >>> 16);  // spread higher bits
+		return shards[h & (SHARD_COUNT - 1)];
+	}
+
+	/**
+	 * Returns the total number of strings in the pool (excluding strings
+	 * already dropped by the garbage collector).
+	 */
+	public static int size() {
+		int size = 0;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				size += shard.map.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the fraction of counted lookups that replaced a string with an
+	 * existing instance.
+	 * @return the hit rate [0, 1]
+	 */
+	public static float getHitRate() {
+		long hits = 0, total = 0;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				hits += shard.hits;
+				total += shard.hits + shard.misses;
+			}
+		}
+		return (total == 0) ? 0f : (float) hits / total;
+	}
+
+	/**
+	 * Returns the estimated number of heap bytes saved by the pool, i.e. the
+	 * size of all duplicate strings that could be discarded.
+	 */
+	public static long getBytesSaved() {
+		long bytes = 0;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				bytes += shard.bytesSaved;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns a formatted string of the pool statistics.
+	 */
+	public static String getStatistics() {
+		return String.format("String pool: %d strings, %.1f%% hit rate, ~%d KB saved.",
+				size(), getHitRate() * 100f, getBytesSaved() / 1024);
+	}
+}
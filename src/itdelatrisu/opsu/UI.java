@@ -141,19 +141,20 @@ public class UI {
 	}
 
 	/**
-	 * Draws the global UI components: cursor, FPS, volume bar, bar notifications.
+	 * Draws the global UI components: cursor, FPS, performance stats, volume bar, bar notifications.
 	 * @param g the graphics context
 	 */
 	public static void draw(Graphics g) {
 		drawBarNotification(g);
 		drawVolume(g);
 		drawFPS();
+		FrameProfiler.draw(container, g);
 		drawCursor();
 		drawTooltip(g);
 	}
 
 	/**
-	 * Draws the global UI components: cursor, FPS, volume bar, bar notifications.
+	 * Draws the global UI components: cursor, FPS, performance stats, volume bar, bar notifications.
 	 * @param g the graphics context
 	 * @param mouseX the mouse x coordinate
 	 * @param mouseY the mouse y coordinate
@@ -163,6 +164,7 @@ public class UI {
 		drawBarNotification(g);
 		drawVolume(g);
 		drawFPS();
+		FrameProfiler.draw(container, g);
 		drawCursor(mouseX, mouseY, mousePressed);
 		drawTooltip(g);
 	}
@@ -65,6 +65,9 @@ public class SoundController {
 	/** The number of the current sound file being loaded. */
 	private static int currentFileIndex = -1;
 
+	/** Whether or not sound effects are muted. */
+	private static boolean muted = false;
+
 	// This class should not be instantiated.
 	private SoundController() {}
 
@@ -234,6 +237,12 @@ public class SoundController {
 			sampleVolumeMultiplier = volume;
 	}
 
+	/**
+	 * Mutes or unmutes all sound effects (not the music track).
+	 * @param mute true to mute, false to unmute
+	 */
+	public static void setMuted(boolean mute) { muted = mute; }
+
 	/**
 	 * Plays a sound clip.
 	 * @param clip the Clip to play
@@ -241,7 +250,7 @@ public class SoundController {
 	 * @param listener the line listener
 	 */
 	private static void playClip(MultiClip clip, float volume, LineListener listener) {
-		if (clip == null)  // clip failed to load properly
+		if (clip == null || muted)  // clip failed to load properly, or muted
 			return;
 
 		if (volume > 0f) {
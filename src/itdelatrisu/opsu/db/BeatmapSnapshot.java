@@ -0,0 +1,354 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.db;
+
+import itdelatrisu.opsu.FullOsuFile;
+import itdelatrisu.opsu.OsuFile;
+import itdelatrisu.opsu.StringPool;
+import itdelatrisu.opsu.io.OsuWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.newdawn.slick.util.Log;
+
+/**
+ * Binary snapshot of the beatmap cache table (all non-array fields).
+ * <p>
+ * The database remains the source of truth: each snapshot carries an ID
+ * that is also stored in the database, and every change to the beatmap
+ * table clears the stored ID in the same transaction, so a snapshot is only
+ * used while it matches the database exactly.
+ * <p>
+ * The file is written with {@link OsuWriter} and read into memory in one
+ * piece (it is not mapped, so that it can be replaced while a snapshot is
+ * open).  Each entry is prefixed with its length, so entries that are not
+ * needed are skipped without being decoded, and the whole table is read in
+ * a single sequential pass.
+ */
+class BeatmapSnapshot {
+	/** File signature ("OSBS"). */
+	private static final int MAGIC = 0x5342534F;
+
+	/** File format version. */
+	private static final int FORMAT_VERSION = 1;
+
+	/** The file contents (positioned at the first entry). */
+	private final ByteBuffer buffer;
+
+	/** The number of entries. */
+	private final int size;
+
+	/**
+	 * Constructor.
+	 * @param buffer the file contents, positioned at the first entry
+	 * @param size the number of entries
+	 */
+	private BeatmapSnapshot(ByteBuffer buffer, int size) {
+		this.buffer = buffer;
+		this.size = size;
+	}
+
+	/**
+	 * Opens a snapshot file.
+	 * @param file the snapshot file
+	 * @param databaseVersion the current database version
+	 * @param id the snapshot ID stored in the database
+	 * @return the snapshot, or null if the file does not exist or does not
+	 *         match the database
+	 */
+	public static BeatmapSnapshot open(File file, String databaseVersion, long id) {
+		if (id == 0 || !file.isFile())
+			return null;
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			byte[] bytes = new byte[(int) raf.length()];
+			raf.readFully(bytes);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION ||
+			    !databaseVersion.equals(readString(buffer)) || buffer.getLong() != id)
+				return null;
+			int size = buffer.getInt();
+			return new BeatmapSnapshot(buffer.slice().order(ByteOrder.LITTLE_ENDIAN), size);
+		} catch (IOException | RuntimeException e) {
+			Log.warn(String.format("Failed to open beatmap snapshot '%s'.", file.getName()), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the number of entries.
+	 */
+	public int size() { return size; }
+
+	/**
+	 * Returns a map of directory names to maps of file names to last
+	 * modified times (see {@link OsuDB#getLastModifiedMap()}).
+	 */
+	public Map<String, Map<String, Long>> getLastModifiedMap() {
+		Map<String, Map<String, Long>> map = new HashMap<String, Map<String, Long>>();
+		ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < size; i++) {
+			int length = buf.getInt(), next = buf.position() + length;
+			String dir = readString(buf);
+			Map<String, Long> m = map.get(dir);
+			if (m == null) {
+				m = new HashMap<String, Long>();
+				map.put(dir, m);
+			}
+			m.put(readString(buf), buf.getLong());
+			buf.position(next);
+		}
+		return map;
+	}
+
+	/**
+	 * Loads the non-array fields of the given OsuFiles.
+	 * @param map a map of directory names to maps of file names to OsuFiles
+	 *        (loaded OsuFiles are removed from it)
+	 * @return the number of OsuFiles loaded
+	 */
+	public int load(Map<String, Map<String, OsuFile>> map) {
+		int count = 0;
+		ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < size && !map.isEmpty(); i++) {
+			int length = buf.getInt(), next = buf.position() + length;
+			Map<String, OsuFile> m = map.get(readString(buf));
+			if (m != null) {
+				OsuFile osu = m.remove(readString(buf));
+				if (osu != null) {
+					buf.getLong();  // last modified
+					readFields(buf, osu);
+					count++;
+					if (m.isEmpty())
+						map.values().remove(m);
+				}
+			}
+			buf.position(next);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the non-array fields of an entry
+	 * (in the order of {@link OsuDB#setOsuFileFields}).
+	 * @param buf the buffer, positioned after the entry's last modified time
+	 * @param osu the OsuFile
+	 */
+	private static void readFields(ByteBuffer buf, OsuFile osu) {
+		osu.beatmapID = buf.getInt();
+		osu.beatmapSetID = buf.getInt();
+		osu.title = StringPool.get(readString(buf));
+		osu.titleUnicode = StringPool.get(readString(buf));
+		osu.artist = StringPool.get(readString(buf));
+		osu.artistUnicode = StringPool.get(readString(buf));
+		osu.creator = StringPool.get(readString(buf));
+		osu.version = StringPool.get(readString(buf));
+		osu.source = StringPool.get(readString(buf));
+		osu.tags = StringPool.get(readString(buf));
+		osu.hitObjectCircle = buf.getInt();
+		osu.hitObjectSlider = buf.getInt();
+		osu.hitObjectSpinner = buf.getInt();
+		osu.HPDrainRate = buf.getFloat();
+		osu.circleSize = buf.getFloat();
+		osu.overallDifficulty = buf.getFloat();
+		osu.approachRate = buf.getFloat();
+		float sliderMultiplier = buf.getFloat();
+		float sliderTickRate = buf.getFloat();
+		osu.bpmMin = buf.getInt();
+		osu.bpmMax = buf.getInt();
+		osu.endTime = buf.getInt();
+		osu.audioFilename = new File(osu.getFile().getParentFile(), StringPool.get(readString(buf)));
+		int audioLeadIn = buf.getInt();
+		osu.previewTime = buf.getInt();
+		byte countdown = buf.get();
+		String sampleSet = readString(buf);
+		float stackLeniency = buf.getFloat();
+		osu.mode = buf.get();
+		boolean letterboxInBreaks = (buf.get() != 0);
+		boolean widescreenStoryboard = (buf.get() != 0);
+		boolean epilepsyWarning = (buf.get() != 0);
+		osu.bg = StringPool.get(readString(buf));
+		int timingPointsOffset = buf.getInt();
+		int hitObjectsOffset = buf.getInt();
+
+		// fields that only a full OsuFile has
+		if (osu instanceof FullOsuFile) {
+			FullOsuFile full = (FullOsuFile) osu;
+			full.sliderMultiplier = sliderMultiplier;
+			full.sliderTickRate = sliderTickRate;
+			full.audioLeadIn = audioLeadIn;
+			full.countdown = countdown;
+			full.sampleSet = StringPool.get(sampleSet);
+			full.stackLeniency = stackLeniency;
+			full.letterboxInBreaks = letterboxInBreaks;
+			full.widescreenStoryboard = widescreenStoryboard;
+			full.epilepsyWarning = epilepsyWarning;
+			full.timingPointsOffset = timingPointsOffset;
+			full.hitObjectsOffset = hitObjectsOffset;
+		}
+	}
+
+	/**
+	 * Reads a nullable string (a presence flag, followed by a string in
+	 * the format of {@link OsuWriter#write(String)} if present).
+	 * @param buf the buffer
+	 * @return the string, or null
+	 */
+	private static String readString(ByteBuffer buf) {
+		if (buf.get() == 0)
+			return null;
+		byte kind = buf.get();
+		if (kind == 0)
+			return "";
+		if (kind != 0x0B)
+			throw new IllegalStateException(String.format("String format error: Expected 0x0B or 0x00, found 0x%02X", kind & 0xFF));
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			if (shift >= 32)
+				throw new IllegalStateException("ULEB128 too large");
+			byte b = buf.get();
+			length |= (b & 0x7F) << shift;
+			if (b >= 0)
+				break;
+		}
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a snapshot of the beatmap table.
+	 * The rows are streamed to a temporary file, which is then moved into place.
+	 * @param file the snapshot file
+	 * @param databaseVersion the current database version
+	 * @param id the snapshot ID (non-zero)
+	 * @param rs the result set of all rows of the beatmap table ("SELECT *")
+	 * @return the number of entries written
+	 * @throws IOException if the file could not be written
+	 * @throws SQLException if the rows could not be read
+	 */
+	public static int write(File file, String databaseVersion, long id, ResultSet rs) throws IOException, SQLException {
+		// header (the entry count is filled in last)
+		ByteArrayOutputStream header = new ByteArrayOutputStream(64);
+		OsuWriter headerWriter = new OsuWriter(header);
+		headerWriter.write(MAGIC);
+		headerWriter.write(FORMAT_VERSION);
+		writeString(headerWriter, databaseVersion);
+		headerWriter.write(id);
+		headerWriter.write(0);
+
+		File tmp = new File(file.getPath() + ".tmp");
+		boolean written = false;
+		try {
+			// entries
+			int size = 0;
+			OsuWriter writer = new OsuWriter(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				header.writeTo(writer.getOutputStream());
+				ByteArrayOutputStream entry = new ByteArrayOutputStream(512);
+				OsuWriter entryWriter = new OsuWriter(entry);
+				while (rs.next()) {
+					entry.reset();
+					writeEntry(entryWriter, rs);
+					writer.write(entry.size());
+					entry.writeTo(writer.getOutputStream());
+					size++;
+				}
+			} finally {
+				writer.close();
+			}
+
+			// entry count
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+				raf.seek(header.size() - 4);
+				raf.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(size).array());
+			}
+
+			// move into place
+			if (file.exists() && !file.delete())
+				throw new IOException(String.format("Could not replace '%s'.", file.getName()));
+			if (!tmp.renameTo(file))
+				throw new IOException(String.format("Could not create '%s'.", file.getName()));
+			written = true;
+			return size;
+		} finally {
+			if (!written)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Writes an entry (see {@link #readFields(ByteBuffer, OsuFile)}).
+	 * @param writer the writer
+	 * @param rs the result set, positioned at a row of the beatmap table
+	 * @throws IOException if the entry could not be written
+	 * @throws SQLException if the row could not be read
+	 */
+	private static void writeEntry(OsuWriter writer, ResultSet rs) throws IOException, SQLException {
+		writeString(writer, rs.getString(1));  // dir
+		writeString(writer, rs.getString(2));  // file
+		writer.write(rs.getLong(3));  // lastModified
+		writer.write(rs.getInt(4));
+		writer.write(rs.getInt(5));
+		for (int i = 6; i <= 13; i++)  // title ... tags
+			writeString(writer, rs.getString(i));
+		for (int i = 14; i <= 16; i++)  // hit object counts
+			writer.write(rs.getInt(i));
+		for (int i = 17; i <= 22; i++)  // difficulty
+			writer.write(rs.getFloat(i));
+		for (int i = 23; i <= 25; i++)  // bpmMin, bpmMax, endTime
+			writer.write(rs.getInt(i));
+		writeString(writer, rs.getString(26));
+		writer.write(rs.getInt(27));
+		writer.write(rs.getInt(28));
+		writer.write(rs.getByte(29));
+		writeString(writer, rs.getString(30));
+		writer.write(rs.getFloat(31));
+		writer.write(rs.getByte(32));
+		for (int i = 33; i <= 35; i++)  // flags
+			writer.write(rs.getBoolean(i));
+		writeString(writer, rs.getString(36));
+		writer.write(rs.getInt(40));
+		writer.write(rs.getInt(41));
+	}
+
+	/**
+	 * Writes a nullable string (see {@link #readString(ByteBuffer)}).
+	 * @param writer the writer
+	 * @param s the string, or null
+	 * @throws IOException if the string could not be written
+	 */
+	private static void writeString(OsuWriter writer, String s) throws IOException {
+		writer.write(s != null);
+		if (s != null)
+			writer.write(s);
+	}
+}
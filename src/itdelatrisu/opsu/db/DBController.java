@@ -48,7 +48,7 @@ public class DBController {
 	}
 
 	/**
-	 * Closes all database connections.
+	 * Commits all pending writes and closes all database connections.
 	 */
 	public static void closeConnections() {
 		OsuDB.closeConnection();
@@ -0,0 +1,350 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.db;
+
+import itdelatrisu.opsu.ErrorHandler;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-writer executor for database updates.
+ * <p>
+ * Writes are queued and run in order on a dedicated thread.  The queue is
+ * bounded, so callers block if it is full.  All writes waiting when the
+ * thread wakes up are run in a single transaction ("group commit"), so a
+ * burst of writes costs only one disk sync.  Each write returns a future
+ * that completes once its transaction has been committed, and
+ * {@link #sync()} waits for all writes submitted so far (for reads that
+ * must see them).
+ * <p>
+ * The connection is shared with readers, and SQLite connections do not
+ * support concurrent use (and the databases are opened in exclusive locking
+ * mode, so readers cannot use a connection of their own).  Each transaction
+ * therefore runs while holding the connection's lock, and readers must also
+ * hold it while querying.
+ */
+class DBWriter {
+	/** Capacity of the write queue. */
+	private static final int QUEUE_CAPACITY = 256;
+
+	/** Maximum number of writes in a transaction. */
+	private static final int MAX_BATCH_SIZE = 64;
+
+	/** Maximum time to wait for pending writes when closing, in ms. */
+	private static final int CLOSE_TIMEOUT = 10000;
+
+	/** Interval at which blocked callers check whether the writer thread is still running, in ms. */
+	private static final int POLL_INTERVAL = 1000;
+
+	/** A queued write. */
+	private static class Write extends FutureTask<Void> {
+		/** The write. */
+		private final Runnable task;
+
+		/** The error thrown by the write, if any. */
+		private RuntimeException error;
+
+		/**
+		 * Constructor.
+		 * @param task the write
+		 */
+		public Write(Runnable task) {
+			super(task, null);
+			this.task = task;
+		}
+
+		/**
+		 * Runs the write (within the current transaction).
+		 */
+		public void execute() {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				error = e;
+			}
+		}
+
+		/**
+		 * Completes the future.
+		 * @param commitError the error committing the transaction, or null if none
+		 */
+		public void complete(SQLException commitError) {
+			if (error != null)
+				setException(error);
+			else if (commitError != null)
+				setException(commitError);
+			else
+				set(null);
+		}
+	}
+
+	/** A write that does nothing. */
+	private static final Runnable NOOP = new Runnable() {
+		@Override
+		public void run() {}
+	};
+
+	/** Queue entry stopping the writer thread. */
+	private static final Write STOP = new Write(NOOP);
+
+	/** The database connection. */
+	private final Connection connection;
+
+	/** The database name (for error messages). */
+	private final String name;
+
+	/** The write queue. */
+	private final BlockingQueue<Write> queue = new ArrayBlockingQueue<Write>(QUEUE_CAPACITY);
+
+	/** The writer thread. */
+	private final Thread thread;
+
+	/** Whether the writer has been closed. */
+	private volatile boolean closed = false;
+
+	/** Whether the writer thread has stopped taking writes from the queue. */
+	private volatile boolean stopped = false;
+
+	/** Lock held while queueing a write, so that writes are counted in queue order. */
+	private final Object submitLock = new Object();
+
+	/** Number of writes queued (only written while holding submitLock). */
+	private volatile long submitted = 0;
+
+	/** Number of queued writes completed (guarded by this). */
+	private long completed = 0;
+
+	/**
+	 * Constructor.  Starts the writer thread.
+	 * @param name the database name (for error messages)
+	 * @param connection the database connection
+	 */
+	public DBWriter(String name, Connection connection) {
+		this.name = name;
+		this.connection = connection;
+		this.thread = new Thread(String.format("DBWriter (%s)", name)) {
+			@Override
+			public void run() { runWriter(); }
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns a future that has already completed.
+	 */
+	public static Future<Void> done() {
+		FutureTask<Void> future = new FutureTask<Void>(NOOP, null);
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Queues a write, blocking if the queue is full.
+	 * If the writer has been closed, the write is not run and its future
+	 * fails; if it is closed while the write is being queued, the write is
+	 * either committed or failed, but never left pending.
+	 * @param task the write (any SQLExceptions should be handled by it)
+	 * @return a future that completes once the write has been committed
+	 */
+	public Future<Void> submit(Runnable task) {
+		Write write = new Write(task);
+		if (closed) {
+			fail(write);
+			return write;
+		}
+
+		// writes are committed in queue order, so counting them in the same
+		// order lets sync() wait for a prefix of the queue
+		boolean queued = false, interrupted = false;
+		synchronized (submitLock) {
+			while (!stopped) {
+				try {
+					queued = queue.offer(write, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+					if (queued) {
+						submitted++;
+						break;
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		// the writer thread stopped before or while queueing: it may never see the write
+		if (!queued)
+			fail(write);
+		else if (stopped)
+			failPending();
+		return write;
+	}
+
+	/**
+	 * Waits until all writes submitted so far have been committed.
+	 */
+	public void sync() {
+		if (Thread.currentThread() == thread)
+			return;
+
+		boolean interrupted = false;
+		synchronized (this) {
+			long target = submitted;
+			while (completed < target && thread.isAlive()) {
+				try {
+					wait(POLL_INTERVAL);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Commits all pending writes and stops the writer thread.
+	 */
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+
+		try {
+			if (queue.offer(STOP, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS))
+				thread.join(CLOSE_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Runs queued writes until stopped, then runs any writes queued
+	 * concurrently with the stop request.
+	 */
+	private void runWriter() {
+		try {
+			List<Write> batch = new ArrayList<Write>(MAX_BATCH_SIZE);
+			while (true) {
+				try {
+					batch.add(queue.take());
+				} catch (InterruptedException e) {
+					continue;
+				}
+				queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+				boolean stop = batch.remove(STOP);
+				if (stop)
+					stopped = true;
+				if (!batch.isEmpty())
+					commit(batch);
+				batch.clear();
+				if (stop)
+					break;
+			}
+
+			// writes that raced with close() (submit() fails any queued after this)
+			while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+				commit(batch);
+				batch.clear();
+			}
+		} finally {
+			stopped = true;
+			failPending();
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Fails all writes left in the queue.
+	 */
+	private void failPending() {
+		Write write;
+		while ((write = queue.poll()) != null) {
+			if (write == STOP)
+				continue;
+			fail(write);
+			synchronized (this) {
+				completed++;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Fails a write that will never be run.
+	 * @param write the write
+	 */
+	private void fail(Write write) {
+		write.complete(new SQLException(String.format("The %s database writer has been closed.", name)));
+	}
+
+	/**
+	 * Runs writes in a single transaction.
+	 * @param batch the writes
+	 */
+	private void commit(List<Write> batch) {
+		SQLException error = null;
+		synchronized (connection) {
+			try {
+				connection.setAutoCommit(false);
+				for (Write write : batch)
+					write.execute();
+				connection.commit();
+			} catch (SQLException e) {
+				error = e;
+				try {
+					connection.rollback();
+				} catch (SQLException e1) {
+					// ignore (the transaction may not have started)
+				}
+			} finally {
+				try {
+					connection.setAutoCommit(true);
+				} catch (SQLException e) {
+					if (error == null)
+						error = e;
+				}
+			}
+		}
+		if (error != null)
+			ErrorHandler.error(String.format("Failed to commit %s database writes.", name), error, true);
+
+		for (Write write : batch) {
+			if (write.error != null)
+				ErrorHandler.error(String.format("Failed to write to %s database.", name), write.error, true);
+			write.complete(error);
+		}
+		synchronized (this) {
+			completed += batch.size();
+			notifyAll();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.db;
+
+import java.io.File;
+
+/**
+ * Summary of a beatmap directory at the time it was last scanned,
+ * used to skip directories that have not changed.
+ */
+public class DirectoryManifest {
+	/** The directory name. */
+	public final String dir;
+
+	/** The last modified time of the directory. */
+	public final long lastModified;
+
+	/** The number of OSU files in the directory. */
+	public final int fileCount;
+
+	/** Order-independent hash of all OSU file names and last modified times (and the newest time). */
+	public final long hash;
+
+	/**
+	 * Constructor.
+	 * @param dir the directory name
+	 * @param lastModified the last modified time of the directory
+	 * @param fileCount the number of OSU files
+	 * @param hash the hash of all OSU files
+	 */
+	public DirectoryManifest(String dir, long lastModified, int fileCount, long hash) {
+		this.dir = dir;
+		this.lastModified = lastModified;
+		this.fileCount = fileCount;
+		this.hash = hash;
+	}
+
+	/**
+	 * Creates a manifest for a directory.
+	 * @param dir the directory
+	 * @param lastModified the last modified time of the directory (read before listing files)
+	 * @param files the OSU files in the directory
+	 * @return the new manifest
+	 */
+	public static DirectoryManifest create(File dir, long lastModified, File[] files) {
+		long hash = 0, newest = 0;
+		for (File file : files) {
+			long fileLastModified = file.lastModified();
+			hash += file.getName().hashCode() * 31L + fileLastModified;
+			newest = Math.max(newest, fileLastModified);
+		}
+		hash = hash * 31 + newest;
+		return new DirectoryManifest(dir.getName(), lastModified, files.length, hash);
+	}
+
+	/**
+	 * Returns whether the OSU files described by this manifest are identical
+	 * to those of another manifest (ignoring the directory modification time).
+	 * @param other the other manifest
+	 * @return true if the contents match
+	 */
+	public boolean contentEquals(DirectoryManifest other) {
+		return (other != null && fileCount == other.fileCount && hash == other.hash);
+	}
+}
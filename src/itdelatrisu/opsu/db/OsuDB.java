@@ -19,19 +19,24 @@
 package itdelatrisu.opsu.db;
 
 import itdelatrisu.opsu.ErrorHandler;
+import itdelatrisu.opsu.FullOsuFile;
 import itdelatrisu.opsu.Options;
 import itdelatrisu.opsu.OsuFile;
-import itdelatrisu.opsu.OsuParser;
+import itdelatrisu.opsu.StringPool;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Future;
 
 import org.newdawn.slick.util.Log;
 
@@ -43,7 +48,7 @@ public class OsuDB {
 	 * Current database version.
 	 * This value should be changed whenever the database format changes.
 	 */
-	private static final String DATABASE_VERSION = "2014-03-08";
+	private static final String DATABASE_VERSION = "2015-04-12";
 
 	/** Minimum batch size ratio ({@code batchSize/cacheSize}) to invoke batch loading. */
 	private static final float LOAD_BATCH_MIN_RATIO = 0.2f;
@@ -60,8 +65,26 @@ public class OsuDB {
 	/** Query statements. */
 	private static PreparedStatement insertStmt, selectStmt, deleteMapStmt, deleteGroupStmt, updateSizeStmt;
 
+	/** Directory manifest statements. */
+	private static PreparedStatement updateManifestStmt, deleteManifestStmt;
+
+	/** Snapshot ID statement. */
+	private static PreparedStatement updateSnapshotStmt;
+
 	/** Current size of beatmap cache table. */
-	private static int cacheSize = -1;
+	private static volatile int cacheSize = -1;
+
+	/** The database writer. */
+	private static DBWriter writer;
+
+	/** The beatmap snapshot (null if none, stale, or unreadable). */
+	private static volatile BeatmapSnapshot snapshot;
+
+	/** Whether the snapshot file matches the beatmap table. */
+	private static volatile boolean snapshotCurrent = false;
+
+	/** Number of changes to the beatmap table (guarded by the connection). */
+	private static long beatmapVersion = 0;
 
 	// This class should not be instantiated.
 	private OsuDB() {}
@@ -83,23 +106,37 @@ public class OsuDB {
 			insertStmt = connection.prepareStatement(
 				"INSERT INTO beatmaps VALUES (" +
 				"?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
-				"?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+				"?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
 			);
 			selectStmt = connection.prepareStatement("SELECT * FROM beatmaps WHERE dir = ? AND file = ?");
 			deleteMapStmt = connection.prepareStatement("DELETE FROM beatmaps WHERE dir = ? AND file = ?");
 			deleteGroupStmt = connection.prepareStatement("DELETE FROM beatmaps WHERE dir = ?");
 			updateSizeStmt = connection.prepareStatement("REPLACE INTO info (key, value) VALUES ('size', ?)");
+			updateManifestStmt = connection.prepareStatement("REPLACE INTO manifest VALUES (?, ?, ?, ?)");
+			deleteManifestStmt = connection.prepareStatement("DELETE FROM manifest WHERE dir = ?");
+			updateSnapshotStmt = connection.prepareStatement("REPLACE INTO info (key, value) VALUES ('snapshot', ?)");
 		} catch (SQLException e) {
 			ErrorHandler.error("Failed to prepare beatmap statements.", e, true);
 		}
 
+		// start the writer
+		writer = new DBWriter("beatmap", connection);
+
 		// retrieve the cache size
 		getCacheSize();
 
 		// check the database version
 		checkVersion();
+
+		// open the beatmap snapshot
+		openSnapshot();
 	}
 
+	/**
+	 * Returns whether the database connection is open.
+	 */
+	public static boolean isConnected() { return connection != null; }
+
 	/**
 	 * Creates the database, if it does not exist.
 	 */
@@ -116,11 +153,15 @@ public class OsuDB {
 					"bpmMin INTEGER, bpmMax INTEGER, endTime INTEGER, " +
 					"audioFile TEXT, audioLeadIn INTEGER, previewTime INTEGER, countdown INTEGER, sampleSet TEXT, stackLeniency REAL, " +
 					"mode INTEGER, letterboxInBreaks BOOLEAN, widescreenStoryboard BOOLEAN, epilepsyWarning BOOLEAN, " +
-					"bg TEXT, timingPoints TEXT, breaks TEXT, combo TEXT" +
+					"bg TEXT, timingPoints TEXT, breaks TEXT, combo TEXT, " +
+					"timingPointsOffset INTEGER, hitObjectsOffset INTEGER" +
 				"); " +
 				"CREATE TABLE IF NOT EXISTS info (" +
 					"key TEXT NOT NULL UNIQUE, value TEXT" +
 				"); " +
+				"CREATE TABLE IF NOT EXISTS manifest (" +
+					"dir TEXT NOT NULL UNIQUE, lastModified INTEGER, files INTEGER, hash INTEGER" +
+				"); " +
 				"CREATE INDEX IF NOT EXISTS idx ON beatmaps (dir, file); " +
 
 				// extra optimizations
@@ -163,6 +204,105 @@ public class OsuDB {
 		}
 	}
 
+	/**
+	 * Opens the beatmap snapshot, if its ID matches the one stored in the
+	 * 'info' table.
+	 */
+	private static void openSnapshot() {
+		try (Statement stmt = connection.createStatement()) {
+			String sql = "SELECT value FROM info WHERE key = 'snapshot'";
+			ResultSet rs = stmt.executeQuery(sql);
+			long id;
+			try {
+				id = (rs.next()) ? Long.parseLong(rs.getString(1)) : 0;
+			} catch (NumberFormatException e) {
+				id = 0;
+			}
+			rs.close();
+			snapshot = BeatmapSnapshot.open(Options.OSU_DB_SNAPSHOT, DATABASE_VERSION, id);
+			snapshotCurrent = (snapshot != null);
+		} catch (SQLException e) {
+			ErrorHandler.error("Could not get beatmap snapshot ID.", e, true);
+		}
+	}
+
+	/**
+	 * Marks the beatmap snapshot as stale.
+	 * Must be called in the same transaction as every change to the
+	 * beatmap table.
+	 * @throws SQLException
+	 */
+	private static void invalidateSnapshot() throws SQLException {
+		beatmapVersion++;
+		if (!snapshotCurrent)
+			return;
+
+		updateSnapshotStmt.setString(1, "");
+		updateSnapshotStmt.executeUpdate();
+		snapshotCurrent = false;
+		snapshot = null;
+	}
+
+	/**
+	 * Rewrites the beatmap snapshot from the beatmap table, if it is stale
+	 * or unreadable.  The rows are streamed to the file on the calling
+	 * thread, outside of any write transaction; the new snapshot ID is then
+	 * stored asynchronously, unless the table has changed in the meantime.
+	 * @return a future that completes once the snapshot ID has been stored
+	 */
+	public static synchronized Future<Void> updateSnapshot() {
+		if (connection == null)
+			return DBWriter.done();
+		writer.sync();  // see pending writes
+		if (snapshotCurrent && snapshot != null)
+			return DBWriter.done();
+
+		Random random = new Random();
+		long id;
+		do {
+			id = random.nextLong();
+		} while (id == 0);
+
+		final long version;
+		synchronized (connection) {
+			version = beatmapVersion;
+			try (Statement stmt = connection.createStatement()) {
+				stmt.setFetchSize(100);
+				String sql = "SELECT * FROM beatmaps";
+				ResultSet rs = stmt.executeQuery(sql);
+				try {
+					BeatmapSnapshot.write(Options.OSU_DB_SNAPSHOT, DATABASE_VERSION, id, rs);
+				} finally {
+					rs.close();
+				}
+			} catch (IOException e) {
+				Log.warn("Failed to write beatmap snapshot.", e);
+				return DBWriter.done();
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to write beatmap snapshot.", e, true);
+				return DBWriter.done();
+			}
+		}
+
+		final long snapshotID = id;
+		return writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				if (beatmapVersion != version)
+					return;  // the snapshot is already stale
+
+				try {
+					updateSnapshotStmt.setString(1, Long.toString(snapshotID));
+					updateSnapshotStmt.executeUpdate();
+					snapshotCurrent = true;
+					snapshot = BeatmapSnapshot.open(Options.OSU_DB_SNAPSHOT, DATABASE_VERSION, snapshotID);
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to store beatmap snapshot ID.", e, true);
+				}
+			}
+		});
+	}
+
 	/**
 	 * Retrieves the size of the beatmap cache from the 'info' table.
 	 */
@@ -203,47 +343,73 @@ public class OsuDB {
 		if (connection == null)
 			return;
 
-		// drop the table, then recreate it
-		try (Statement stmt = connection.createStatement()) {
-			String sql = "DROP TABLE beatmaps";
-			stmt.executeUpdate(sql);
-			cacheSize = 0;
-			updateCacheSize();
-		} catch (SQLException e) {
-			ErrorHandler.error("Could not drop beatmap database.", e, true);
+		writer.sync();  // don't interleave with pending writes
+
+		// drop the tables, then recreate them
+		synchronized (connection) {
+			try (Statement stmt = connection.createStatement()) {
+				String sql = "DROP TABLE beatmaps";
+				stmt.executeUpdate(sql);
+				sql = "DROP TABLE IF EXISTS manifest";
+				stmt.executeUpdate(sql);
+				cacheSize = 0;
+				updateCacheSize();
+				invalidateSnapshot();
+			} catch (SQLException e) {
+				ErrorHandler.error("Could not drop beatmap database.", e, true);
+			}
+			createDatabase();
 		}
-		createDatabase();
 	}
 
 	/**
-	 * Adds the OsuFile to the database.
+	 * Adds the OsuFile to the database (asynchronously).
 	 * @param osu the OsuFile object
+	 * @return a future that completes once the beatmap has been written
 	 */
-	public static void insert(OsuFile osu) {
+	public static Future<Void> insert(final FullOsuFile osu) {
 		if (connection == null)
-			return;
+			return DBWriter.done();
 
-		try {
-			setStatementFields(insertStmt, osu);
-			cacheSize += insertStmt.executeUpdate();
-			updateCacheSize();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to add beatmap to database.", e, true);
-		}
+		return writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					invalidateSnapshot();
+					setStatementFields(insertStmt, osu);
+					cacheSize += insertStmt.executeUpdate();
+					updateCacheSize();
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to add beatmap to database.", e, true);
+				}
+			}
+		});
 	}
 
 	/**
-	 * Adds the OsuFiles to the database in a batch.
+	 * Adds the OsuFiles to the database in a batch (asynchronously).
 	 * @param batch a list of OsuFile objects
+	 * @return a future that completes once the beatmaps have been written
 	 */
-	public static void insert(List<OsuFile> batch) {
+	public static Future<Void> insert(List<FullOsuFile> batch) {
 		if (connection == null)
-			return;
+			return DBWriter.done();
+
+		final List<FullOsuFile> list = new ArrayList<FullOsuFile>(batch);
+		return writer.submit(new Runnable() {
+			@Override
+			public void run() { insertBatch(list); }
+		});
+	}
 
+	/**
+	 * Adds the OsuFiles to the database in a batch.
+	 * Must be run by the writer (within its transaction).
+	 * @param batch a list of OsuFile objects
+	 */
+	private static void insertBatch(List<FullOsuFile> batch) {
 		try (Statement stmt = connection.createStatement()) {
-			// turn off auto-commit mode
-			boolean autoCommit = connection.getAutoCommit();
-			connection.setAutoCommit(false);
+			invalidateSnapshot();
 
 			// drop indexes
 			boolean recreateIndexes = (batch.size() >= INSERT_BATCH_MIN);
@@ -253,7 +419,7 @@ public class OsuDB {
 			}
 
 			// batch insert
-			for (OsuFile osu : batch) {
+			for (FullOsuFile osu : batch) {
 				try {
 					setStatementFields(insertStmt, osu);
 				} catch (SQLException e) {
@@ -274,10 +440,6 @@ public class OsuDB {
 				stmt.executeUpdate(sql);
 			}
 
-			// restore previous auto-commit mode
-			connection.commit();
-			connection.setAutoCommit(autoCommit);
-
 			// update cache size
 			updateCacheSize();
 		} catch (SQLException e) {
@@ -291,7 +453,7 @@ public class OsuDB {
 	 * @param osu the OsuFile
 	 * @throws SQLException
 	 */
-	private static void setStatementFields(PreparedStatement stmt, OsuFile osu)
+	private static void setStatementFields(PreparedStatement stmt, FullOsuFile osu)
 			throws SQLException {
 		try {
 			stmt.setString(1, osu.getFile().getParentFile().getName());
@@ -333,6 +495,8 @@ public class OsuDB {
 			stmt.setString(37, osu.timingPointsToString());
 			stmt.setString(38, osu.breaksToString());
 			stmt.setString(39, osu.comboToString());
+			stmt.setInt(40, osu.timingPointsOffset);
+			stmt.setInt(41, osu.hitObjectsOffset);
 		} catch (SQLException e) {
 			throw e;
 		} catch (Exception e) {
@@ -342,27 +506,35 @@ public class OsuDB {
 
 	/**
 	 * Loads OsuFile fields from the database.
+	 * Fields that only a {@link FullOsuFile} has are only loaded into one.
 	 * @param osu the OsuFile object
 	 * @param flag whether to load all fields (LOAD_ALL), non-array
 	 *        fields (LOAD_NONARRAY), or array fields (LOAD_ARRAY)
+	 * @return true if the beatmap was found in the database
 	 */
-	public static void load(OsuFile osu, int flag) {
+	public static boolean load(OsuFile osu, int flag) {
 		if (connection == null)
-			return;
+			return false;
+		writer.sync();  // see pending writes
 
-		try {
-			selectStmt.setString(1, osu.getFile().getParentFile().getName());
-			selectStmt.setString(2, osu.getFile().getName());
-			ResultSet rs = selectStmt.executeQuery();
-			if (rs.next()) {
-				if ((flag & LOAD_NONARRAY) > 0)
-					setOsuFileFields(rs, osu);
-				if ((flag & LOAD_ARRAY) > 0)
-					setOsuFileArrayFields(rs, osu);
+		synchronized (connection) {
+			try {
+				selectStmt.setString(1, osu.getFile().getParentFile().getName());
+				selectStmt.setString(2, osu.getFile().getName());
+				ResultSet rs = selectStmt.executeQuery();
+				boolean found = rs.next();
+				if (found) {
+					if ((flag & LOAD_NONARRAY) > 0)
+						setOsuFileFields(rs, osu);
+					if ((flag & LOAD_ARRAY) > 0)
+						setOsuFileArrayFields(rs, osu);
+				}
+				rs.close();
+				return found;
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to load OsuFile from database.", e, true);
+				return false;
 			}
-			rs.close();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to load OsuFile from database.", e, true);
 		}
 	}
 
@@ -375,6 +547,7 @@ public class OsuDB {
 	public static void load(List<OsuFile> batch, int flag) {
 		if (connection == null)
 			return;
+		writer.sync();  // see pending writes
 
 		// batch size too small
 		int size = batch.size();
@@ -384,53 +557,77 @@ public class OsuDB {
 			return;
 		}
 
-		try (Statement stmt = connection.createStatement()) {
-			// create map
-			HashMap<String, HashMap<String, OsuFile>> map = new HashMap<String, HashMap<String, OsuFile>>();
-			for (OsuFile osu : batch) {
-				String parent = osu.getFile().getParentFile().getName();
-				String name = osu.getFile().getName();
-				HashMap<String, OsuFile> m = map.get(parent);
-				if (m == null) {
-					m = new HashMap<String, OsuFile>();
-					map.put(parent, m);
-				}
-				m.put(name, osu);
+		// create map
+		Map<String, Map<String, OsuFile>> map = new HashMap<String, Map<String, OsuFile>>();
+		for (OsuFile osu : batch) {
+			String parent = osu.getFile().getParentFile().getName();
+			String name = osu.getFile().getName();
+			Map<String, OsuFile> m = map.get(parent);
+			if (m == null) {
+				m = new HashMap<String, OsuFile>();
+				map.put(parent, m);
 			}
+			m.put(name, osu);
+		}
 
-			// iterate through database to load OsuFiles
-			int count = 0;
-			stmt.setFetchSize(100);
-			String sql = "SELECT * FROM beatmaps";
-			ResultSet rs = stmt.executeQuery(sql);
-			while (rs.next()) {
-				String parent = rs.getString(1);
-				HashMap<String, OsuFile> m = map.get(parent);
-				if (m != null) {
-					String name = rs.getString(2);
-					OsuFile osu = m.get(name);
-					if (osu != null) {
-						try {
-							if ((flag & LOAD_NONARRAY) > 0)
-								setOsuFileFields(rs, osu);
-							if ((flag & LOAD_ARRAY) > 0)
-								setOsuFileArrayFields(rs, osu);
-						} catch (SQLException e) {
-							Log.error(String.format("Failed to load map '%s/%s' from database.", parent, name), e);
+		// load non-array fields from the snapshot, if current
+		int count = 0;
+		BeatmapSnapshot s = getSnapshot();
+		if (s != null && flag == LOAD_NONARRAY) {
+			try {
+				count = s.load(map);
+				if (map.isEmpty())
+					return;
+			} catch (RuntimeException e) {
+				Log.warn("Failed to read beatmap snapshot.", e);
+				snapshot = null;
+			}
+		}
+
+		synchronized (connection) {
+			try (Statement stmt = connection.createStatement()) {
+				// iterate through database to load remaining OsuFiles
+				stmt.setFetchSize(100);
+				String sql = "SELECT * FROM beatmaps";
+				ResultSet rs = stmt.executeQuery(sql);
+				while (rs.next()) {
+					String parent = rs.getString(1);
+					Map<String, OsuFile> m = map.get(parent);
+					if (m != null) {
+						String name = rs.getString(2);
+						OsuFile osu = m.get(name);
+						if (osu != null) {
+							try {
+								if ((flag & LOAD_NONARRAY) > 0)
+									setOsuFileFields(rs, osu);
+								if ((flag & LOAD_ARRAY) > 0)
+									setOsuFileArrayFields(rs, osu);
+							} catch (SQLException e) {
+								Log.error(String.format("Failed to load map '%s/%s' from database.", parent, name), e);
+							}
+							if (++count >= size)
+								break;
 						}
-						if (++count >= size)
-							break;
 					}
 				}
+				rs.close();
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to load OsuFiles from database.", e, true);
 			}
-			rs.close();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to load OsuFiles from database.", e, true);
 		}
 	}
 
+	/**
+	 * Returns the beatmap snapshot if it matches the beatmap table, or null.
+	 * Pending writes must be synced first.
+	 */
+	private static BeatmapSnapshot getSnapshot() {
+		return (snapshotCurrent) ? snapshot : null;
+	}
+
 	/**
 	 * Sets all OsuFile non-array fields using a given result set.
+	 * Fields that only a {@link FullOsuFile} has are skipped for other OsuFiles.
 	 * @param rs the result set containing the fields
 	 * @param osu the OsuFile
 	 * @throws SQLException
@@ -439,14 +636,14 @@ public class OsuDB {
 		try {
 			osu.beatmapID = rs.getInt(4);
 			osu.beatmapSetID = rs.getInt(5);
-			osu.title = OsuParser.getDBString(rs.getString(6));
-			osu.titleUnicode = OsuParser.getDBString(rs.getString(7));
-			osu.artist = OsuParser.getDBString(rs.getString(8));
-			osu.artistUnicode = OsuParser.getDBString(rs.getString(9));
-			osu.creator = OsuParser.getDBString(rs.getString(10));
-			osu.version = OsuParser.getDBString(rs.getString(11));
-			osu.source = OsuParser.getDBString(rs.getString(12));
-			osu.tags = OsuParser.getDBString(rs.getString(13));
+			osu.title = StringPool.get(rs.getString(6));
+			osu.titleUnicode = StringPool.get(rs.getString(7));
+			osu.artist = StringPool.get(rs.getString(8));
+			osu.artistUnicode = StringPool.get(rs.getString(9));
+			osu.creator = StringPool.get(rs.getString(10));
+			osu.version = StringPool.get(rs.getString(11));
+			osu.source = StringPool.get(rs.getString(12));
+			osu.tags = StringPool.get(rs.getString(13));
 			osu.hitObjectCircle = rs.getInt(14);
 			osu.hitObjectSlider = rs.getInt(15);
 			osu.hitObjectSpinner = rs.getInt(16);
@@ -454,22 +651,27 @@ public class OsuDB {
 			osu.circleSize = rs.getFloat(18);
 			osu.overallDifficulty = rs.getFloat(19);
 			osu.approachRate = rs.getFloat(20);
-			osu.sliderMultiplier = rs.getFloat(21);
-			osu.sliderTickRate = rs.getFloat(22);
 			osu.bpmMin = rs.getInt(23);
 			osu.bpmMax = rs.getInt(24);
 			osu.endTime = rs.getInt(25);
-			osu.audioFilename = new File(osu.getFile().getParentFile(), OsuParser.getDBString(rs.getString(26)));
-			osu.audioLeadIn = rs.getInt(27);
+			osu.audioFilename = new File(osu.getFile().getParentFile(), StringPool.get(rs.getString(26)));
 			osu.previewTime = rs.getInt(28);
-			osu.countdown = rs.getByte(29);
-			osu.sampleSet = OsuParser.getDBString(rs.getString(30));
-			osu.stackLeniency = rs.getFloat(31);
 			osu.mode = rs.getByte(32);
-			osu.letterboxInBreaks = rs.getBoolean(33);
-			osu.widescreenStoryboard = rs.getBoolean(34);
-			osu.epilepsyWarning = rs.getBoolean(35);
-			osu.bg = OsuParser.getDBString(rs.getString(36));
+			osu.bg = StringPool.get(rs.getString(36));
+			if (osu instanceof FullOsuFile) {
+				FullOsuFile full = (FullOsuFile) osu;
+				full.sliderMultiplier = rs.getFloat(21);
+				full.sliderTickRate = rs.getFloat(22);
+				full.audioLeadIn = rs.getInt(27);
+				full.countdown = rs.getByte(29);
+				full.sampleSet = StringPool.get(rs.getString(30));
+				full.stackLeniency = rs.getFloat(31);
+				full.letterboxInBreaks = rs.getBoolean(33);
+				full.widescreenStoryboard = rs.getBoolean(34);
+				full.epilepsyWarning = rs.getBoolean(35);
+				full.timingPointsOffset = rs.getInt(40);
+				full.hitObjectsOffset = rs.getInt(41);
+			}
 		} catch (SQLException e) {
 			throw e;
 		} catch (Exception e) {
@@ -479,15 +681,19 @@ public class OsuDB {
 
 	/**
 	 * Sets all OsuFile array fields using a given result set.
+	 * Only a {@link FullOsuFile} has array fields.
 	 * @param rs the result set containing the fields
 	 * @param osu the OsuFile
 	 * @throws SQLException
 	 */
 	private static void setOsuFileArrayFields(ResultSet rs, OsuFile osu) throws SQLException {
+		if (!(osu instanceof FullOsuFile))
+			return;
+		FullOsuFile full = (FullOsuFile) osu;
 		try {
-			osu.timingPointsFromString(rs.getString(37));
-			osu.breaksFromString(rs.getString(38));
-			osu.comboFromString(rs.getString(39));
+			full.timingPointsFromString(rs.getString(37));
+			full.breaksFromString(rs.getString(38));
+			full.comboFromString(rs.getString(39));
 		} catch (SQLException e) {
 			throw e;
 		} catch (Exception e) {
@@ -496,65 +702,201 @@ public class OsuDB {
 	}
 
 	/**
-	 * Returns a map of file paths ({dir}/{file}) to last modified times, or
-	 * null if any error occurred.
+	 * Returns a map of directory names to maps of file names to last
+	 * modified times, or null if any error occurred.
 	 */
-	public static Map<String, Long> getLastModifiedMap() {
+	public static Map<String, Map<String, Long>> getLastModifiedMap() {
 		if (connection == null)
 			return null;
+		writer.sync();  // see pending writes
 
-		try (Statement stmt = connection.createStatement()) {
-			Map<String, Long> map = new HashMap<String, Long>();
-			String sql = "SELECT dir, file, lastModified FROM beatmaps";
-			ResultSet rs = stmt.executeQuery(sql);
-			stmt.setFetchSize(100);
-			while (rs.next()) {
-				String path = String.format("%s/%s", rs.getString(1), rs.getString(2));
-				long lastModified = rs.getLong(3);
-				map.put(path, lastModified);
+		// read from the snapshot, if current
+		BeatmapSnapshot s = getSnapshot();
+		if (s != null) {
+			try {
+				return s.getLastModifiedMap();
+			} catch (RuntimeException e) {
+				Log.warn("Failed to read beatmap snapshot.", e);
+				snapshot = null;
 			}
-			rs.close();
-			return map;
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to get last modified map from database.", e, true);
+		}
+
+		synchronized (connection) {
+			try (Statement stmt = connection.createStatement()) {
+				Map<String, Map<String, Long>> map = new HashMap<String, Map<String, Long>>();
+				String sql = "SELECT dir, file, lastModified FROM beatmaps";
+				ResultSet rs = stmt.executeQuery(sql);
+				stmt.setFetchSize(100);
+				while (rs.next()) {
+					String dir = rs.getString(1);
+					Map<String, Long> m = map.get(dir);
+					if (m == null) {
+						m = new HashMap<String, Long>();
+						map.put(dir, m);
+					}
+					m.put(rs.getString(2), rs.getLong(3));
+				}
+				rs.close();
+				return map;
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to get last modified map from database.", e, true);
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Returns a map of directory names to directory manifests, or null if
+	 * any error occurred.
+	 */
+	public static Map<String, DirectoryManifest> getManifestMap() {
+		if (connection == null)
 			return null;
+		writer.sync();  // see pending writes
+
+		synchronized (connection) {
+			try (Statement stmt = connection.createStatement()) {
+				Map<String, DirectoryManifest> map = new HashMap<String, DirectoryManifest>();
+				String sql = "SELECT dir, lastModified, files, hash FROM manifest";
+				ResultSet rs = stmt.executeQuery(sql);
+				stmt.setFetchSize(100);
+				while (rs.next()) {
+					String dir = rs.getString(1);
+					map.put(dir, new DirectoryManifest(dir, rs.getLong(2), rs.getInt(3), rs.getLong(4)));
+				}
+				rs.close();
+				return map;
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to get directory manifest from database.", e, true);
+				return null;
+			}
 		}
 	}
 
+	/**
+	 * Adds or replaces the directory manifests in the database in a batch (asynchronously).
+	 * @param batch a list of DirectoryManifest objects
+	 * @return a future that completes once the manifests have been written
+	 */
+	public static Future<Void> updateManifest(List<DirectoryManifest> batch) {
+		if (connection == null)
+			return DBWriter.done();
+
+		final List<DirectoryManifest> list = new ArrayList<DirectoryManifest>(batch);
+		return writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (DirectoryManifest manifest : list) {
+						updateManifestStmt.setString(1, manifest.dir);
+						updateManifestStmt.setLong(2, manifest.lastModified);
+						updateManifestStmt.setInt(3, manifest.fileCount);
+						updateManifestStmt.setLong(4, manifest.hash);
+						updateManifestStmt.addBatch();
+					}
+					updateManifestStmt.executeBatch();
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to update directory manifest.", e, true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deletes the manifest for a directory, forcing a full rescan of the
+	 * directory the next time it is parsed.
+	 * @param dir the directory
+	 * @return a future that completes once the manifest has been deleted
+	 */
+	public static Future<Void> deleteManifest(final String dir) {
+		if (connection == null)
+			return DBWriter.done();
+
+		return writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					deleteManifestStmt.setString(1, dir);
+					deleteManifestStmt.executeUpdate();
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to delete directory manifest.", e, true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deletes all directory manifests, forcing a full rescan of every
+	 * directory the next time they are parsed.  Cached beatmaps are kept.
+	 * @return a future that completes once the manifests have been deleted
+	 */
+	public static Future<Void> clearManifest() {
+		if (connection == null)
+			return DBWriter.done();
+
+		return writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try (Statement stmt = connection.createStatement()) {
+					String sql = "DELETE FROM manifest";
+					stmt.executeUpdate(sql);
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to clear directory manifest.", e, true);
+				}
+			}
+		});
+	}
+
 	/**
 	 * Deletes the beatmap entry from the database.
 	 * @param dir the directory
 	 * @param file the file
+	 * @return a future that completes once the entry has been deleted
 	 */
-	public static void delete(String dir, String file) {
+	public static Future<Void> delete(final String dir, final String file) {
 		if (connection == null)
-			return;
+			return DBWriter.done();
 
-		try {
-			deleteMapStmt.setString(1, dir);
-			deleteMapStmt.setString(2, file);
-			cacheSize -= deleteMapStmt.executeUpdate();
-			updateCacheSize();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to delete beatmap entry from database.", e, true);
-		}
+		return writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					invalidateSnapshot();
+					deleteMapStmt.setString(1, dir);
+					deleteMapStmt.setString(2, file);
+					cacheSize -= deleteMapStmt.executeUpdate();
+					updateCacheSize();
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to delete beatmap entry from database.", e, true);
+				}
+			}
+		});
 	}
 
 	/**
 	 * Deletes the beatmap group entry from the database.
 	 * @param dir the directory
+	 * @return a future that completes once the entries have been deleted
 	 */
-	public static void delete(String dir) {
+	public static Future<Void> delete(final String dir) {
 		if (connection == null)
-			return;
+			return DBWriter.done();
 
-		try {
-			deleteGroupStmt.setString(1, dir);
-			cacheSize -= deleteGroupStmt.executeUpdate();
-			updateCacheSize();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to delete beatmap group entry from database.", e, true);
-		}
+		return writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					invalidateSnapshot();
+					deleteGroupStmt.setString(1, dir);
+					cacheSize -= deleteGroupStmt.executeUpdate();
+					updateCacheSize();
+					deleteManifestStmt.setString(1, dir);
+					deleteManifestStmt.executeUpdate();
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to delete beatmap group entry from database.", e, true);
+				}
+			}
+		});
 	}
 
 	/**
@@ -564,12 +906,18 @@ public class OsuDB {
 		if (connection == null)
 			return;
 
+		// commit pending writes
+		writer.close();
+
 		try {
 			insertStmt.close();
 			selectStmt.close();
 			deleteMapStmt.close();
 			deleteGroupStmt.close();
 			updateSizeStmt.close();
+			updateManifestStmt.close();
+			deleteManifestStmt.close();
+			updateSnapshotStmt.close();
 			connection.close();
 			connection = null;
 		} catch (SQLException e) {
@@ -32,9 +32,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles connections and queries with the scores database.
@@ -75,6 +81,32 @@ public class ScoreDB {
 	/** Score deletion statement. */
 	private static PreparedStatement deleteSongStmt, deleteScoreStmt;
 
+	/** The database writer. */
+	private static DBWriter writer;
+
+	/** Maximum number of beatmap sets in the score cache. */
+	private static final int SCORE_CACHE_SIZE = 64;
+
+	/** Cache of beatmap set scores (see {@link #getMapSetScores(OsuFile)}), in access order (guarded by ScoreDB.class). */
+	private static final LinkedHashMap<String, Map<String, ScoreData[]>> scoreCache =
+		new LinkedHashMap<String, Map<String, ScoreData[]>>(SCORE_CACHE_SIZE * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<String, ScoreData[]>> eldest) {
+				return size() > SCORE_CACHE_SIZE;
+			}
+		};
+
+	/** Number of score cache invalidations so far (guarded by ScoreDB.class). */
+	private static long cacheVersion = 0;
+
+	/** Score prefetching thread (only the latest request is kept waiting). */
+	private static ThreadPoolExecutor prefetchExecutor;
+
+	/** The latest prefetching task (guarded by ScoreDB.class). */
+	private static Future<?> prefetchTask;
+
 	// This class should not be instantiated.
 	private ScoreDB() {}
 
@@ -119,6 +151,20 @@ public class ScoreDB {
 		} catch (SQLException e) {
 			ErrorHandler.error("Failed to prepare score statements.", e, true);
 		}
+
+		// start the writer
+		writer = new DBWriter("score", connection);
+
+		// start the prefetching thread
+		prefetchExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ScorePrefetch");
+					t.setDaemon(true);
+					return t;
+				}
+			}, new ThreadPoolExecutor.DiscardOldestPolicy());
 	}
 
 	/**
@@ -206,56 +252,105 @@ public class ScoreDB {
 	}
 
 	/**
-	 * Adds the game score to the database.
+	 * Adds the game score to the database (asynchronously).
 	 * @param data the GameData object
+	 * @return a future that completes once the score has been written
 	 */
-	public static void addScore(ScoreData data) {
+	public static Future<Void> addScore(final ScoreData data) {
 		if (connection == null)
-			return;
+			return DBWriter.done();
 
-		try {
-			setStatementFields(insertStmt, data);
-			insertStmt.setString(18, data.replayString);
-			insertStmt.executeUpdate();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to save score to database.", e, true);
-		}
+		Future<Void> future = writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					setStatementFields(insertStmt, data);
+					insertStmt.setString(18, data.replayString);
+					insertStmt.executeUpdate();
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to save score to database.", e, true);
+				}
+			}
+		});
+		invalidateCache(getMapSetKey(data.MSID, data.title, data.artist, data.creator));
+		return future;
 	}
 
 	/**
-	 * Deletes the given score from the database.
+	 * Deletes the given score from the database (asynchronously).
 	 * @param data the score to delete
+	 * @return a future that completes once the score has been deleted
 	 */
-	public static void deleteScore(ScoreData data) {
+	public static Future<Void> deleteScore(final ScoreData data) {
 		if (connection == null)
-			return;
+			return DBWriter.done();
 
-		try {
-			setStatementFields(deleteScoreStmt, data);
-			deleteScoreStmt.executeUpdate();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to delete score from database.", e, true);
-		}
+		Future<Void> future = writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					setStatementFields(deleteScoreStmt, data);
+					deleteScoreStmt.executeUpdate();
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to delete score from database.", e, true);
+				}
+			}
+		});
+		invalidateCache(getMapSetKey(data.MSID, data.title, data.artist, data.creator));
+		return future;
 	}
 
 	/**
-	 * Deletes all the scores for the given beatmap from the database.
+	 * Deletes all the scores for the given beatmap from the database (asynchronously).
 	 * @param osu the OsuFile object
+	 * @return a future that completes once the scores have been deleted
 	 */
-	public static void deleteScore(OsuFile osu) {
+	public static Future<Void> deleteScore(final OsuFile osu) {
 		if (connection == null)
-			return;
+			return DBWriter.done();
 
-		try {
-			deleteSongStmt.setInt(1, osu.beatmapID);
-			deleteSongStmt.setString(2, osu.title);
-			deleteSongStmt.setString(3, osu.artist);
-			deleteSongStmt.setString(4, osu.creator);
-			deleteSongStmt.setString(5, osu.version);
-			deleteSongStmt.executeUpdate();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to delete scores from database.", e, true);
-		}
+		Future<Void> future = writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					deleteSongStmt.setInt(1, osu.beatmapID);
+					deleteSongStmt.setString(2, osu.title);
+					deleteSongStmt.setString(3, osu.artist);
+					deleteSongStmt.setString(4, osu.creator);
+					deleteSongStmt.setString(5, osu.version);
+					deleteSongStmt.executeUpdate();
+				} catch (SQLException e) {
+					ErrorHandler.error("Failed to delete scores from database.", e, true);
+				}
+			}
+		});
+		invalidateCache(getMapSetKey(osu));
+		return future;
+	}
+
+	/**
+	 * Removes a beatmap set from the score cache.
+	 * Must be called after queueing the write that changes its scores, so
+	 * that any later query sees the write.
+	 * @param key the beatmap set key
+	 */
+	private static synchronized void invalidateCache(String key) {
+		scoreCache.remove(key);
+		cacheVersion++;
+	}
+
+	/**
+	 * Returns the score cache key for the beatmap set of an OsuFile.
+	 */
+	private static String getMapSetKey(OsuFile osu) {
+		return getMapSetKey(osu.beatmapSetID, osu.title, osu.artist, osu.creator);
+	}
+
+	/**
+	 * Returns the score cache key for a beatmap set.
+	 */
+	private static String getMapSetKey(int MSID, String title, String artist, String creator) {
+		return String.format("%d\0%s\0%s\0%s", MSID, title, artist, creator);
 	}
 
 	/**
@@ -293,29 +388,33 @@ public class ScoreDB {
 	public static ScoreData[] getMapScores(OsuFile osu) {
 		if (connection == null)
 			return null;
+		writer.sync();  // see pending writes
 
 		List<ScoreData> list = new ArrayList<ScoreData>();
-		try {
-			selectMapStmt.setInt(1, osu.beatmapID);
-			selectMapStmt.setString(2, osu.title);
-			selectMapStmt.setString(3, osu.artist);
-			selectMapStmt.setString(4, osu.creator);
-			selectMapStmt.setString(5, osu.version);
-			ResultSet rs = selectMapStmt.executeQuery();
-			while (rs.next()) {
-				ScoreData s = new ScoreData(rs);
-				list.add(s);
+		synchronized (connection) {
+			try {
+				selectMapStmt.setInt(1, osu.beatmapID);
+				selectMapStmt.setString(2, osu.title);
+				selectMapStmt.setString(3, osu.artist);
+				selectMapStmt.setString(4, osu.creator);
+				selectMapStmt.setString(5, osu.version);
+				ResultSet rs = selectMapStmt.executeQuery();
+				while (rs.next()) {
+					ScoreData s = new ScoreData(rs);
+					list.add(s);
+				}
+				rs.close();
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to read scores from database.", e, true);
+				return null;
 			}
-			rs.close();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to read scores from database.", e, true);
-			return null;
 		}
 		return getSortedArray(list);
 	}
 
 	/**
 	 * Retrieves the game scores for an OsuFile map set.
+	 * Results are cached until the set's scores change, and must not be modified.
 	 * @param osu the OsuFile
 	 * @return all scores for the beatmap set (Version, ScoreData[]),
 	 *         or null if any error occurred
@@ -324,32 +423,120 @@ public class ScoreDB {
 		if (connection == null)
 			return null;
 
+		String key = getMapSetKey(osu);
+		long version;
+		synchronized (ScoreDB.class) {
+			Map<String, ScoreData[]> map = scoreCache.get(key);
+			if (map != null)
+				return map;
+			version = cacheVersion;
+		}
+
+		// query without holding the cache lock, so that other threads are
+		// not blocked by this query (or the pending writes it waits for)
+		Map<String, ScoreData[]> map = loadMapSetScores(osu);
+		if (map == null)
+			return null;
+		map = Collections.unmodifiableMap(map);
+		synchronized (ScoreDB.class) {
+			// don't cache the result if scores changed during the query
+			if (version == cacheVersion)
+				scoreCache.put(key, map);
+		}
+		return map;
+	}
+
+	/**
+	 * Loads the scores for the beatmap sets of the given OsuFiles into the
+	 * cache in the background, cancelling any earlier request.
+	 * @param osuFiles the OsuFiles
+	 */
+	public static void prefetchMapSetScores(List<OsuFile> osuFiles) {
+		if (connection == null || osuFiles.isEmpty())
+			return;
+
+		final List<OsuFile> list = new ArrayList<OsuFile>(osuFiles);
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				for (OsuFile osu : list) {
+					if (Thread.interrupted())
+						return;
+					getMapSetScores(osu);
+				}
+			}
+		};
+		synchronized (ScoreDB.class) {
+			if (prefetchTask != null)
+				prefetchTask.cancel(true);
+			prefetchTask = prefetchExecutor.submit(task);
+		}
+	}
+
+	/**
+	 * Queries the game scores for an OsuFile map set.
+	 * @param osu the OsuFile
+	 * @return all scores for the beatmap set (Version, ScoreData[]),
+	 *         or null if any error occurred
+	 */
+	private static Map<String, ScoreData[]> loadMapSetScores(OsuFile osu) {
+		writer.sync();  // see pending writes
+
 		Map<String, ScoreData[]> map = new HashMap<String, ScoreData[]>();
-		try {
-			selectMapSetStmt.setInt(1, osu.beatmapSetID);
-			selectMapSetStmt.setString(2, osu.title);
-			selectMapSetStmt.setString(3, osu.artist);
-			selectMapSetStmt.setString(4, osu.creator);
-			ResultSet rs = selectMapSetStmt.executeQuery();
-
-			List<ScoreData> list = null;
-			String version = "";  // sorted by version, so pass through and check for differences
-			while (rs.next()) {
-				ScoreData s = new ScoreData(rs);
-				if (!s.version.equals(version)) {
-					if (list != null)
-						map.put(version, getSortedArray(list));
-					version = s.version;
-					list = new ArrayList<ScoreData>();
+		synchronized (connection) {
+			try {
+				selectMapSetStmt.setInt(1, osu.beatmapSetID);
+				selectMapSetStmt.setString(2, osu.title);
+				selectMapSetStmt.setString(3, osu.artist);
+				selectMapSetStmt.setString(4, osu.creator);
+				ResultSet rs = selectMapSetStmt.executeQuery();
+
+				List<ScoreData> list = null;
+				String version = "";  // sorted by version, so pass through and check for differences
+				while (rs.next()) {
+					ScoreData s = new ScoreData(rs);
+					if (!s.version.equals(version)) {
+						if (list != null)
+							map.put(version, getSortedArray(list));
+						version = s.version;
+						list = new ArrayList<ScoreData>();
+					}
+					list.add(s);
 				}
-				list.add(s);
+				if (list != null)
+					map.put(version, getSortedArray(list));
+				rs.close();
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to read scores from database.", e, true);
+				return null;
 			}
-			if (list != null)
-				map.put(version, getSortedArray(list));
-			rs.close();
-		} catch (SQLException e) {
-			ErrorHandler.error("Failed to read scores from database.", e, true);
+		}
+		return map;
+	}
+
+	/**
+	 * Retrieves all game scores that have an associated replay.
+	 * @return a map of replay names (see {@link ScoreData#replayString}) to scores,
+	 *         or null if any error occurred
+	 */
+	public static Map<String, ScoreData> getReplayScores() {
+		if (connection == null)
 			return null;
+		writer.sync();  // see pending writes
+
+		Map<String, ScoreData> map = new HashMap<String, ScoreData>();
+		synchronized (connection) {
+			try (Statement stmt = connection.createStatement()) {
+				ResultSet rs = stmt.executeQuery("SELECT * FROM scores WHERE replay IS NOT NULL");
+				while (rs.next()) {
+					ScoreData s = new ScoreData(rs);
+					map.put(s.replayString, s);
+				}
+				rs.close();
+			} catch (SQLException e) {
+				ErrorHandler.error("Failed to read scores from database.", e, true);
+				return null;
+			}
 		}
 		return map;
 	}
@@ -370,6 +557,17 @@ public class ScoreDB {
 		if (connection == null)
 			return;
 
+		// stop prefetching
+		prefetchExecutor.shutdownNow();
+		try {
+			prefetchExecutor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// commit pending writes
+		writer.close();
+
 		try {
 			insertStmt.close();
 			selectMapStmt.close();
@@ -0,0 +1,374 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.io;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor-based tokenizer for comma-separated OSU file lines
+ * (hit objects, timing points, events) and '|'-separated replay frames.
+ * <p>
+ * Fields are separated by ',' and may contain sub-tokens separated by
+ * '|' or ':'.  Lines may be any character sequence (e.g. a view of a file
+ * buffer, see {@link OsuSectionReader#getLineChars()}).  Numbers are parsed
+ * directly from the line without creating intermediate Strings or arrays;
+ * the parsing rules otherwise follow {@link Integer#parseInt(String)},
+ * {@link Byte#parseByte(String)}, and {@link Float#parseFloat(String)}.
+ * As with {@link String#split(String)}, trailing empty fields are ignored.
+ */
+public class LineTokenizer {
+	/** Maximum number of digits parsed by the fast floating-point path (exact in a double). */
+	private static final int MAX_FAST_FLOAT_DIGITS = 15;
+
+	/** Powers of 10 (exact in a double). */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
+
+	/** Powers of 10 (exact in a float). */
+	private static final float[] FLOAT_POWERS_OF_TEN = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	/** Largest mantissa that is exact in a float (2^24). */
+	private static final long MAX_FLOAT_MANTISSA = 1L << 24;
+
+	/** Double significand bits that are discarded when rounding to a float. */
+	private static final long FLOAT_ROUNDING_MASK = (1L << 29) - 1;
+
+	/** Discarded significand bits of a double lying halfway between two floats. */
+	private static final long FLOAT_HALFWAY = 1L << 28;
+
+	/** The current line. */
+	private CharSequence line;
+
+	/** The current position. */
+	private int position;
+
+	/** The end of the line (excluding trailing field separators). */
+	private int end;
+
+	/** The delimiter following the last token read, or 0 if none. */
+	private char delimiter;
+
+	/**
+	 * Constructor.
+	 * @param line the line to tokenize
+	 */
+	public LineTokenizer(CharSequence line) { reset(line); }
+
+	/**
+	 * Resets the tokenizer to the start of a new line.
+	 * @param line the line to tokenize
+	 * @return this tokenizer
+	 */
+	public LineTokenizer reset(CharSequence line) {
+		this.line = line;
+		this.position = 0;
+		this.delimiter = ',';
+		int end = line.length();
+		while (end > 0 && line.charAt(end - 1) == ',')
+			end--;
+		this.end = end;
+		return this;
+	}
+
+	/**
+	 * Returns whether any tokens remain.
+	 */
+	public boolean hasNext() { return position < end; }
+
+	/**
+	 * Returns the delimiter following the last token read (',', '|', or ':'),
+	 * or 0 if the end of the line was reached.
+	 */
+	public char getDelimiter() { return delimiter; }
+
+	/**
+	 * Returns the next character without advancing.
+	 * @throws NoSuchElementException if no tokens remain
+	 */
+	public char peek() {
+		checkHasNext();
+		return line.charAt(position);
+	}
+
+	/**
+	 * Returns the number of tokens in the current field, separated by the
+	 * given character (ignoring trailing empty tokens).
+	 * @param separator the separator ('|' or ':')
+	 */
+	public int countTokens(char separator) {
+		int fieldEnd = position;
+		while (fieldEnd < end && line.charAt(fieldEnd) != ',')
+			fieldEnd++;
+		while (fieldEnd > position && line.charAt(fieldEnd - 1) == separator)
+			fieldEnd--;
+		if (fieldEnd == position)
+			return 0;
+
+		int count = 1;
+		for (int i = position; i < fieldEnd; i++) {
+			if (line.charAt(i) == separator)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Skips the next token.
+	 * @throws NoSuchElementException if no tokens remain
+	 */
+	public void skipToken() {
+		checkHasNext();
+		advance(tokenEnd());
+	}
+
+	/**
+	 * Skips to the start of the next field.  If the last token ended
+	 * a field, the entire next field is skipped; otherwise, the remainder
+	 * of the current field is skipped.
+	 */
+	public void skipField() {
+		while (position < end) {
+			char c = line.charAt(position++);
+			if (c == ',') {
+				delimiter = c;
+				return;
+			}
+		}
+		delimiter = 0;
+	}
+
+	/**
+	 * Returns whether the next token equals the given string, and consumes
+	 * the token if so.
+	 * @param s the string to compare
+	 * @throws NoSuchElementException if no tokens remain
+	 */
+	public boolean nextEquals(String s) {
+		checkHasNext();
+		int tokenEnd = tokenEnd();
+		if (tokenEnd - position != s.length())
+			return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (line.charAt(position + i) != s.charAt(i))
+				return false;
+		}
+		advance(tokenEnd);
+		return true;
+	}
+
+	/**
+	 * Returns the remainder of the current field as a String.
+	 * @throws NoSuchElementException if no tokens remain
+	 */
+	public String nextString() {
+		checkHasNext();
+		int start = position, fieldEnd = fieldEnd();
+		advance(fieldEnd);
+		return line.subSequence(start, fieldEnd).toString();
+	}
+
+	/**
+	 * Returns the remainder of the current field as a String, removing
+	 * a leading and trailing quote (") character if present.
+	 * @throws NoSuchElementException if no tokens remain
+	 */
+	public String nextQuotedString() {
+		checkHasNext();
+		int start = position, fieldEnd = fieldEnd();
+		advance(fieldEnd);
+		if (line.charAt(start) == '"')
+			start++;
+		if (fieldEnd > start && line.charAt(fieldEnd - 1) == '"')
+			fieldEnd--;
+		return line.subSequence(start, fieldEnd).toString();
+	}
+
+	/**
+	 * Parses the next token as an integer.
+	 * @throws NoSuchElementException if no tokens remain
+	 * @throws NumberFormatException if the token is not a valid integer
+	 */
+	public int nextInt() {
+		checkHasNext();
+		int start = position, tokenEnd = tokenEnd();
+		int i = start;
+		boolean negative = false;
+		if (i < tokenEnd) {
+			char c = line.charAt(i);
+			if (c == '-' || c == '+') {
+				negative = (c == '-');
+				i++;
+			}
+		}
+		if (i == tokenEnd)
+			throw numberFormatException(start, tokenEnd);
+
+		long value = 0;
+		for (; i < tokenEnd; i++) {
+			int digit = line.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				throw numberFormatException(start, tokenEnd);
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1)
+				throw numberFormatException(start, tokenEnd);
+		}
+		if (negative)
+			value = -value;
+		if (value > Integer.MAX_VALUE)
+			throw numberFormatException(start, tokenEnd);
+		advance(tokenEnd);
+		return (int) value;
+	}
+
+	/**
+	 * Parses the next token as a byte.
+	 * @throws NoSuchElementException if no tokens remain
+	 * @throws NumberFormatException if the token is not a valid byte
+	 */
+	public byte nextByte() {
+		int start = position, tokenEnd = tokenEnd();
+		int value = nextInt();
+		if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE)
+			throw numberFormatException(start, tokenEnd);
+		return (byte) value;
+	}
+
+	/**
+	 * Parses the next token as a float.
+	 * Plain decimal numbers are parsed directly; all other formats
+	 * (e.g. exponents) are passed to {@link Float#parseFloat(String)}.
+	 * @throws NoSuchElementException if no tokens remain
+	 * @throws NumberFormatException if the token is not a valid float
+	 */
+	public float nextFloat() {
+		checkHasNext();
+		int start = position, tokenEnd = tokenEnd();
+		int i = start;
+		boolean negative = false;
+		if (i < tokenEnd) {
+			char c = line.charAt(i);
+			if (c == '-' || c == '+') {
+				negative = (c == '-');
+				i++;
+			}
+		}
+
+		long mantissa = 0;
+		int digits = 0, fractionDigits = -1;
+		boolean fast = true, hasDigits = false;
+		for (; i < tokenEnd && fast; i++) {
+			char c = line.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				hasDigits = true;
+				if (fractionDigits >= 0)
+					fractionDigits++;
+				if ((mantissa != 0 && ++digits > MAX_FAST_FLOAT_DIGITS) || fractionDigits > MAX_FAST_FLOAT_DIGITS)
+					fast = false;
+			} else if (c == '.' && fractionDigits < 0)
+				fractionDigits = 0;
+			else
+				fast = false;
+		}
+
+		float value = (fast && hasDigits) ? toFloat(mantissa, Math.max(fractionDigits, 0)) : Float.NaN;
+		if (Float.isNaN(value))
+			value = Float.parseFloat(line.subSequence(start, tokenEnd).toString());
+		else if (negative)
+			value = -value;
+		advance(tokenEnd);
+		return value;
+	}
+
+	/**
+	 * Returns mantissa / 10^exponent rounded to the nearest float, or NaN if
+	 * it cannot be computed exactly here.
+	 * <p>
+	 * If the mantissa and power of 10 are both exact in a float, a single float
+	 * division rounds correctly.  Otherwise, the correctly rounded double
+	 * quotient is rounded again to a float; this only differs from rounding
+	 * the exact quotient when the double lies halfway between two floats.
+	 * @param mantissa the decimal digits (at most {@link #MAX_FAST_FLOAT_DIGITS})
+	 * @param exponent the number of fraction digits (at most {@link #MAX_FAST_FLOAT_DIGITS})
+	 */
+	private static float toFloat(long mantissa, int exponent) {
+		if (mantissa <= MAX_FLOAT_MANTISSA && exponent < FLOAT_POWERS_OF_TEN.length)
+			return mantissa / FLOAT_POWERS_OF_TEN[exponent];
+
+		double d = mantissa / POWERS_OF_TEN[exponent];
+		if ((Double.doubleToRawLongBits(d) & FLOAT_ROUNDING_MASK) == FLOAT_HALFWAY)
+			return Float.NaN;
+		return (float) d;
+	}
+
+	/**
+	 * Throws an exception if no tokens remain.
+	 */
+	private void checkHasNext() {
+		if (position >= end)
+			throw new NoSuchElementException(String.format("No more tokens in line '%s'.", line));
+	}
+
+	/**
+	 * Returns the end of the current token (exclusive).
+	 */
+	private int tokenEnd() {
+		int i = position;
+		while (i < end) {
+			char c = line.charAt(i);
+			if (c == ',' || c == '|' || c == ':')
+				break;
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the end of the current field (exclusive).
+	 */
+	private int fieldEnd() {
+		int i = position;
+		while (i < end && line.charAt(i) != ',')
+			i++;
+		return i;
+	}
+
+	/**
+	 * Moves the position past the delimiter at the given offset.
+	 */
+	private void advance(int tokenEnd) {
+		if (tokenEnd < end) {
+			delimiter = line.charAt(tokenEnd);
+			position = tokenEnd + 1;
+		} else {
+			delimiter = 0;
+			position = end;
+		}
+	}
+
+	/**
+	 * Returns a NumberFormatException for the given token.
+	 */
+	private NumberFormatException numberFormatException(int start, int tokenEnd) {
+		return new NumberFormatException(String.format("For input string: \"%s\"", line.subSequence(start, tokenEnd)));
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+/**
+ * Line-based reader for the sections of OSU files.
+ * <p>
+ * The file is read into memory once, and lines are read directly from the
+ * buffer as byte ranges.  The byte offset of each line is known, so the
+ * offsets of sections can be recorded while parsing (see
+ * {@link #getPosition()}) and used by later reads to skip all preceding
+ * sections (see {@link #seekSection(String, int)}).  Lines of a section can
+ * be tokenized without creating Strings (see {@link #getLineChars()}).
+ */
+public class OsuSectionReader {
+	/** The UTF-8 character set. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The file contents. */
+	private final byte[] buf;
+
+	/** The file size. */
+	private final int limit;
+
+	/** The current read position. */
+	private int position;
+
+	/** The current line bounds (trimmed). */
+	private int lineStart = 0, lineEnd = 0;
+
+	/** Character view of the current line (only valid for ASCII lines). */
+	private final CharSequence lineChars = new CharSequence() {
+		@Override
+		public int length() { return lineEnd - lineStart; }
+
+		@Override
+		public char charAt(int index) { return (char) buf[lineStart + index]; }
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(buf, lineStart + start, end - start, UTF_8);
+		}
+
+		@Override
+		public String toString() { return getLine(); }
+	};
+
+	/**
+	 * Constructor.
+	 * @param file the OSU file to read
+	 * @throws IOException if the file could not be read
+	 */
+	public OsuSectionReader(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long length = raf.length();
+			if (length > Integer.MAX_VALUE)
+				throw new IOException(String.format("File '%s' is too large.", file.getAbsolutePath()));
+			this.buf = new byte[(int) length];
+			raf.readFully(buf);
+		}
+		this.limit = buf.length;
+
+		// skip UTF-8 byte order mark
+		if (limit >= 3 && (buf[0] & 0xFF) == 0xEF && (buf[1] & 0xFF) == 0xBB && (buf[2] & 0xFF) == 0xBF)
+			position = 3;
+	}
+
+	/**
+	 * Reads the next raw line (without its line terminator), as in
+	 * {@link java.io.BufferedReader#readLine()}.
+	 * @return the line, or null if the end of the file was reached
+	 */
+	public String readLine() {
+		if (position >= limit)
+			return null;
+		int end = findLineEnd(position);
+		String line = new String(buf, position, end - position, UTF_8);
+		position = nextLineStart(end);
+		return line;
+	}
+
+	/**
+	 * Returns the current read position, i.e. the byte offset of the
+	 * next line.
+	 */
+	public int getPosition() { return position; }
+
+	/**
+	 * Moves the read position to the contents of a section.
+	 * If the given offset is valid (i.e. directly preceded by the section
+	 * header), it is used; otherwise, the file is scanned for the header.
+	 * @param header the section header (e.g. "[HitObjects]")
+	 * @param offset the expected byte offset of the section contents, or -1 if unknown
+	 * @return true if the section was found, false otherwise
+	 */
+	public boolean seekSection(String header, int offset) {
+		byte[] name = header.getBytes(UTF_8);
+		if (offset > 0 && offset <= limit && isHeaderBefore(name, offset)) {
+			position = offset;
+			return true;
+		}
+
+		// scan for the header
+		int pos = 0;
+		while (pos < limit) {
+			int end = findLineEnd(pos);
+			int start = skipWhitespace(pos, end);
+			int trimmedEnd = trimEnd(start, end);
+			pos = nextLineStart(end);
+			if (rangeEquals(start, trimmedEnd, name)) {
+				position = pos;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Advances to the next valid line in the current section, skipping
+	 * empty lines and comments.
+	 * @return true if a line was read, false if the end of the section
+	 *         (or file) was reached
+	 */
+	public boolean nextLine() {
+		while (position < limit) {
+			int end = findLineEnd(position);
+			int start = skipWhitespace(position, end);
+			int trimmedEnd = trimEnd(start, end);
+			if (trimmedEnd - start > 1 && !(buf[start] == '/' && buf[start + 1] == '/')) {
+				if (buf[start] == '[')
+					return false;  // next section: don't advance
+				position = nextLineStart(end);
+				lineStart = start;
+				lineEnd = trimmedEnd;
+				return true;
+			}
+			position = nextLineStart(end);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of occurrences of a character in the current line.
+	 * @param c the (ASCII) character
+	 */
+	public int count(char c) {
+		int count = 0;
+		for (int i = lineStart; i < lineEnd; i++) {
+			if (buf[i] == c)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the current line as a String.
+	 */
+	public String getLine() { return new String(buf, lineStart, lineEnd - lineStart, UTF_8); }
+
+	/**
+	 * Returns the current line as a sequence of characters.  ASCII lines
+	 * (i.e. nearly all lines outside of the metadata sections) are returned
+	 * as a view of the buffer, which is only valid until the next line is
+	 * read; other lines are decoded into a String.
+	 */
+	public CharSequence getLineChars() {
+		for (int i = lineStart; i < lineEnd; i++) {
+			if (buf[i] < 0)
+				return getLine();
+		}
+		return lineChars;
+	}
+
+	/**
+	 * Returns whether the line preceding the given offset is the given header.
+	 */
+	private boolean isHeaderBefore(byte[] name, int offset) {
+		int end = offset;
+		while (end > 0 && isWhitespace(buf[end - 1]))
+			end--;
+		int start = end - name.length;
+		if (start < 0 || !rangeEquals(start, end, name))
+			return false;
+		return (start == 0 || isWhitespace(buf[start - 1]) || (start == 3 && (buf[0] & 0xFF) == 0xEF));
+	}
+
+	/**
+	 * Returns whether the byte range equals the given bytes.
+	 */
+	private boolean rangeEquals(int start, int end, byte[] bytes) {
+		if (end - start != bytes.length)
+			return false;
+		for (int i = 0; i < bytes.length; i++) {
+			if (buf[start + i] != bytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of the line terminator (or file end) for the line at {@code pos}.
+	 */
+	private int findLineEnd(int pos) {
+		while (pos < limit) {
+			byte b = buf[pos];
+			if (b == '\n' || b == '\r')
+				break;
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Returns the offset of the line after the line terminator at {@code end}.
+	 */
+	private int nextLineStart(int end) {
+		if (end < limit && buf[end] == '\r')
+			end++;
+		if (end < limit && buf[end] == '\n')
+			end++;
+		return end;
+	}
+
+	/**
+	 * Returns the first non-whitespace offset in [pos, end), or end.
+	 */
+	private int skipWhitespace(int pos, int end) {
+		while (pos < end && isWhitespace(buf[pos]))
+			pos++;
+		return pos;
+	}
+
+	/**
+	 * Returns the offset after the last non-whitespace byte in [start, end).
+	 */
+	private int trimEnd(int start, int end) {
+		while (end > start && isWhitespace(buf[end - 1]))
+			end--;
+		return end;
+	}
+
+	/**
+	 * Returns whether the byte is whitespace (as in {@link String#trim()}).
+	 */
+	private static boolean isWhitespace(byte b) { return (b >= 0 && b <= ' '); }
+}
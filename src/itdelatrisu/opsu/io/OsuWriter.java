@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
@@ -97,12 +98,18 @@ public class OsuWriter {
 	/**
 	 * Writes a 4-byte float.
 	 */
-	public void write(float v) throws IOException { writer.writeFloat(v); }
+	public void write(float v) throws IOException {
+		byte[] bytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(v).array();
+		writer.write(bytes);
+	}
 
 	/**
 	 * Writes an 8-byte double.
 	 */
-	public void write(double v) throws IOException { writer.writeDouble(v); }
+	public void write(double v) throws IOException {
+		byte[] bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putDouble(v).array();
+		writer.write(bytes);
+	}
 
 	/**
 	 * Writes a boolean as a 1-byte value.
@@ -124,7 +131,7 @@ public class OsuWriter {
 	}
 
 	/**
-	 * Writes a variable-length string of 1-byte characters.
+	 * Writes a variable-length UTF-8 string.
 	 */
 	public void write(String s) throws IOException {
 		// 00 = empty string
@@ -134,9 +141,10 @@ public class OsuWriter {
 		if (s == null || s.length() == 0)
 			writer.writeByte(0x00);
 		else {
+			byte[] utf8bytes = s.getBytes(StandardCharsets.UTF_8);
 			writer.writeByte(0x0B);
-			writeULEB128(s.length());
-			writer.writeBytes(s);
+			writeULEB128(utf8bytes.length);
+			writer.write(utf8bytes);
 		}
 	}
 
@@ -24,7 +24,6 @@ import itdelatrisu.opsu.GameImage;
 import itdelatrisu.opsu.GameMod;
 import itdelatrisu.opsu.OsuHitObject;
 import itdelatrisu.opsu.Utils;
-import itdelatrisu.opsu.states.Game;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.GameContainer;
@@ -33,18 +32,21 @@ import org.newdawn.slick.Graphics;
 /**
  * Data type representing a circle object.
  */
-public class Circle implements HitObject {
+public class Circle implements HitObject, Cloneable {
 	/** The amount of time, in milliseconds, to fade in the circle. */
 	private static final int FADE_IN_TIME = 375;
 
+	/** The scaled circle diameter. */
+	private static int diameter;
+
 	/** The associated OsuHitObject. */
 	private OsuHitObject hitObject;
 
 	/** The scaled starting x, y coordinates. */
 	private float x, y;
 
-	/** The associated Game object. */
-	private Game game;
+	/** The associated game context. */
+	private GameContext game;
 
 	/** The associated GameData object. */
 	private GameData data;
@@ -61,22 +63,31 @@ public class Circle implements HitObject {
 	 * @param circleSize the map's circleSize value
 	 */
 	public static void init(GameContainer container, float circleSize) {
-		int diameter = (int) (104 - (circleSize * 8));
-		diameter = (int) (diameter * OsuHitObject.getXMultiplier());  // convert from Osupixels (640x480)
+		init(circleSize);
 		GameImage.HITCIRCLE.setImage(GameImage.HITCIRCLE.getImage().getScaledCopy(diameter, diameter));
 		GameImage.HITCIRCLE_OVERLAY.setImage(GameImage.HITCIRCLE_OVERLAY.getImage().getScaledCopy(diameter, diameter));
 		GameImage.APPROACHCIRCLE.setImage(GameImage.APPROACHCIRCLE.getImage().getScaledCopy(diameter, diameter));
 	}
 
+	/**
+	 * Initializes the Circle data type with map modifiers and dimensions only
+	 * (no images are loaded).
+	 * @param circleSize the map's circleSize value
+	 */
+	public static void init(float circleSize) {
+		diameter = (int) (104 - (circleSize * 8));
+		diameter = (int) (diameter * OsuHitObject.getXMultiplier());  // convert from Osupixels (640x480)
+	}
+
 	/**
 	 * Constructor.
 	 * @param hitObject the associated OsuHitObject
-	 * @param game the associated Game object
+	 * @param game the associated game context
 	 * @param data the associated GameData object
 	 * @param color the color of this circle
 	 * @param comboEnd true if this is the last hit object in the combo
 	 */
-	public Circle(OsuHitObject hitObject, Game game, GameData data, Color color, boolean comboEnd) {
+	public Circle(OsuHitObject hitObject, GameContext game, GameData data, Color color, boolean comboEnd) {
 		this.hitObject = hitObject;
 		this.game = game;
 		this.data = data;
@@ -132,7 +143,7 @@ public class Circle implements HitObject {
 	@Override
 	public boolean mousePressed(int x, int y, int trackPosition) {
 		double distance = Math.hypot(this.x - x, this.y - y);
-		int circleRadius = GameImage.HITCIRCLE.getImage().getWidth() / 2;
+		int circleRadius = diameter / 2;
 		if (distance < circleRadius) {
 			int timeDiff = trackPosition - hitObject.getTime();
 			int result = hitResult(timeDiff);
@@ -178,7 +189,11 @@ public class Circle implements HitObject {
 	}
 
 	@Override
-	public float[] getPointAt(int trackPosition) { return new float[] { x, y }; }
+	public float[] getPointAt(int trackPosition, float[] out) {
+		out[0] = x;
+		out[1] = y;
+		return out;
+	}
 
 	@Override
 	public int getEndTime() { return hitObject.getTime(); }
@@ -188,4 +203,13 @@ public class Circle implements HitObject {
 		this.x = hitObject.getScaledX();
 		this.y = hitObject.getScaledY();
 	}
+
+	@Override
+	public Circle copy() {
+		try {
+			return (Circle) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
 }
@@ -25,7 +25,7 @@ import org.newdawn.slick.Graphics;
 /**
  * Dummy hit object, used when another HitObject class cannot be created.
  */
-public class DummyObject implements HitObject {
+public class DummyObject implements HitObject, Cloneable {
 	/** The associated OsuHitObject. */
 	private OsuHitObject hitObject;
 
@@ -53,7 +53,11 @@ public class DummyObject implements HitObject {
 	public boolean mousePressed(int x, int y, int trackPosition) { return false; }
 
 	@Override
-	public float[] getPointAt(int trackPosition) { return new float[] { x, y }; }
+	public float[] getPointAt(int trackPosition, float[] out) {
+		out[0] = x;
+		out[1] = y;
+		return out;
+	}
 
 	@Override
 	public int getEndTime() { return hitObject.getTime(); }
@@ -63,4 +67,13 @@ public class DummyObject implements HitObject {
 		this.x = hitObject.getScaledX();
 		this.y = hitObject.getScaledY();
 	}
+
+	@Override
+	public DummyObject copy() {
+		try {
+			return (DummyObject) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
 }
@@ -0,0 +1,47 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+/**
+ * Game state used by hit objects for judgement.
+ * <p>
+ * This is implemented by {@link GameJudge}, which is shared by the game state
+ * and the headless replay simulator.
+ */
+public interface GameContext {
+	/**
+	 * Returns the object approach time, in milliseconds.
+	 */
+	public int getApproachTime();
+
+	/**
+	 * Returns an array of hit result offset times, in milliseconds (indexed by GameData.HIT_* constants).
+	 */
+	public int[] getHitResultOffsets();
+
+	/**
+	 * Returns the beat length.
+	 */
+	public float getBeatLength();
+
+	/**
+	 * Returns the slider multiplier given by the current timing point.
+	 */
+	public float getTimingPointMultiplier();
+}
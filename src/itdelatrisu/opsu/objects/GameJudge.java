@@ -0,0 +1,697 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.ErrorHandler;
+import itdelatrisu.opsu.FullOsuFile;
+import itdelatrisu.opsu.GameData;
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.HitObjectStore;
+import itdelatrisu.opsu.Options;
+import itdelatrisu.opsu.OsuHitObject;
+import itdelatrisu.opsu.OsuTimingPoint;
+import itdelatrisu.opsu.replay.ReplayFrame;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.util.Log;
+
+/**
+ * Hit object judgement, shared by the game state and the replay simulator.
+ * <p>
+ * Holds the map modifiers, the hit objects, and the progress through the map
+ * (object, timing point, and break indexes, and "Easy" mod lives), and runs
+ * replay frames against them.  Anything involving display, audio, or state
+ * changes is left to the {@link Listener}.
+ */
+public class GameJudge implements GameContext {
+	/**
+	 * Judgement events, handled by the owner of the judge.
+	 */
+	public interface Listener {
+		/**
+		 * Returns whether the track has ended.
+		 */
+		public boolean isTrackEnded();
+
+		/**
+		 * Called when a timing point takes effect.
+		 * @param timingPoint the timing point
+		 */
+		public void timingPointChanged(OsuTimingPoint timingPoint);
+
+		/**
+		 * Called when a break period starts.
+		 */
+		public void breakStarted();
+
+		/**
+		 * Called during active play (not in the song beginning or a break
+		 * period), before health is drained.
+		 * @param mouseX the cursor x coordinate
+		 * @param mouseY the cursor y coordinate
+		 * @param trackPosition the track position
+		 */
+		public void beforeDrain(int mouseX, int mouseY, int trackPosition);
+
+		/**
+		 * Called when a life is lost ("Easy" mod), before health is restored.
+		 */
+		public void lifeLost();
+
+		/**
+		 * Called when health has been restored after losing a life ("Easy" mod).
+		 */
+		public void lifeRestored();
+
+		/**
+		 * Called when health is depleted and no lives are left.
+		 */
+		public void gameOver();
+
+		/**
+		 * Called once when the map is complete.  No further updates are
+		 * judged after this.
+		 */
+		public void mapComplete();
+	}
+
+	/**
+	 * Saved judgement state (see {@link GameJudge#saveState()}).
+	 */
+	public static class State {
+		/** The current hit object index. */
+		private final int objectIndex;
+
+		/** The timing point index. */
+		private final int timingPointIndex;
+
+		/** The beat lengths (base value and inherited value). */
+		private final float beatLengthBase, beatLength;
+
+		/** The break index and break start time. */
+		private final int breakIndex, breakTime;
+
+		/** Number of deaths ("Easy" mod). */
+		private final byte deaths;
+
+		/** The keys and cursor coordinates from the previous replay frame. */
+		private final int lastReplayKeys, lastReplayX, lastReplayY;
+
+		/** The last track position judged. */
+		private final int lastTime;
+
+		/**
+		 * Constructor.
+		 * @param judge the judge to save
+		 */
+		private State(GameJudge judge) {
+			this.objectIndex = judge.objectIndex;
+			this.timingPointIndex = judge.timingPointIndex;
+			this.beatLengthBase = judge.beatLengthBase;
+			this.beatLength = judge.beatLength;
+			this.breakIndex = judge.breakIndex;
+			this.breakTime = judge.breakTime;
+			this.deaths = judge.deaths;
+			this.lastReplayKeys = judge.lastReplayKeys;
+			this.lastReplayX = judge.lastReplayX;
+			this.lastReplayY = judge.lastReplayY;
+			this.lastTime = judge.lastTime;
+		}
+	}
+
+	/** The associated OsuFile object. */
+	private final FullOsuFile osu;
+
+	/** The beatmap's hit object data (see {@link #createHitObjects(HitObjectStore, boolean)}). */
+	private HitObjectStore store;
+	private OsuHitObject[] objects;
+
+	/** The associated GameData object. */
+	private final GameData data;
+
+	/** The judgement event listener. */
+	private final Listener listener;
+
+	/** The map's HitObjects, indexed by objectIndex. */
+	private HitObject[] hitObjects;
+
+	/** Current hit object index in OsuHitObject[] array. */
+	private int objectIndex = 0;
+
+	/** The circle size (after mods and overrides). */
+	private float circleSize;
+
+	/** Hit object approach time, in milliseconds. */
+	private int approachTime;
+
+	/** Time offsets for obtaining each hit result (indexed by HIT_* constants). */
+	private int[] hitResultOffset;
+
+	/** Current break index in breaks ArrayList. */
+	private int breakIndex = 0;
+
+	/** Break start time (0 if not in break). */
+	private int breakTime = 0;
+
+	/** Current timing point index in timingPoints ArrayList. */
+	private int timingPointIndex = 0;
+
+	/** Current beat lengths (base value and inherited value). */
+	private float beatLengthBase = 1, beatLength = 1;
+
+	/** Number of deaths, used if "Easy" mod is enabled. */
+	private byte deaths = 0;
+
+	/** Track position at death, used if "Easy" mod is enabled. */
+	private int deathTime = -1;
+
+	/** The keys from the previous replay frame. */
+	private int lastReplayKeys = ReplayFrame.KEY_NONE;
+
+	/** The scaled cursor coordinates from the previous replay frame. */
+	private int lastReplayX, lastReplayY;
+
+	/** The last track position judged. */
+	private int lastTime = 0;
+
+	/** Whether to judge in fixed-length ticks (otherwise, once per replay frame). */
+	private boolean tickJudgement = true;
+
+	/** Whether the map is complete. */
+	private boolean complete = false;
+
+	/** Whether the map can be completed (false while seeking). */
+	private boolean completionEnabled = true;
+
+	/**
+	 * Constructor.
+	 * @param osu the beatmap (with timing points and hit objects loaded)
+	 * @param data the game data
+	 * @param listener the judgement event listener
+	 */
+	public GameJudge(FullOsuFile osu, GameData data, Listener listener) {
+		this.osu = osu;
+		this.data = data;
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets the map modifiers from the beatmap and the active mods, and passes
+	 * them to the game data and the stack calculator.
+	 * <p>
+	 * The hit object types are not initialized here: callers should do so
+	 * with {@link #getCircleSize()} (with or without images).
+	 * @param fixedOverrides whether to apply the user's fixed difficulty
+	 *        overrides (only for live play, not for recorded replays)
+	 */
+	public void setMapModifiers(boolean fixedOverrides) {
+		// map-based properties, re-initialized each game
+		float multiplier = GameMod.getDifficultyMultiplier();
+		float circleSize = Math.min(osu.circleSize * multiplier, 10f);
+		float approachRate = Math.min(osu.approachRate * multiplier, 10f);
+		float overallDifficulty = Math.min(osu.overallDifficulty * multiplier, 10f);
+		float HPDrainRate = Math.min(osu.HPDrainRate * multiplier, 10f);
+
+		// fixed difficulty overrides
+		if (fixedOverrides) {
+			if (Options.getFixedCS() > 0f)
+				circleSize = Options.getFixedCS();
+			if (Options.getFixedAR() > 0f)
+				approachRate = Options.getFixedAR();
+			if (Options.getFixedOD() > 0f)
+				overallDifficulty = Options.getFixedOD();
+			if (Options.getFixedHP() > 0f)
+				HPDrainRate = Options.getFixedHP();
+		}
+		this.circleSize = circleSize;
+
+		// stack modifier scales with hit object size
+		StackCalculator.setStackOffset(circleSize);
+
+		// approachRate (hit object approach time)
+		if (approachRate < 5)
+			approachTime = (int) (1800 - (approachRate * 120));
+		else
+			approachTime = (int) (1200 - ((approachRate - 5) * 150));
+
+		// overallDifficulty (hit result time offsets)
+		hitResultOffset = new int[GameData.HIT_MAX];
+		hitResultOffset[GameData.HIT_300]  = (int) (78 - (overallDifficulty * 6));
+		hitResultOffset[GameData.HIT_100]  = (int) (138 - (overallDifficulty * 8));
+		hitResultOffset[GameData.HIT_50]   = (int) (198 - (overallDifficulty * 10));
+		hitResultOffset[GameData.HIT_MISS] = (int) (500 - (overallDifficulty * 10));
+
+		// HPDrainRate (health change), overallDifficulty (scoring)
+		data.setDrainRate(HPDrainRate);
+		data.setDifficulty(overallDifficulty);
+		data.setHitResultOffset(hitResultOffset);
+	}
+
+	/**
+	 * Creates the hit objects, calculates stacks, and resets all judgement
+	 * progress to the start of the map.
+	 * Must be called after {@link #setMapModifiers(boolean)} and after the
+	 * hit object types have been initialized.
+	 * @param showErrors whether to display hit object creation errors (if
+	 *        false, they are only logged)
+	 */
+	public void createHitObjects(boolean showErrors) {
+		createHitObjects(osu.objectStore, showErrors);
+	}
+
+	/**
+	 * Creates the hit objects from the given hit object data, as in
+	 * {@link #createHitObjects(boolean)}.  A copy of the beatmap's store
+	 * (see {@link HitObjectStore#HitObjectStore(HitObjectStore)}) has its
+	 * own stacks, so that it can be judged concurrently with the beatmap's.
+	 * @param store the hit object store
+	 * @param showErrors whether to display hit object creation errors (if
+	 *        false, they are only logged)
+	 */
+	public void createHitObjects(HitObjectStore store, boolean showErrors) {
+		this.store = store;
+		if (store == osu.objectStore)
+			this.objects = osu.objects;
+		else {
+			this.objects = new OsuHitObject[store.size()];
+			for (int i = 0; i < objects.length; i++)
+				objects[i] = new OsuHitObject(store, i);
+		}
+		hitObjects = new HitObject[objects.length];
+		objectIndex = 0;
+		breakIndex = 0;
+		breakTime = 0;
+		deaths = 0;
+		deathTime = -1;
+		lastReplayKeys = ReplayFrame.KEY_NONE;
+		lastTime = 0;
+		complete = false;
+		timingPointIndex = 0;
+		beatLengthBase = beatLength = 1;
+
+		// load the first timingPoint for stacking
+		if (!osu.timingPoints.isEmpty()) {
+			OsuTimingPoint timingPoint = osu.timingPoints.get(0);
+			if (!timingPoint.isInherited()) {
+				setBeatLength(timingPoint);
+				timingPointIndex++;
+			}
+		}
+
+		// initialize object maps
+		for (int i = 0; i < objects.length; i++) {
+			OsuHitObject hitObject = objects[i];
+
+			// is this the last note in the combo?
+			boolean comboEnd = false;
+			if (i + 1 < objects.length && store.isNewCombo(i + 1))
+				comboEnd = true;
+
+			Color color = osu.combo[hitObject.getComboIndex()];
+
+			// pass beatLength to hit objects
+			int hitObjectTime = hitObject.getTime();
+			while (timingPointIndex < osu.timingPoints.size()) {
+				OsuTimingPoint timingPoint = osu.timingPoints.get(timingPointIndex);
+				if (timingPoint.getTime() > hitObjectTime)
+					break;
+				setBeatLength(timingPoint);
+				timingPointIndex++;
+			}
+
+			try {
+				if (hitObject.isCircle())
+					hitObjects[i] = new Circle(hitObject, this, data, color, comboEnd);
+				else if (hitObject.isSlider())
+					hitObjects[i] = new Slider(hitObject, this, data, color, comboEnd);
+				else if (hitObject.isSpinner())
+					hitObjects[i] = new Spinner(hitObject, this, data);
+			} catch (Exception e) {
+				// try to handle the error gracefully: substitute in a dummy HitObject
+				String error = String.format("Failed to create %s at index %d:\n%s",
+						hitObject.getTypeName(), i, hitObject.toString());
+				if (showErrors)
+					ErrorHandler.error(error, e, true);
+				else
+					Log.warn(error, e);
+				hitObjects[i] = new DummyObject(hitObject);
+				continue;
+			}
+		}
+
+		// stack calculations
+		StackCalculator.calculate(osu, store, hitObjects);
+
+		// load the first timingPoint
+		timingPointIndex = 0;
+		beatLengthBase = beatLength = 1;
+		if (!osu.timingPoints.isEmpty()) {
+			OsuTimingPoint timingPoint = osu.timingPoints.get(0);
+			if (!timingPoint.isInherited()) {
+				setBeatLength(timingPoint);
+				listener.timingPointChanged(timingPoint);
+				timingPointIndex++;
+			}
+		}
+	}
+
+	/**
+	 * Sets the cursor coordinates of the previous replay frame (the start
+	 * position, before any frames are run).
+	 * @param x the scaled cursor x coordinate
+	 * @param y the scaled cursor y coordinate
+	 */
+	public void setCursor(int x, int y) {
+		lastReplayX = x;
+		lastReplayY = y;
+	}
+
+	/**
+	 * Sets whether to judge in fixed-length ticks (the default), or once per
+	 * replay frame for replays recorded without
+	 * {@link itdelatrisu.opsu.replay.Replay#FLAG_TICK_JUDGEMENT} (so that
+	 * older replays keep their recorded results).
+	 * @param enabled true for fixed-length ticks
+	 */
+	public void setTickJudgement(boolean enabled) { this.tickJudgement = enabled; }
+
+	/**
+	 * Sets whether the map can be completed.  While disabled (e.g. when
+	 * fast-forwarding to a seek position), reaching the end of the map does
+	 * not complete it; the next update after re-enabling does.
+	 * @param enabled whether to allow completion
+	 */
+	public void setCompletionEnabled(boolean enabled) { this.completionEnabled = enabled; }
+
+	/**
+	 * Skips all hit objects before a track position (used when loading a
+	 * checkpoint).  The object at or after the position becomes current.
+	 * @param trackPosition the track position
+	 */
+	public void skipTo(int trackPosition) {
+		while (objectIndex < hitObjects.length &&
+		       store.getTime(objectIndex++) <= trackPosition)
+			;
+		objectIndex--;
+		lastTime = store.getTime(objectIndex);
+	}
+
+	/**
+	 * Runs a replay frame.
+	 * The time since the previous frame is first run in fixed-length ticks
+	 * (see {@link GameData#TICK_TIME}), with the cursor moving linearly
+	 * between the frames' coordinates, unless tick judgement is disabled.
+	 * @param timeDiff the time since the previous frame
+	 * @param time the time of the frame
+	 * @param replayX the scaled cursor x coordinate
+	 * @param replayY the scaled cursor y coordinate
+	 * @param keys the keys pressed
+	 */
+	public void runReplayFrame(int timeDiff, int time, int replayX, int replayY, int keys) {
+		int startTime = time - timeDiff, tickTime = startTime;
+		while (tickJudgement && time - tickTime > GameData.TICK_TIME && !complete) {
+			tickTime += GameData.TICK_TIME;
+			float t = (float) (tickTime - startTime) / timeDiff;
+			update(
+				(int) (lastReplayX + (replayX - lastReplayX) * t),
+				(int) (lastReplayY + (replayY - lastReplayY) * t),
+				GameData.TICK_TIME, tickTime, lastReplayKeys
+			);
+		}
+
+		int deltaKeys = (keys & ~lastReplayKeys);  // keys that turned on
+		if (deltaKeys != ReplayFrame.KEY_NONE)  // send a key press
+			sendGameKeyPress(replayX, replayY, time);
+		else if (keys != lastReplayKeys)
+			;  // do nothing
+		else
+			update(replayX, replayY, time - tickTime, time, keys);
+		lastReplayKeys = keys;
+		lastReplayX = replayX;
+		lastReplayY = replayY;
+		lastTime = time;
+	}
+
+	/**
+	 * Runs the game up to a track position with the previous frame's cursor
+	 * coordinates and keys (used when there are no more replay frames), in
+	 * fixed-length ticks unless tick judgement is disabled.
+	 * <p>
+	 * The track is paused while "Easy" mod health is being restored, so the
+	 * given delta interval is used then (and with tick judgement disabled).
+	 * @param delta the delta interval
+	 * @param trackPosition the track position
+	 */
+	public void runTo(int delta, int trackPosition) {
+		if (!tickJudgement || (deathTime > -1 && trackPosition <= lastTime)) {
+			update(lastReplayX, lastReplayY, delta, trackPosition, lastReplayKeys);
+			lastTime = Math.max(lastTime, trackPosition);
+			return;
+		}
+		while (trackPosition - lastTime >= GameData.TICK_TIME && !complete) {
+			lastTime += GameData.TICK_TIME;
+			update(lastReplayX, lastReplayY, GameData.TICK_TIME, lastTime, lastReplayKeys);
+		}
+	}
+
+	/**
+	 * Sends a game key press to the current hit object.
+	 * @param x the cursor x coordinate
+	 * @param y the cursor y coordinate
+	 * @param trackPosition the track position
+	 */
+	private void sendGameKeyPress(int x, int y, int trackPosition) {
+		if (objectIndex >= hitObjects.length || complete)  // nothing to do here
+			return;
+
+		OsuHitObject hitObject = objects[objectIndex];
+
+		// circles
+		if (hitObject.isCircle() && hitObjects[objectIndex].mousePressed(x, y, trackPosition))
+			objectIndex++;  // circle hit
+
+		// sliders
+		else if (hitObject.isSlider())
+			hitObjects[objectIndex].mousePressed(x, y, trackPosition);
+	}
+
+	/**
+	 * Updates the game.
+	 * @param mouseX the mouse x coordinate
+	 * @param mouseY the mouse y coordinate
+	 * @param delta the delta interval
+	 * @param trackPosition the track position
+	 * @param keys the keys that are pressed
+	 */
+	public void update(int mouseX, int mouseY, int delta, int trackPosition, int keys) {
+		if (complete)
+			return;
+
+		// "Easy" mod: multiple "lives"
+		if (GameMod.EASY.isActive() && deathTime > -1) {
+			if (data.getHealth() < 99f)
+				data.changeHealth(delta / 10f);
+			else {
+				listener.lifeRestored();
+				deathTime = -1;
+			}
+		}
+
+		// map complete!
+		boolean trackEnded = listener.isTrackEnded();
+		if (objectIndex >= hitObjects.length || (trackEnded && objectIndex > 0)) {
+			if (!completionEnabled)
+				return;
+
+			// track ended before last object was processed: force a hit result
+			if (trackEnded && objectIndex < hitObjects.length)
+				hitObjects[objectIndex].update(true, delta, mouseX, mouseY, false, trackPosition);
+
+			complete = true;
+			listener.mapComplete();
+			return;
+		}
+
+		// timing points
+		if (timingPointIndex < osu.timingPoints.size()) {
+			OsuTimingPoint timingPoint = osu.timingPoints.get(timingPointIndex);
+			if (trackPosition >= timingPoint.getTime()) {
+				setBeatLength(timingPoint);
+				listener.timingPointChanged(timingPoint);
+				timingPointIndex++;
+			}
+		}
+
+		// song beginning
+		if (objectIndex == 0 && trackPosition < store.getTime(0))
+			return;  // nothing to do here
+
+		// break periods
+		if (osu.breaks != null && breakIndex < osu.breaks.size()) {
+			int breakValue = osu.breaks.get(breakIndex);
+			if (breakTime > 0) {  // in a break period
+				if (trackPosition < breakValue)
+					return;
+				else {
+					// break is over
+					breakTime = 0;
+					breakIndex++;
+				}
+			} else if (trackPosition >= breakValue) {
+				// start a break
+				breakTime = breakValue;
+				breakIndex++;
+				listener.breakStarted();
+				return;
+			}
+		}
+
+		listener.beforeDrain(mouseX, mouseY, trackPosition);
+
+		// drain health
+		data.changeHealth(delta * -1 * GameData.HP_DRAIN_MULTIPLIER);
+		if (!data.isAlive()) {
+			// "Easy" mod
+			if (GameMod.EASY.isActive() && !GameMod.SUDDEN_DEATH.isActive()) {
+				deaths++;
+				if (deaths < 3) {
+					deathTime = trackPosition;
+					listener.lifeLost();
+					return;
+				}
+			}
+
+			// game over
+			listener.gameOver();
+		}
+
+		// update objects (loop in unlikely event of any skipped indexes)
+		boolean keyPressed = keys != ReplayFrame.KEY_NONE;
+		while (objectIndex < hitObjects.length && trackPosition > store.getTime(objectIndex)) {
+			// check if we've already passed the next object's start time
+			boolean overlap = (objectIndex + 1 < hitObjects.length &&
+					trackPosition > store.getTime(objectIndex + 1) - hitResultOffset[GameData.HIT_300]);
+
+			// update hit object and check completion status
+			if (hitObjects[objectIndex].update(overlap, delta, mouseX, mouseY, keyPressed, trackPosition))
+				objectIndex++;  // done, so increment object index
+			else
+				break;
+		}
+	}
+
+	/**
+	 * Returns the current judgement state.
+	 * The hit objects themselves are not included.
+	 */
+	public State saveState() { return new State(this); }
+
+	/**
+	 * Restores a judgement state.
+	 * @param state the state returned by {@link #saveState()}
+	 */
+	public void restoreState(State state) {
+		objectIndex = state.objectIndex;
+		timingPointIndex = state.timingPointIndex;
+		beatLengthBase = state.beatLengthBase;
+		beatLength = state.beatLength;
+		breakIndex = state.breakIndex;
+		breakTime = state.breakTime;
+		deaths = state.deaths;
+		deathTime = -1;
+		lastReplayKeys = state.lastReplayKeys;
+		lastReplayX = state.lastReplayX;
+		lastReplayY = state.lastReplayY;
+		lastTime = state.lastTime;
+		complete = false;
+		if (timingPointIndex > 0)
+			listener.timingPointChanged(osu.timingPoints.get(timingPointIndex - 1));
+	}
+
+	/**
+	 * Sets the beat length fields based on a given timing point.
+	 * @param timingPoint the timing point
+	 */
+	private void setBeatLength(OsuTimingPoint timingPoint) {
+		if (!timingPoint.isInherited())
+			beatLengthBase = beatLength = timingPoint.getBeatLength();
+		else
+			beatLength = beatLengthBase * timingPoint.getSliderMultiplier();
+	}
+
+	/**
+	 * Returns the hit objects (null before {@link #createHitObjects(boolean)}).
+	 */
+	public HitObject[] getHitObjects() { return hitObjects; }
+
+	/**
+	 * Returns the current hit object index.
+	 */
+	public int getObjectIndex() { return objectIndex; }
+
+	/**
+	 * Returns the circle size (after mods and overrides).
+	 */
+	public float getCircleSize() { return circleSize; }
+
+	/**
+	 * Returns the current break index.
+	 */
+	public int getBreakIndex() { return breakIndex; }
+
+	/**
+	 * Returns the current break start time (0 if not in a break).
+	 */
+	public int getBreakTime() { return breakTime; }
+
+	/**
+	 * Returns whether the map is complete.
+	 */
+	public boolean isComplete() { return complete; }
+
+	/**
+	 * Returns the track position at the last death, or -1 if health is not
+	 * being restored ("Easy" mod).
+	 */
+	public int getDeathTime() { return deathTime; }
+
+	/**
+	 * Returns the object approach time, in milliseconds.
+	 */
+	@Override
+	public int getApproachTime() { return approachTime; }
+
+	/**
+	 * Returns an array of hit result offset times, in milliseconds (indexed by GameData.HIT_* constants).
+	 */
+	@Override
+	public int[] getHitResultOffsets() { return hitResultOffset; }
+
+	/**
+	 * Returns the beat length.
+	 */
+	@Override
+	public float getBeatLength() { return beatLength; }
+
+	/**
+	 * Returns the slider multiplier given by the current timing point.
+	 */
+	@Override
+	public float getTimingPointMultiplier() { return beatLength / beatLengthBase; }
+}
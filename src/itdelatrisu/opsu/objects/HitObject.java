@@ -53,11 +53,13 @@ public interface HitObject {
 	public boolean mousePressed(int x, int y, int trackPosition);
 
 	/**
-	 * Returns the coordinates of the hit object at a given track position.
+	 * Stores the coordinates of the hit object at a given track position
+	 * in the given array.
 	 * @param trackPosition the track position
-	 * @return the [x,y] coordinates
+	 * @param out the array to store the [x,y] coordinates in
+	 * @return the {@code out} array
 	 */
-	public float[] getPointAt(int trackPosition);
+	public float[] getPointAt(int trackPosition, float[] out);
 
 	/**
 	 * Returns the end time of the hit object.
@@ -69,4 +71,10 @@ public interface HitObject {
 	 * Updates the position of the hit object.
 	 */
 	public void updatePosition();
+
+	/**
+	 * Returns a copy of the hit object, including its current state.
+	 * Changes to either object do not affect the other.
+	 */
+	public HitObject copy();
 }
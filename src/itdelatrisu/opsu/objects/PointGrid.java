@@ -0,0 +1,170 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.Utils;
+
+/**
+ * Uniform grid over a set of indexed points, for finding the nearest
+ * preceding point within a radius.
+ * <p>
+ * Each cell lists the indices of its points in ascending order, so a query
+ * only walks the few cells around the query point, starting at the largest
+ * index below the search bound.
+ */
+class PointGrid {
+	/** Maximum number of cells along each axis. */
+	private static final int MAX_CELLS = 1024;
+
+	/** The point coordinates, indexed by point index. */
+	private final float[] px, py;
+
+	/** The grid origin and cell dimensions. */
+	private final float minX, minY, cellWidth, cellHeight;
+
+	/** The number of grid columns and rows. */
+	private final int cols, rows;
+
+	/** Cell offsets into {@code items}; cell {@code c} owns {@code [cellStart[c], cellStart[c + 1])}. */
+	private final int[] cellStart;
+
+	/** Point indices, grouped by cell and ascending within each cell. */
+	private final int[] items;
+
+	/**
+	 * Constructor.
+	 * @param px the x coordinates
+	 * @param py the y coordinates
+	 * @param include which points to add to the grid (or null for all points)
+	 * @param radius the search radius that will typically be used in queries
+	 */
+	public PointGrid(float[] px, float[] py, boolean[] include, float radius) {
+		this.px = px;
+		this.py = py;
+
+		// find the bounds
+		int n = px.length, count = 0;
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			if (include != null && !include[i])
+				continue;
+			minX = Math.min(minX, px[i]);
+			minY = Math.min(minY, py[i]);
+			maxX = Math.max(maxX, px[i]);
+			maxY = Math.max(maxY, py[i]);
+			count++;
+		}
+		if (count == 0)
+			minX = minY = maxX = maxY = 0;
+		this.minX = minX;
+		this.minY = minY;
+
+		// cells are at least as large as the search radius
+		float cellSize = Math.max(radius, 1f);
+		this.cellWidth = Math.max(cellSize, (maxX - minX) / (MAX_CELLS - 1));
+		this.cellHeight = Math.max(cellSize, (maxY - minY) / (MAX_CELLS - 1));
+		this.cols = (int) ((maxX - minX) / cellWidth) + 1;
+		this.rows = (int) ((maxY - minY) / cellHeight) + 1;
+
+		// bucket the points (counting sort keeps indices ascending in each cell)
+		this.cellStart = new int[cols * rows + 1];
+		this.items = new int[count];
+		int[] cellOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			if (include != null && !include[i])
+				continue;
+			cellOf[i] = cellIndex(px[i], py[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++)
+			cellStart[c + 1] += cellStart[c];
+		int[] fill = new int[cols * rows];
+		for (int i = 0; i < n; i++) {
+			if (include != null && !include[i])
+				continue;
+			int c = cellOf[i];
+			items[cellStart[c] + fill[c]++] = i;
+		}
+	}
+
+	/**
+	 * Returns the cell index containing a point within the grid bounds.
+	 */
+	private int cellIndex(float x, float y) {
+		int cx = Math.min((int) ((x - minX) / cellWidth), cols - 1);
+		int cy = Math.min((int) ((y - minY) / cellHeight), rows - 1);
+		return cy * cols + cx;
+	}
+
+	/**
+	 * Returns the largest point index in {@code (lower, upper)} whose point
+	 * lies at a distance less than {@code radius} from (x, y).
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param radius the search radius
+	 * @param lower the exclusive lower bound on the index
+	 * @param upper the exclusive upper bound on the index
+	 * @return the point index, or -1 if none
+	 */
+	public int findLast(float x, float y, float radius, int lower, int upper) {
+		// pad the search area so that rounding in the distance can't miss a cell
+		float reach = radius * 1.001f;
+		int cx0 = Math.max((int) Math.floor((x - reach - minX) / cellWidth), 0);
+		int cx1 = Math.min((int) Math.floor((x + reach - minX) / cellWidth), cols - 1);
+		int cy0 = Math.max((int) Math.floor((y - reach - minY) / cellHeight), 0);
+		int cy1 = Math.min((int) Math.floor((y + reach - minY) / cellHeight), rows - 1);
+
+		int best = lower;
+		for (int cy = cy0; cy <= cy1; cy++) {
+			for (int cx = cx0; cx <= cx1; cx++) {
+				int c = cy * cols + cx;
+				int start = cellStart[c];
+
+				// walk down from the largest index below the upper bound
+				for (int k = lastBefore(start, cellStart[c + 1], upper); k >= start; k--) {
+					int i = items[k];
+					if (i <= best)
+						break;
+					if (Utils.distance(x, y, px[i], py[i]) < radius) {
+						best = i;
+						break;
+					}
+				}
+			}
+		}
+		return (best > lower) ? best : -1;
+	}
+
+	/**
+	 * Returns the position of the last item in {@code items[from, to)} that
+	 * is less than {@code bound}, or {@code from - 1} if none.
+	 */
+	private int lastBefore(int from, int to, int bound) {
+		int lo = from, hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (items[mid] < bound)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo - 1;
+	}
+}
@@ -18,18 +18,15 @@
 
 package itdelatrisu.opsu.objects;
 
+import itdelatrisu.opsu.FullOsuFile;
 import itdelatrisu.opsu.GameData;
 import itdelatrisu.opsu.GameData.HitObjectType;
 import itdelatrisu.opsu.GameImage;
 import itdelatrisu.opsu.GameMod;
-import itdelatrisu.opsu.OsuFile;
 import itdelatrisu.opsu.OsuHitObject;
 import itdelatrisu.opsu.Utils;
-import itdelatrisu.opsu.objects.curves.CatmullCurve;
-import itdelatrisu.opsu.objects.curves.CircumscribedCircle;
 import itdelatrisu.opsu.objects.curves.Curve;
-import itdelatrisu.opsu.objects.curves.LinearBezier;
-import itdelatrisu.opsu.states.Game;
+import itdelatrisu.opsu.objects.curves.CurveCache;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.GameContainer;
@@ -39,7 +36,7 @@ import org.newdawn.slick.Image;
 /**
  * Data type representing a slider object.
  */
-public class Slider implements HitObject {
+public class Slider implements HitObject, Cloneable {
 	/** Slider ball frames. */
 	private static Image[] sliderBallImages;
 
@@ -58,8 +55,8 @@ public class Slider implements HitObject {
 	/** The scaled starting x, y coordinates. */
 	protected float x, y;
 
-	/** The associated Game object. */
-	private Game game;
+	/** The associated game context. */
+	private GameContext game;
 
 	/** The associated GameData object. */
 	private GameData data;
@@ -70,6 +67,9 @@ public class Slider implements HitObject {
 	/** The underlying Curve. */
 	private Curve curve;
 
+	/** Points sampled from the curve (reused to avoid allocations). */
+	private final float[] point = new float[2], point2 = new float[2], endPoint = new float[2];
+
 	/** The time duration of the slider, in milliseconds. */
 	private float sliderTime = 0f;
 
@@ -100,15 +100,17 @@ public class Slider implements HitObject {
 	/** Container dimensions. */
 	private static int containerWidth, containerHeight;
 
+	/** The scaled hit circle and follow circle radii. */
+	private static int circleRadius, followCircleRadius;
+
 	/**
 	 * Initializes the Slider data type with images and dimensions.
 	 * @param container the game container
 	 * @param circleSize the map's circleSize value
 	 * @param osu the associated OsuFile object
 	 */
-	public static void init(GameContainer container, float circleSize, OsuFile osu) {
-		containerWidth = container.getWidth();
-		containerHeight = container.getHeight();
+	public static void init(GameContainer container, float circleSize, FullOsuFile osu) {
+		init(container.getWidth(), container.getHeight(), circleSize, osu);
 
 		int diameter = (int) (104 - (circleSize * 8));
 		diameter = (int) (diameter * OsuHitObject.getXMultiplier());  // convert from Osupixels (640x480)
@@ -125,6 +127,24 @@ public class Slider implements HitObject {
 		GameImage.SLIDER_FOLLOWCIRCLE.setImage(GameImage.SLIDER_FOLLOWCIRCLE.getImage().getScaledCopy(diameter * 259 / 128, diameter * 259 / 128));
 		GameImage.REVERSEARROW.setImage(GameImage.REVERSEARROW.getImage().getScaledCopy(diameter, diameter));
 		GameImage.SLIDER_TICK.setImage(GameImage.SLIDER_TICK.getImage().getScaledCopy(diameter / 4, diameter / 4));
+	}
+
+	/**
+	 * Initializes the Slider data type with map modifiers and dimensions only
+	 * (no images are loaded).
+	 * @param width the container width
+	 * @param height the container height
+	 * @param circleSize the map's circleSize value
+	 * @param osu the associated OsuFile object
+	 */
+	public static void init(int width, int height, float circleSize, FullOsuFile osu) {
+		containerWidth = width;
+		containerHeight = height;
+
+		int diameter = (int) (104 - (circleSize * 8));
+		diameter = (int) (diameter * OsuHitObject.getXMultiplier());  // convert from Osupixels (640x480)
+		circleRadius = diameter / 2;
+		followCircleRadius = (diameter * 259 / 128) / 2;
 
 		sliderMultiplier = osu.sliderMultiplier;
 		sliderTickRate = osu.sliderTickRate;
@@ -133,12 +153,12 @@ public class Slider implements HitObject {
 	/**
 	 * Constructor.
 	 * @param hitObject the associated OsuHitObject
-	 * @param game the associated Game object
+	 * @param game the associated game context
 	 * @param data the associated GameData object
 	 * @param color the color of this slider
 	 * @param comboEnd true if this is the last hit object in the combo
 	 */
-	public Slider(OsuHitObject hitObject, Game game, GameData data, Color color, boolean comboEnd) {
+	public Slider(OsuHitObject hitObject, GameContext game, GameData data, Color color, boolean comboEnd) {
 		this.hitObject = hitObject;
 		this.game = game;
 		this.data = data;
@@ -180,7 +200,7 @@ public class Slider implements HitObject {
 		if (ticksT != null) {
 			Image tick = GameImage.SLIDER_TICK.getImage();
 			for (int i = 0; i < ticksT.length; i++) {
-				float[] c = curve.pointAt(ticksT[i]);
+				float[] c = curve.pointAt(ticksT[i], point);
 				tick.drawCentered(c[0], c[1], Utils.COLOR_WHITE_FADE);
 			}
 		}
@@ -189,7 +209,7 @@ public class Slider implements HitObject {
 		Image hitCircle = GameImage.HITCIRCLE.getImage();
 
 		// end circle
-		float[] endPos = curve.pointAt(1);
+		float[] endPos = curve.pointAt(1, endPoint);
 		hitCircle.drawCentered(endPos[0], endPos[1], color);
 		hitCircleOverlay.drawCentered(endPos[0], endPos[1], Utils.COLOR_WHITE_FADE);
 
@@ -234,8 +254,8 @@ public class Slider implements HitObject {
 			if (sliderTime == 0)
 				return;
 
-			float[] c = curve.pointAt(getT(trackPosition, false));
-			float[] c2 = curve.pointAt(getT(trackPosition, false) + 0.01f);
+			float[] c = curve.pointAt(getT(trackPosition, false), point);
+			float[] c2 = curve.pointAt(getT(trackPosition, false) + 0.01f, point2);
 
 			float t = getT(trackPosition, false);
 //			float dis = hitObject.getPixelLength() * OsuHitObject.getXMultiplier() * (t - (int) t);
@@ -283,7 +303,7 @@ public class Slider implements HitObject {
 		float cx, cy;
 		HitObjectType type;
 		if (currentRepeats % 2 == 0) {  // last circle
-			float[] lastPos = curve.pointAt(1);
+			float[] lastPos = curve.pointAt(1, point);
 			cx = lastPos[0];
 			cy = lastPos[1];
 			type = HitObjectType.SLIDER_LAST;
@@ -304,7 +324,6 @@ public class Slider implements HitObject {
 			return false;
 
 		double distance = Math.hypot(this.x - x, this.y - y);
-		int circleRadius = GameImage.HITCIRCLE.getImage().getWidth() / 2;
 		if (distance < circleRadius) {
 			int timeDiff = Math.abs(trackPosition - hitObject.getTime());
 			int[] hitResultOffset = game.getHitResultOffsets();
@@ -366,9 +385,8 @@ public class Slider implements HitObject {
 
 			// check if cursor pressed and within end circle
 			if (keyPressed || GameMod.RELAX.isActive()) {
-				float[] c = curve.pointAt(getT(trackPosition, false));
+				float[] c = curve.pointAt(getT(trackPosition, false), point);
 				double distance = Math.hypot(c[0] - mouseX, c[1] - mouseY);
-				int followCircleRadius = GameImage.SLIDER_FOLLOWCIRCLE.getImage().getWidth() / 2;
 				if (distance < followCircleRadius)
 					sliderClickedFinal = true;
 			}
@@ -411,9 +429,8 @@ public class Slider implements HitObject {
 		}
 
 		// holding slider...
-		float[] c = curve.pointAt(getT(trackPosition, false));
+		float[] c = curve.pointAt(getT(trackPosition, false), point);
 		double distance = Math.hypot(c[0] - mouseX, c[1] - mouseY);
-		int followCircleRadius = GameImage.SLIDER_FOLLOWCIRCLE.getImage().getWidth() / 2;
 		if (((keyPressed || GameMod.RELAX.isActive()) && distance < followCircleRadius) || isAutoMod) {
 			// mouse pressed and within follow circle
 			followCircleActive = true;
@@ -423,7 +440,7 @@ public class Slider implements HitObject {
 			if (isNewRepeat) {
 				ticksHit++;
 				if (currentRepeats % 2 > 0) {  // last circle
-					int lastIndex = hitObject.getSliderX().length;
+					int lastIndex = hitObject.getSliderPointCount();
 					data.sliderTickResult(trackPosition, GameData.HIT_SLIDER30,
 							curve.getX(lastIndex), curve.getY(lastIndex), hitObject, currentRepeats);
 				} else  // first circle
@@ -458,25 +475,23 @@ public class Slider implements HitObject {
 		this.x = hitObject.getScaledX();
 		this.y = hitObject.getScaledY();
 
-		if (hitObject.getSliderType() == OsuHitObject.SLIDER_PASSTHROUGH && hitObject.getSliderX().length == 2)
-			this.curve = new CircumscribedCircle(hitObject, color);
-		else if (hitObject.getSliderType() == OsuHitObject.SLIDER_CATMULL)
-			this.curve = new CatmullCurve(hitObject, color);
-		else
-			this.curve = new LinearBezier(hitObject, color, hitObject.getSliderType() == OsuHitObject.SLIDER_LINEAR);
+		this.curve = CurveCache.getCurve(hitObject, color);
 	}
 
 	@Override
-	public float[] getPointAt(int trackPosition) {
-		if (trackPosition <= hitObject.getTime())
-			return new float[] { x, y };
-		else if (trackPosition >= hitObject.getTime() + sliderTimeTotal) {
-			if (hitObject.getRepeatCount() % 2 == 0)
-				return new float[] { x, y };
-			else
-				return curve.pointAt(1);
+	public float[] getPointAt(int trackPosition, float[] out) {
+		if (trackPosition <= hitObject.getTime()) {
+			out[0] = x;
+			out[1] = y;
+		} else if (trackPosition >= hitObject.getTime() + sliderTimeTotal) {
+			if (hitObject.getRepeatCount() % 2 == 0) {
+				out[0] = x;
+				out[1] = y;
+			} else
+				curve.pointAt(1, out);
 		} else
-			return curve.pointAt(getT(trackPosition, false));
+			curve.pointAt(getT(trackPosition, false), out);
+		return out;
 	}
 
 	@Override
@@ -497,4 +512,15 @@ public class Slider implements HitObject {
 			return (floor % 2 == 0) ? t - floor : floor + 1 - t;
 		}
 	}
+
+	@Override
+	public Slider copy() {
+		// the curve and tick positions are shared (not modified after creation),
+		// as are the point buffers (scratch space only)
+		try {
+			return (Slider) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
 }
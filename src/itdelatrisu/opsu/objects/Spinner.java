@@ -26,7 +26,6 @@ import itdelatrisu.opsu.OsuHitObject;
 import itdelatrisu.opsu.Utils;
 import itdelatrisu.opsu.audio.SoundController;
 import itdelatrisu.opsu.audio.SoundEffect;
-import itdelatrisu.opsu.states.Game;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.GameContainer;
@@ -36,7 +35,7 @@ import org.newdawn.slick.Image;
 /**
  * Data type representing a spinner object.
  */
-public class Spinner implements HitObject {
+public class Spinner implements HitObject, Cloneable {
 	/** Container dimensions. */
 	private static int width, height;
 
@@ -98,17 +97,26 @@ public class Spinner implements HitObject {
 	 * @param container the game container
 	 */
 	public static void init(GameContainer container) {
-		width  = container.getWidth();
-		height = container.getHeight();
+		init(container.getWidth(), container.getHeight());
+	}
+
+	/**
+	 * Initializes the Spinner data type with dimensions only.
+	 * @param containerWidth the container width
+	 * @param containerHeight the container height
+	 */
+	public static void init(int containerWidth, int containerHeight) {
+		width  = containerWidth;
+		height = containerHeight;
 	}
 
 	/**
 	 * Constructor.
 	 * @param hitObject the associated OsuHitObject
-	 * @param game the associated Game object
+	 * @param game the associated game context
 	 * @param data the associated GameData object
 	 */
-	public Spinner(OsuHitObject hitObject, Game game, GameData data) {
+	public Spinner(OsuHitObject hitObject, GameContext game, GameData data) {
 		this.hitObject = hitObject;
 		this.data = data;
 
@@ -268,7 +276,7 @@ public class Spinner implements HitObject {
 	public void updatePosition() {}
 
 	@Override
-	public float[] getPointAt(int trackPosition) {
+	public float[] getPointAt(int trackPosition, float[] out) {
 		// get spinner time
 		int timeDiff;
 		float x = hitObject.getScaledX(), y = hitObject.getScaledY();
@@ -283,10 +291,9 @@ public class Spinner implements HitObject {
 		float multiplier = (GameMod.AUTO.isActive()) ? AUTO_MULTIPLIER : SPUN_OUT_MULTIPLIER;
 		float angle = (timeDiff * multiplier) - HALF_PI;
 		final float r = height / 10f;
-		return new float[] {
-			(float) (x + r * Math.cos(angle)),
-			(float) (y + r * Math.sin(angle))
-		};
+		out[0] = (float) (x + r * Math.cos(angle));
+		out[1] = (float) (y + r * Math.sin(angle));
+		return out;
 	}
 
 	@Override
@@ -314,4 +321,15 @@ public class Spinner implements HitObject {
 
 		rotations = newRotations;
 	}
+
+	@Override
+	public Spinner copy() {
+		try {
+			Spinner spinner = (Spinner) clone();
+			spinner.storedVelocities = storedVelocities.clone();
+			return spinner;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
 }
@@ -0,0 +1,331 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.FullOsuFile;
+import itdelatrisu.opsu.HitObjectStore;
+import itdelatrisu.opsu.OsuHitObject;
+import itdelatrisu.opsu.Utils;
+
+import java.util.Arrays;
+
+/**
+ * Stack calculation for the hit objects of a beatmap.
+ * <p>
+ * Objects are processed in reverse.  For each object, the preceding objects
+ * are searched for (in order of decreasing index): the first one that ends
+ * before the stack time window, a slider whose end lies on the object, and
+ * an object at the same position as the current top of the stack.  The
+ * nearest objects are checked directly; beyond those, candidates are found
+ * with a tree of object end times and spatial grids over object positions
+ * and slider ends, so dense maps take O(n log n) time rather than O(n^2).
+ */
+public class StackCalculator {
+	/** Tolerance in case if hit object is not snapped to the grid. */
+	private static final float STACK_LENIENCE = 3f;
+
+	/** Stack time window of the previous object, in ms. */
+	private static final int STACK_TIMEOUT = 1000;
+
+	/** Stack position offset modifier. */
+	private static final float STACK_OFFSET_MODIFIER = 0.05f;
+
+	/** Default number of preceding objects to check directly before searching the indices. */
+	private static final int SCAN_LIMIT = 128;
+
+	/** Types of stack events. */
+	private static final int NONE = 0, STACK = 1, SLIDER_END = 2;
+
+	/** Object end times (start times for non-sliders, infinity for spinners). */
+	private final float[] endTime;
+
+	/** The end times as a min-tree (created when first needed). */
+	private float[] timeTree;
+
+	/** Number of leaves in {@code timeTree}. */
+	private int treeSize;
+
+	/** Unscaled starting coordinates. */
+	private final float[] x, y;
+
+	/** Scaled starting coordinates. */
+	private final float[] startX, startY;
+
+	/** Scaled slider end coordinates. */
+	private final float[] endX, endY;
+
+	/** Object types. */
+	private final boolean[] isSlider, notSpinner;
+
+	/** Spatial grids over unscaled object positions and scaled slider ends (created when first needed). */
+	private PointGrid positions, sliderEnds;
+
+	/** The hit object store. */
+	private final HitObjectStore objects;
+
+	/** The distance (in unscaled pixels) within which objects are stacked. */
+	private final float lenience;
+
+	/** The distance (in scaled pixels) within which objects stack on slider ends. */
+	private final float scaledLenience;
+
+	/** The time window (in ms) within which objects are stacked. */
+	private final float timeWindow;
+
+	/** Number of preceding objects to check directly before searching the indices. */
+	private final int scanLimit;
+
+	/** The type of the event last returned by {@link #findNext(int, int, int)}. */
+	private int nextType;
+
+	/**
+	 * Sets the stack position offset for the given circle size.
+	 * @param circleSize the circleSize value in effect
+	 */
+	public static void setStackOffset(float circleSize) {
+		// StackOffset = HitObjectRadius / 10
+		int diameter = (int) (104 - (circleSize * 8));
+		OsuHitObject.setStackOffset(diameter * STACK_OFFSET_MODIFIER);
+	}
+
+	/**
+	 * Performs stacking calculations on all hit objects of a beatmap, and
+	 * updates their positions if necessary.
+	 * @param osu the OsuFile
+	 * @param objects the hit object store of the hit objects
+	 * @param hitObjects the hit objects
+	 * @author peppy (https://gist.github.com/peppy/1167470)
+	 */
+	public static void calculate(FullOsuFile osu, HitObjectStore objects, HitObject[] hitObjects) {
+		calculate(objects, hitObjects, STACK_LENIENCE, STACK_TIMEOUT * osu.stackLeniency);
+
+		// update hit object positions
+		for (int i = 0; i < hitObjects.length; i++) {
+			if (objects.getStack(i) != 0)
+				hitObjects[i].updatePosition();
+		}
+	}
+
+	/**
+	 * Calculates the stack of every hit object.
+	 * @param objects the hit object store (stacks are written here)
+	 * @param hitObjects the hit objects
+	 * @param lenience the distance (in unscaled pixels) within which objects are stacked
+	 * @param timeWindow the time window (in ms) within which objects are stacked
+	 */
+	public static void calculate(HitObjectStore objects, HitObject[] hitObjects, float lenience, float timeWindow) {
+		calculate(objects, hitObjects, lenience, timeWindow, SCAN_LIMIT);
+	}
+
+	/**
+	 * Calculates the stack of every hit object, checking the given number of
+	 * preceding objects directly before searching the indices (for tests).
+	 * @param objects the hit object store (stacks are written here)
+	 * @param hitObjects the hit objects
+	 * @param lenience the distance (in unscaled pixels) within which objects are stacked
+	 * @param timeWindow the time window (in ms) within which objects are stacked
+	 * @param scanLimit the number of objects to check directly
+	 */
+	static void calculate(HitObjectStore objects, HitObject[] hitObjects, float lenience, float timeWindow, int scanLimit) {
+		new StackCalculator(objects, hitObjects, lenience, timeWindow, scanLimit).calculate(hitObjects.length);
+	}
+
+	/**
+	 * Constructor.
+	 * @param objects the hit object store
+	 * @param hitObjects the hit objects
+	 * @param lenience the distance (in unscaled pixels) within which objects are stacked
+	 * @param timeWindow the time window (in ms) within which objects are stacked
+	 * @param scanLimit the number of objects to check directly
+	 */
+	private StackCalculator(HitObjectStore objects, HitObject[] hitObjects, float lenience, float timeWindow, int scanLimit) {
+		this.objects = objects;
+		this.lenience = lenience;
+		this.scaledLenience = lenience * OsuHitObject.getXMultiplier();
+		this.timeWindow = timeWindow;
+		this.scanLimit = scanLimit;
+
+		int n = hitObjects.length;
+		this.x = new float[n];
+		this.y = new float[n];
+		this.startX = new float[n];
+		this.startY = new float[n];
+		this.endX = new float[n];
+		this.endY = new float[n];
+		this.isSlider = new boolean[n];
+		this.notSpinner = new boolean[n];
+		this.endTime = new float[n];
+
+		float[] point = new float[2];
+		for (int i = 0; i < n; i++) {
+			x[i] = objects.getX(i);
+			y[i] = objects.getY(i);
+			hitObjects[i].getPointAt(objects.getTime(i), point);
+			startX[i] = point[0];
+			startY[i] = point[1];
+			isSlider[i] = objects.isSlider(i);
+			notSpinner[i] = !objects.isSpinner(i);
+			if (isSlider[i]) {
+				int endTime = hitObjects[i].getEndTime();
+				hitObjects[i].getPointAt(endTime, point);
+				endX[i] = point[0];
+				endY[i] = point[1];
+				this.endTime[i] = endTime;
+			} else
+				this.endTime[i] = (notSpinner[i]) ? objects.getTime(i) : Float.POSITIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Creates the end time tree and the spatial grids.
+	 */
+	private void createIndices() {
+		int n = endTime.length, size = 1;
+		while (size < n)
+			size <<= 1;
+		this.treeSize = size;
+		this.timeTree = new float[size * 2];
+		Arrays.fill(timeTree, Float.POSITIVE_INFINITY);
+		System.arraycopy(endTime, 0, timeTree, size, n);
+		for (int node = size - 1; node > 0; node--)
+			timeTree[node] = Math.min(timeTree[node * 2], timeTree[node * 2 + 1]);
+
+		this.positions = new PointGrid(x, y, notSpinner, lenience);
+		this.sliderEnds = new PointGrid(endX, endY, isSlider, scaledLenience);
+	}
+
+	/**
+	 * Calculates the stacks.
+	 * @param n the number of hit objects
+	 */
+	private void calculate(int n) {
+		// reverse pass for stack calculation
+		for (int i = n - 1; i > 0; i--) {
+			int indexI = i;
+
+			// already calculated
+			if (objects.getStack(indexI) != 0 || !notSpinner[indexI])
+				continue;
+
+			// search for hit objects in stack
+			int index = i;
+			while ((index = findNext(i, indexI, index)) != -1) {
+				if (nextType == SLIDER_END) {
+					// slider end always start of the stack: reset calculation
+					stackOnSliderEnd(index, i, indexI);
+					break;
+				}
+
+				// stack moves up left
+				objects.setStack(index, objects.getStack(indexI) + 1);
+				indexI = index;
+			}
+		}
+	}
+
+	/**
+	 * Finds the next object below the top of a stack.
+	 * <p>
+	 * This is either a slider whose end lies on the last object of the
+	 * stack ({@link #SLIDER_END}), or an object at the position of the top
+	 * of the stack ({@link #STACK}), whichever has the larger index.
+	 * The type is stored in {@link #nextType}.
+	 * @param last the index of the last object in the stack
+	 * @param top the index of the current top of the stack
+	 * @param upper the exclusive upper bound on the index
+	 * @return the object index, or -1 if the stack is complete
+	 */
+	private int findNext(int last, int top, int upper) {
+		float time = objects.getTime(top) - timeWindow;
+		float topX = x[top], topY = y[top];
+
+		// check the nearest objects directly (most time windows are short)
+		int scanEnd = Math.max(upper - scanLimit, 0);
+		for (int n = upper - 1; n >= scanEnd; n--) {
+			if (!notSpinner[n])
+				continue;
+			if (endTime[n] < time) {
+				nextType = NONE;
+				return -1;
+			}
+			if (isSlider[n] && Utils.distance(startX[last], startY[last], endX[n], endY[n]) < scaledLenience) {
+				nextType = SLIDER_END;
+				return n;
+			}
+			if (Utils.distance(topX, topY, x[n], y[n]) < lenience) {
+				nextType = STACK;
+				return n;
+			}
+		}
+		if (scanEnd == 0) {
+			nextType = NONE;
+			return -1;
+		}
+
+		// search the rest of the time window through the indices
+		if (timeTree == null)
+			createIndices();
+		int lower = lastBefore(scanEnd, time);
+		int sliderIndex = sliderEnds.findLast(startX[last], startY[last], scaledLenience, lower, scanEnd);
+		int stackIndex = positions.findLast(topX, topY, lenience, Math.max(lower, sliderIndex), scanEnd);
+		if (stackIndex != -1) {
+			nextType = STACK;
+			return stackIndex;
+		}
+		nextType = (sliderIndex != -1) ? SLIDER_END : NONE;
+		return sliderIndex;
+	}
+
+	/**
+	 * Moves the objects of a stack that lie on a slider's end down.
+	 * @param slider the slider index
+	 * @param last the index of the last object in the stack
+	 * @param top the index of the current top of the stack
+	 */
+	private void stackOnSliderEnd(int slider, int last, int top) {
+		int offset = objects.getStack(top) - objects.getStack(slider) + 1;
+		for (int j = slider + 1; j <= last; j++) {
+			// hit object below slider end
+			if (Utils.distance(startX[j], startY[j], endX[slider], endY[slider]) < scaledLenience)
+				objects.setStack(j, objects.getStack(j) - offset);
+		}
+	}
+
+	/**
+	 * Returns the largest object index below {@code upper} whose end time is
+	 * less than {@code time}, or -1 if none.
+	 */
+	private int lastBefore(int upper, float time) {
+		return lastBefore(1, 0, treeSize, upper, time);
+	}
+
+	/**
+	 * Searches the subtree of {@code timeTree} rooted at {@code node}, which
+	 * covers the indices {@code [from, to)}.
+	 */
+	private int lastBefore(int node, int from, int to, int upper, float time) {
+		if (from >= upper || timeTree[node] >= time)
+			return -1;
+		if (to - from == 1)
+			return from;
+		int mid = (from + to) >>> 1;
+		int index = lastBefore(node * 2 + 1, mid, to, upper, time);
+		return (index != -1) ? index : lastBefore(node * 2, from, mid, upper, time);
+	}
+}
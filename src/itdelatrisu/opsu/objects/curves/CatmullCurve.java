@@ -40,7 +40,7 @@ public class CatmullCurve extends EqualDistanceMultiCurve {
 	public CatmullCurve(OsuHitObject hitObject, Color color) {
 		super(hitObject, color);
 		LinkedList<CurveType> catmulls = new LinkedList<CurveType>();
-		int ncontrolPoints = hitObject.getSliderX().length + 1;
+		int ncontrolPoints = hitObject.getSliderPointCount() + 1;
 		LinkedList<Vec2f> points = new LinkedList<Vec2f>();  // temporary list of points to separate different curves
 
 		// repeat the first and last points as controls points
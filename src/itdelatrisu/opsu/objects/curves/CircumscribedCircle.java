@@ -115,10 +115,13 @@ public class CircumscribedCircle extends Curve {
 
 		// calculate points
 		float step = hitObject.getPixelLength() / CURVE_POINTS_SEPERATION;
-		curve = new Vec2f[(int) step + 1];
-		for (int i = 0; i < curve.length; i++) {
-			float[] xy = pointAt(i / step);
-			curve[i] = new Vec2f(xy[0], xy[1]);
+		int points = (int) step + 1;
+		curve = new float[points * 2];
+		float[] xy = new float[2];
+		for (int i = 0; i < points; i++) {
+			pointAt(i / step, xy);
+			curve[i * 2] = xy[0];
+			curve[i * 2 + 1] = xy[1];
 		}
 	}
 
@@ -160,12 +163,11 @@ public class CircumscribedCircle extends Curve {
 	}
 
 	@Override
-	public float[] pointAt(float t) {
+	public float[] pointAt(float t, float[] out) {
 		float ang = lerp(startAng, endAng, t);
-		return new float[] {
-			(float) (Math.cos(ang) * radius + circleCenter.x),
-			(float) (Math.sin(ang) * radius + circleCenter.y)
-		};
+		out[0] = (float) (Math.cos(ang) * radius + circleCenter.x);
+		out[1] = (float) (Math.sin(ang) * radius + circleCenter.y);
+		return out;
 	}
 
 	@Override
@@ -19,9 +19,12 @@
 package itdelatrisu.opsu.objects.curves;
 
 import itdelatrisu.opsu.GameImage;
+import itdelatrisu.opsu.Options;
 import itdelatrisu.opsu.OsuHitObject;
 import itdelatrisu.opsu.Utils;
 
+import java.util.Arrays;
+
 import org.newdawn.slick.Color;
 import org.newdawn.slick.Image;
 
@@ -43,8 +46,14 @@ public abstract class Curve {
 	/** The scaled slider x, y coordinate lists. */
 	protected float[] sliderX, sliderY;
 
-	/** Points along the curve (set by inherited classes). */
-	protected Vec2f[] curve;
+	/** Points along the curve as (x0, y0, x1, y1, ...) (set by inherited classes). */
+	protected float[] curve;
+
+	/** The subset of curve points that are drawn (created on first draw). */
+	private float[] drawCurve;
+
+	/** The circle radius and tolerance used to create the drawn points. */
+	private float drawRadius = -1, drawTolerance = -1;
 
 	/**
 	 * Constructor.
@@ -61,10 +70,19 @@ public abstract class Curve {
 
 	/**
 	 * Returns the point on the curve at a value t.
+	 * Note that this method will create a new array.
 	 * @param t the t value [0, 1]
 	 * @return the point [x, y]
 	 */
-	public abstract float[] pointAt(float t);
+	public float[] pointAt(float t) { return pointAt(t, new float[2]); }
+
+	/**
+	 * Stores the point on the curve at a value t in the given array.
+	 * @param t the t value [0, 1]
+	 * @param out the array to store the point [x, y] in
+	 * @return the {@code out} array
+	 */
+	public abstract float[] pointAt(float t, float[] out);
 
 	/**
 	 * Draws the full curve to the graphics context.
@@ -76,10 +94,95 @@ public abstract class Curve {
 
 		Image hitCircle = GameImage.HITCIRCLE.getImage();
 		Image hitCircleOverlay = GameImage.HITCIRCLE_OVERLAY.getImage();
-		for (int i = 0; i < curve.length; i++)
-			hitCircleOverlay.drawCentered(curve[i].x, curve[i].y, Utils.COLOR_WHITE_FADE);
-		for (int i = 0; i < curve.length; i++)
-			hitCircle.drawCentered(curve[i].x, curve[i].y, color);
+		float radius = hitCircle.getWidth() / 2f;
+		float tolerance = Options.getSliderTolerance();
+		if (drawCurve == null || radius != drawRadius || tolerance != drawTolerance) {
+			drawCurve = simplify(curve, radius, tolerance);
+			drawRadius = radius;
+			drawTolerance = tolerance;
+		}
+
+		float[] points = drawCurve;
+		for (int i = 0; i < points.length; i += 2)
+			hitCircleOverlay.drawCentered(points[i], points[i + 1], Utils.COLOR_WHITE_FADE);
+		for (int i = 0; i < points.length; i += 2)
+			hitCircle.drawCentered(points[i], points[i + 1], color);
+	}
+
+	/**
+	 * Selects the points of a curve that need to be drawn for the outline of
+	 * the circles drawn along it to stay within a tolerance of the outline
+	 * formed by drawing all points.
+	 * <p>
+	 * Half of the tolerance is allowed for curvature: every skipped point
+	 * lies within {@code tolerance / 2} of the segment between the drawn
+	 * points around it.  The other half is allowed for the dips between two
+	 * adjacent circles, which limits their spacing to
+	 * {@code 2 * sqrt(r^2 - (r - tolerance / 2)^2)}.  Straight sections and
+	 * large circles therefore need far fewer points than tight curves.
+	 * @param points the curve points (x0, y0, x1, y1, ...)
+	 * @param radius the radius of the drawn circles
+	 * @param tolerance the maximum outline deviation, or 0 to draw every point
+	 * @return the points to draw (the original array if none can be skipped)
+	 */
+	static float[] simplify(float[] points, float radius, float tolerance) {
+		int n = points.length / 2;
+		if (tolerance <= 0 || n <= 2)
+			return points;
+
+		float maxDeviation = tolerance / 2f;
+		float maxSpacing;
+		if (radius > maxDeviation) {
+			float r = radius - maxDeviation;
+			maxSpacing = (float) (2 * Math.sqrt(radius * radius - r * r));
+		} else
+			maxSpacing = 2 * radius;
+
+		float[] out = new float[points.length];
+		out[0] = points[0];
+		out[1] = points[1];
+		int count = 1;
+		int anchor = 0;
+		for (int end = 2; end < n; end++) {
+			if (!canSkip(points, anchor, end, maxSpacing, maxDeviation)) {
+				// draw the last point that could still be reached
+				anchor = end - 1;
+				out[count * 2] = points[anchor * 2];
+				out[count * 2 + 1] = points[anchor * 2 + 1];
+				count++;
+			}
+		}
+		out[count * 2] = points[(n - 1) * 2];
+		out[count * 2 + 1] = points[(n - 1) * 2 + 1];
+		count++;
+		return (count == n) ? points : Arrays.copyOf(out, count * 2);
+	}
+
+	/**
+	 * Returns whether all points strictly between two curve points can be
+	 * skipped when drawing.
+	 * @param points the curve points (x0, y0, x1, y1, ...)
+	 * @param from the index of the first drawn point
+	 * @param to the index of the next drawn point
+	 * @param maxSpacing the maximum distance between the two drawn points
+	 * @param maxDeviation the maximum distance from a skipped point to the segment
+	 */
+	private static boolean canSkip(float[] points, int from, int to, float maxSpacing, float maxDeviation) {
+		float ax = points[from * 2], ay = points[from * 2 + 1];
+		float dx = points[to * 2] - ax, dy = points[to * 2 + 1] - ay;
+		float lenSq = dx * dx + dy * dy;
+		if (lenSq > maxSpacing * maxSpacing)
+			return false;
+
+		float maxDeviationSq = maxDeviation * maxDeviation;
+		for (int i = from + 1; i < to; i++) {
+			float px = points[i * 2] - ax, py = points[i * 2 + 1] - ay;
+			float t = (lenSq > 0) ? Utils.clamp((px * dx + py * dy) / lenSq, 0f, 1f) : 0f;
+			float ex = px - t * dx, ey = py - t * dy;
+			if (ex * ex + ey * ey > maxDeviationSq)
+				return false;
+		}
+		return true;
 	}
 
 	/**
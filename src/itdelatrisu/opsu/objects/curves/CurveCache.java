@@ -0,0 +1,240 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects.curves;
+
+import itdelatrisu.opsu.FullOsuFile;
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.HitObjectStore;
+import itdelatrisu.opsu.OsuFile;
+import itdelatrisu.opsu.OsuFileCache;
+import itdelatrisu.opsu.OsuHitObject;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.util.Log;
+
+/**
+ * Cache of slider curves for the hit objects of a single beatmap.
+ * <p>
+ * Curves are immutable once created, so they can be reused across retries
+ * as long as the hit object's stack offset and the screen resolution are
+ * unchanged.  Curves for an OsuFile can also be created in advance on a
+ * background thread (see {@link #precompute(OsuFile)}).
+ * <p>
+ * Only curves of a beatmap's own store are cached.  Copies of the store
+ * (e.g. in replay simulations, which may run in parallel) bypass the cache,
+ * so that they do not keep evicting the curves of the store being played
+ * or precomputed.
+ */
+public class CurveCache {
+	/** The coordinate scaling (and mods) that curves are created with. */
+	private static class Scaling {
+		/** The scaling values. */
+		private final float xMultiplier, yMultiplier;
+		private final int xOffset, yOffset;
+		private final boolean hardRock;
+
+		/**
+		 * Constructor.  Captures the current scaling.
+		 */
+		public Scaling() {
+			this.xMultiplier = OsuHitObject.getXMultiplier();
+			this.yMultiplier = OsuHitObject.getYMultiplier();
+			this.xOffset = OsuHitObject.getXOffset();
+			this.yOffset = OsuHitObject.getYOffset();
+			this.hardRock = GameMod.HARD_ROCK.isActive();
+		}
+
+		/**
+		 * Returns whether this scaling matches another.
+		 * @param s the other scaling (may be null)
+		 */
+		public boolean matches(Scaling s) {
+			return (s != null && xMultiplier == s.xMultiplier && yMultiplier == s.yMultiplier &&
+			        xOffset == s.xOffset && yOffset == s.yOffset && hardRock == s.hardRock);
+		}
+	}
+
+	/** The hit object store for which curves are cached. */
+	private static HitObjectStore store;
+
+	/** Cached curves, indexed by hit object index. */
+	private static Curve[] curves;
+
+	/** The stack offsets (in raw coordinates) used to create each cached curve. */
+	private static float[] stackOffsets;
+
+	/** The scaling used to create all cached curves. */
+	private static Scaling scaling;
+
+	/** Precompute request counter (used to cancel outdated requests). */
+	private static final AtomicInteger precomputeRequest = new AtomicInteger();
+
+	/** Precomputing thread (only the latest request is kept waiting). */
+	private static final ThreadPoolExecutor precomputeExecutor = new ThreadPoolExecutor(
+		1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "CurveCache");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		}, new ThreadPoolExecutor.DiscardOldestPolicy());
+
+	// This class should not be instantiated.
+	private CurveCache() {}
+
+	/**
+	 * Returns the curve for a slider, creating and caching it if needed.
+	 * Curves of copied stores are always created and never cached.
+	 * @param hitObject the slider
+	 * @param color the color of the curve
+	 * @return the curve
+	 */
+	public static Curve getCurve(OsuHitObject hitObject, Color color) {
+		HitObjectStore s = hitObject.getStore();
+		if (s.isCopy())
+			return createCurve(hitObject, color);
+
+		int index = hitObject.getIndex();
+		float stackOffset = hitObject.getStack() * OsuHitObject.getStackOffset();
+
+		Scaling current = new Scaling();
+		Curve curve = get(s, index, stackOffset, current);
+		if (curve == null) {
+			curve = createCurve(hitObject, color);
+			put(s, index, stackOffset, current, curve);
+		}
+		return curve;
+	}
+
+	/**
+	 * Creates a new curve for a slider.
+	 * @param hitObject the slider
+	 * @param color the color of the curve
+	 * @return the curve
+	 */
+	public static Curve createCurve(OsuHitObject hitObject, Color color) {
+		if (hitObject.getSliderType() == OsuHitObject.SLIDER_PASSTHROUGH && hitObject.getSliderPointCount() == 2)
+			return new CircumscribedCircle(hitObject, color);
+		else if (hitObject.getSliderType() == OsuHitObject.SLIDER_CATMULL)
+			return new CatmullCurve(hitObject, color);
+		else
+			return new LinearBezier(hitObject, color, hitObject.getSliderType() == OsuHitObject.SLIDER_LINEAR);
+	}
+
+	/**
+	 * Returns the cached curve for a hit object, or null if none.
+	 * @param s the hit object store
+	 * @param index the hit object index
+	 * @param stackOffset the current stack offset of the hit object
+	 * @param current the current scaling
+	 */
+	private static synchronized Curve get(HitObjectStore s, int index, float stackOffset, Scaling current) {
+		if (s != store || !current.matches(scaling))
+			return null;
+		if (curves[index] == null || stackOffsets[index] != stackOffset)
+			return null;
+		return curves[index];
+	}
+
+	/**
+	 * Adds a curve to the cache.  If the curve belongs to a different store,
+	 * or was created with a different scaling, all cached curves are
+	 * discarded.  If the scaling changed while the curve was being created
+	 * (e.g. a mod was toggled during precomputing), the curve is not cached.
+	 * @param s the hit object store
+	 * @param index the hit object index
+	 * @param stackOffset the stack offset used to create the curve
+	 * @param used the scaling captured before creating the curve
+	 * @param curve the curve
+	 */
+	private static synchronized void put(HitObjectStore s, int index, float stackOffset, Scaling used, Curve curve) {
+		if (!used.matches(new Scaling()))
+			return;
+		if (s != store || !used.matches(scaling)) {
+			store = s;
+			curves = new Curve[s.size()];
+			stackOffsets = new float[s.size()];
+			scaling = used;
+		}
+		curves[index] = curve;
+		stackOffsets[index] = stackOffset;
+	}
+
+	/**
+	 * Discards all cached curves.
+	 */
+	public static synchronized void clear() {
+		store = null;
+		curves = null;
+		stackOffsets = null;
+		scaling = null;
+	}
+
+	/**
+	 * Loads the full OsuFile of a beatmap (see {@link OsuFileCache}), then
+	 * creates its (unstacked) slider curves on a background thread.  Any
+	 * previous request that has not yet completed is cancelled.
+	 * @param osu the OsuFile
+	 */
+	public static void precompute(final OsuFile osu) {
+		final int request = precomputeRequest.incrementAndGet();
+		precomputeExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (precomputeRequest.get() != request)
+					return;  // cancelled
+				FullOsuFile full = OsuFileCache.acquire(osu);
+				try {
+					HitObjectStore s = full.objectStore;
+					OsuHitObject[] objects = full.objects;
+
+					int count = 0;
+					for (int i = 0, n = s.size(); i < n; i++) {
+						if (precomputeRequest.get() != request)
+							return;
+						if (!s.isSlider(i) || s.getStack(i) != 0)
+							continue;
+						try {
+							getCurve(objects[i], Color.white);
+							count++;
+						} catch (Exception e) {
+							Log.debug(String.format("Failed to precompute slider curve %d for '%s'.", i, osu.toString()));
+						}
+					}
+					Log.debug(String.format("Precomputed %d slider curves for '%s'.", count, osu.toString()));
+				} finally {
+					OsuFileCache.release(full);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Cancels any pending precompute request.
+	 */
+	public static void cancelPrecompute() { precomputeRequest.incrementAndGet(); }
+}
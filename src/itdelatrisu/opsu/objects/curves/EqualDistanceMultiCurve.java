@@ -55,7 +55,7 @@ public abstract class EqualDistanceMultiCurve extends Curve {
 	public void init(LinkedList<CurveType> curvesList){
 		// now try to creates points the are equidistant to each other
 		this.ncurve = (int) (hitObject.getPixelLength() / CURVE_POINTS_SEPERATION);
-		this.curve = new Vec2f[ncurve + 1];
+		this.curve = new float[(ncurve + 1) * 2];
 
 		float distanceAt = 0;
 		Iterator<CurveType> iter = curvesList.iterator();
@@ -94,44 +94,58 @@ public abstract class EqualDistanceMultiCurve extends Curve {
 			// interpolate the point between the two closest distances
 			if (distanceAt - lastDistanceAt > 1) {
 				float t = (prefDistance - lastDistanceAt) / (distanceAt - lastDistanceAt);
-				curve[i] = new Vec2f(lerp(lastCurve.x, thisCurve.x, t), lerp(lastCurve.y, thisCurve.y, t));
-			} else
-				curve[i] = thisCurve;
+				curve[i * 2] = lerp(lastCurve.x, thisCurve.x, t);
+				curve[i * 2 + 1] = lerp(lastCurve.y, thisCurve.y, t);
+			} else {
+				curve[i * 2] = thisCurve.x;
+				curve[i * 2 + 1] = thisCurve.y;
+			}
 		}
 
 //		if (hitObject.getRepeatCount() > 1) {
-			Vec2f c1 = curve[0];
+			int c1 = 0;
 			int cnt = 1;
-			Vec2f c2 = curve[cnt++];
-			while (cnt <= ncurve && c2.cpy().sub(c1).len() < 1)
-				c2 = curve[cnt++];
-			this.startAngle = (float) (Math.atan2(c2.y - c1.y, c2.x - c1.x) * 180 / Math.PI);
+			int c2 = cnt++;
+			while (cnt <= ncurve && distance(c1, c2) < 1)
+				c2 = cnt++;
+			this.startAngle = angle(c1, c2);
 
-			c1 = curve[ncurve];
+			c1 = ncurve;
 			cnt = ncurve - 1;
-			c2 = curve[cnt--];
-			while (cnt >= 0 && c2.cpy().sub(c1).len() < 1)
-				c2 = curve[cnt--];
-			this.endAngle = (float) (Math.atan2(c2.y - c1.y, c2.x - c1.x) * 180 / Math.PI);
+			c2 = cnt--;
+			while (cnt >= 0 && distance(c1, c2) < 1)
+				c2 = cnt--;
+			this.endAngle = angle(c1, c2);
 //		}
 	}
 
+	/**
+	 * Returns the distance between two points on the curve.
+	 */
+	private float distance(int i, int j) {
+		return (float) Math.hypot(curve[j * 2] - curve[i * 2], curve[j * 2 + 1] - curve[i * 2 + 1]);
+	}
+
+	/**
+	 * Returns the angle (in degrees) from one point on the curve to another.
+	 */
+	private float angle(int from, int to) {
+		return (float) (Math.atan2(curve[to * 2 + 1] - curve[from * 2 + 1], curve[to * 2] - curve[from * 2]) * 180 / Math.PI);
+	}
+
 	@Override
-	public float[] pointAt(float t) {
+	public float[] pointAt(float t, float[] out) {
 		float indexF = t * ncurve;
 		int index = (int) indexF;
 		if (index >= ncurve) {
-			Vec2f poi = curve[ncurve];
-			return new float[] { poi.x, poi.y };
+			out[0] = curve[ncurve * 2];
+			out[1] = curve[ncurve * 2 + 1];
 		} else {
-			Vec2f poi = curve[index];
-			Vec2f poi2 = curve[index + 1];
 			float t2 = indexF - index;
-			return new float[] {
-				lerp(poi.x, poi2.x, t2),
-				lerp(poi.y, poi2.y, t2)
-			};
+			out[0] = lerp(curve[index * 2], curve[index * 2 + 2], t2);
+			out[1] = lerp(curve[index * 2 + 1], curve[index * 2 + 3], t2);
 		}
+		return out;
 	}
 
 	@Override
@@ -46,7 +46,7 @@ public class LinearBezier extends EqualDistanceMultiCurve {
 		// a b c - c d - d e f g
 		// Lines: generate a new curve for each sequential pair
 		// ab  bc  cd  de  ef  fg
-		int controlPoints = hitObject.getSliderX().length + 1;
+		int controlPoints = hitObject.getSliderPointCount() + 1;
 		LinkedList<Vec2f> points = new LinkedList<Vec2f>();  // temporary list of points to separate different Bezier curves
 		Vec2f lastPoi = null;
 		for (int i = 0; i < controlPoints; i++) {
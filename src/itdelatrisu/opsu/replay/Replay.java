@@ -20,24 +20,29 @@ package itdelatrisu.opsu.replay;
 
 import itdelatrisu.opsu.ErrorHandler;
 import itdelatrisu.opsu.Options;
-import itdelatrisu.opsu.Utils;
 import itdelatrisu.opsu.io.OsuReader;
 import itdelatrisu.opsu.io.OsuWriter;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.CharBuffer;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.StandardCharsets;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import lzma.streams.LzmaOutputStream;
+import lzma.sdk.lzma.Encoder;
 
 import org.apache.commons.compress.compressors.lzma.LZMACompressorInputStream;
 import org.newdawn.slick.util.Log;
@@ -49,6 +54,13 @@ import org.newdawn.slick.util.Log;
  * @author smoogipooo (https://github.com/smoogipooo/osu-Replay-API/)
  */
 public class Replay {
+	/**
+	 * Replay flag: the replay was recorded with judgements in fixed-length
+	 * ticks.  Replays without it (from osu! or older versions) are judged
+	 * one frame at a time, as they were when recorded.
+	 */
+	public static final int FLAG_TICK_JUDGEMENT = 1;
+
 	/** The associated file. */
 	private File file;
 
@@ -58,7 +70,7 @@ public class Replay {
 	/** The game mode. */
 	public byte mode;
 
-	/** Game version when the replay was created. */
+	/** Game version when the replay was created (build date, as yyyyMMdd). */
 	public int version;
 
 	/** Beatmap MD5 hash. */
@@ -94,14 +106,41 @@ public class Replay {
 	/** Length of the replay data. */
 	public int replayLength;
 
-	/** Replay frames. */
-	public ReplayFrame[] frames;
+	/** Replay frames (filled in the background while {@link #isLoadingFrames()}). */
+	public ReplayFrameBuffer frames;
+
+	/** The thread decoding frames in the background (null if none). */
+	private volatile Thread decoder;
 
 	/** Seed. (?) */
 	public int seed;
 
-	/** Seed string. */
-	private static final String SEED_STRING = "-12345";
+	/**
+	 * Replay flags (FLAG_* bitmask), stored in the unused x field of a seed
+	 * frame written before all other frames (see {@link ReplayFrameReader}).
+	 */
+	public int flags;
+
+	/** Number of frames to decode before {@link #loadAsync()} returns. */
+	private static final int PRELOAD_FRAMES = 1024;
+
+	/** LZMA dictionary size used when saving replays, in bytes. */
+	private static final int LZMA_DICTIONARY_SIZE = 1 << 15;
+
+	/** Output buffer size used when saving replays, in bytes. */
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	/** The replay writer (null if not started). */
+	private static ExecutorService saveExecutor;
+
+	/** Maximum time to wait for queued saves on exit, in milliseconds. */
+	private static final long SAVE_TIMEOUT = 10000;
+
+	/**
+	 * The LZMA encoder, kept between saves so that its buffers are reused.
+	 * Only used on the replay writer thread.
+	 */
+	private static Encoder encoder;
 
 	/**
 	 * Empty constructor.
@@ -118,19 +157,73 @@ public class Replay {
 
 	/**
 	 * Loads the replay data.
+	 * If frames are being decoded in the background, waits until they are done.
 	 * @throws IOException failure to load the data
 	 */
 	public void load() throws IOException {
+		if (loaded) {
+			Thread t = decoder;
+			if (t != null) {
+				try {
+					t.join();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			return;
+		}
+
+		OsuReader reader = new OsuReader(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			loadHeader(reader);
+			loadData(reader, false);
+		} finally {
+			reader.close();
+		}
+		loaded = true;
+	}
+
+	/**
+	 * Loads the replay header and the first replay frames, and decodes the
+	 * remaining frames in the background.
+	 * Frames can be read from {@link #frames} as they are decoded
+	 * (up to its current size).
+	 * @throws IOException failure to load the data
+	 */
+	public void loadAsync() throws IOException {
 		if (loaded)
 			return;
 
-		OsuReader reader = new OsuReader(file);
-		loadHeader(reader);
-		loadData(reader);
-		reader.close();
+		OsuReader reader = new OsuReader(new BufferedInputStream(new FileInputStream(file)));
+		boolean background = false;
+		try {
+			loadHeader(reader);
+			background = loadData(reader, true);
+		} finally {
+			if (!background)
+				reader.close();
+		}
 		loaded = true;
 	}
 
+	/**
+	 * Loads only the replay header data (the replay is not marked as loaded).
+	 * @throws IOException failure to load the data
+	 */
+	public void loadHeader() throws IOException {
+		OsuReader reader = new OsuReader(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			loadHeader(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns whether or not replay frames are being decoded in the background.
+	 */
+	public boolean isLoadingFrames() { return decoder != null; }
+
 	/**
 	 * Loads the replay header data.
 	 * @param reader the associated reader
@@ -157,9 +250,13 @@ public class Replay {
 	/**
 	 * Loads the replay data.
 	 * @param reader the associated reader
+	 * @param async whether to decode the frames after the first
+	 *        {@link #PRELOAD_FRAMES} frames in the background
+	 * @return true if frames are being decoded in the background (which will
+	 *         close the reader), false otherwise
 	 * @throws IOException
 	 */
-	private void loadData(OsuReader reader) throws IOException {
+	private boolean loadData(final OsuReader reader, boolean async) throws IOException {
 		// life data
 		String[] lifeData = reader.readString().split(",");
 		List<LifeFrame> lifeFrameList = new ArrayList<LifeFrame>(lifeData.length);
@@ -182,40 +279,65 @@ public class Replay {
 
 		// LZMA-encoded replay data
 		this.replayLength = reader.readInt();
-		if (replayLength > 0) {
-			LZMACompressorInputStream lzma = new LZMACompressorInputStream(reader.getInputStream());
-			String[] replayFrames = Utils.convertStreamToString(lzma).split(",");
-			lzma.close();
-			List<ReplayFrame> replayFrameList = new ArrayList<ReplayFrame>(replayFrames.length);
-			int lastTime = 0;
-			for (String frame : replayFrames) {
-				if (frame.isEmpty())
-					continue;
-				String[] tokens = frame.split("\\|");
-				if (tokens.length < 4)
-					continue;
+		if (replayLength <= 0)
+			return false;
+
+		final ReplayFrameReader frameReader = new ReplayFrameReader(
+				new LZMACompressorInputStream(reader.getInputStream()));
+		final ReplayFrameBuffer frameBuffer = new ReplayFrameBuffer(Math.max(replayLength / 4, PRELOAD_FRAMES));
+		this.frames = frameBuffer;
+		boolean done = decodeFrames(frameReader, frameBuffer, (async) ? PRELOAD_FRAMES : Integer.MAX_VALUE);
+		this.flags = frameReader.getFlags();  // the flags frame comes first
+		if (done) {
+			this.seed = frameReader.getSeed();
+			return false;
+		}
+
+		// decode the remaining frames in the background
+		decoder = new Thread() {
+			@Override
+			public void run() {
 				try {
-					if (tokens[0].equals(SEED_STRING)) {
-						seed = Integer.parseInt(tokens[3]);
-						continue;
+					decodeFrames(frameReader, frameBuffer, Integer.MAX_VALUE);
+				} catch (IOException e) {
+					Log.error(String.format("Failed to load replay frames from '%s'.", file.getName()), e);
+				} finally {
+					seed = frameReader.getSeed();
+					decoder = null;
+					try {
+						reader.close();
+					} catch (IOException e) {
+						Log.warn("Failed to close replay file.", e);
 					}
-					int timeDiff = Integer.parseInt(tokens[0]);
-					int time = timeDiff + lastTime;
-					float x = Float.parseFloat(tokens[1]);
-					float y = Float.parseFloat(tokens[2]);
-					int keys = Integer.parseInt(tokens[3]);
-					replayFrameList.add(new ReplayFrame(timeDiff, time, x, y, keys));
-					lastTime = time;
-				} catch (NumberFormatException e) {
-					Log.warn(String.format("Failed to parse frame: '%s'", frame), e);
 				}
 			}
-			this.frames = replayFrameList.toArray(new ReplayFrame[replayFrameList.size()]);
+		};
+		decoder.setDaemon(true);
+		decoder.start();
+		return true;
+	}
+
+	/**
+	 * Decodes replay frames.
+	 * @param frameReader the frame reader
+	 * @param frameBuffer the buffer to add the frames to
+	 * @param count the maximum number of frames to decode
+	 * @return true if all frames have been decoded
+	 * @throws IOException
+	 */
+	private static boolean decodeFrames(ReplayFrameReader frameReader, ReplayFrameBuffer frameBuffer, int count)
+			throws IOException {
+		for (int i = 0; i < count; i++) {
+			if (!frameReader.next(frameBuffer))
+				return true;
 		}
+		return false;
 	}
 
 	/**
 	 * Saves the replay data to a file in the replays directory.
+	 * The file is written on the replay writer thread; saves are queued
+	 * and written in order.
 	 */
 	public void save() {
 		// create replay directory
@@ -227,89 +349,135 @@ public class Replay {
 			}
 		}
 
-		// write file in new thread
+		// queue the file write
 		final File file = new File(dir, String.format("%s.osr", getReplayFilename()));
-		new Thread() {
+		getWriter().execute(new Runnable() {
 			@Override
 			public void run() {
-				try (FileOutputStream out = new FileOutputStream(file)) {
-					OsuWriter writer = new OsuWriter(out);
-
-					// header
-					writer.write(mode);
-					writer.write(version);
-					writer.write(beatmapHash);
-					writer.write(playerName);
-					writer.write(replayHash);
-					writer.write(hit300);
-					writer.write(hit100);
-					writer.write(hit50);
-					writer.write(geki);
-					writer.write(katu);
-					writer.write(miss);
-					writer.write(score);
-					writer.write(combo);
-					writer.write(perfect);
-					writer.write(mods);
-
-					// life data
-					StringBuilder sb = new StringBuilder();
-					if (lifeFrames != null) {
-						NumberFormat nf = new DecimalFormat("##.##");
-						for (int i = 0; i < lifeFrames.length; i++) {
-							LifeFrame frame = lifeFrames[i];
-							sb.append(String.format("%d|%s,",
-									frame.getTime(), nf.format(frame.getPercentage())));
-						}
-					}
-					writer.write(sb.toString());
-
-					// timestamp
-					writer.write(timestamp);
-
-					// LZMA-encoded replay data
-					if (frames != null && frames.length > 0) {
-						// build full frame string
-						NumberFormat nf = new DecimalFormat("###.#####");
-						sb = new StringBuilder();
-						for (int i = 0; i < frames.length; i++) {
-							ReplayFrame frame = frames[i];
-							sb.append(String.format("%d|%s|%s|%d,",
-									frame.getTimeDiff(), nf.format(frame.getX()),
-									nf.format(frame.getY()), frame.getKeys()));
-						}
-						sb.append(String.format("%s|0|0|%d", SEED_STRING, seed));
-
-						// get bytes from string
-						CharsetEncoder encoder = StandardCharsets.US_ASCII.newEncoder();
-						CharBuffer buffer = CharBuffer.wrap(sb);
-						byte[] bytes = encoder.encode(buffer).array();
-
-						// compress data
-						ByteArrayOutputStream bout = new ByteArrayOutputStream();
-						LzmaOutputStream compressedOut = new LzmaOutputStream.Builder(bout).useMediumDictionarySize().build();
-						try {
-							compressedOut.write(bytes);
-						} catch (IOException e) {
-							// possible OOM: https://github.com/jponge/lzma-java/issues/9
-							ErrorHandler.error("LZMA compression failed (possible out-of-memory error).", e, true);
-						}
-						compressedOut.close();
-						bout.close();
-
-						// write to file
-						byte[] compressed = bout.toByteArray();
-						writer.write(compressed.length);
-						writer.write(compressed);
-					} else
-						writer.write(0);
-
-					writer.close();
+				try {
+					write(file);
 				} catch (IOException e) {
 					ErrorHandler.error("Could not save replay data.", e, true);
 				}
 			}
-		}.start();
+		});
+	}
+
+	/**
+	 * Waits for all queued replay saves to be written, and stops the
+	 * replay writer thread.
+	 */
+	public static void finishSaves() {
+		ExecutorService executor;
+		synchronized (Replay.class) {
+			executor = saveExecutor;
+			saveExecutor = null;
+		}
+		if (executor == null)
+			return;
+
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(SAVE_TIMEOUT, TimeUnit.MILLISECONDS))
+				Log.warn("Timed out waiting for replays to be saved.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the replay writer, creating it if needed.
+	 */
+	private static synchronized ExecutorService getWriter() {
+		if (saveExecutor == null) {
+			saveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ReplayWriter");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return saveExecutor;
+	}
+
+	/**
+	 * Writes the replay data to a file.
+	 * The replay frames are compressed while they are written, and the
+	 * compressed length is filled in afterwards.
+	 * Must only be called on the replay writer thread.
+	 * @param file the file to write to
+	 * @throws IOException
+	 */
+	private void write(File file) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			OsuWriter writer = new OsuWriter(new BufferedOutputStream(out, WRITE_BUFFER_SIZE));
+
+			// header
+			writer.write(mode);
+			writer.write(version);
+			writer.write(beatmapHash);
+			writer.write(playerName);
+			writer.write(replayHash);
+			writer.write(hit300);
+			writer.write(hit100);
+			writer.write(hit50);
+			writer.write(geki);
+			writer.write(katu);
+			writer.write(miss);
+			writer.write(score);
+			writer.write(combo);
+			writer.write(perfect);
+			writer.write(mods);
+
+			// life data
+			StringBuilder sb = new StringBuilder();
+			if (lifeFrames != null) {
+				for (int i = 0; i < lifeFrames.length; i++) {
+					LifeFrame frame = lifeFrames[i];
+					sb.append(frame.getTime());
+					sb.append('|');
+					sb.append(ReplayFrameInputStream.formatDecimal(frame.getPercentage(), 2));
+					sb.append(',');
+				}
+			}
+			writer.write(sb.toString());
+
+			// timestamp
+			writer.write(timestamp);
+
+			// LZMA-encoded replay data
+			if (frames != null && frames.size() > 0) {
+				OutputStream dataOut = writer.getOutputStream();
+				dataOut.flush();
+				FileChannel channel = out.getChannel();
+				long lengthPosition = channel.position();
+				writer.write(0);  // placeholder
+
+				// compress data
+				if (encoder == null) {
+					encoder = new Encoder();
+					encoder.setDictionarySize(LZMA_DICTIONARY_SIZE);
+					encoder.setEndMarkerMode(true);
+				}
+				encoder.writeCoderProperties(dataOut);
+				for (int i = 0; i < 8; i++)  // unknown uncompressed size
+					dataOut.write(0xFF);
+				encoder.code(new ReplayFrameInputStream(frames, seed, flags), dataOut, -1, -1, null);
+				dataOut.flush();
+
+				// fill in the compressed length
+				long length = channel.position() - lengthPosition - 4;
+				ByteBuffer buf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) length);
+				buf.flip();
+				while (buf.hasRemaining())
+					channel.write(buf, lengthPosition + buf.position());
+			} else
+				writer.write(0);
+
+			writer.close();
+		}
 	}
 
 	/**
@@ -358,16 +526,17 @@ public class Replay {
 		sb.append("Timestamp: "); sb.append(timestamp); sb.append('\n');
 		sb.append("Replay length: "); sb.append(replayLength); sb.append('\n');
 		if (frames != null) {
-			sb.append("Frames ("); sb.append(frames.length); sb.append(" total):\n");
-			for (int i = 0; i < frames.length && i < MAX_LINES; i++) {
+			sb.append("Frames ("); sb.append(frames.size()); sb.append(" total):\n");
+			for (int i = 0; i < frames.size() && i < MAX_LINES; i++) {
 				if (i % LINE_SPLIT == 0)
 					sb.append('\t');
-				sb.append(frames[i]);
+				sb.append(frames.getFrame(i));
 				sb.append((i % LINE_SPLIT == LINE_SPLIT - 1) ? '\n' : ' ');
 			}
 			sb.append('\n');
 		}
 		sb.append("Seed: "); sb.append(seed); sb.append('\n');
+		sb.append("Flags: "); sb.append(flags); sb.append('\n');
 		return sb.toString();
 	}
 }
@@ -46,6 +46,18 @@ public class ReplayFrame {
 	/** Keys pressed (bitmask). */
 	private int keys;
 
+	/**
+	 * Returns a scaled cursor x coordinate.
+	 * @param x the raw x coordinate
+	 */
+	public static int scaleX(float x) { return (int) (x * OsuHitObject.getXMultiplier() + OsuHitObject.getXOffset()); }
+
+	/**
+	 * Returns a scaled cursor y coordinate.
+	 * @param y the raw y coordinate
+	 */
+	public static int scaleY(float y) { return (int) (y * OsuHitObject.getYMultiplier() + OsuHitObject.getYOffset()); }
+
 	/**
 	 * Returns the start frame.
 	 * @param t the value for the {@code time} and {@code timeDiff} fields
@@ -98,12 +110,12 @@ public class ReplayFrame {
 	/**
 	 * Returns the scaled cursor x coordinate.
 	 */
-	public int getScaledX() { return (int) (x * OsuHitObject.getXMultiplier() + OsuHitObject.getXOffset()); }
+	public int getScaledX() { return scaleX(x); }
 
 	/**
 	 * Returns the scaled cursor y coordinate.
 	 */
-	public int getScaledY() { return (int) (y * OsuHitObject.getYMultiplier() + OsuHitObject.getYOffset()); }
+	public int getScaledY() { return scaleY(y); }
 
 	/**
 	 * Returns the keys pressed (KEY_* bitmask).
@@ -0,0 +1,205 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import java.util.Arrays;
+
+/**
+ * Growable columnar storage for replay frames.
+ * <p>
+ * Frame fields are kept in parallel primitive arrays instead of one
+ * {@link ReplayFrame} object per frame.  Frames may be read by another
+ * thread while they are being added (by a single writer thread): all frames
+ * below a value returned by {@link #size()} can be read.  The arrays are
+ * published through a volatile holder, which is replaced when the arrays
+ * grow, and {@link #size()} is published after the frame data.
+ */
+public class ReplayFrameBuffer {
+	/** Default initial capacity. */
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The frame arrays.
+	 */
+	private static class Columns {
+		/** Times since the previous action, in milliseconds. */
+		private final int[] timeDiff;
+
+		/** Times, in milliseconds. */
+		private final int[] time;
+
+		/** Cursor coordinates (in OsuPixels). */
+		private final float[] x, y;
+
+		/** Keys pressed (bitmasks). */
+		private final int[] keys;
+
+		/**
+		 * Constructor.
+		 * @param capacity the capacity
+		 */
+		public Columns(int capacity) {
+			this.timeDiff = new int[capacity];
+			this.time = new int[capacity];
+			this.x = new float[capacity];
+			this.y = new float[capacity];
+			this.keys = new int[capacity];
+		}
+
+		/**
+		 * Copy constructor.
+		 * @param c the arrays to copy
+		 * @param capacity the new capacity
+		 */
+		public Columns(Columns c, int capacity) {
+			this.timeDiff = Arrays.copyOf(c.timeDiff, capacity);
+			this.time = Arrays.copyOf(c.time, capacity);
+			this.x = Arrays.copyOf(c.x, capacity);
+			this.y = Arrays.copyOf(c.y, capacity);
+			this.keys = Arrays.copyOf(c.keys, capacity);
+		}
+	}
+
+	/** The frame arrays (replaced on growth). */
+	private volatile Columns columns;
+
+	/** The number of frames. */
+	private volatile int size = 0;
+
+	/**
+	 * Constructor.
+	 */
+	public ReplayFrameBuffer() { this(DEFAULT_CAPACITY); }
+
+	/**
+	 * Constructor.
+	 * @param capacity the initial capacity
+	 */
+	public ReplayFrameBuffer(int capacity) {
+		this.columns = new Columns(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Returns the number of frames.
+	 */
+	public int size() { return size; }
+
+	/**
+	 * Adds a frame.
+	 * @param timeDiff time since the previous action (in ms)
+	 * @param time time (in ms)
+	 * @param x cursor x coordinate [0, 512]
+	 * @param y cursor y coordinate [0, 384]
+	 * @param keys keys pressed (bitmask)
+	 * @return the index of the new frame
+	 */
+	public int add(int timeDiff, int time, float x, float y, int keys) {
+		int index = size;
+		Columns c = columns;
+		if (index == c.time.length) {
+			// readers still holding the old arrays can read all frames copied here
+			c = new Columns(c, index * 2);
+			columns = c;
+		}
+		set(c, index, timeDiff, time, x, y, keys);
+		size = index + 1;
+		return index;
+	}
+
+	/**
+	 * Adds a start frame (see {@link #setStartFrame(int, int)}).
+	 * @param t the value for the {@code time} and {@code timeDiff} fields
+	 * @return the index of the new frame
+	 */
+	public int addStartFrame(int t) { return add(t, t, 256, -500, ReplayFrame.KEY_NONE); }
+
+	/**
+	 * Replaces a frame with a start frame.
+	 * Not safe while another thread reads the frame.
+	 * @param index the frame index
+	 * @param t the value for the {@code time} and {@code timeDiff} fields
+	 */
+	public void setStartFrame(int index, int t) { set(columns, index, t, t, 256, -500, ReplayFrame.KEY_NONE); }
+
+	/**
+	 * Replaces a frame.
+	 */
+	private static void set(Columns c, int index, int timeDiff, int time, float x, float y, int keys) {
+		c.timeDiff[index] = timeDiff;
+		c.time[index] = time;
+		c.x[index] = x;
+		c.y[index] = y;
+		c.keys[index] = keys;
+	}
+
+	/**
+	 * Returns the frame time, in milliseconds.
+	 */
+	public int getTime(int index) { return columns.time[index]; }
+
+	/**
+	 * Returns the time since the previous action, in milliseconds.
+	 */
+	public int getTimeDiff(int index) { return columns.timeDiff[index]; }
+
+	/**
+	 * Sets the time since the previous action, in milliseconds.
+	 * Not safe while another thread reads the frame.
+	 */
+	public void setTimeDiff(int index, int diff) { columns.timeDiff[index] = diff; }
+
+	/**
+	 * Returns the raw cursor x coordinate.
+	 */
+	public float getX(int index) { return columns.x[index]; }
+
+	/**
+	 * Returns the raw cursor y coordinate.
+	 */
+	public float getY(int index) { return columns.y[index]; }
+
+	/**
+	 * Returns the scaled cursor x coordinate.
+	 */
+	public int getScaledX(int index) { return ReplayFrame.scaleX(columns.x[index]); }
+
+	/**
+	 * Returns the scaled cursor y coordinate.
+	 */
+	public int getScaledY(int index) { return ReplayFrame.scaleY(columns.y[index]); }
+
+	/**
+	 * Returns the keys pressed (KEY_* bitmask).
+	 */
+	public int getKeys(int index) { return columns.keys[index]; }
+
+	/**
+	 * Returns whether or not a key is pressed.
+	 */
+	public boolean isKeyPressed(int index) { return (columns.keys[index] != ReplayFrame.KEY_NONE); }
+
+	/**
+	 * Returns a frame as a new {@link ReplayFrame} object.
+	 * @param index the frame index
+	 */
+	public ReplayFrame getFrame(int index) {
+		Columns c = columns;
+		return new ReplayFrame(c.timeDiff[index], c.time[index], c.x[index], c.y[index], c.keys[index]);
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Input stream of the text form of replay frames ("w|x|y|z,...").
+ * <p>
+ * Frames are formatted into a fixed-size buffer as the stream is read, so
+ * the full text is never held in memory.  Coordinates are written with at
+ * most 5 fraction digits (rounded half-even, trailing zeros removed).
+ * <p>
+ * If any replay flags are set, a seed frame carrying them in its x field
+ * ("-12345|flags|0|seed") is written before all other frames, so that the
+ * flags are known before the rest of the frames are decoded.  The usual
+ * seed frame ("-12345|0|0|seed") is still written after the last frame.
+ */
+class ReplayFrameInputStream extends InputStream {
+	/** Size of the text buffer. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Maximum length of a formatted frame. */
+	private static final int MAX_FRAME_LENGTH = 96;
+
+	/** Number of fraction digits of frame coordinates. */
+	private static final int FRAME_DIGITS = 5;
+
+	/** Powers of 10. */
+	private static final long[] POW10 = { 1L, 10L, 100L, 1000L, 10000L, 100000L };
+
+	/** Magnitude at or above which values are written with {@link Float#toString(float)}. */
+	private static final float MAX_DECIMAL = 1e13f;
+
+	/** The frames. */
+	private final ReplayFrameBuffer frames;
+
+	/** The number of frames to write. */
+	private final int frameCount;
+
+	/** The seed. */
+	private final int seed;
+
+	/** The replay flags. */
+	private final int flags;
+
+	/** Index of the next frame to format (frameCount once the seed frame is written). */
+	private int frameIndex = 0;
+
+	/** Whether or not the flags frame has been written (or is not needed). */
+	private boolean flagsWritten;
+
+	/** Whether or not the seed frame has been written. */
+	private boolean seedWritten = false;
+
+	/** The text buffer. */
+	private final byte[] buf = new byte[BUFFER_SIZE];
+
+	/** The current position and end of the buffered text. */
+	private int pos = 0, end = 0;
+
+	/**
+	 * Constructor.
+	 * @param frames the frames to write (frames added later are ignored)
+	 * @param seed the seed
+	 * @param flags the replay flags
+	 */
+	public ReplayFrameInputStream(ReplayFrameBuffer frames, int seed, int flags) {
+		this.frames = frames;
+		this.frameCount = frames.size();
+		this.seed = seed;
+		this.flags = flags;
+		this.flagsWritten = (flags == 0);
+	}
+
+	@Override
+	public int read() {
+		if (pos >= end && !fill())
+			return -1;
+		return buf[pos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (pos >= end && !fill())
+			return -1;
+		int n = Math.min(len, end - pos);
+		System.arraycopy(buf, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() { return end - pos; }
+
+	/**
+	 * Formats the next frames into the buffer.
+	 * @return false if there are no more frames
+	 */
+	private boolean fill() {
+		pos = end = 0;
+		if (!flagsWritten) {
+			// flags frame
+			end = writeLong(buf, end, ReplayFrameReader.SEED_TIME);
+			buf[end++] = '|';
+			end = writeLong(buf, end, flags);
+			end = writeBytes(buf, end, "|0|");
+			end = writeLong(buf, end, seed);
+			buf[end++] = ',';
+			flagsWritten = true;
+		}
+		while (frameIndex < frameCount && end + MAX_FRAME_LENGTH <= buf.length) {
+			int i = frameIndex++;
+			end = writeLong(buf, end, frames.getTimeDiff(i));
+			buf[end++] = '|';
+			end = writeDecimal(buf, end, frames.getX(i), FRAME_DIGITS);
+			buf[end++] = '|';
+			end = writeDecimal(buf, end, frames.getY(i), FRAME_DIGITS);
+			buf[end++] = '|';
+			end = writeLong(buf, end, frames.getKeys(i));
+			buf[end++] = ',';
+		}
+		if (frameIndex >= frameCount && !seedWritten && end + MAX_FRAME_LENGTH <= buf.length) {
+			// seed frame
+			end = writeBytes(buf, end, ReplayFrameReader.SEED_TIME + "|0|0|");
+			end = writeLong(buf, end, seed);
+			seedWritten = true;
+		}
+		return end > 0;
+	}
+
+	/**
+	 * Returns a value as a decimal string (see {@link #writeDecimal(byte[], int, float, int)}).
+	 * @param v the value
+	 * @param digits the maximum number of fraction digits (at most 5)
+	 */
+	public static String formatDecimal(float v, int digits) {
+		byte[] b = new byte[MAX_FRAME_LENGTH];
+		return new String(b, 0, writeDecimal(b, 0, v, digits), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Writes a value as a decimal string, rounded half-even to at most the
+	 * given number of fraction digits, without trailing zeros.
+	 * @param b the byte array
+	 * @param off the offset to write at
+	 * @param v the value
+	 * @param digits the maximum number of fraction digits (at most 5)
+	 * @return the offset after the written bytes
+	 */
+	private static int writeDecimal(byte[] b, int off, float v, int digits) {
+		if (!(Math.abs(v) < MAX_DECIMAL))
+			return writeBytes(b, off, Float.toString(v));
+
+		// exact: a float times a power of 10 (up to 10^5) fits in a double
+		// sign of any negative value, even if it rounds to zero (as DecimalFormat)
+		if (Float.floatToIntBits(v) < 0) {
+			b[off++] = '-';
+			v = -v;
+		}
+		long scaled = (long) Math.rint((double) v * POW10[digits]);
+		off = writeLong(b, off, scaled / POW10[digits]);
+		long fraction = scaled % POW10[digits];
+		if (fraction != 0) {
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				digits--;
+			}
+			b[off++] = '.';
+			for (int i = digits - 1; i >= 0; i--) {
+				b[off + i] = (byte) ('0' + fraction % 10);
+				fraction /= 10;
+			}
+			off += digits;
+		}
+		return off;
+	}
+
+	/**
+	 * Writes an integer.
+	 * @param b the byte array
+	 * @param off the offset to write at
+	 * @param v the value
+	 * @return the offset after the written bytes
+	 */
+	private static int writeLong(byte[] b, int off, long v) {
+		if (v == Long.MIN_VALUE)
+			return writeBytes(b, off, Long.toString(v));
+		if (v < 0) {
+			b[off++] = '-';
+			v = -v;
+		}
+		int len = 1;
+		for (long n = v / 10; n != 0; n /= 10)
+			len++;
+		for (int i = off + len - 1; i >= off; i--) {
+			b[i] = (byte) ('0' + v % 10);
+			v /= 10;
+		}
+		return off + len;
+	}
+
+	/**
+	 * Writes an ASCII string.
+	 * @param b the byte array
+	 * @param off the offset to write at
+	 * @param s the string
+	 * @return the offset after the written bytes
+	 */
+	private static int writeBytes(byte[] b, int off, String s) {
+		for (int i = 0, len = s.length(); i < len; i++)
+			b[off++] = (byte) s.charAt(i);
+		return off;
+	}
+}
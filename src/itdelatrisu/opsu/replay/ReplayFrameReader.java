@@ -0,0 +1,188 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import itdelatrisu.opsu.io.LineTokenizer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import org.newdawn.slick.util.Log;
+
+/**
+ * Streaming decoder for replay frame data ("w|x|y|z," frames, after LZMA
+ * decompression).
+ * <p>
+ * Frames are read into a reusable byte buffer and parsed from a character
+ * view of it by a {@link LineTokenizer}, so no strings are created except for
+ * unusual number formats and error messages.
+ * <p>
+ * Seed frames ("-12345|x|0|seed") are not added to the frame buffer.  Their
+ * x field is 0 in replays from osu!, and holds the replay flags in the seed
+ * frame that precedes all other frames in replays written by this game (see
+ * {@link ReplayFrameInputStream}).
+ */
+public class ReplayFrameReader implements Closeable {
+	/** Input buffer size, in bytes. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Seed frame time difference. */
+	static final int SEED_TIME = -12345;
+
+	/** The input stream. */
+	private final InputStream in;
+
+	/** The input buffer. */
+	private final byte[] buf = new byte[BUFFER_SIZE];
+
+	/** The input buffer cursor and limit. */
+	private int pos = 0, limit = 0;
+
+	/** The bytes of the current frame. */
+	private byte[] frame = new byte[64];
+
+	/** The length of the current frame. */
+	private int frameLength;
+
+	/** Character view of the current frame (frames are ASCII). */
+	private final CharSequence frameChars = new CharSequence() {
+		@Override
+		public int length() { return frameLength; }
+
+		@Override
+		public char charAt(int index) { return (char) (frame[index] & 0xFF); }
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(frame, start, end - start, StandardCharsets.US_ASCII);
+		}
+
+		@Override
+		public String toString() { return new String(frame, 0, frameLength, StandardCharsets.US_ASCII); }
+	};
+
+	/** The frame tokenizer. */
+	private final LineTokenizer tokenizer = new LineTokenizer("");
+
+	/** The time of the last frame. */
+	private int lastTime = 0;
+
+	/** The seed (0 if not yet read). */
+	private int seed = 0;
+
+	/** The replay flags (0 if not yet read). */
+	private int flags = 0;
+
+	/**
+	 * Constructor.
+	 * @param in the (decompressed) input stream
+	 */
+	public ReplayFrameReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads the next replay frame into a frame buffer.
+	 * Seed frames, frames with fewer than four fields, and malformed frames
+	 * are skipped.
+	 * @param frames the frame buffer to add the frame to
+	 * @return false if the end of the stream was reached
+	 * @throws IOException if the stream could not be read
+	 */
+	public boolean next(ReplayFrameBuffer frames) throws IOException {
+		while (readFrame()) {
+			tokenizer.reset(frameChars);
+			try {
+				int timeDiff = tokenizer.nextInt();
+				if (timeDiff == SEED_TIME) {
+					flags |= (int) tokenizer.nextFloat();
+					tokenizer.skipToken();
+					seed = tokenizer.nextInt();
+					continue;
+				}
+				int time = timeDiff + lastTime;
+				float x = tokenizer.nextFloat();
+				float y = tokenizer.nextFloat();
+				int keys = tokenizer.nextInt();
+				lastTime = time;
+				frames.add(timeDiff, time, x, y, keys);
+				return true;
+			} catch (NoSuchElementException e) {
+				continue;  // fewer than four fields
+			} catch (NumberFormatException e) {
+				Log.warn(String.format("Failed to parse frame: '%s'", frameChars), e);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the seed, or 0 if no seed frame has been read.
+	 */
+	public int getSeed() { return seed; }
+
+	/**
+	 * Returns the replay flags (see {@link Replay#flags}), or 0 if none have
+	 * been read.
+	 */
+	public int getFlags() { return flags; }
+
+	@Override
+	public void close() throws IOException { in.close(); }
+
+	/**
+	 * Reads the next non-empty frame (up to the next ',') into the frame buffer.
+	 * @return false if the end of the stream was reached
+	 */
+	private boolean readFrame() throws IOException {
+		frameLength = 0;
+		while (true) {
+			if (pos >= limit) {
+				limit = in.read(buf, 0, BUFFER_SIZE);
+				pos = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return frameLength > 0;
+				}
+			}
+
+			// copy bytes up to the next frame separator
+			int start = pos;
+			while (pos < limit && buf[pos] != ',')
+				pos++;
+			int length = pos - start;
+			if (frameLength + length > frame.length) {
+				byte[] newFrame = new byte[Math.max(frame.length * 2, frameLength + length)];
+				System.arraycopy(frame, 0, newFrame, 0, frameLength);
+				frame = newFrame;
+			}
+			System.arraycopy(buf, start, frame, frameLength, length);
+			frameLength += length;
+
+			if (pos < limit) {  // found a separator
+				pos++;
+				if (frameLength > 0)
+					return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import itdelatrisu.opsu.FullOsuFile;
+import itdelatrisu.opsu.GameData;
+import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.HitObjectStore;
+import itdelatrisu.opsu.OsuFile;
+import itdelatrisu.opsu.OsuFileCache;
+import itdelatrisu.opsu.OsuHitObject;
+import itdelatrisu.opsu.OsuTimingPoint;
+import itdelatrisu.opsu.ScoreData;
+import itdelatrisu.opsu.objects.Circle;
+import itdelatrisu.opsu.objects.GameJudge;
+import itdelatrisu.opsu.objects.HitObject;
+import itdelatrisu.opsu.objects.Slider;
+import itdelatrisu.opsu.objects.Spinner;
+
+import java.io.IOException;
+
+/**
+ * Headless gameplay simulator for replays.
+ * <p>
+ * Replay frames are run through the same hit object judgement as in the game
+ * (see {@link GameJudge}), but on a virtual clock given by the frame times
+ * instead of the music track, and without loading any images or sounds.
+ * Only the replay's own mods are applied (not the user's fixed difficulty
+ * overrides).  The result is deterministic for a given beatmap, replay, and
+ * container size.
+ * <p>
+ * Hit object scaling, object dimensions, and the active mods are global, so
+ * simulations must not run during gameplay.  Simulations that share this
+ * state (i.e. with the same beatmap, mods, and container size) run
+ * concurrently, each judging its own copy of the beatmap's hit objects;
+ * other simulations wait until they are done.
+ */
+public class ReplaySimulator implements GameJudge.Listener {
+	/** Time step, in milliseconds, used to finish the map after the last frame. */
+	private static final int END_STEP = 16;
+
+	/** The global state of the running simulations (guarded by ReplaySimulator.class). */
+	private static String activeKey;
+
+	/** The number of running simulations (guarded by ReplaySimulator.class). */
+	private static int activeCount = 0;
+
+	/** The mod state before the running simulations (guarded by ReplaySimulator.class). */
+	private static int previousMods;
+
+	/** The beatmap. */
+	private final FullOsuFile osu;
+
+	/** The replay. */
+	private final Replay replay;
+
+	/** Container dimensions. */
+	private final int width, height;
+
+	/** The game data. */
+	private GameData data;
+
+	/** The hit object judgement. */
+	private GameJudge judge;
+
+	/** Whether the virtual track has ended. */
+	private boolean trackEnded = false;
+
+	/**
+	 * Simulates a replay and returns the resulting score.
+	 * <p>
+	 * The replay frames and beatmap objects are loaded if needed (this part
+	 * may run concurrently).  Hit objects are scaled to the given container
+	 * size, which should match the size used when judging the replay in the
+	 * game (the hit circle radius depends on it).
+	 * @param osu the beatmap played
+	 * @param replay the replay
+	 * @param width the container width
+	 * @param height the container height
+	 * @return the score data
+	 * @throws IOException if the replay could not be loaded
+	 */
+	public static ScoreData simulate(OsuFile osu, Replay replay, int width, int height)
+			throws IOException {
+		replay.load();
+		if (replay.frames == null)
+			throw new IOException("Replay has no frames.");
+
+		FullOsuFile full = OsuFileCache.acquire(osu);
+		try {
+			// stacking modifies the store, so each simulation judges its own copy
+			HitObjectStore store = new HitObjectStore(full.objectStore);
+
+			enter(String.format("%s\0%d\0%d\0%d", osu.getFile().getPath(), replay.mods, width, height),
+					replay.mods, width, height);
+			try {
+				return new ReplaySimulator(full, replay, width, height).run(store);
+			} finally {
+				exit();
+			}
+		} finally {
+			OsuFileCache.release(full);
+		}
+	}
+
+	/**
+	 * Waits until no simulations with different global state are running,
+	 * then sets up the global state (if not already set up).
+	 * @param key the key identifying the global state
+	 * @param mods the mod state
+	 * @param width the container width
+	 * @param height the container height
+	 */
+	private static synchronized void enter(String key, int mods, int width, int height) {
+		boolean interrupted = false;
+		while (activeCount > 0 && !key.equals(activeKey)) {
+			try {
+				ReplaySimulator.class.wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (activeCount == 0) {
+			activeKey = key;
+			previousMods = GameMod.getModState();
+			GameMod.loadModState(mods);
+			OsuHitObject.init(width, height);
+		}
+		activeCount++;
+	}
+
+	/**
+	 * Ends a simulation, restoring the global state after the last one.
+	 */
+	private static synchronized void exit() {
+		if (--activeCount == 0) {
+			activeKey = null;
+			GameMod.loadModState(previousMods);
+			ReplaySimulator.class.notifyAll();
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param osu the beatmap played
+	 * @param replay the replay (with frames loaded)
+	 * @param width the container width
+	 * @param height the container height
+	 */
+	private ReplaySimulator(FullOsuFile osu, Replay replay, int width, int height) {
+		this.osu = osu;
+		this.replay = replay;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Runs the simulation.
+	 * The object dimensions set here are the same for all running simulations.
+	 * @param store the hit object store to judge (a copy of the beatmap's)
+	 * @return the score data
+	 */
+	private ScoreData run(HitObjectStore store) {
+		data = new GameData();
+		judge = new GameJudge(osu, data, this);
+		judge.setMapModifiers(false);
+		float circleSize = judge.getCircleSize();
+		Circle.init(circleSize);
+		Slider.init(width, height, circleSize, osu);
+		Spinner.init(width, height);
+		judge.createHitObjects(store, false);
+		judge.setTickJudgement((replay.flags & Replay.FLAG_TICK_JUDGEMENT) != 0);
+
+		// skip the initial frames (start position and skip time)
+		ReplayFrameBuffer frames = replay.frames;
+		int replayIndex, frameCount = frames.size();
+		int replayX = width / 2, replayY = height / 2;
+		for (replayIndex = 0; replayIndex < frameCount; replayIndex++) {
+			if (frames.getY(replayIndex) < 0)
+				continue;
+			if (frames.getTime(replayIndex) != 0)
+				break;
+			replayX = frames.getScaledX(replayIndex);
+			replayY = frames.getScaledY(replayIndex);
+		}
+		judge.setCursor(replayX, replayY);
+
+		// run all frames
+		int trackPosition = 0, keys = ReplayFrame.KEY_NONE;
+		for (; replayIndex < frameCount; replayIndex++) {
+			replayX = frames.getScaledX(replayIndex);
+			replayY = frames.getScaledY(replayIndex);
+			keys = frames.getKeys(replayIndex);
+			trackPosition = frames.getTime(replayIndex);
+			judge.runReplayFrame(frames.getTimeDiff(replayIndex), trackPosition, replayX, replayY, keys);
+		}
+
+		// out of frames: keep updating with the last frame's data until the map is complete
+		HitObject[] hitObjects = judge.getHitObjects();
+		if (!judge.isComplete()) {
+			int endTime = hitObjects[hitObjects.length - 1].getEndTime() + judge.getHitResultOffsets()[GameData.HIT_MISS];
+			while (judge.getObjectIndex() < hitObjects.length && trackPosition <= endTime) {
+				trackPosition += END_STEP;
+				judge.runTo(END_STEP, trackPosition);
+			}
+
+			// track ended before last object was processed: force a hit result
+			trackEnded = true;
+			judge.update(replayX, replayY, END_STEP, trackPosition, keys);
+		}
+
+		data.setReplay(replay);
+		return data.getScoreData(osu);
+	}
+
+	@Override
+	public boolean isTrackEnded() { return trackEnded; }
+
+	@Override
+	public void timingPointChanged(OsuTimingPoint timingPoint) {}
+
+	@Override
+	public void breakStarted() {}
+
+	@Override
+	public void beforeDrain(int mouseX, int mouseY, int trackPosition) {}
+
+	@Override
+	public void lifeLost() {}
+
+	@Override
+	public void lifeRestored() {}
+
+	@Override
+	public void gameOver() {}
+
+	@Override
+	public void mapComplete() {}
+}
@@ -0,0 +1,382 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import itdelatrisu.opsu.Options;
+import itdelatrisu.opsu.OsuFile;
+import itdelatrisu.opsu.OsuParser;
+import itdelatrisu.opsu.ScoreData;
+import itdelatrisu.opsu.Utils;
+import itdelatrisu.opsu.db.DBController;
+import itdelatrisu.opsu.db.ScoreDB;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.newdawn.slick.util.Log;
+
+/**
+ * Command-line tool that re-scores every saved replay with the
+ * {@link ReplaySimulator} and reports the replays whose results differ from
+ * the replay header or the stored score.
+ * <p>
+ * Usage: {@code ReplayVerifier [report file]}.  Progress and mismatches are
+ * logged; the report file, if given, lists the mismatches only.  The exit
+ * status is 1 if any mismatches or errors were found.  Beatmaps are loaded
+ * without modifying the beatmap database.
+ * <p>
+ * Replay headers are decoded and matched to beatmaps on a pool of worker
+ * threads.  The replays are then simulated on the same pool, grouped by
+ * beatmap and mods: simulations of a group share the same global game state
+ * (see {@link ReplaySimulator}), so they run concurrently.
+ */
+public class ReplayVerifier {
+	/** A replay matched to its beatmap. */
+	private static class Job {
+		/** The replay file index. */
+		public final int index;
+
+		/** The replay (header only). */
+		public final Replay replay;
+
+		/** The stored score (or null if none). */
+		public final ScoreData stored;
+
+		/** The beatmap (or null if not found). */
+		public final OsuFile osu;
+
+		/** The problems found so far. */
+		public final List<String> problems = new ArrayList<String>();
+
+		/**
+		 * Constructor.
+		 */
+		public Job(int index, Replay replay, ScoreData stored, OsuFile osu) {
+			this.index = index;
+			this.replay = replay;
+			this.stored = stored;
+			this.osu = osu;
+		}
+	}
+
+	/** The replay files. */
+	private final File[] files;
+
+	/** Stored scores, keyed by replay name. */
+	private final Map<String, ScoreData> scores;
+
+	/** Beatmaps, keyed by their {@link #getKey(int, String, String, String, String)} strings. */
+	private final Map<String, OsuFile> beatmaps = new HashMap<String, OsuFile>();
+
+	/** Beatmaps, keyed by file MD5 hash (created when first needed). */
+	private Map<String, OsuFile> beatmapHashes;
+
+	/** Container dimensions used for judgement. */
+	private final int width, height;
+
+	/**
+	 * Runs the tool.
+	 * @param args the report file (optional)
+	 */
+	public static void main(String[] args) {
+		Log.setVerbose(true);
+		Options.parseOptions();
+		DBController.init();
+
+		PrintStream out = null;
+		int mismatches;
+		try {
+			if (args.length > 0)
+				out = new PrintStream(new FileOutputStream(args[0]));
+
+			Log.info("Loading beatmaps...");
+			List<ArrayList<OsuFile>> songGroups = OsuParser.parseSongGroups(Options.getBeatmapDir().listFiles(), false);
+			if (songGroups == null)
+				songGroups = Collections.emptyList();
+
+			ReplayVerifier verifier = new ReplayVerifier(Options.getReplayDir(), songGroups,
+					Options.getResolutionWidth(), Options.getResolutionHeight());
+			Log.info(String.format("Verifying %d replays...", verifier.files.length));
+			mismatches = verifier.run(out, Runtime.getRuntime().availableProcessors());
+			Log.info(String.format("%d of %d replays did not match.", mismatches, verifier.files.length));
+		} catch (FileNotFoundException e) {
+			Log.error(String.format("Could not create report file '%s'.", args[0]), e);
+			mismatches = -1;
+		} finally {
+			if (out != null)
+				out.close();
+			DBController.closeConnections();
+		}
+		System.exit((mismatches == 0) ? 0 : 1);
+	}
+
+	/**
+	 * Constructor.
+	 * @param dir the replay directory
+	 * @param songGroups the beatmaps
+	 * @param width the container width used for judgement
+	 * @param height the container height used for judgement
+	 */
+	public ReplayVerifier(File dir, List<ArrayList<OsuFile>> songGroups, int width, int height) {
+		this.width = width;
+		this.height = height;
+
+		File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.toLowerCase().endsWith(".osr");
+			}
+		});
+		if (files == null)
+			files = new File[0];
+		Arrays.sort(files);
+		this.files = files;
+
+		Map<String, ScoreData> scores = ScoreDB.getReplayScores();
+		this.scores = (scores == null) ? new HashMap<String, ScoreData>() : scores;
+
+		for (ArrayList<OsuFile> osuFiles : songGroups) {
+			for (OsuFile osu : osuFiles)
+				beatmaps.put(getKey(osu.beatmapID, osu.title, osu.artist, osu.creator, osu.version), osu);
+		}
+	}
+
+	/**
+	 * Verifies all replays and reports the mismatches.
+	 * @param out the report stream (or null to only log the mismatches)
+	 * @param threads the number of worker threads
+	 * @return the number of replays that did not match (or could not be verified)
+	 */
+	public int run(PrintStream out, int threads) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, String.format("ReplayVerifier-%d", count.incrementAndGet()));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		// match replays to beatmaps
+		List<Future<Job>> matches = new ArrayList<Future<Job>>(files.length);
+		for (int i = 0; i < files.length; i++) {
+			final int index = i;
+			matches.add(executor.submit(new Callable<Job>() {
+				@Override
+				public Job call() { return match(index); }
+			}));
+		}
+		List<Job> jobs = new ArrayList<Job>(files.length);
+		for (int i = 0; i < files.length; i++) {
+			Job job;
+			try {
+				job = matches.get(i).get();
+			} catch (InterruptedException | ExecutionException e) {
+				job = new Job(i, null, null, null);
+				job.problems.add(String.format("verification failed: %s", e.getCause()));
+			}
+			jobs.add(job);
+		}
+
+		// simulate, grouped by beatmap and mods
+		List<Job> sorted = new ArrayList<Job>(jobs);
+		Collections.sort(sorted, new Comparator<Job>() {
+			@Override
+			public int compare(Job a, Job b) {
+				if (a.osu == null || b.osu == null)
+					return (a.osu == null) ? ((b.osu == null) ? 0 : -1) : 1;
+				int c = a.osu.getFile().compareTo(b.osu.getFile());
+				return (c != 0) ? c : Integer.compare(a.replay.mods, b.replay.mods);
+			}
+		});
+		List<Future<?>> simulations = new ArrayList<Future<?>>(sorted.size());
+		for (final Job job : sorted) {
+			if (job.osu == null)
+				continue;
+			simulations.add(executor.submit(new Runnable() {
+				@Override
+				public void run() { simulate(job); }
+			}));
+		}
+		executor.shutdown();
+		for (Future<?> future : simulations) {
+			try {
+				future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				Log.error("Replay simulation failed.", e);
+			}
+		}
+
+		// report (in file order)
+		int mismatches = 0;
+		for (Job job : jobs) {
+			if (job.problems.isEmpty())
+				continue;
+
+			mismatches++;
+			StringBuilder sb = new StringBuilder(files[job.index].getName());
+			for (String problem : job.problems)
+				sb.append(String.format("%n    %s", problem));
+			Log.warn(sb.toString());
+			if (out != null)
+				out.println(sb.toString());
+		}
+		if (out != null)
+			out.flush();
+		return mismatches;
+	}
+
+	/**
+	 * Loads a replay header and finds its beatmap.
+	 * @param index the replay file index
+	 * @return the job (with problems, if the beatmap could not be found)
+	 */
+	private Job match(int index) {
+		File file = files[index];
+		Replay replay = new Replay(file);
+		try {
+			replay.loadHeader();
+		} catch (IOException e) {
+			Job job = new Job(index, replay, null, null);
+			job.problems.add(String.format("could not load replay: %s", e.getMessage()));
+			return job;
+		}
+
+		String name = file.getName();
+		ScoreData stored = scores.get(name.substring(0, name.length() - 4));
+		OsuFile osu = findBeatmap(replay, stored);
+		Job job = new Job(index, replay, stored, osu);
+		if (osu == null)
+			job.problems.add(String.format("beatmap not found (MD5 %s)", replay.beatmapHash));
+		return job;
+	}
+
+	/**
+	 * Simulates a replay and compares the results.
+	 * The replay frames are loaded into a separate Replay object, so that
+	 * they can be freed afterwards.
+	 * @param job the job
+	 */
+	private void simulate(Job job) {
+		File file = files[job.index];
+		Replay replay = job.replay;
+		ScoreData stored = job.stored;
+		List<String> problems = job.problems;
+		ScoreData result;
+		try {
+			result = ReplaySimulator.simulate(job.osu, new Replay(file), width, height);
+		} catch (Exception e) {
+			Log.warn(String.format("Failed to simulate replay '%s'.", file.getAbsolutePath()), e);
+			problems.add(String.format("simulation failed: %s", e));
+			return;
+		}
+
+		// replay header
+		compare(problems, "replay", "300", replay.hit300, result.hit300);
+		compare(problems, "replay", "100", replay.hit100, result.hit100);
+		compare(problems, "replay", "50", replay.hit50, result.hit50);
+		compare(problems, "replay", "miss", replay.miss, result.miss);
+		compare(problems, "replay", "combo", replay.combo, result.combo);
+		compare(problems, "replay", "score", replay.score, result.score);
+
+		// stored score
+		if (stored != null) {
+			compare(problems, "score", "300", stored.hit300, result.hit300);
+			compare(problems, "score", "100", stored.hit100, result.hit100);
+			compare(problems, "score", "50", stored.hit50, result.hit50);
+			compare(problems, "score", "miss", stored.miss, result.miss);
+			compare(problems, "score", "combo", stored.combo, result.combo);
+			compare(problems, "score", "score", stored.score, result.score);
+		}
+
+		if (!problems.isEmpty())
+			problems.add(0, String.format("%s (mods %d)", job.osu.toString(), replay.mods));
+	}
+
+	/**
+	 * Adds a problem to the list if an expected and simulated value differ.
+	 * @param problems the problem list
+	 * @param source the source of the expected value
+	 * @param field the field name
+	 * @param expected the expected value
+	 * @param actual the simulated value
+	 */
+	private static void compare(List<String> problems, String source, String field, long expected, long actual) {
+		if (expected != actual)
+			problems.add(String.format("%s %s: expected %d, got %d", source, field, expected, actual));
+	}
+
+	/**
+	 * Returns the beatmap played in a replay.
+	 * The beatmap given by the stored score is used if its MD5 hash matches
+	 * the replay; otherwise, all beatmaps are searched by hash.
+	 * @param replay the replay (with header loaded)
+	 * @param stored the stored score (or null if none)
+	 * @return the beatmap, or null if not found
+	 */
+	private OsuFile findBeatmap(Replay replay, ScoreData stored) {
+		if (stored != null) {
+			OsuFile osu = beatmaps.get(getKey(stored.MID, stored.title, stored.artist, stored.creator, stored.version));
+			if (osu != null && osu.getFile().isFile() && replay.beatmapHash.equals(Utils.getMD5(osu.getFile())))
+				return osu;
+		}
+		return getBeatmapHashes().get(replay.beatmapHash);
+	}
+
+	/**
+	 * Returns the map of beatmap MD5 hashes, creating it if needed.
+	 */
+	private synchronized Map<String, OsuFile> getBeatmapHashes() {
+		if (beatmapHashes == null) {
+			beatmapHashes = new HashMap<String, OsuFile>();
+			for (OsuFile osu : beatmaps.values()) {
+				if (osu.getFile().isFile())
+					beatmapHashes.put(Utils.getMD5(osu.getFile()), osu);
+			}
+		}
+		return beatmapHashes;
+	}
+
+	/**
+	 * Returns a key identifying a beatmap (the fields used by the scores database).
+	 */
+	private static String getKey(int beatmapID, String title, String artist, String creator, String version) {
+		return String.format("%d\0%s\0%s\0%s\0%s", beatmapID, title, artist, creator, version);
+	}
+}
@@ -19,15 +19,19 @@
 package itdelatrisu.opsu.states;
 
 import itdelatrisu.opsu.ErrorHandler;
+import itdelatrisu.opsu.FullOsuFile;
 import itdelatrisu.opsu.GameData;
 import itdelatrisu.opsu.GameImage;
 import itdelatrisu.opsu.GameMod;
+import itdelatrisu.opsu.HitObjectStore;
+import itdelatrisu.opsu.InputClock;
+import itdelatrisu.opsu.InputEvent;
 import itdelatrisu.opsu.MenuButton;
 import itdelatrisu.opsu.Opsu;
 import itdelatrisu.opsu.Options;
 import itdelatrisu.opsu.OsuFile;
+import itdelatrisu.opsu.OsuFileCache;
 import itdelatrisu.opsu.OsuHitObject;
-import itdelatrisu.opsu.OsuParser;
 import itdelatrisu.opsu.OsuTimingPoint;
 import itdelatrisu.opsu.ScoreData;
 import itdelatrisu.opsu.UI;
@@ -36,20 +40,21 @@ import itdelatrisu.opsu.audio.HitSound;
 import itdelatrisu.opsu.audio.MusicController;
 import itdelatrisu.opsu.audio.SoundController;
 import itdelatrisu.opsu.audio.SoundEffect;
-import itdelatrisu.opsu.db.OsuDB;
 import itdelatrisu.opsu.db.ScoreDB;
 import itdelatrisu.opsu.objects.Circle;
-import itdelatrisu.opsu.objects.DummyObject;
+import itdelatrisu.opsu.objects.GameJudge;
 import itdelatrisu.opsu.objects.HitObject;
 import itdelatrisu.opsu.objects.Slider;
 import itdelatrisu.opsu.objects.Spinner;
 import itdelatrisu.opsu.replay.PlaybackSpeed;
 import itdelatrisu.opsu.replay.Replay;
 import itdelatrisu.opsu.replay.ReplayFrame;
+import itdelatrisu.opsu.replay.ReplayFrameBuffer;
 
 import java.io.File;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.opengl.Display;
@@ -69,7 +74,7 @@ import org.newdawn.slick.state.transition.FadeOutTransition;
 /**
  * "Game" state.
  */
-public class Game extends BasicGameState {
+public class Game extends BasicGameState implements GameJudge.Listener {
 	/** Game restart states. */
 	public enum Restart {
 		/** No restart. */
@@ -84,60 +89,74 @@ public class Game extends BasicGameState {
 		LOSE
 	}
 
+	/** Game state saved while watching a replay, used for seeking. */
+	private static class ReplayKeyframe {
+		/** The track position (the time of the next replay frame). */
+		private int time;
+
+		/** The next replay frame index. */
+		private int replayIndex;
+
+		/** The replay cursor coordinates. */
+		private int replayX, replayY;
+
+		/** Whether a replay key is pressed. */
+		private boolean replayKeyPressed;
+
+		/** The last game keys pressed. */
+		private int lastKeysPressed;
+
+		/** The current hit object index. */
+		private int objectIndex;
+
+		/** A copy of the current hit object (null if none). */
+		private HitObject hitObject;
+
+		/** Whether the break sound has been played. */
+		private boolean breakSound;
+
+		/** The judgement state. */
+		private GameJudge.State judge;
+
+		/** The scoring state. */
+		private GameData.State data;
+	}
+
 	/** Minimum time before start of song, in milliseconds, to process skip-related actions. */
 	private static final int SKIP_OFFSET = 2000;
 
-	/** Tolerance in case if hit object is not snapped to the grid. */
-	private static final float STACK_LENIENCE = 3f;
-
-	/** Stack time window of the previous object, in ms. */
-	private static final int STACK_TIMEOUT = 1000;
+	/** Minimum time between replay keyframes, in milliseconds. */
+	private static final int REPLAY_KEYFRAME_INTERVAL = 2000;
 
-	/** Stack position offset modifier. */
-	private static final float STACK_OFFSET_MODIFIER = 0.05f;
+	/** Replay scrub bar background colors. */
+	private static final Color
+		SCRUB_BAR_NORMAL = new Color(0, 0, 0, 0.25f),
+		SCRUB_BAR_HOVER  = new Color(0, 0, 0, 0.5f);
 
-	/** The associated OsuFile object. */
-	private OsuFile osu;
+	/** The associated OsuFile object (acquired from the OsuFile cache). */
+	private FullOsuFile osu;
 
 	/** The associated GameData object. */
 	private GameData data;
 
-	/** Current hit object index in OsuHitObject[] array. */
-	private int objectIndex = 0;
+	/** The hit object judgement (hit objects, map modifiers, and progress through the map). */
+	private GameJudge judge;
 
-	/** The map's HitObjects, indexed by objectIndex. */
-	private HitObject[] hitObjects;
+	/** Points sampled from hit objects (reused to avoid allocations). */
+	private final float[] pointA = new float[2], pointB = new float[2], autoPoint = new float[2];
 
 	/** Delay time, in milliseconds, before song starts. */
 	private int leadInTime;
 
-	/** Hit object approach time, in milliseconds. */
-	private int approachTime;
-
-	/** Time offsets for obtaining each hit result (indexed by HIT_* constants). */
-	private int[] hitResultOffset;
-
 	/** Current restart state. */
 	private Restart restart;
 
-	/** Current break index in breaks ArrayList. */
-	private int breakIndex;
-
-	/** Break start time (0 if not in break). */
-	private int breakTime = 0;
-
 	/** Whether the break sound has been played. */
 	private boolean breakSound;
 
 	/** Skip button (displayed at song start, when necessary). */
 	private MenuButton skipButton;
 
-	/** Current timing point index in timingPoints ArrayList. */
-	private int timingPointIndex;
-
-	/** Current beat lengths (base value and inherited value). */
-	private float beatLengthBase, beatLength;
-
 	/** Whether the countdown sound has been played. */
 	private boolean
 		countdownReadySound, countdown3Sound, countdown1Sound,
@@ -155,12 +174,6 @@ public class Game extends BasicGameState {
 	/** Whether a checkpoint has been loaded during this game. */
 	private boolean checkpointLoaded = false;
 
-	/** Number of deaths, used if "Easy" mod is enabled. */
-	private byte deaths = 0;
-
-	/** Track position at death, used if "Easy" mod is enabled. */
-	private int deathTime = -1;
-
 	/** Number of retries. */
 	private int retries = 0;
 
@@ -185,8 +198,11 @@ public class Game extends BasicGameState {
 	/** The last replay frame time. */
 	private int lastReplayTime = 0;
 
-	/** The keys from the previous replay frame. */
-	private int lastReplayKeys = 0;
+	/** Game key events waiting to be handled (added by input callbacks, handled in {@link #update}). */
+	private final ConcurrentLinkedQueue<InputEvent> inputEvents = new ConcurrentLinkedQueue<InputEvent>();
+
+	/** Maps input event timestamps onto the track position. */
+	private final InputClock inputClock = new InputClock();
 
 	/** The last game keys pressed. */
 	private int lastKeysPressed = ReplayFrame.KEY_NONE;
@@ -194,8 +210,23 @@ public class Game extends BasicGameState {
 	/** The previous game mod state (before the replay). */
 	private int previousMods = 0;
 
-	/** The list of current replay frames (for recording replays). */
-	private LinkedList<ReplayFrame> replayFrames;
+	/** The current replay frames (for recording replays). */
+	private ReplayFrameBuffer replayFrames;
+
+	/** Index of the skip time frame in {@code replayFrames} (set when finalizing). */
+	private static final int REPLAY_SKIP_FRAME = 1;
+
+	/** Keyframes saved while watching a replay, in order of time. */
+	private ArrayList<ReplayKeyframe> replayKeyframes;
+
+	/** Copies of all hit objects before they were updated (for replay seeking). */
+	private HitObject[] initialHitObjects;
+
+	/** Replay scrub bar coordinates and dimensions. */
+	private float scrubBarX, scrubBarY, scrubBarWidth, scrubBarHeight;
+
+	/** Whether the replay scrub bar is being dragged. */
+	private boolean scrubbing = false;
 
 	/** The offscreen image rendered to. */
 	private Image offscreen;
@@ -252,9 +283,13 @@ public class Game extends BasicGameState {
 		int trackPosition = MusicController.getPosition();
 		if (pauseTime > -1)  // returning from pause screen
 			trackPosition = pauseTime;
-		else if (deathTime > -1)  // "Easy" mod: health bar increasing
-			trackPosition = deathTime;
-		int firstObjectTime = osu.objects[0].getTime();
+		else if (judge.getDeathTime() > -1)  // "Easy" mod: health bar increasing
+			trackPosition = judge.getDeathTime();
+		HitObject[] hitObjects = judge.getHitObjects();
+		int objectIndex = judge.getObjectIndex();
+		int breakIndex = judge.getBreakIndex(), breakTime = judge.getBreakTime();
+		int approachTime = judge.getApproachTime();
+		int firstObjectTime = osu.objectStore.getTime(0);
 		int timeDiff = firstObjectTime - trackPosition;
 
 		g.setBackground(Color.black);
@@ -298,14 +333,14 @@ public class Game extends BasicGameState {
 				// before first object
 				timeDiff = firstObjectTime - trackPosition;
 				if (timeDiff < approachTime) {
-					float[] xy = hitObjects[0].getPointAt(trackPosition);
-					autoXY = getPointAt(autoMouseX, autoMouseY, xy[0], xy[1], 1f - ((float) timeDiff / Math.min(approachTime, firstObjectTime)));
+					float[] xy = hitObjects[0].getPointAt(trackPosition, pointA);
+					autoXY = getPointAt(autoMouseX, autoMouseY, xy[0], xy[1], 1f - ((float) timeDiff / Math.min(approachTime, firstObjectTime)), autoPoint);
 				}
 			} else if (objectIndex < osu.objects.length) {
 				// normal object
-				int objectTime = osu.objects[objectIndex].getTime();
+				int objectTime = osu.objectStore.getTime(objectIndex);
 				if (trackPosition < objectTime) {
-					float[] xyStart = hitObjects[objectIndex - 1].getPointAt(trackPosition);
+					float[] xyStart = hitObjects[objectIndex - 1].getPointAt(trackPosition, pointA);
 					int startTime = hitObjects[objectIndex - 1].getEndTime();
 					if (osu.breaks != null && breakIndex < osu.breaks.size()) {
 						// starting a break: keep cursor at previous hit object position
@@ -320,23 +355,23 @@ public class Game extends BasicGameState {
 						}
 					}
 					if (autoXY == null) {
-						float[] xyEnd = hitObjects[objectIndex].getPointAt(trackPosition);
+						float[] xyEnd = hitObjects[objectIndex].getPointAt(trackPosition, pointB);
 						int totalTime = objectTime - startTime;
-						autoXY = getPointAt(xyStart[0], xyStart[1], xyEnd[0], xyEnd[1], (float) (trackPosition - startTime) / totalTime);
+						autoXY = getPointAt(xyStart[0], xyStart[1], xyEnd[0], xyEnd[1], (float) (trackPosition - startTime) / totalTime, autoPoint);
 
 						// hit circles: show a mouse press
-						int offset300 = hitResultOffset[GameData.HIT_300];
-						if ((osu.objects[objectIndex].isCircle() && objectTime - trackPosition < offset300) ||
-						    (osu.objects[objectIndex - 1].isCircle() && trackPosition - osu.objects[objectIndex - 1].getTime() < offset300))
+						int offset300 = judge.getHitResultOffsets()[GameData.HIT_300];
+						if ((osu.objectStore.isCircle(objectIndex) && objectTime - trackPosition < offset300) ||
+						    (osu.objectStore.isCircle(objectIndex - 1) && trackPosition - osu.objectStore.getTime(objectIndex - 1) < offset300))
 							autoMousePressed = true;
 					}
 				} else {
-					autoXY = hitObjects[objectIndex].getPointAt(trackPosition);
+					autoXY = hitObjects[objectIndex].getPointAt(trackPosition, pointA);
 					autoMousePressed = true;
 				}
 			} else {
 				// last object
-				autoXY = hitObjects[objectIndex - 1].getPointAt(trackPosition);
+				autoXY = hitObjects[objectIndex - 1].getPointAt(trackPosition, pointA);
 			}
 
 			// set mouse coordinates
@@ -399,7 +434,7 @@ public class Game extends BasicGameState {
 				g.fillRect(0, height * 0.875f, width, height * 0.125f);
 			}
 
-			data.drawGameElements(g, true, objectIndex == 0);
+			data.drawGameElements(g, true, objectIndex == 0, firstObjectTime);
 
 			if (breakLength >= 8000 &&
 				trackPosition - breakTime > 2000 &&
@@ -437,11 +472,11 @@ public class Game extends BasicGameState {
 		// non-break
 		else {
 			// game elements
-			data.drawGameElements(g, false, objectIndex == 0);
+			data.drawGameElements(g, false, objectIndex == 0, firstObjectTime);
 
 			// skip beginning
 			if (objectIndex == 0 &&
-			    trackPosition < osu.objects[0].getTime() - SKIP_OFFSET)
+			    trackPosition < osu.objectStore.getTime(0) - SKIP_OFFSET)
 				skipButton.draw();
 
 			// show retries
@@ -520,6 +555,16 @@ public class Game extends BasicGameState {
 		if (isReplay || GameMod.AUTO.isActive())
 			playbackSpeed.getButton().draw();
 
+		// draw replay scrub bar
+		if (isReplay) {
+			int mouseX = input.getMouseX(), mouseY = input.getMouseY();
+			g.setColor((scrubbing || scrubBarContains(mouseX, mouseY)) ? SCRUB_BAR_HOVER : SCRUB_BAR_NORMAL);
+			g.fillRoundRect(scrubBarX, scrubBarY, scrubBarWidth, scrubBarHeight, 4);
+			g.setColor(Color.white);
+			float scrubPosition = Utils.clamp((float) trackPosition / osu.endTime, 0f, 1f);
+			g.fillRoundRect(scrubBarX, scrubBarY, scrubBarWidth * scrubPosition, scrubBarHeight, 4);
+		}
+
 		// returning from pause screen
 		if (pauseTime > -1 && pausedMouseX > -1 && pausedMouseY > -1) {
 			// darken the screen
@@ -557,6 +602,11 @@ public class Game extends BasicGameState {
 			playbackSpeed.getButton().hoverUpdate(delta, mouseX, mouseY);
 		int trackPosition = MusicController.getPosition();
 
+		// queued game key events
+		processInputEvents(trackPosition);
+		inputClock.sync(trackPosition, (MusicController.isPlaying()) ?
+				GameMod.getSpeedMultiplier() * playbackSpeed.getModifier() : 0f);
+
 		// returning from pause screen: must click previous mouse position
 		if (pauseTime > -1) {
 			// paused during lead-in or break, or "relax" or "autopilot": continue immediately
@@ -605,20 +655,13 @@ public class Game extends BasicGameState {
 
 		// watching replay
 		else {
-			// out of frames, use previous data
-			if (replayIndex >= replay.frames.length)
-				updateGame(replayX, replayY, delta, MusicController.getPosition(), lastKeysPressed);
+			// out of frames, use previous data (unless more frames are still being decoded)
+			ReplayFrameBuffer frames = replay.frames;
+			if (replayIndex >= frames.size() && !replay.isLoadingFrames())
+				judge.runTo(delta, MusicController.getPosition());
 
 			// update and run replay frames
-			while (replayIndex < replay.frames.length && trackPosition >= replay.frames[replayIndex].getTime()) {
-				ReplayFrame frame = replay.frames[replayIndex];
-				replayX = frame.getScaledX();
-				replayY = frame.getScaledY();
-				replayKeyPressed = frame.isKeyPressed();
-				lastKeysPressed = frame.getKeys();
-				runReplayFrame(frame);
-				replayIndex++;
-			}
+			runReplayFrames(trackPosition);
 			mouseX = replayX;
 			mouseY = replayY;
 		}
@@ -626,95 +669,20 @@ public class Game extends BasicGameState {
 		data.updateDisplays(delta);
 	}
 
-	/**
-	 * Updates the game.
-	 * @param mouseX the mouse x coordinate
-	 * @param mouseY the mouse y coordinate
-	 * @param delta the delta interval
-	 * @param trackPosition the track position
-	 * @param keys the keys that are pressed
-	 */
-	private void updateGame(int mouseX, int mouseY, int delta, int trackPosition, int keys) {
-		// "Easy" mod: multiple "lives"
-		if (GameMod.EASY.isActive() && deathTime > -1) {
-			if (data.getHealth() < 99f)
-				data.changeHealth(delta / 10f);
-			else {
-				MusicController.resume();
-				deathTime = -1;
-			}
-		}
-
-		// map complete!
-		if (objectIndex >= hitObjects.length || (MusicController.trackEnded() && objectIndex > 0)) {
-			// track ended before last object was processed: force a hit result
-			if (MusicController.trackEnded() && objectIndex < hitObjects.length)
-				hitObjects[objectIndex].update(true, delta, mouseX, mouseY, false, trackPosition);
-
-			// if checkpoint used, skip ranking screen
-			if (checkpointLoaded)
-				game.closeRequested();
-
-			// go to ranking screen
-			else {
-				boolean unranked = (GameMod.AUTO.isActive() || GameMod.RELAX.isActive() || GameMod.AUTOPILOT.isActive());
-				((GameRanking) game.getState(Opsu.STATE_GAMERANKING)).setGameData(data);
-				if (isReplay)
-					data.setReplay(replay);
-				else if (replayFrames != null) {
-					// finalize replay frames with start/skip frames
-					if (!replayFrames.isEmpty())
-						replayFrames.getFirst().setTimeDiff(replaySkipTime * -1);
-					replayFrames.addFirst(ReplayFrame.getStartFrame(replaySkipTime));
-					replayFrames.addFirst(ReplayFrame.getStartFrame(0));
-					Replay r = data.getReplay(replayFrames.toArray(new ReplayFrame[replayFrames.size()]), osu);
-					if (r != null && !unranked)
-						r.save();
-				}
-				ScoreData score = data.getScoreData(osu);
-
-				// add score to database
-				if (!unranked && !isReplay)
-					ScoreDB.addScore(score);
-
-				game.enterState(Opsu.STATE_GAMERANKING, new FadeOutTransition(Color.black), new FadeInTransition(Color.black));
-			}
-			return;
-		}
-
-		// timing points
-		if (timingPointIndex < osu.timingPoints.size()) {
-			OsuTimingPoint timingPoint = osu.timingPoints.get(timingPointIndex);
-			if (trackPosition >= timingPoint.getTime()) {
-				setBeatLength(timingPoint, true);
-				timingPointIndex++;
-			}
-		}
+	@Override
+	public boolean isTrackEnded() { return MusicController.trackEnded(); }
 
-		// song beginning
-		if (objectIndex == 0 && trackPosition < osu.objects[0].getTime())
-			return;  // nothing to do here
+	@Override
+	public void timingPointChanged(OsuTimingPoint timingPoint) {
+		HitSound.setDefaultSampleSet(timingPoint.getSampleType());
+		SoundController.setSampleVolume(timingPoint.getSampleVolume());
+	}
 
-		// break periods
-		if (osu.breaks != null && breakIndex < osu.breaks.size()) {
-			int breakValue = osu.breaks.get(breakIndex);
-			if (breakTime > 0) {  // in a break period
-				if (trackPosition < breakValue)
-					return;
-				else {
-					// break is over
-					breakTime = 0;
-					breakIndex++;
-				}
-			} else if (trackPosition >= breakValue) {
-				// start a break
-				breakTime = breakValue;
-				breakSound = false;
-				breakIndex++;
-				return;
-			}
-		}
+	@Override
+	public void breakStarted() { breakSound = false; }
 
+	@Override
+	public void beforeDrain(int mouseX, int mouseY, int trackPosition) {
 		// pause game if focus lost
 		if (!container.hasFocus() && !GameMod.AUTO.isActive() && !isReplay) {
 			if (pauseTime < 0) {
@@ -726,39 +694,50 @@ public class Game extends BasicGameState {
 				pauseTime = trackPosition;
 			game.enterState(Opsu.STATE_GAMEPAUSEMENU);
 		}
+	}
 
-		// drain health
-		data.changeHealth(delta * -1 * GameData.HP_DRAIN_MULTIPLIER);
-		if (!data.isAlive()) {
-			// "Easy" mod
-			if (GameMod.EASY.isActive() && !GameMod.SUDDEN_DEATH.isActive()) {
-				deaths++;
-				if (deaths < 3) {
-					deathTime = trackPosition;
-					MusicController.pause();
-					return;
-				}
-			}
+	@Override
+	public void lifeLost() { MusicController.pause(); }
 
-			// game over, force a restart
-			if (!isReplay) {
-				restart = Restart.LOSE;
-				game.enterState(Opsu.STATE_GAMEPAUSEMENU);
-			}
+	@Override
+	public void lifeRestored() { MusicController.resume(); }
+
+	@Override
+	public void gameOver() {
+		// force a restart
+		if (!isReplay) {
+			restart = Restart.LOSE;
+			game.enterState(Opsu.STATE_GAMEPAUSEMENU);
 		}
+	}
 
-		// update objects (loop in unlikely event of any skipped indexes)
-		boolean keyPressed = keys != ReplayFrame.KEY_NONE;
-		while (objectIndex < hitObjects.length && trackPosition > osu.objects[objectIndex].getTime()) {
-			// check if we've already passed the next object's start time
-			boolean overlap = (objectIndex + 1 < hitObjects.length &&
-					trackPosition > osu.objects[objectIndex + 1].getTime() - hitResultOffset[GameData.HIT_300]);
+	@Override
+	public void mapComplete() {
+		// if checkpoint used, skip ranking screen
+		if (checkpointLoaded)
+			game.closeRequested();
 
-			// update hit object and check completion status
-			if (hitObjects[objectIndex].update(overlap, delta, mouseX, mouseY, keyPressed, trackPosition))
-				objectIndex++;  // done, so increment object index
-			else
-				break;
+		// go to ranking screen
+		else {
+			boolean unranked = (GameMod.AUTO.isActive() || GameMod.RELAX.isActive() || GameMod.AUTOPILOT.isActive());
+			((GameRanking) game.getState(Opsu.STATE_GAMERANKING)).setGameData(data);
+			if (isReplay)
+				data.setReplay(replay);
+			else if (replayFrames != null) {
+				// finalize replay frames with start/skip frames
+				replayFrames.setStartFrame(REPLAY_SKIP_FRAME, replaySkipTime);
+				replayFrames.setTimeDiff(REPLAY_SKIP_FRAME + 1, replaySkipTime * -1);
+				Replay r = data.getReplay(replayFrames, osu);
+				if (r != null && !unranked)
+					r.save();
+			}
+			ScoreData score = data.getScoreData(osu);
+
+			// add score to database
+			if (!unranked && !isReplay)
+				ScoreDB.addScore(score);
+
+			game.enterState(Opsu.STATE_GAMERANKING, new FadeOutTransition(Color.black), new FadeInTransition(Color.black));
 		}
 	}
 
@@ -779,7 +758,7 @@ public class Game extends BasicGameState {
 			else if (key == Options.getGameKeyRight())
 				keys = ReplayFrame.KEY_K2;
 			if (keys != ReplayFrame.KEY_NONE)
-				gameKeyPressed(keys, mouseX, mouseY, trackPosition);
+				inputEvents.add(new InputEvent(keys, true, mouseX, mouseY, inputClock.getKeyboardEventPosition()));
 		}
 
 		switch (key) {
@@ -791,7 +770,7 @@ public class Game extends BasicGameState {
 			}
 
 			// pause game
-			if (pauseTime < 0 && breakTime <= 0 && trackPosition >= osu.objects[0].getTime()) {
+			if (pauseTime < 0 && judge.getBreakTime() <= 0 && trackPosition >= osu.objectStore.getTime(0)) {
 				pausedMouseX = mouseX;
 				pausedMouseY = mouseY;
 				pausePulse = 0f;
@@ -808,7 +787,7 @@ public class Game extends BasicGameState {
 			// restart
 			if (input.isKeyDown(Input.KEY_RCONTROL) || input.isKeyDown(Input.KEY_LCONTROL)) {
 				try {
-					if (trackPosition < osu.objects[0].getTime())
+					if (trackPosition < osu.objectStore.getTime(0))
 						retries--;  // don't count this retry (cancel out later increment)
 					restart = Restart.MANUAL;
 					enter(container, game);
@@ -851,11 +830,8 @@ public class Game extends BasicGameState {
 					// skip to checkpoint
 					MusicController.setPosition(checkpoint);
 					MusicController.setPitch(GameMod.getSpeedMultiplier() * playbackSpeed.getModifier());
-					while (objectIndex < hitObjects.length &&
-							osu.objects[objectIndex++].getTime() <= checkpoint)
-						;
-					objectIndex--;
-					lastReplayTime = osu.objects[objectIndex].getTime();
+					judge.skipTo(checkpoint);
+					lastReplayTime = osu.objectStore.getTime(judge.getObjectIndex());
 				} catch (SlickException e) {
 					ErrorHandler.error("Failed to load checkpoint.", e, false);
 				}
@@ -896,6 +872,12 @@ public class Game extends BasicGameState {
 				MusicController.setPitch(GameMod.getSpeedMultiplier() * playbackSpeed.getModifier());
 			}
 
+			// replay scrub bar
+			else if (isReplay && scrubBarContains(x, y)) {
+				scrubbing = true;
+				seekReplay(getScrubBarPosition(x));
+			}
+
 			return;
 		}
 
@@ -905,7 +887,7 @@ public class Game extends BasicGameState {
 		// mouse wheel: pause the game
 		if (button == Input.MOUSE_MIDDLE_BUTTON && !Options.isMouseWheelDisabled()) {
 			int trackPosition = MusicController.getPosition();
-			if (pauseTime < 0 && breakTime <= 0 && trackPosition >= osu.objects[0].getTime()) {
+			if (pauseTime < 0 && judge.getBreakTime() <= 0 && trackPosition >= osu.objectStore.getTime(0)) {
 				pausedMouseX = x;
 				pausedMouseY = y;
 				pausePulse = 0f;
@@ -923,7 +905,24 @@ public class Game extends BasicGameState {
 		else if (button == Input.MOUSE_RIGHT_BUTTON)
 			keys = ReplayFrame.KEY_M2;
 		if (keys != ReplayFrame.KEY_NONE)
-			gameKeyPressed(keys, x, y, MusicController.getPosition());
+			inputEvents.add(new InputEvent(keys, true, x, y, inputClock.getMouseEventPosition()));
+	}
+
+	/**
+	 * Handles the queued game key events, in order.
+	 * Event times are clamped between the last replay frame time and the
+	 * current track position.
+	 * @param trackPosition the current track position
+	 */
+	private void processInputEvents(int trackPosition) {
+		InputEvent e;
+		while ((e = inputEvents.poll()) != null) {
+			int time = Math.max(Math.min(e.getTime(), trackPosition), lastReplayTime);
+			if (e.isPressed())
+				gameKeyPressed(e.getKeys(), e.getX(), e.getY(), time);
+			else
+				gameKeyReleased(e.getKeys(), e.getX(), e.getY(), time);
+		}
 	}
 
 	/**
@@ -966,8 +965,17 @@ public class Game extends BasicGameState {
 		}
 	}
 
+	@Override
+	public void mouseDragged(int oldx, int oldy, int newx, int newy) {
+		// replay scrub bar
+		if (scrubbing)
+			seekReplay(getScrubBarPosition(newx));
+	}
+
 	@Override
 	public void mouseReleased(int button, int x, int y) {
+		scrubbing = false;
+
 		if (Options.isMouseDisabled())
 			return;
 
@@ -980,7 +988,7 @@ public class Game extends BasicGameState {
 		else if (button == Input.MOUSE_RIGHT_BUTTON)
 			keys = ReplayFrame.KEY_M2;
 		if (keys != ReplayFrame.KEY_NONE)
-			gameKeyReleased(keys, x, y, MusicController.getPosition());
+			inputEvents.add(new InputEvent(keys, false, x, y, inputClock.getMouseEventPosition()));
 	}
 
 	@Override
@@ -991,7 +999,7 @@ public class Game extends BasicGameState {
 		else if (key == Options.getGameKeyRight())
 			keys = ReplayFrame.KEY_K2;
 		if (keys != ReplayFrame.KEY_NONE)
-			gameKeyReleased(keys, input.getMouseX(), input.getMouseY(), MusicController.getPosition());
+			inputEvents.add(new InputEvent(keys, false, input.getMouseX(), input.getMouseY(), inputClock.getKeyboardEventPosition()));
 	}
 
 	/**
@@ -1043,65 +1051,9 @@ public class Game extends BasicGameState {
 			// reset game data
 			resetGameData();
 
-			// load the first timingPoint for stacking
-			if (!osu.timingPoints.isEmpty()) {
-				OsuTimingPoint timingPoint = osu.timingPoints.get(0);
-				if (!timingPoint.isInherited()) {
-					setBeatLength(timingPoint, true);
-					timingPointIndex++;
-				}
-			}
-
-			// initialize object maps
-			for (int i = 0; i < osu.objects.length; i++) {
-				OsuHitObject hitObject = osu.objects[i];
-
-				// is this the last note in the combo?
-				boolean comboEnd = false;
-				if (i + 1 < osu.objects.length && osu.objects[i + 1].isNewCombo())
-					comboEnd = true;
-
-				Color color = osu.combo[hitObject.getComboIndex()];
-
-				// pass beatLength to hit objects
-				int hitObjectTime = hitObject.getTime();
-				while (timingPointIndex < osu.timingPoints.size()) {
-					OsuTimingPoint timingPoint = osu.timingPoints.get(timingPointIndex);
-					if (timingPoint.getTime() > hitObjectTime)
-						break;
-					setBeatLength(timingPoint, false);
-					timingPointIndex++;
-				}
-
-				try {
-					if (hitObject.isCircle())
-						hitObjects[i] = new Circle(hitObject, this, data, color, comboEnd);
-					else if (hitObject.isSlider())
-						hitObjects[i] = new Slider(hitObject, this, data, color, comboEnd);
-					else if (hitObject.isSpinner())
-						hitObjects[i] = new Spinner(hitObject, this, data);
-				} catch (Exception e) {
-					// try to handle the error gracefully: substitute in a dummy HitObject
-					ErrorHandler.error(String.format("Failed to create %s at index %d:\n%s",
-							hitObject.getTypeName(), i, hitObject.toString()), e, true);
-					hitObjects[i] = new DummyObject(hitObject);
-					continue;
-				}
-			}
-
-			// stack calculations
-			calculateStacks();
-
-			// load the first timingPoint
-			timingPointIndex = 0;
-			beatLengthBase = beatLength = 1;
-			if (!osu.timingPoints.isEmpty()) {
-				OsuTimingPoint timingPoint = osu.timingPoints.get(0);
-				if (!timingPoint.isInherited()) {
-					setBeatLength(timingPoint, true);
-					timingPointIndex++;
-				}
-			}
+			// create hit objects
+			judge.createHitObjects(true);
+			judge.setTickJudgement(!isReplay || (replay.flags & Replay.FLAG_TICK_JUDGEMENT) != 0);
 
 			// unhide cursor for "auto" mod and replays
 			if (GameMod.AUTO.isActive() || isReplay)
@@ -1118,29 +1070,48 @@ public class Game extends BasicGameState {
 				replayY = container.getHeight() / 2;
 				replayKeyPressed = false;
 				replaySkipTime = -1;
-				for (replayIndex = 0; replayIndex < replay.frames.length; replayIndex++) {
-					ReplayFrame frame = replay.frames[replayIndex];
-					if (frame.getY() < 0) {  // skip time (?)
-						if (frame.getTime() >= 0 && replayIndex > 0)
-							replaySkipTime = frame.getTime();
-					} else if (frame.getTime() == 0) {
-						replayX = frame.getScaledX();
-						replayY = frame.getScaledY();
-						replayKeyPressed = frame.isKeyPressed();
+				ReplayFrameBuffer frames = replay.frames;
+				for (replayIndex = 0; replayIndex < frames.size(); replayIndex++) {
+					if (frames.getY(replayIndex) < 0) {  // skip time (?)
+						if (frames.getTime(replayIndex) >= 0 && replayIndex > 0)
+							replaySkipTime = frames.getTime(replayIndex);
+					} else if (frames.getTime(replayIndex) == 0) {
+						replayX = frames.getScaledX(replayIndex);
+						replayY = frames.getScaledY(replayIndex);
+						replayKeyPressed = frames.isKeyPressed(replayIndex);
 					} else
 						break;
 				}
+				judge.setCursor(replayX, replayY);
+
+				// save the initial state for seeking
+				HitObject[] hitObjects = judge.getHitObjects();
+				initialHitObjects = new HitObject[hitObjects.length];
+				for (int i = 0; i < hitObjects.length; i++)
+					initialHitObjects[i] = hitObjects[i].copy();
+				replayKeyframes = new ArrayList<ReplayKeyframe>();
+				addReplayKeyframe(Integer.MIN_VALUE);
+
+				// place the scrub bar below the playback speed button
+				MenuButton speedButton = playbackSpeed.getButton();
+				scrubBarWidth = container.getWidth() * 0.15f;
+				scrubBarHeight = Math.max(container.getHeight() * 0.008f, 4f);
+				scrubBarX = speedButton.getX() + speedButton.getImage().getWidth() / 2f - scrubBarWidth;
+				scrubBarY = speedButton.getY() + speedButton.getImage().getHeight() / 2f + scrubBarHeight * 2;
 			}
 
 			// initialize replay-recording structures
 			else {
 				lastKeysPressed = ReplayFrame.KEY_NONE;
 				replaySkipTime = -1;
-				replayFrames = new LinkedList<ReplayFrame>();
-				replayFrames.add(new ReplayFrame(0, 0, input.getMouseX(), input.getMouseY(), 0));
+				replayFrames = new ReplayFrameBuffer();
+				replayFrames.addStartFrame(0);
+				replayFrames.addStartFrame(0);  // skip time (set when finalizing)
+				replayFrames.add(0, 0, input.getMouseX(), input.getMouseY(), 0);
+				judge.setCursor(input.getMouseX(), input.getMouseY());
 			}
 
-			leadInTime = osu.audioLeadIn + approachTime;
+			leadInTime = osu.audioLeadIn + judge.getApproachTime();
 			restart = Restart.FALSE;
 
 			// needs to play before setting position to resume without lag later
@@ -1179,31 +1150,34 @@ public class Game extends BasicGameState {
 	 * @param trackPosition the track position
 	 */
 	private void drawHitObjects(Graphics g, int trackPosition) {
+		HitObject[] hitObjects = judge.getHitObjects();
+		int objectIndex = judge.getObjectIndex(), approachTime = judge.getApproachTime();
+
 		// include previous object in follow points
 		int lastObjectIndex = -1;
 		if (objectIndex > 0 && objectIndex < osu.objects.length &&
-		    trackPosition < osu.objects[objectIndex].getTime() && !osu.objects[objectIndex - 1].isSpinner())
+		    trackPosition < osu.objectStore.getTime(objectIndex) && !osu.objectStore.isSpinner(objectIndex - 1))
 			lastObjectIndex = objectIndex - 1;
 
 		// draw hit objects in reverse order, or else overlapping objects are unreadable
 		Stack<Integer> stack = new Stack<Integer>();
-		for (int index = objectIndex; index < hitObjects.length && osu.objects[index].getTime() < trackPosition + approachTime; index++) {
+		for (int index = objectIndex; index < hitObjects.length && osu.objectStore.getTime(index) < trackPosition + approachTime; index++) {
 			stack.add(index);
 
 			// draw follow points
 			if (!Options.isFollowPointEnabled())
 				continue;
-			if (osu.objects[index].isSpinner()) {
+			if (osu.objectStore.isSpinner(index)) {
 				lastObjectIndex = -1;
 				continue;
 			}
-			if (lastObjectIndex != -1 && !osu.objects[index].isNewCombo()) {
+			if (lastObjectIndex != -1 && !osu.objectStore.isNewCombo(index)) {
 				// calculate points
 				final int followPointInterval = container.getHeight() / 14;
 				int lastObjectEndTime = hitObjects[lastObjectIndex].getEndTime() + 1;
-				int objectStartTime = osu.objects[index].getTime();
-				float[] startXY = hitObjects[lastObjectIndex].getPointAt(lastObjectEndTime);
-				float[] endXY = hitObjects[index].getPointAt(objectStartTime);
+				int objectStartTime = osu.objectStore.getTime(index);
+				float[] startXY = hitObjects[lastObjectIndex].getPointAt(lastObjectEndTime, pointA);
+				float[] endXY = hitObjects[index].getPointAt(objectStartTime, pointB);
 				float xDiff = endXY[0] - startXY[0];
 				float yDiff = endXY[1] - startXY[1];
 				float dist = (float) Math.hypot(xDiff, yDiff);
@@ -1261,26 +1235,22 @@ public class Game extends BasicGameState {
 	 * @param osu the OsuFile to load
 	 */
 	public void loadOsuFile(OsuFile osu) {
-		this.osu = osu;
-		Display.setTitle(String.format("%s - %s", game.getTitle(), osu.toString()));
-		if (osu.timingPoints == null || osu.combo == null)
-			OsuDB.load(osu, OsuDB.LOAD_ARRAY);
-		OsuParser.parseHitObjects(osu);
-		HitSound.setDefaultSampleSet(osu.sampleSet);
+		// the loaded map stays pinned in the cache until another one is loaded
+		FullOsuFile previous = this.osu;
+		this.osu = OsuFileCache.acquire(osu);
+		if (previous != null)
+			OsuFileCache.release(previous);
+		Display.setTitle(String.format("%s - %s", game.getTitle(), this.osu.toString()));
+		HitSound.setDefaultSampleSet(this.osu.sampleSet);
+		judge = new GameJudge(this.osu, data, this);
 	}
 
 	/**
 	 * Resets all game data and structures.
 	 */
 	public void resetGameData() {
-		hitObjects = new HitObject[osu.objects.length];
 		data.clear();
-		objectIndex = 0;
-		breakIndex = 0;
-		breakTime = 0;
 		breakSound = false;
-		timingPointIndex = 0;
-		beatLengthBase = beatLength = 1;
 		pauseTime = -1;
 		pausedMouseX = -1;
 		pausedMouseY = -1;
@@ -1290,9 +1260,11 @@ public class Game extends BasicGameState {
 		countdown2Sound = false;
 		countdownGoSound = false;
 		checkpointLoaded = false;
-		deaths = 0;
-		deathTime = -1;
 		replayFrames = null;
+		replayKeyframes = null;
+		initialHitObjects = null;
+		scrubbing = false;
+		inputEvents.clear();
 		lastReplayTime = 0;
 		autoMouseX = 0;
 		autoMouseY = 0;
@@ -1308,9 +1280,9 @@ public class Game extends BasicGameState {
 	 * @return true if skipped, false otherwise
 	 */
 	private synchronized boolean skipIntro() {
-		int firstObjectTime = osu.objects[0].getTime();
+		int firstObjectTime = osu.objectStore.getTime(0);
 		int trackPosition = MusicController.getPosition();
-		if (objectIndex == 0 && trackPosition < firstObjectTime - SKIP_OFFSET) {
+		if (judge.getObjectIndex() == 0 && trackPosition < firstObjectTime - SKIP_OFFSET) {
 			if (isLeadIn()) {
 				leadInTime = 0;
 				MusicController.resume();
@@ -1363,50 +1335,13 @@ public class Game extends BasicGameState {
 	 * Set map modifiers.
 	 */
 	private void setMapModifiers() {
-		// map-based properties, re-initialized each game
-		float multiplier = GameMod.getDifficultyMultiplier();
-		float circleSize = Math.min(osu.circleSize * multiplier, 10f);
-		float approachRate = Math.min(osu.approachRate * multiplier, 10f);
-		float overallDifficulty = Math.min(osu.overallDifficulty * multiplier, 10f);
-		float HPDrainRate = Math.min(osu.HPDrainRate * multiplier, 10f);
-
-		// fixed difficulty overrides
-		if (Options.getFixedCS() > 0f)
-			circleSize = Options.getFixedCS();
-		if (Options.getFixedAR() > 0f)
-			approachRate = Options.getFixedAR();
-		if (Options.getFixedOD() > 0f)
-			overallDifficulty = Options.getFixedOD();
-		if (Options.getFixedHP() > 0f)
-			HPDrainRate = Options.getFixedHP();
-
-		// Stack modifier scales with hit object size
-		// StackOffset = HitObjectRadius / 10
-		int diameter = (int) (104 - (circleSize * 8));
-		OsuHitObject.setStackOffset(diameter * STACK_OFFSET_MODIFIER);
+		judge.setMapModifiers(true);
 
 		// initialize objects
+		float circleSize = judge.getCircleSize();
 		Circle.init(container, circleSize);
 		Slider.init(container, circleSize, osu);
 		Spinner.init(container);
-
-		// approachRate (hit object approach time)
-		if (approachRate < 5)
-			approachTime = (int) (1800 - (approachRate * 120));
-		else
-			approachTime = (int) (1200 - ((approachRate - 5) * 150));
-
-		// overallDifficulty (hit result time offsets)
-		hitResultOffset = new int[GameData.HIT_MAX];
-		hitResultOffset[GameData.HIT_300]  = (int) (78 - (overallDifficulty * 6));
-		hitResultOffset[GameData.HIT_100]  = (int) (138 - (overallDifficulty * 8));
-		hitResultOffset[GameData.HIT_50]   = (int) (198 - (overallDifficulty * 10));
-		hitResultOffset[GameData.HIT_MISS] = (int) (500 - (overallDifficulty * 10));
-
-		// HPDrainRate (health change), overallDifficulty (scoring)
-		data.setDrainRate(HPDrainRate);
-		data.setDifficulty(overallDifficulty);
-		data.setHitResultOffset(hitResultOffset);
 	}
 
 	/**
@@ -1420,42 +1355,6 @@ public class Game extends BasicGameState {
 	 */
 	public boolean isLeadIn() { return leadInTime > 0; }
 
-	/**
-	 * Returns the object approach time, in milliseconds.
-	 */
-	public int getApproachTime() { return approachTime; }
-
-	/**
-	 * Returns an array of hit result offset times, in milliseconds (indexed by GameData.HIT_* constants).
-	 */
-	public int[] getHitResultOffsets() { return hitResultOffset; }
-
-	/**
-	 * Returns the beat length.
-	 */
-	public float getBeatLength() { return beatLength; }
-
-	/**
-	 * Sets the beat length fields based on a given timing point.
-	 * @param timingPoint the timing point
-	 * @param setSampleSet whether to set the hit sample set based on the timing point
-	 */
-	private void setBeatLength(OsuTimingPoint timingPoint, boolean setSampleSet) {
-		if (!timingPoint.isInherited())
-			beatLengthBase = beatLength = timingPoint.getBeatLength();
-		else
-			beatLength = beatLengthBase * timingPoint.getSliderMultiplier();
-		if (setSampleSet) {
-			HitSound.setDefaultSampleSet(timingPoint.getSampleType());
-			SoundController.setSampleVolume(timingPoint.getSampleVolume());
-		}
-	}
-
-	/**
-	 * Returns the slider multiplier given by the current timing point.
-	 */
-	public float getTimingPointMultiplier() { return beatLength / beatLengthBase; }
-
 	/**
 	 * Sets a replay to view, or resets the replay if null.
 	 * @param replay the replay
@@ -1475,81 +1374,154 @@ public class Game extends BasicGameState {
 	}
 
 	/**
-	 * Adds a replay frame to the list, if possible, and runs it.
-	 * @param x the cursor x coordinate
-	 * @param y the cursor y coordinate
-	 * @param keys the keys pressed
-	 * @param time the time of the replay Frame
+	 * Runs the replay frames up to a track position, saving keyframes along
+	 * the way.
+	 * @param trackPosition the track position
 	 */
-	public synchronized void addReplayFrameAndRun(int x, int y, int keys, int time){
-		// "auto" and "autopilot" mods: use automatic cursor coordinates
-		if (GameMod.AUTO.isActive() || GameMod.AUTOPILOT.isActive()) {
-			x = autoMouseX;
-			y = autoMouseY;
+	private void runReplayFrames(int trackPosition) {
+		ReplayFrameBuffer frames = replay.frames;
+		while (replayIndex < frames.size() && trackPosition >= frames.getTime(replayIndex)) {
+			int time = frames.getTime(replayIndex);
+			ReplayKeyframe last = replayKeyframes.get(replayKeyframes.size() - 1);
+			if (replayIndex > last.replayIndex && time >= last.time + REPLAY_KEYFRAME_INTERVAL && judge.getDeathTime() == -1)
+				addReplayKeyframe(time);
+
+			replayX = frames.getScaledX(replayIndex);
+			replayY = frames.getScaledY(replayIndex);
+			replayKeyPressed = frames.isKeyPressed(replayIndex);
+			lastKeysPressed = frames.getKeys(replayIndex);
+			judge.runReplayFrame(frames.getTimeDiff(replayIndex), time, replayX, replayY, lastKeysPressed);
+			replayIndex++;
 		}
+	}
 
-		ReplayFrame frame = addReplayFrame(x, y, keys, time);
-		if (frame != null)
-			runReplayFrame(frame);
+	/**
+	 * Saves the current game state as a replay keyframe.
+	 * Must be called between replay frames.
+	 * @param time the track position
+	 */
+	private void addReplayKeyframe(int time) {
+		ReplayKeyframe k = new ReplayKeyframe();
+		k.time = time;
+		k.replayIndex = replayIndex;
+		k.replayX = replayX;
+		k.replayY = replayY;
+		k.replayKeyPressed = replayKeyPressed;
+		k.lastKeysPressed = lastKeysPressed;
+		HitObject[] hitObjects = judge.getHitObjects();
+		k.objectIndex = judge.getObjectIndex();
+		k.hitObject = (k.objectIndex < hitObjects.length) ? hitObjects[k.objectIndex].copy() : null;
+		k.breakSound = breakSound;
+		k.judge = judge.saveState();
+		k.data = data.saveState();
+		replayKeyframes.add(k);
 	}
 
 	/**
-	 * Runs a replay frame.
-	 * @param frame the frame to run
+	 * Restores the game state from a replay keyframe.
+	 * @param k the keyframe
 	 */
-	private void runReplayFrame(ReplayFrame frame){
-		int keys = frame.getKeys();
-		int replayX = frame.getScaledX();
-		int replayY = frame.getScaledY();
-		int deltaKeys = (keys & ~lastReplayKeys);  // keys that turned on
-		if (deltaKeys != ReplayFrame.KEY_NONE)  // send a key press
-			sendGameKeyPress(deltaKeys, replayX, replayY, frame.getTime());
-		else if (keys != lastReplayKeys)
-			;  // do nothing
-		else
-			updateGame(replayX, replayY, frame.getTimeDiff(), frame.getTime(), keys);
-		lastReplayKeys = keys;
+	private void loadReplayKeyframe(ReplayKeyframe k) {
+		// only the current hit object can have been updated: replace it and
+		// every object up to it (or to the keyframe's object) with fresh copies
+		HitObject[] hitObjects = judge.getHitObjects();
+		int last = Math.min(Math.max(judge.getObjectIndex(), k.objectIndex), hitObjects.length - 1);
+		for (int i = k.objectIndex; i <= last; i++)
+			hitObjects[i] = initialHitObjects[i].copy();
+		if (k.hitObject != null)
+			hitObjects[k.objectIndex] = k.hitObject.copy();
+
+		replayIndex = k.replayIndex;
+		replayX = k.replayX;
+		replayY = k.replayY;
+		replayKeyPressed = k.replayKeyPressed;
+		lastKeysPressed = k.lastKeysPressed;
+		breakSound = k.breakSound;
+		judge.restoreState(k.judge);
+		data.restoreState(k.data);
 	}
 
 	/**
-	 * Sends a game key press and updates the hit objects.
-	 * @param trackPosition the track position
-	 * @param x the cursor x coordinate
-	 * @param y the cursor y coordinate
-	 * @param keys the keys that are pressed
+	 * Seeks to a track position in the replay being watched.
+	 * The game state is restored from the last keyframe before the position,
+	 * and the replay frames in between are run without sound (and without
+	 * completing the map, which is left to the next update).
+	 * @param position the track position
 	 */
-	private void sendGameKeyPress(int keys, int x, int y, int trackPosition) {
-		if (objectIndex >= hitObjects.length)  // nothing to do here
-			return;
+	private void seekReplay(int position) {
+		ReplayFrameBuffer frames = replay.frames;
+		if (frames.size() > 0)
+			position = Math.min(position, frames.getTime(frames.size() - 1));
+		position = Math.max(position, 0);
+
+		// find the last keyframe before the position
+		int low = 0, high = replayKeyframes.size() - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (replayKeyframes.get(mid).time <= position)
+				low = mid;
+			else
+				high = mid - 1;
+		}
 
-		OsuHitObject hitObject = osu.objects[objectIndex];
+		// restore it (unless the position is ahead in the same interval) and fast-forward
+		ReplayKeyframe k = replayKeyframes.get(low);
+		if (position < MusicController.getPosition() || replayIndex < k.replayIndex)
+			loadReplayKeyframe(k);
+		SoundController.setMuted(true);
+		judge.setCompletionEnabled(false);
+		runReplayFrames(position);
+		judge.setCompletionEnabled(true);
+		SoundController.setMuted(false);
+
+		// resume playback at the position
+		if (isLeadIn()) {
+			leadInTime = 0;
+			MusicController.resume();
+		} else if (!MusicController.isPlaying() && judge.getDeathTime() == -1)
+			MusicController.resume();
+		MusicController.setPosition(position);
+	}
 
-		// circles
-		if (hitObject.isCircle() && hitObjects[objectIndex].mousePressed(x, y, trackPosition))
-			objectIndex++;  // circle hit
+	/**
+	 * Returns true if the coordinates are within the replay scrub bar bounds.
+	 * @param cx the x coordinate
+	 * @param cy the y coordinate
+	 */
+	private boolean scrubBarContains(float cx, float cy) {
+		return ((cx > scrubBarX && cx < scrubBarX + scrubBarWidth) &&
+		        (cy > scrubBarY - scrubBarHeight && cy < scrubBarY + scrubBarHeight * 2));
+	}
 
-		// sliders
-		else if (hitObject.isSlider())
-			hitObjects[objectIndex].mousePressed(x, y, trackPosition);
+	/**
+	 * Returns the track position at an x coordinate on the replay scrub bar.
+	 * @param x the x coordinate
+	 */
+	private int getScrubBarPosition(int x) {
+		return (int) (Utils.clamp((x - scrubBarX) / scrubBarWidth, 0f, 1f) * osu.endTime);
 	}
 
 	/**
-	 * Adds a replay frame to the list, if possible.
+	 * Adds a replay frame to the recorded frames, if recording, and runs it.
 	 * @param x the cursor x coordinate
 	 * @param y the cursor y coordinate
 	 * @param keys the keys pressed
-	 * @param time the time of the replay frame
-	 * @return a ReplayFrame representing the data
+	 * @param time the time of the replay Frame
 	 */
-	private ReplayFrame addReplayFrame(int x, int y, int keys, int time) {
+	public synchronized void addReplayFrameAndRun(int x, int y, int keys, int time){
+		// "auto" and "autopilot" mods: use automatic cursor coordinates
+		if (GameMod.AUTO.isActive() || GameMod.AUTOPILOT.isActive()) {
+			x = autoMouseX;
+			y = autoMouseY;
+		}
+
 		int timeDiff = time - lastReplayTime;
 		lastReplayTime = time;
 		int cx = (int) ((x - OsuHitObject.getXOffset()) / OsuHitObject.getXMultiplier());
 		int cy = (int) ((y - OsuHitObject.getYOffset()) / OsuHitObject.getYMultiplier());
-		ReplayFrame frame = new ReplayFrame(timeDiff, time, cx, cy, keys);
 		if (replayFrames != null)
-			replayFrames.add(frame);
-		return frame;
+			replayFrames.add(timeDiff, time, cx, cy, keys);
+		judge.runReplayFrame(timeDiff, time, ReplayFrame.scaleX(cx), ReplayFrame.scaleY(cy), keys);
 	}
 
 	/**
@@ -1559,17 +1531,17 @@ public class Game extends BasicGameState {
 	 * @param endX the ending x coordinate
 	 * @param endY the ending y coordinate
 	 * @param t the t value [0, 1]
-	 * @return the [x,y] coordinates
+	 * @param out the array to store the [x,y] coordinates in
+	 * @return the {@code out} array
 	 */
-	private float[] getPointAt(float startX, float startY, float endX, float endY, float t) {
+	private float[] getPointAt(float startX, float startY, float endX, float endY, float t, float[] out) {
 		// "autopilot" mod: move quicker between objects
 		if (GameMod.AUTOPILOT.isActive())
 			t = Utils.clamp(t * 2f, 0f, 1f);
 
-		float[] xy = new float[2];
-		xy[0] = startX + (endX - startX) * t;
-		xy[1] = startY + (endY - startY) * t;
-		return xy;
+		out[0] = startX + (endX - startX) * t;
+		out[1] = startY + (endY - startY) * t;
+		return out;
 	}
 
 	/**
@@ -1582,14 +1554,16 @@ public class Game extends BasicGameState {
 			return;
 
 		int width = container.getWidth(), height = container.getHeight();
-		boolean firstObject = (objectIndex == 0 && trackPosition < osu.objects[0].getTime());
+		int approachTime = judge.getApproachTime();
+		int breakIndex = judge.getBreakIndex(), breakTime = judge.getBreakTime();
+		boolean firstObject = (judge.getObjectIndex() == 0 && trackPosition < osu.objectStore.getTime(0));
 		if (isLeadIn()) {
 			// lead-in: expand area
 			float progress = Math.max((float) (leadInTime - osu.audioLeadIn) / approachTime, 0f);
 			flashlightRadius = width - (int) ((width - (height * 2 / 3)) * progress);
 		} else if (firstObject) {
 			// before first object: shrink area
-			int timeDiff = osu.objects[0].getTime() - trackPosition;
+			int timeDiff = osu.objectStore.getTime(0) - trackPosition;
 			flashlightRadius = width;
 			if (timeDiff < approachTime) {
 				float progress = (float) timeDiff / approachTime;
@@ -1634,71 +1608,4 @@ public class Game extends BasicGameState {
 		}
 	}
 
-	/**
-	 * Performs stacking calculations on all hit objects, and updates their
-	 * positions if necessary.
-	 * @author peppy (https://gist.github.com/peppy/1167470)
-	 */
-	private void calculateStacks() {
-		// reverse pass for stack calculation
-		for (int i = hitObjects.length - 1; i > 0; i--) {
-			OsuHitObject hitObjectI = osu.objects[i];
-
-			// already calculated
-			if (hitObjectI.getStack() != 0 || hitObjectI.isSpinner())
-				continue;
-
-			// search for hit objects in stack
-			for (int n = i - 1; n >= 0; n--) {
-				OsuHitObject hitObjectN = osu.objects[n];
-				if (hitObjectN.isSpinner())
-					continue;
-
-				// check if in range stack calculation
-				float timeI = hitObjectI.getTime() - (STACK_TIMEOUT * osu.stackLeniency);
-				float timeN = hitObjectN.isSlider() ? hitObjects[n].getEndTime() : hitObjectN.getTime();
-				if (timeI > timeN)
-					break;
-
-				// possible special case: if slider end in the stack,
-				// all next hit objects in stack move right down
-				if (hitObjectN.isSlider()) {
-					float[] p1 = hitObjects[i].getPointAt(hitObjectI.getTime());
-					float[] p2 = hitObjects[n].getPointAt(hitObjects[n].getEndTime());
-					float distance = Utils.distance(p1[0], p1[1], p2[0], p2[1]);
-
-					// check if hit object part of this stack
-					if (distance < STACK_LENIENCE * OsuHitObject.getXMultiplier()) {
-						int offset = hitObjectI.getStack() - hitObjectN.getStack() + 1;
-						for (int j = n + 1; j <= i; j++) {
-							OsuHitObject hitObjectJ = osu.objects[j];
-							p1 = hitObjects[j].getPointAt(hitObjectJ.getTime());
-							distance = Utils.distance(p1[0], p1[1], p2[0], p2[1]);
-
-							// hit object below slider end
-							if (distance < STACK_LENIENCE * OsuHitObject.getXMultiplier())
-								hitObjectJ.setStack(hitObjectJ.getStack() - offset);
-						}
-						break;  // slider end always start of the stack: reset calculation
-					}
-				}
-
-				// not a special case: stack moves up left
-				float distance = Utils.distance(
-						hitObjectI.getX(), hitObjectI.getY(),
-						hitObjectN.getX(), hitObjectN.getY()
-				);
-				if (distance < STACK_LENIENCE) {
-					hitObjectN.setStack(hitObjectI.getStack() + 1);
-					hitObjectI = hitObjectN;
-				}
-			}
-		}
-
-		// update hit object positions
-		for (int i = 0; i < hitObjects.length; i++) {
-			if (osu.objects[i].getStack() != 0)
-				hitObjects[i].updatePosition();
-		}
-	}
 }
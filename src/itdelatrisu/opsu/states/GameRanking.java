@@ -179,7 +179,7 @@ public class GameRanking extends BasicGameState {
 			Replay r = data.getReplay(null, null);
 			if (r != null) {
 				try {
-					r.load();
+					r.loadAsync();
 					gameState.setReplay(r);
 					gameState.setRestart((data.isGameplay()) ? Game.Restart.REPLAY : Game.Restart.NEW);
 					returnToGame = true;
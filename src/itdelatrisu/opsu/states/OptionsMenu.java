@@ -54,11 +54,13 @@ public class OptionsMenu extends BasicGameState {
 //			GameOption.FULLSCREEN,
 			GameOption.TARGET_FPS,
 			GameOption.SHOW_FPS,
+			GameOption.SHOW_PERF_STATS,
 			GameOption.SHOW_UNICODE,
 			GameOption.SCREENSHOT_FORMAT,
 			GameOption.NEW_CURSOR,
 			GameOption.DYNAMIC_BACKGROUND,
-			GameOption.LOAD_VERBOSE
+			GameOption.LOAD_VERBOSE,
+			GameOption.WATCH_SERVICE
 		}),
 		MUSIC ("Music", new GameOption[] {
 			GameOption.MASTER_VOLUME,
@@ -77,7 +79,9 @@ public class OptionsMenu extends BasicGameState {
 			GameOption.SHOW_COMBO_BURSTS,
 			GameOption.SHOW_PERFECT_HIT,
 			GameOption.SHOW_FOLLOW_POINTS,
-			GameOption.SHOW_HIT_ERROR_BAR
+			GameOption.SHOW_HIT_ERROR_BAR,
+			GameOption.SLIDER_QUALITY,
+			GameOption.PRECOMPUTE_SLIDERS
 		}),
 		INPUT ("Input", new GameOption[] {
 			GameOption.KEY_LEFT,
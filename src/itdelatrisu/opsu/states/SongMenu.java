@@ -18,6 +18,7 @@
 
 package itdelatrisu.opsu.states;
 
+import itdelatrisu.opsu.BeatmapWatcher;
 import itdelatrisu.opsu.GameData;
 import itdelatrisu.opsu.GameData.Grade;
 import itdelatrisu.opsu.GameImage;
@@ -40,9 +41,13 @@ import itdelatrisu.opsu.audio.SoundController;
 import itdelatrisu.opsu.audio.SoundEffect;
 import itdelatrisu.opsu.db.OsuDB;
 import itdelatrisu.opsu.db.ScoreDB;
+import itdelatrisu.opsu.objects.curves.CurveCache;
 import itdelatrisu.opsu.states.ButtonMenu.MenuState;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
@@ -91,6 +96,9 @@ public class SongMenu extends BasicGameState {
 	/** Line width of the header/footer divider. */
 	private static final int DIVIDER_LINE_WIDTH = 4;
 
+	/** Number of song groups on each side of the focused group whose scores are prefetched. */
+	private static final int SCORE_PREFETCH_RANGE = 3;
+
 	/** Song node class representing an OsuGroupNode and file index. */
 	private static class SongNode {
 		/** Song node. */
@@ -493,6 +501,10 @@ public class SongMenu extends BasicGameState {
 			}
 		}
 
+		// apply beatmap directory changes
+		if (reloadThread == null && beatmapMenuTimer == -1 && BeatmapWatcher.processChanges())
+			reloadSongList();
+
 		// search
 		search.setFocus(true);
 		searchTimer += delta;
@@ -999,7 +1011,10 @@ public class SongMenu extends BasicGameState {
 				ScoreDB.deleteScore(osu);
 				if (stateActionNode == focusNode) {
 					focusScores = null;
-					scoreMap.remove(osu.version);
+					if (scoreMap != null) {
+						scoreMap = new HashMap<String, ScoreData[]>(scoreMap);  // cached map is shared
+						scoreMap.remove(osu.version);
+					}
 				}
 				break;
 			case SCORE:  // clear single score
@@ -1087,8 +1102,9 @@ public class SongMenu extends BasicGameState {
 				reloadThread = new Thread() {
 					@Override
 					public void run() {
-						// clear the beatmap cache
-						OsuDB.clearDatabase();
+						// rescan all directories (cached beatmaps are kept
+						// and only reparsed if their files have changed)
+						OsuDB.clearManifest();
 
 						// invoke unpacker and parser
 						File beatmapDir = Options.getBeatmapDir();
@@ -1202,10 +1218,15 @@ public class SongMenu extends BasicGameState {
 		OsuFile osu = focusNode.osuFiles.get(focusNode.osuFileIndex);
 		MusicController.play(osu, false, preview);
 
-		// load scores
+		// prepare slider curves while the preview plays
+		if (Options.isSliderPrecomputeEnabled())
+			CurveCache.precompute(osu);
+
+		// load scores, and prefetch the neighbouring groups' scores
 		scoreMap = ScoreDB.getMapSetScores(osu);
 		focusScores = getScoreDataForNode(focusNode, true);
 		startScore = 0;
+		prefetchScores(focusNode.index);
 
 		// check startNode bounds
 		while (startNode.index >= OsuGroupList.get().size() + length - MAX_SONG_BUTTONS && startNode.prev != null)
@@ -1234,6 +1255,53 @@ public class SongMenu extends BasicGameState {
 		return oldFocus;
 	}
 
+	/**
+	 * Re-initializes the song list after song groups were added or removed,
+	 * keeping the current focus if it still exists and re-applying the
+	 * current search query.
+	 */
+	private void reloadSongList() {
+		File focusFile = (focusNode != null) ? focusNode.osuFiles.get(focusNode.osuFileIndex).getFile() : null;
+
+		// reset the list
+		OsuGroupList.get().reset();
+		startNode = focusNode = null;
+		oldFocusNode = null;
+		randomStack = new Stack<SongNode>();
+		scoreMap = null;
+		focusScores = null;
+		songInfo = null;
+		if (OsuGroupList.get().size() < 1) {
+			MusicController.playThemeSong();
+			return;
+		}
+		OsuGroupList.get().init();
+
+		// find the previously focused beatmap
+		if (focusFile != null) {
+			for (int i = 0, size = OsuGroupList.get().size(); i < size; i++) {
+				OsuGroupNode node = OsuGroupList.get().getBaseNode(i);
+				for (int j = 0; j < node.osuFiles.size(); j++) {
+					if (focusFile.equals(node.osuFiles.get(j).getFile())) {
+						oldFocusNode = new SongNode(node, j);
+						break;
+					}
+				}
+				if (oldFocusNode != null)
+					break;
+			}
+		}
+
+		// re-apply the search query (if any), then restore focus
+		if (!search.getText().isEmpty())
+			searchTimer = SEARCH_DELAY;
+		else if (oldFocusNode != null) {
+			setFocus(oldFocusNode.getNode(), oldFocusNode.getIndex(), true, true);
+			oldFocusNode = null;
+		} else
+			setFocus(OsuGroupList.get().getRandomNode(), -1, true, true);
+	}
+
 	/**
 	 * Triggers a reset of game data upon entering this state.
 	 */
@@ -1280,6 +1348,24 @@ public class SongMenu extends BasicGameState {
 		stateActionScore = scoreData;
 	}
 
+	/**
+	 * Prefetches the scores of the song groups around a base node index
+	 * (nearest first) in the background.
+	 * @param index the base node index
+	 */
+	private void prefetchScores(int index) {
+		OsuGroupList groups = OsuGroupList.get();
+		List<OsuFile> osuFiles = new ArrayList<OsuFile>(SCORE_PREFETCH_RANGE * 2);
+		for (int i = 1; i <= SCORE_PREFETCH_RANGE; i++) {
+			OsuGroupNode next = groups.getBaseNode(index + i), prev = groups.getBaseNode(index - i);
+			if (next != null)
+				osuFiles.add(next.osuFiles.get(0));
+			if (prev != null)
+				osuFiles.add(prev.osuFiles.get(0));
+		}
+		ScoreDB.prefetchMapSetScores(osuFiles);
+	}
+
 	/**
 	 * Returns all the score data for an OsuGroupNode from scoreMap.
 	 * If no score data is available for the node, return null.
@@ -1318,6 +1404,7 @@ public class SongMenu extends BasicGameState {
 
 		SoundController.playSound(SoundEffect.MENUHIT);
 		MultiClip.destroyExtraClips();
+		CurveCache.cancelPrecompute();
 		OsuFile osu = MusicController.getOsuFile();
 		Game gameState = (Game) game.getState(Opsu.STATE_GAME);
 		gameState.loadOsuFile(osu);
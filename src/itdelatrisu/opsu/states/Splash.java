@@ -18,6 +18,7 @@
 
 package itdelatrisu.opsu.states;
 
+import itdelatrisu.opsu.BeatmapWatcher;
 import itdelatrisu.opsu.GameImage;
 import itdelatrisu.opsu.Opsu;
 import itdelatrisu.opsu.Options;
@@ -105,6 +106,10 @@ public class Splash extends BasicGameState {
 						// parse song directory
 						OsuParser.parseAllFiles(beatmapDir);
 
+						// watch song directory for changes
+						if (Options.isWatchServiceEnabled())
+							BeatmapWatcher.start(beatmapDir);
+
 						// load sounds
 						SoundController.init();
 
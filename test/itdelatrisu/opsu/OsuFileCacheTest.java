@@ -0,0 +1,118 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link OsuFileCache}.
+ * The database is not connected, so full OsuFiles are parsed from their files.
+ */
+public class OsuFileCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Writes beatmaps with one circle each, and returns their summaries.
+	 * @param count the number of beatmaps
+	 */
+	private OsuFile[] beatmaps(int count) throws IOException {
+		File dir = folder.newFolder("set");
+		new File(dir, "audio.mp3").createNewFile();
+		OsuFile[] osuFiles = new OsuFile[count];
+		for (int i = 0; i < count; i++) {
+			File file = new File(dir, String.format("map%d.osu", i));
+			try (PrintWriter w = new PrintWriter(new FileWriter(file))) {
+				w.println("osu file format v12");
+				w.println("[General]");
+				w.println("AudioFilename: audio.mp3");
+				w.println("[Metadata]");
+				w.println("Version:" + i);
+				w.println("[TimingPoints]");
+				w.println("0,500,4,1,0,100,1,0");
+				w.println("[HitObjects]");
+				w.println(String.format("256,192,%d,1,0", 1000 + i));
+			}
+			osuFiles[i] = new OsuFile(file);
+		}
+		return osuFiles;
+	}
+
+	/**
+	 * Acquires and immediately releases the full OsuFiles of beatmaps.
+	 */
+	private static void use(OsuFile[] osuFiles, int from) {
+		for (int i = from; i < osuFiles.length; i++)
+			OsuFileCache.release(OsuFileCache.acquire(osuFiles[i]));
+	}
+
+	/**
+	 * Full OsuFiles are loaded with their hit objects, and shared.
+	 */
+	@Test
+	public void testAcquire() throws IOException {
+		OsuFile[] osuFiles = beatmaps(1);
+		FullOsuFile full = OsuFileCache.acquire(osuFiles[0]);
+		try {
+			assertEquals(1, full.objects.length);
+			assertEquals(1000, full.objectStore.getTime(0));
+			assertEquals(1, full.timingPoints.size());
+			assertSame(full, OsuFileCache.acquire(osuFiles[0]));
+			OsuFileCache.release(full);
+		} finally {
+			OsuFileCache.release(full);
+		}
+	}
+
+	/**
+	 * Beatmaps in use are never evicted, and the others are bounded.
+	 */
+	@Test
+	public void testEviction() throws IOException {
+		OsuFile[] osuFiles = beatmaps(40);
+		FullOsuFile inUse = OsuFileCache.acquire(osuFiles[0]);
+		try {
+			use(osuFiles, 1);
+			assertSame(inUse, OsuFileCache.acquire(osuFiles[0]));
+			OsuFileCache.release(inUse);
+			assertTrue(OsuFileCache.size() < 20);
+		} finally {
+			OsuFileCache.release(inUse);
+		}
+
+		// no longer in use
+		use(osuFiles, 1);
+		FullOsuFile reloaded = OsuFileCache.acquire(osuFiles[0]);
+		OsuFileCache.release(reloaded);
+		assertNotSame(inUse, reloaded);
+		assertEquals(1000, reloaded.objectStore.getTime(0));
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares parsing [HitObjects] and [TimingPoints] lines through the shared
+ * LineTokenizer against the previous {@code String.split()}-based parsers,
+ * which are kept here verbatim as the baseline.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Djar=true}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OsuParserBenchmark {
+	/** Number of generated hit object lines (a long map). */
+	private static final int HIT_OBJECT_COUNT = 2000;
+
+	/** Number of generated timing point lines. */
+	private static final int TIMING_POINT_COUNT = 200;
+
+	/** Generated lines. */
+	private String[] hitObjectLines, timingPointLines;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(0);
+		hitObjectLines = new String[HIT_OBJECT_COUNT];
+		int time = 1000;
+		for (int i = 0; i < HIT_OBJECT_COUNT; i++) {
+			int x = random.nextInt(512), y = random.nextInt(384);
+			time += 50 + random.nextInt(400);
+			int kind = random.nextInt(10);
+			if (kind < 6)
+				hitObjectLines[i] = String.format("%d,%d,%d,1,%d,0:0:0:0:", x, y, time, random.nextInt(4) * 2);
+			else if (kind < 9) {
+				StringBuilder sb = new StringBuilder();
+				sb.append(x).append(',').append(y).append(',').append(time).append(",2,0,B");
+				int points = 1 + random.nextInt(6);
+				for (int j = 0; j < points; j++)
+					sb.append('|').append(random.nextInt(512)).append(':').append(random.nextInt(384));
+				int repeat = 1 + random.nextInt(3);
+				sb.append(',').append(repeat).append(',').append(random.nextInt(300)).append('.').append(random.nextInt(100000)).append(',');
+				for (int j = 0; j <= repeat; j++)
+					sb.append(j == 0 ? "" : "|").append(random.nextInt(4) * 2);
+				sb.append(',');
+				for (int j = 0; j <= repeat; j++)
+					sb.append(j == 0 ? "" : "|").append("0:0");
+				sb.append(",0:0:0:0:");
+				hitObjectLines[i] = sb.toString();
+			} else {
+				hitObjectLines[i] = String.format("256,192,%d,12,0,%d,0:0:0:0:", time, time + 1000 + random.nextInt(3000));
+				time += 4000;
+			}
+		}
+		timingPointLines = new String[TIMING_POINT_COUNT];
+		time = 1000;
+		for (int i = 0; i < TIMING_POINT_COUNT; i++) {
+			time += random.nextInt(5000);
+			if (i % 4 == 0)
+				timingPointLines[i] = String.format("%d,%d.%d,4,2,0,%d,1,0", time, 200 + random.nextInt(300), random.nextInt(1000000), 40 + random.nextInt(60));
+			else
+				timingPointLines[i] = String.format("%d,-%d,4,2,0,%d,0,%d", time, 25 + random.nextInt(200), 40 + random.nextInt(60), random.nextInt(2));
+		}
+	}
+
+	@Benchmark
+	public HitObjectStore hitObjectsTokenizer() {
+		HitObjectStore store = new HitObjectStore(HIT_OBJECT_COUNT);
+		for (String line : hitObjectLines)
+			store.add(line);
+		return store;
+	}
+
+	@Benchmark
+	public SplitHitObject[] hitObjectsSplit() {
+		SplitHitObject[] objects = new SplitHitObject[HIT_OBJECT_COUNT];
+		for (int i = 0; i < HIT_OBJECT_COUNT; i++)
+			objects[i] = new SplitHitObject(hitObjectLines[i]);
+		return objects;
+	}
+
+	@Benchmark
+	public OsuTimingPoint[] timingPointsTokenizer() {
+		OsuTimingPoint[] points = new OsuTimingPoint[TIMING_POINT_COUNT];
+		for (int i = 0; i < TIMING_POINT_COUNT; i++)
+			points[i] = new OsuTimingPoint(timingPointLines[i]);
+		return points;
+	}
+
+	@Benchmark
+	public SplitTimingPoint[] timingPointsSplit() {
+		SplitTimingPoint[] points = new SplitTimingPoint[TIMING_POINT_COUNT];
+		for (int i = 0; i < TIMING_POINT_COUNT; i++)
+			points[i] = new SplitTimingPoint(timingPointLines[i]);
+		return points;
+	}
+
+	/**
+	 * The previous {@code OsuHitObject(String)} constructor.
+	 */
+	public static class SplitHitObject {
+		float x, y;
+		int time, type;
+		byte hitSound;
+		byte[] addition;
+		char sliderType;
+		float[] sliderX, sliderY;
+		int repeat;
+		float pixelLength;
+		byte[] edgeHitSound;
+		byte[][] edgeAddition;
+		int endTime;
+
+		SplitHitObject(String line) {
+			String tokens[] = line.split(",");
+
+			// common fields
+			this.x = Float.parseFloat(tokens[0]);
+			this.y = Float.parseFloat(tokens[1]);
+			this.time = Integer.parseInt(tokens[2]);
+			this.type = Integer.parseInt(tokens[3]);
+			this.hitSound = Byte.parseByte(tokens[4]);
+
+			// type-specific fields
+			int additionIndex;
+			if ((type & OsuHitObject.TYPE_CIRCLE) > 0)
+				additionIndex = 5;
+			else if ((type & OsuHitObject.TYPE_SLIDER) > 0) {
+				additionIndex = 10;
+
+				// slider curve type and coordinates
+				String[] sliderTokens = tokens[5].split("\\|");
+				this.sliderType = sliderTokens[0].charAt(0);
+				this.sliderX = new float[sliderTokens.length - 1];
+				this.sliderY = new float[sliderTokens.length - 1];
+				for (int j = 1; j < sliderTokens.length; j++) {
+					String[] sliderXY = sliderTokens[j].split(":");
+					this.sliderX[j - 1] = Integer.parseInt(sliderXY[0]);
+					this.sliderY[j - 1] = Integer.parseInt(sliderXY[1]);
+				}
+				this.repeat = Integer.parseInt(tokens[6]);
+				this.pixelLength = Float.parseFloat(tokens[7]);
+				if (tokens.length > 8) {
+					String[] edgeHitSoundTokens = tokens[8].split("\\|");
+					this.edgeHitSound = new byte[edgeHitSoundTokens.length];
+					for (int j = 0; j < edgeHitSoundTokens.length; j++)
+						edgeHitSound[j] = Byte.parseByte(edgeHitSoundTokens[j]);
+				}
+				if (tokens.length > 9) {
+					String[] edgeAdditionTokens = tokens[9].split("\\|");
+					this.edgeAddition = new byte[edgeAdditionTokens.length][2];
+					for (int j = 0; j < edgeAdditionTokens.length; j++) {
+						String[] tedgeAddition = edgeAdditionTokens[j].split(":");
+						edgeAddition[j][0] = Byte.parseByte(tedgeAddition[0]);
+						edgeAddition[j][1] = Byte.parseByte(tedgeAddition[1]);
+					}
+				}
+			} else { //if ((type & OsuHitObject.TYPE_SPINNER) > 0) {
+				additionIndex = 6;
+
+				// some 'endTime' fields contain a ':' character (?)
+				int index = tokens[5].indexOf(':');
+				if (index != -1)
+					tokens[5] = tokens[5].substring(0, index);
+				this.endTime = Integer.parseInt(tokens[5]);
+			}
+
+			// addition
+			if (tokens.length > additionIndex) {
+				String[] additionTokens = tokens[additionIndex].split(":");
+				this.addition = new byte[additionTokens.length];
+				for (int j = 0; j < additionTokens.length; j++)
+					this.addition[j] = Byte.parseByte(additionTokens[j]);
+			}
+		}
+	}
+
+	/**
+	 * The previous {@code OsuTimingPoint(String)} constructor.
+	 */
+	public static class SplitTimingPoint {
+		int time;
+		float beatLength;
+		int velocity;
+		int meter = 4;
+		byte sampleType = 1, sampleTypeCustom;
+		int sampleVolume = 100;
+		boolean inherited, kiai;
+
+		SplitTimingPoint(String line) {
+			String[] tokens = line.split(",");
+			this.time = (int) Float.parseFloat(tokens[0]);  // rare float
+			this.meter = Integer.parseInt(tokens[2]);
+			this.sampleType = Byte.parseByte(tokens[3]);
+			this.sampleTypeCustom = Byte.parseByte(tokens[4]);
+			this.sampleVolume = Integer.parseInt(tokens[5]);
+			if (tokens.length > 7)
+				this.kiai = (Integer.parseInt(tokens[7]) == 1);
+
+			// tokens[1] is either beatLength (positive) or velocity (negative)
+			float beatLength = Float.parseFloat(tokens[1]);
+			if (beatLength > 0)
+				this.beatLength = beatLength;
+			else {
+				this.velocity = (int) beatLength;
+				this.inherited = true;
+			}
+		}
+	}
+}
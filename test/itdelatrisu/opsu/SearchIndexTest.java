@@ -0,0 +1,120 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SearchIndex}.
+ */
+public class SearchIndexTest {
+	/** Search terms to check. */
+	private static final String[] TERMS = { "common", "song5", "ng12", "s", "9", "hard", "xyz" };
+
+	/**
+	 * Returns a song group with two beatmaps.
+	 * @param i the group number
+	 */
+	private static OsuGroupNode group(int i) {
+		ArrayList<OsuFile> osuFiles = new ArrayList<OsuFile>();
+		for (int j = 0; j < 2; j++) {
+			OsuFile osu = new OsuFile((File) null);
+			osu.title = String.format("Song%d Common", i);
+			osu.artist = String.format("Artist%d", i % 7);
+			osu.version = (j == 0) ? "Normal" : String.format("Hard%d", i);
+			osuFiles.add(osu);
+		}
+		return new OsuGroupNode(osuFiles);
+	}
+
+	/**
+	 * Returns whether a group matches a search term, without an index.
+	 */
+	private static boolean matches(OsuGroupNode node, String term) {
+		for (int i = 0; i < node.osuFiles.size(); i++) {
+			OsuFile osu = node.osuFiles.get(i);
+			if ((i == 0 && (osu.title.toLowerCase().contains(term) || osu.artist.toLowerCase().contains(term))) ||
+			    osu.version.toLowerCase().contains(term))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks the search results against the expected groups, in order.
+	 */
+	private static void check(SearchIndex index, List<OsuGroupNode> nodes) {
+		for (String term : TERMS) {
+			List<OsuGroupNode> expected = new ArrayList<OsuGroupNode>();
+			for (OsuGroupNode node : nodes) {
+				if (matches(node, term))
+					expected.add(node);
+			}
+			List<OsuGroupNode> actual = new ArrayList<OsuGroupNode>();
+			BitSet result = index.search(term);
+			for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1))
+				actual.add(index.get(i));
+			assertEquals(term, expected, actual);
+		}
+	}
+
+	/**
+	 * Results stay correct as groups are removed and updated, and the index
+	 * is rebuilt once most of it consists of removed groups (so group IDs
+	 * stay below twice the number of remaining groups).
+	 */
+	@Test
+	public void testRemoveAndUpdate() {
+		SearchIndex index = new SearchIndex();
+		List<OsuGroupNode> nodes = new ArrayList<OsuGroupNode>();
+		for (int i = 0; i < 1000; i++) {
+			OsuGroupNode node = group(i);
+			index.add(node);
+			nodes.add(node);
+		}
+		check(index, nodes);
+
+		// remove 9 out of 10 groups
+		List<OsuGroupNode> remaining = new ArrayList<OsuGroupNode>();
+		for (int i = 0; i < nodes.size(); i++) {
+			if (i % 10 == 0)
+				remaining.add(nodes.get(i));
+			else
+				index.remove(nodes.get(i));
+		}
+		check(index, remaining);
+		assertTrue("index not rebuilt", index.search("common").length() <= 2 * remaining.size());
+
+		// update the remaining groups repeatedly
+		for (int n = 0; n < 20; n++) {
+			for (OsuGroupNode node : remaining)
+				index.update(node);
+		}
+		check(index, remaining);
+		assertTrue("index not rebuilt", index.search("common").length() <= 2 * remaining.size());
+	}
+}
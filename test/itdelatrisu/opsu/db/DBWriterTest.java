@@ -0,0 +1,117 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link DBWriter}.
+ */
+public class DBWriterTest {
+	/**
+	 * Returns a connection on which every method does nothing.
+	 */
+	private static Connection connection() {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return (method.getReturnType() == boolean.class) ? Boolean.FALSE : null;
+			}
+		});
+	}
+
+	/**
+	 * After {@link DBWriter#sync()} returns, every write submitted by the
+	 * same thread before it has run, even while other threads keep
+	 * submitting writes.
+	 */
+	@Test
+	public void testReadYourWrites() throws InterruptedException {
+		final DBWriter writer = new DBWriter("test", connection());
+		final int threadCount = 8, writeCount = 2000;
+		final AtomicIntegerArray written = new AtomicIntegerArray(threadCount * writeCount);
+		final AtomicInteger errors = new AtomicInteger();
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final int base = t * writeCount;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < writeCount; i++) {
+						final int index = base + i;
+						writer.submit(new Runnable() {
+							@Override
+							public void run() { written.set(index, 1); }
+						});
+						writer.sync();
+						if (written.get(index) != 1)
+							errors.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		writer.close();
+		assertEquals(0, errors.get());
+	}
+
+	/**
+	 * Writes submitted after {@link DBWriter#close()} are not run, and their
+	 * futures fail.
+	 */
+	@Test
+	public void testSubmitAfterClose() throws InterruptedException {
+		DBWriter writer = new DBWriter("test", connection());
+		final AtomicInteger runs = new AtomicInteger();
+		Runnable task = new Runnable() {
+			@Override
+			public void run() { runs.incrementAndGet(); }
+		};
+		Future<Void> before = writer.submit(task);
+		writer.close();
+		assertTrue(before.isDone());
+		Future<Void> after = writer.submit(task);
+		assertTrue(after.isDone());
+		try {
+			after.get();
+			fail("write after close() succeeded");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SQLException);
+		}
+		assertEquals(1, runs.get());
+		writer.sync();  // returns immediately
+	}
+}
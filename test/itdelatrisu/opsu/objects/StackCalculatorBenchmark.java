@@ -0,0 +1,91 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import itdelatrisu.opsu.HitObjectStore;
+import itdelatrisu.opsu.OsuHitObject;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link StackCalculator} against the previous nested loop
+ * ({@link StackCalculatorTest#calculateStacks}) on dense maps, where about
+ * {@code 700 / spacing} objects fall in each stack time window.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Djar=true}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StackCalculatorBenchmark {
+	/** Number of hit objects. */
+	@Param({ "5000", "20000" })
+	public int count;
+
+	/** Time between hit objects, in ms. */
+	@Param({ "1", "10", "60" })
+	public int spacing;
+
+	/** The map. */
+	private HitObjectStore objects;
+
+	/** The mock hit objects. */
+	private HitObject[] hitObjects;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		OsuHitObject.init(1024, 768);
+		objects = StackCalculatorTest.denseMap(count, spacing);
+		hitObjects = StackCalculatorTest.hitObjects(objects, spacing);
+	}
+
+	@Setup(Level.Invocation)
+	public void resetStacks() {
+		for (int i = 0; i < count; i++)
+			objects.setStack(i, 0);
+	}
+
+	@Benchmark
+	public HitObjectStore nestedLoop() {
+		StackCalculatorTest.calculateStacks(objects, hitObjects, 3f, 700f);
+		return objects;
+	}
+
+	@Benchmark
+	public HitObjectStore stackCalculator() {
+		StackCalculator.calculate(objects, hitObjects, 3f, 700f);
+		return objects;
+	}
+}
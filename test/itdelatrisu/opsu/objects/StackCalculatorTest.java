@@ -0,0 +1,245 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects;
+
+import static org.junit.Assert.assertEquals;
+import itdelatrisu.opsu.HitObjectStore;
+import itdelatrisu.opsu.OsuHitObject;
+import itdelatrisu.opsu.Utils;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.newdawn.slick.Graphics;
+
+/**
+ * Checks that {@link StackCalculator} produces the same stacks as the
+ * previous nested loop in {@code Game.calculateStacks()}.
+ */
+public class StackCalculatorTest {
+	/** Stack lenience (as in StackCalculator). */
+	private static final float STACK_LENIENCE = 3f;
+
+	/** Number of random maps to compare. */
+	private static final int MAP_COUNT = 1000;
+
+	/**
+	 * Hit object with a fixed slider end point, for stacking only.
+	 */
+	static class MockHitObject implements HitObject {
+		private final HitObjectStore objects;
+		private final int index, endTime;
+		private final float endX, endY;
+
+		MockHitObject(HitObjectStore objects, int index, int endTime, float endX, float endY) {
+			this.objects = objects;
+			this.index = index;
+			this.endTime = endTime;
+			this.endX = endX;
+			this.endY = endY;
+		}
+
+		@Override
+		public void draw(Graphics g, int trackPosition) {}
+
+		@Override
+		public boolean update(boolean overlap, int delta, int mouseX, int mouseY, boolean keyPressed, int trackPosition) { return false; }
+
+		@Override
+		public boolean mousePressed(int x, int y, int trackPosition) { return false; }
+
+		@Override
+		public float[] getPointAt(int trackPosition, float[] out) {
+			if (objects.isSlider(index) && trackPosition > objects.getTime(index) && trackPosition >= endTime) {
+				out[0] = endX;
+				out[1] = endY;
+			} else {
+				out[0] = scaleX(objects.getX(index));
+				out[1] = scaleY(objects.getY(index));
+			}
+			return out;
+		}
+
+		@Override
+		public int getEndTime() { return endTime; }
+
+		@Override
+		public void updatePosition() {}
+
+		@Override
+		public HitObject copy() { return this; }
+	}
+
+	/** Returns a scaled, unstacked x coordinate. */
+	private static float scaleX(float x) { return x * OsuHitObject.getXMultiplier() + OsuHitObject.getXOffset(); }
+
+	/** Returns a scaled, unstacked y coordinate. */
+	private static float scaleY(float y) { return y * OsuHitObject.getYMultiplier() + OsuHitObject.getYOffset(); }
+
+	@BeforeClass
+	public static void init() {
+		OsuHitObject.init(1024, 768);
+	}
+
+	@Test
+	public void testRandomMaps() {
+		for (int scanLimit : new int[] { 128, 2, 0 }) {
+			for (int seed = 0; seed < MAP_COUNT; seed++) {
+				int n = 1 + seed % 300;
+				float timeWindow = 1000 * (0.2f + (seed % 8) / 10f);
+				HitObjectStore expected = randomMap(seed, n);
+				HitObjectStore actual = randomMap(seed, n);
+				calculateStacks(expected, hitObjects(expected, seed), STACK_LENIENCE, timeWindow);
+				StackCalculator.calculate(actual, hitObjects(actual, seed), STACK_LENIENCE, timeWindow, scanLimit);
+				for (int i = 0; i < n; i++)
+					assertEquals(String.format("map %d, object %d, scan limit %d", seed, i, scanLimit),
+							expected.getStack(i), actual.getStack(i));
+			}
+		}
+	}
+
+	@Test
+	public void testDenseMaps() {
+		for (int scanLimit : new int[] { 128, 2, 0 }) {
+			for (int spacing : new int[] { 60, 10, 1 }) {
+				HitObjectStore expected = denseMap(5000, spacing);
+				HitObjectStore actual = denseMap(5000, spacing);
+				calculateStacks(expected, hitObjects(expected, spacing), STACK_LENIENCE, 700f);
+				StackCalculator.calculate(actual, hitObjects(actual, spacing), STACK_LENIENCE, 700f, scanLimit);
+				for (int i = 0; i < 5000; i++)
+					assertEquals(String.format("spacing %d, object %d, scan limit %d", spacing, i, scanLimit),
+							expected.getStack(i), actual.getStack(i));
+			}
+		}
+	}
+
+	/**
+	 * The previous stack calculation in {@code Game.calculateStacks()}.
+	 */
+	static void calculateStacks(HitObjectStore objects, HitObject[] hitObjects, float lenience, float timeWindow) {
+		float[] pointA = new float[2], pointB = new float[2];
+		for (int i = hitObjects.length - 1; i > 0; i--) {
+			int indexI = i;
+			if (objects.getStack(indexI) != 0 || objects.isSpinner(indexI))
+				continue;
+			for (int n = i - 1; n >= 0; n--) {
+				if (objects.isSpinner(n))
+					continue;
+				float timeI = objects.getTime(indexI) - timeWindow;
+				float timeN = objects.isSlider(n) ? hitObjects[n].getEndTime() : objects.getTime(n);
+				if (timeI > timeN)
+					break;
+				if (objects.isSlider(n)) {
+					float[] p1 = hitObjects[i].getPointAt(objects.getTime(indexI), pointA);
+					float[] p2 = hitObjects[n].getPointAt(hitObjects[n].getEndTime(), pointB);
+					float distance = Utils.distance(p1[0], p1[1], p2[0], p2[1]);
+					if (distance < lenience * OsuHitObject.getXMultiplier()) {
+						int offset = objects.getStack(indexI) - objects.getStack(n) + 1;
+						for (int j = n + 1; j <= i; j++) {
+							p1 = hitObjects[j].getPointAt(objects.getTime(j), pointA);
+							distance = Utils.distance(p1[0], p1[1], p2[0], p2[1]);
+							if (distance < lenience * OsuHitObject.getXMultiplier())
+								objects.setStack(j, objects.getStack(j) - offset);
+						}
+						break;
+					}
+				}
+				float distance = Utils.distance(objects.getX(indexI), objects.getY(indexI), objects.getX(n), objects.getY(n));
+				if (distance < lenience) {
+					objects.setStack(n, objects.getStack(indexI) + 1);
+					indexI = n;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a random map mixing streams on the same spot, jumps, sliders
+	 * and spinners.
+	 */
+	static HitObjectStore randomMap(long seed, int n) {
+		Random random = new Random(seed);
+		HitObjectStore objects = new HitObjectStore(n);
+		int time = 0, lastX = 256, lastY = 192;
+		for (int i = 0; i < n; i++) {
+			time += (random.nextInt(4) == 0) ? random.nextInt(400) : 1 + random.nextInt(80);
+			int x, y, position = random.nextInt(10);
+			if (position < 5) {
+				x = lastX + random.nextInt(5) - 2;
+				y = lastY + random.nextInt(5) - 2;
+			} else if (position < 7) {
+				x = random.nextInt(512);
+				y = random.nextInt(384);
+			} else {
+				x = lastX;
+				y = lastY;
+			}
+			lastX = x;
+			lastY = y;
+			int type = random.nextInt(10);
+			if (type < 6)
+				objects.add(x + "," + y + "," + time + ",1,0");
+			else if (type < 9)
+				objects.add(x + "," + y + "," + time + ",2,0,B|" + (x + 10) + ":" + y + ",1,100");
+			else
+				objects.add(x + "," + y + "," + time + ",12,0," + (time + random.nextInt(2000)));
+		}
+		return objects;
+	}
+
+	/**
+	 * Returns a map of evenly spaced circles and sliders at random positions.
+	 */
+	static HitObjectStore denseMap(int n, int spacing) {
+		Random random = new Random(n);
+		HitObjectStore objects = new HitObjectStore(n);
+		for (int i = 0; i < n; i++) {
+			int x = random.nextInt(512), y = random.nextInt(384);
+			if (random.nextInt(8) == 0)
+				objects.add(x + "," + y + "," + (i * spacing) + ",2,0,B|" + (x + 10) + ":" + y + ",1,100");
+			else
+				objects.add(x + "," + y + "," + (i * spacing) + ",1,0");
+		}
+		return objects;
+	}
+
+	/**
+	 * Returns mock hit objects for a map, with random slider end times and
+	 * end points (half of them on or next to the slider start).
+	 */
+	static HitObject[] hitObjects(HitObjectStore objects, long seed) {
+		Random random = new Random(seed);
+		HitObject[] hitObjects = new HitObject[objects.size()];
+		for (int i = 0; i < hitObjects.length; i++) {
+			int time = objects.getTime(i);
+			if (objects.isSlider(i)) {
+				float endX = random.nextBoolean() ?
+						scaleX(objects.getX(i) + random.nextInt(3)) : random.nextFloat() * 1000;
+				float endY = random.nextBoolean() ?
+						scaleY(objects.getY(i) + random.nextInt(3)) : random.nextFloat() * 800;
+				hitObjects[i] = new MockHitObject(objects, i, time + random.nextInt(1500), endX, endY);
+			} else {
+				int endTime = objects.isSpinner(i) ? objects.getEndTime(i) : time;
+				hitObjects[i] = new MockHitObject(objects, i, endTime, 0, 0);
+			}
+		}
+		return hitObjects;
+	}
+}
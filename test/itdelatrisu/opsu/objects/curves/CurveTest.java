@@ -0,0 +1,135 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.objects.curves;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Curve#simplify(float[], float, float)}.
+ */
+public class CurveTest {
+	/** Number of random curves to check. */
+	private static final int CURVE_COUNT = 300;
+
+	/** Number of points probed on the outline of each circle. */
+	private static final int OUTLINE_SAMPLES = 64;
+
+	/**
+	 * The outline of the circles drawn at the simplified points must stay
+	 * within the tolerance of the outline drawn at every curve point.
+	 */
+	@Test
+	public void testMaxDeviation() {
+		Random random = new Random(4);
+		float[] tolerances = { 1f, 2f, 4f };
+		int fullCount = 0, drawnCount = 0;
+		for (int k = 0; k < CURVE_COUNT; k++) {
+			float[] points = randomBezier(random);
+			float radius = 10 + random.nextFloat() * 60;
+			float tolerance = tolerances[k % tolerances.length];
+			float[] drawn = Curve.simplify(points, radius, tolerance);
+			fullCount += points.length / 2;
+			drawnCount += drawn.length / 2;
+
+			// endpoints are always drawn
+			assertEquals(points[0], drawn[0], 0f);
+			assertEquals(points[1], drawn[1], 0f);
+			assertEquals(points[points.length - 2], drawn[drawn.length - 2], 0f);
+			assertEquals(points[points.length - 1], drawn[drawn.length - 1], 0f);
+
+			// every point on the full outline is close to some drawn circle
+			for (int i = 0; i < points.length; i += 2) {
+				for (int a = 0; a < OUTLINE_SAMPLES; a++) {
+					double angle = a * 2 * Math.PI / OUTLINE_SAMPLES;
+					double x = points[i] + radius * Math.cos(angle);
+					double y = points[i + 1] + radius * Math.sin(angle);
+					double distance = Double.MAX_VALUE;
+					for (int j = 0; j < drawn.length; j += 2)
+						distance = Math.min(distance, Math.hypot(x - drawn[j], y - drawn[j + 1]));
+					assertTrue(String.format("curve %d deviates by %f (tolerance %f)", k, distance - radius, tolerance),
+							distance - radius <= tolerance);
+				}
+			}
+		}
+		assertTrue("no points were skipped", drawnCount < fullCount);
+	}
+
+	/**
+	 * On a straight line, only the spacing limit applies:
+	 * {@code 2 * sqrt(40^2 - 39^2)} is about 17.7, so every third point
+	 * (0, 3, ..., 198) and the end point are drawn.
+	 */
+	@Test
+	public void testStraightLine() {
+		float[] points = new float[200 * 2];
+		for (int i = 0; i < 200; i++) {
+			points[i * 2] = i * Curve.CURVE_POINTS_SEPERATION;
+			points[i * 2 + 1] = 100;
+		}
+		float[] drawn = Curve.simplify(points, 40, 2);
+		assertTrue(drawn.length / 2 <= 68);
+	}
+
+	@Test
+	public void testZeroTolerance() {
+		float[] points = randomBezier(new Random(0));
+		assertSame(points, Curve.simplify(points, 40, 0));
+	}
+
+	@Test
+	public void testShortCurve() {
+		float[] points = { 0, 0, 5, 0 };
+		assertSame(points, Curve.simplify(points, 40, 2));
+		assertTrue(Arrays.equals(points, Curve.simplify(points, 40, 2)));
+	}
+
+	/**
+	 * Returns a random cubic Bezier curve with points spaced
+	 * {@link Curve#CURVE_POINTS_SEPERATION} apart, like the sliders.
+	 */
+	private static float[] randomBezier(Random random) {
+		double[] c = new double[8];
+		for (int i = 0; i < c.length; i++)
+			c[i] = random.nextDouble() * 600;
+		float[] points = new float[64];
+		int count = 0;
+		double lastX = Double.NaN, lastY = 0;
+		for (int s = 0; s <= 20000; s++) {
+			double t = s / 20000.0, u = 1 - t;
+			double x = u * u * u * c[0] + 3 * u * u * t * c[2] + 3 * u * t * t * c[4] + t * t * t * c[6];
+			double y = u * u * u * c[1] + 3 * u * u * t * c[3] + 3 * u * t * t * c[5] + t * t * t * c[7];
+			if (Double.isNaN(lastX) || Math.hypot(x - lastX, y - lastY) >= Curve.CURVE_POINTS_SEPERATION) {
+				if (count + 2 > points.length)
+					points = Arrays.copyOf(points, points.length * 2);
+				points[count++] = (float) x;
+				points[count++] = (float) y;
+				lastX = x;
+				lastY = y;
+			}
+		}
+		return Arrays.copyOf(points, count);
+	}
+}
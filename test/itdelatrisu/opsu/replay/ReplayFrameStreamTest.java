@@ -0,0 +1,102 @@
+/*
+ * opsu! - an open-source osu! client
+ * Copyright (C) 2014, 2015 Jeffrey Han
+ *
+ * opsu! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * opsu! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with opsu!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package itdelatrisu.opsu.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Round trips of replay frame data through {@link ReplayFrameInputStream}
+ * and {@link ReplayFrameReader}.
+ */
+public class ReplayFrameStreamTest {
+	@Test
+	public void testRoundTrip() throws IOException {
+		ReplayFrameBuffer frames = new ReplayFrameBuffer(2);
+		frames.add(0, 0, 256, -500, ReplayFrame.KEY_NONE);
+		frames.add(16, 16, 100.5f, 200.25f, ReplayFrame.KEY_M1);
+		frames.add(17, 33, -3.125f, 384, ReplayFrame.KEY_M1 | ReplayFrame.KEY_K1);
+
+		ReplayFrameReader reader = new ReplayFrameReader(new ReplayFrameInputStream(frames, 42, Replay.FLAG_TICK_JUDGEMENT));
+		ReplayFrameBuffer read = new ReplayFrameBuffer();
+		while (reader.next(read))
+			continue;
+		assertEquals(frames.size(), read.size());
+		for (int i = 0; i < frames.size(); i++) {
+			assertEquals(frames.getTimeDiff(i), read.getTimeDiff(i));
+			assertEquals(frames.getTime(i), read.getTime(i));
+			assertEquals(frames.getX(i), read.getX(i), 0f);
+			assertEquals(frames.getY(i), read.getY(i), 0f);
+			assertEquals(frames.getKeys(i), read.getKeys(i));
+		}
+		assertEquals(42, reader.getSeed());
+		assertEquals(Replay.FLAG_TICK_JUDGEMENT, reader.getFlags());
+	}
+
+	@Test
+	public void testFlagsFrameFirst() throws IOException {
+		ReplayFrameBuffer frames = new ReplayFrameBuffer();
+		frames.add(0, 0, 256, -500, ReplayFrame.KEY_NONE);
+		frames.add(16, 16, 1, 2, ReplayFrame.KEY_M1);
+		assertEquals("-12345|1|0|7,0|256|-500|0,16|1|2|1,-12345|0|0|7",
+				text(new ReplayFrameInputStream(frames, 7, Replay.FLAG_TICK_JUDGEMENT)));
+		assertEquals("0|256|-500|0,16|1|2|1,-12345|0|0|7",
+				text(new ReplayFrameInputStream(frames, 7, 0)));
+
+		// the flags are known after reading the first frame
+		ReplayFrameReader reader = new ReplayFrameReader(new ReplayFrameInputStream(frames, 7, Replay.FLAG_TICK_JUDGEMENT));
+		assertTrue(reader.next(new ReplayFrameBuffer()));
+		assertEquals(Replay.FLAG_TICK_JUDGEMENT, reader.getFlags());
+	}
+
+	@Test
+	public void testNoFlags() throws IOException {
+		// as written by osu!
+		byte[] data = "0|256|-500|0,-1|256|-500|0,16|1.5|2|1,-12345|0|0|99,".getBytes(StandardCharsets.US_ASCII);
+		ReplayFrameReader reader = new ReplayFrameReader(new ByteArrayInputStream(data));
+		ReplayFrameBuffer read = new ReplayFrameBuffer();
+		while (reader.next(read))
+			continue;
+		assertEquals(3, read.size());
+		assertEquals(99, reader.getSeed());
+		assertEquals(0, reader.getFlags());
+		assertFalse(read.isKeyPressed(1));
+	}
+
+	/**
+	 * Returns the text of a frame stream.
+	 */
+	private static String text(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[64];
+		int n;
+		while ((n = in.read(b, 0, b.length)) != -1)
+			out.write(b, 0, n);
+		return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+	}
+}